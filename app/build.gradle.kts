@@ -52,6 +52,8 @@ android {
 }
 
 dependencies {
+	implementation(project(":highlighter"))
+
 	implementation(libs.androidx.appcompat)
 	implementation(libs.material)
 	implementation(libs.androidx.preference)
@@ -36,6 +36,7 @@ import de.markusfisch.android.shadereditor.database.DataRecords;
 import de.markusfisch.android.shadereditor.database.DataSource;
 import de.markusfisch.android.shadereditor.database.Database;
 import de.markusfisch.android.shadereditor.fragment.EditorFragment;
+import de.markusfisch.android.shadereditor.highlighter.Usage;
 import de.markusfisch.android.shadereditor.opengl.ShaderError;
 import de.markusfisch.android.shadereditor.service.ShaderWallpaperService;
 import de.markusfisch.android.shadereditor.view.SystemBarMetrics;
@@ -75,13 +76,24 @@ public class MainActivity extends AppCompatActivity {
 		}
 
 		navigationManager = new NavigationManager(this);
+		ShaderViewManager.Listener shaderViewListener = createShaderViewListener();
 		shaderViewManager = new ShaderViewManager(this,
 				findViewById(R.id.preview),
 				findViewById(R.id.quality),
-				createShaderViewListener());
+				shaderViewListener);
 		ExtraKeysManager extraKeysManager = new ExtraKeysManager(this,
 				findViewById(android.R.id.content),
-				editorFragment::insert);
+				new ExtraKeysManager.Editor() {
+					@Override
+					public void insert(@NonNull CharSequence text) {
+						editorFragment.insert(text);
+					}
+
+					@Override
+					public void complete(@NonNull CharSequence completion, int typed) {
+						editorFragment.complete(completion, typed);
+					}
+				});
 		uiManager = new UIManager(this,
 				editorFragment,
 				extraKeysManager,
@@ -90,13 +102,14 @@ public class MainActivity extends AppCompatActivity {
 				findViewById(R.id.shaders),
 				dataSource,
 				createShaderListListener());
+		shaderListManager.countUsageAsync();
 		shaderManager = new ShaderManager(this,
 				editorFragment,
 				shaderViewManager,
 				shaderListManager,
 				uiManager,
 				dataSource,
-				createShaderViewListener());
+				shaderViewListener);
 
 		MainMenuManager mainMenuManager = new MainMenuManager(
 				this,
@@ -122,11 +135,18 @@ public class MainActivity extends AppCompatActivity {
 
 		editorFragment.setOnEditPausedListener(text -> {
 			if (ShaderEditorApp.preferences.doesRunOnChange()) {
-				if (editorFragment.hasErrors()) {
-					editorFragment.clearError();
-					editorFragment.highlightErrors();
-				}
-				shaderViewManager.setFragmentShader(text);
+				// Don't bother the driver with obvious errors.
+				editorFragment.validate(errors -> {
+					if (!errors.isEmpty()) {
+						shaderViewListener.onInfoLog(errors);
+						return;
+					}
+					if (editorFragment.hasErrors()) {
+						editorFragment.clearError();
+						editorFragment.highlightErrors();
+					}
+					shaderViewManager.setFragmentShader(text);
+				});
 			}
 		});
 		editorFragment.setOnTextModifiedListener(() -> shaderManager.setModified(true));
@@ -172,6 +192,9 @@ public class MainActivity extends AppCompatActivity {
 		if (shaderListManager != null) {
 			shaderListManager.destroy();
 		}
+		if (shaderManager != null) {
+			shaderManager.destroy();
+		}
 		super.onDestroy();
 	}
 
@@ -246,6 +269,11 @@ public class MainActivity extends AppCompatActivity {
 				}
 				isInitialLoad = false;
 			}
+
+			@Override
+			public void onUsageCounted(@NonNull Usage usage) {
+				editorFragment.setLibraryUsage(usage);
+			}
 		};
 	}
 
@@ -378,7 +406,8 @@ public class MainActivity extends AppCompatActivity {
 				if (shaderManager.isModified()) {
 					shaderManager.saveShader();
 				}
-				duplicateShader(shaderManager.getSelectedShaderId());
+				long id = shaderManager.getSelectedShaderId();
+				shaderManager.runAfterSave(() -> duplicateShader(id));
 			}
 
 			@Override
@@ -463,9 +492,14 @@ public class MainActivity extends AppCompatActivity {
 		if (shaderManager.isModified()) {
 			shaderManager.saveShader();
 		}
+		// The wallpaper reads the shader from the database.
+		long id = shaderManager.getSelectedShaderId();
+		shaderManager.runAfterSave(() -> setWallpaperShader(id));
+	}
 
+	private void setWallpaperShader(long id) {
 		ShaderEditorApp.preferences.setWallpaperShader(0); // Force change
-		ShaderEditorApp.preferences.setWallpaperShader(shaderManager.getSelectedShaderId());
+		ShaderEditorApp.preferences.setWallpaperShader(id);
 
 		int messageId = R.string.wallpaper_set;
 		if (!WallpaperManager.getInstance(this).isWallpaperSupported()) {
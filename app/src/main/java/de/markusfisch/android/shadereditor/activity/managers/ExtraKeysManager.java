@@ -21,6 +21,8 @@ import de.markusfisch.android.shadereditor.app.ShaderEditorApp;
 public class ExtraKeysManager implements ViewTreeObserver.OnGlobalLayoutListener {
 	public interface Editor {
 		void insert(@NonNull CharSequence text);
+
+		void complete(@NonNull CharSequence completion, int typed);
 	}
 
 	@NonNull
@@ -40,7 +42,7 @@ public class ExtraKeysManager implements ViewTreeObserver.OnGlobalLayoutListener
 		RecyclerView completions = extraKeysView.findViewById(R.id.completions);
 		completions.setLayoutManager(new LinearLayoutManager(
 				activity, RecyclerView.HORIZONTAL, false));
-		completionsAdapter = new CompletionsAdapter(editor::insert);
+		completionsAdapter = new CompletionsAdapter(editor::complete);
 		completions.setAdapter(completionsAdapter);
 
 		var divider = new DividerItemDecoration(
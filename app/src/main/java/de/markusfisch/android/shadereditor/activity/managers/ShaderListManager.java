@@ -22,6 +22,9 @@ import de.markusfisch.android.shadereditor.adapter.ShaderAdapter;
 import de.markusfisch.android.shadereditor.app.ShaderEditorApp;
 import de.markusfisch.android.shadereditor.database.DataRecords.ShaderInfo;
 import de.markusfisch.android.shadereditor.database.DataSource;
+import de.markusfisch.android.shadereditor.highlighter.Lexer;
+import de.markusfisch.android.shadereditor.highlighter.TokenBuffer;
+import de.markusfisch.android.shadereditor.highlighter.Usage;
 import de.markusfisch.android.shadereditor.view.SoftKeyboard;
 
 public class ShaderListManager {
@@ -33,6 +36,8 @@ public class ShaderListManager {
 		void onAllShadersDeleted();
 
 		void onShadersLoaded(@NonNull List<ShaderInfo> shaders);
+
+		void onUsageCounted(@NonNull Usage usage);
 	}
 
 	private final Activity activity;
@@ -80,6 +85,31 @@ public class ShaderListManager {
 		submitLoad();
 	}
 
+	/**
+	 * Counts how often names are used in all shaders asynchronously.
+	 */
+	public void countUsageAsync() {
+		try {
+			executor.execute(() -> {
+				Lexer lexer = new Lexer();
+				TokenBuffer tokens = new TokenBuffer();
+				Usage.Counter counter = new Usage.Counter();
+				dataSource.shader.forEachFragmentShader((source) -> {
+					lexer.lex(source, tokens);
+					counter.add(tokens, source);
+				});
+				Usage usage = counter.usage();
+				handler.post(() -> {
+					if (isActivityAlive()) {
+						listener.onUsageCounted(usage);
+					}
+				});
+			});
+		} catch (RejectedExecutionException ignored) {
+			// Completions are just not ranked by the library then.
+		}
+	}
+
 	public void destroy() {
 		executor.shutdownNow();
 		handler.removeCallbacksAndMessages(null);
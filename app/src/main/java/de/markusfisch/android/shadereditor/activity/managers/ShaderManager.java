@@ -4,6 +4,8 @@ import android.app.Activity;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.widget.Toast;
 
 import androidx.activity.result.ActivityResultLauncher;
@@ -22,8 +24,10 @@ import de.markusfisch.android.shadereditor.activity.AddUniformActivity;
 import de.markusfisch.android.shadereditor.activity.LoadSampleActivity;
 import de.markusfisch.android.shadereditor.activity.PreviewActivity;
 import de.markusfisch.android.shadereditor.app.ShaderEditorApp;
+import de.markusfisch.android.shadereditor.database.DataRecords;
 import de.markusfisch.android.shadereditor.database.DataSource;
 import de.markusfisch.android.shadereditor.fragment.EditorFragment;
+import de.markusfisch.android.shadereditor.view.UndoJournal;
 
 public class ShaderManager {
 	public final ActivityResultLauncher<Intent> addUniformLauncher;
@@ -32,6 +36,8 @@ public class ShaderManager {
 
 	private static final String SELECTED_SHADER_ID = "selected_shader_id";
 	private static final long NO_SHADER = 0;
+	// Time without modifications after which a shader is saved automatically.
+	private static final long AUTO_SAVE_DELAY = 2000;
 
 	private final AppCompatActivity activity;
 	private final EditorFragment editorFragment;
@@ -39,10 +45,19 @@ public class ShaderManager {
 	private final ShaderListManager shaderListManager;
 	private final UIManager uiManager;
 	private final DataSource dataSource;
+	private final ShaderWriter shaderWriter;
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final Runnable autoSaveRunnable = () -> saveShader(false, false);
 
 	private long selectedShaderId = NO_SHADER;
 	private float quality = 1f;
 	private boolean isModified = false;
+	// True while a new shader is inserted and its id isn't known yet.
+	private boolean isInserting = false;
+	// Changes whenever another shader is shown.
+	private int selection;
+	// Changes whenever another shader is requested, to drop stale reads.
+	private int request;
 
 	public ShaderManager(@NonNull AppCompatActivity activity,
 			EditorFragment editorFragment,
@@ -57,6 +72,7 @@ public class ShaderManager {
 		this.shaderListManager = shaderListManager;
 		this.uiManager = uiManager;
 		this.dataSource = dataSource;
+		shaderWriter = new ShaderWriter(dataSource.shader);
 
 		addUniformLauncher = activity.registerForActivityResult(
 				new ActivityResultContracts.StartActivityForResult(), result -> {
@@ -128,6 +144,10 @@ public class ShaderManager {
 
 	public void setModified(boolean modified) {
 		this.isModified = modified;
+		handler.removeCallbacks(autoSaveRunnable);
+		if (modified && ShaderEditorApp.preferences.autoSave()) {
+			handler.postDelayed(autoSaveRunnable, AUTO_SAVE_DELAY);
+		}
 		// The EditorFragment's modified state is managed internally by its
 		// UndoRedo helper. It cannot and should not be set from the outside.
 		// When a shader is loaded via `selectShader`,
@@ -142,6 +162,14 @@ public class ShaderManager {
 	public void restoreState(@NonNull Bundle savedInstanceState) {
 		selectedShaderId = savedInstanceState.getLong(
 				SELECTED_SHADER_ID, NO_SHADER);
+		if (editorFragment.hasLostText()) {
+			// A large text isn't kept in the saved state.
+			selectShader(selectedShaderId);
+			return;
+		}
+		// The editor has restored the text but the undo history is gone
+		// if the process was ended in between.
+		editorFragment.setUndoJournal(selectedShaderId);
 	}
 
 	public void selectShader(long id) {
@@ -149,21 +177,128 @@ public class ShaderManager {
 			saveShader();
 		}
 
-		PreviewActivity.renderStatus.reset();
-		var shader = dataSource.shader.getShader(id);
+		int shaderRequest = ++request;
+		if (id <= NO_SHADER) {
+			showShader(null);
+			return;
+		}
+		// Read through the writer, so the shader has all saved changes.
+		// The current shader stays in the editor until then.
+		shaderWriter.read(id, (shader) -> {
+			if (shaderRequest == request) {
+				showShader(shader);
+			}
+		});
+	}
+
+	public void saveShader() {
+		saveShader(false);
+	}
+
+	public void saveShader(boolean force) {
+		saveShader(force, true);
+	}
 
+	/**
+	 * Run {@code runnable} on the UI thread once all saved shaders are
+	 * written to the database.
+	 */
+	public void runAfterSave(@NonNull Runnable runnable) {
+		shaderWriter.runAfterWrites(runnable);
+	}
+
+	public void destroy() {
+		handler.removeCallbacks(autoSaveRunnable);
+		shaderWriter.destroy();
+	}
+
+	private void saveShader(boolean force, boolean notify) {
+		if (!force && !isModified()) {
+			return;
+		}
+
+		String src = editorFragment.getText();
+		if (src.trim().isEmpty() && selectedShaderId <= 0 && !isInserting) {
+			return;
+		}
+
+		setModified(false);
+
+		// The thumbnail of a shader running in the background is written
+		// when the renderer delivers it.
+		byte[] thumbnail = ShaderEditorApp.preferences.doesRunInBackground()
+				? null
+				: PreviewActivity.renderStatus.getThumbnail();
+		var content = new ShaderWriter.Content(src, quality);
+		if (shaderWriter.isStored(content, thumbnail)) {
+			if (notify) {
+				showSaved();
+			}
+			return;
+		}
+
+		if (selectedShaderId > 0) {
+			shaderWriter.update(selectedShaderId, content, thumbnail,
+					shaderListManager::loadShadersAsync);
+			requestThumbnail(selectedShaderId);
+		} else if (isInserting) {
+			shaderWriter.updateInserted(content, thumbnail);
+		} else {
+			isInserting = true;
+			int insertSelection = selection;
+			shaderWriter.insert(content, thumbnail,
+					(id) -> onShaderInserted(insertSelection, id));
+		}
+
+		if (notify) {
+			showSaved();
+		}
+	}
+
+	private void onShaderInserted(int insertSelection, long id) {
+		shaderListManager.loadShadersAsync();
+		if (insertSelection != selection) {
+			return;
+		}
+		isInserting = false;
+		if (id < 1) {
+			// Try again with the next save.
+			shaderWriter.reset(null);
+			setModified(true);
+			return;
+		}
+		selectedShaderId = id;
+		editorFragment.setUndoJournal(selectedShaderId);
+		shaderListManager.setSelectedShaderId(selectedShaderId);
+		requestThumbnail(selectedShaderId);
+	}
+
+	/**
+	 * Show {@code shader} in the editor or a new one if it's null.
+	 */
+	private void showShader(@Nullable DataRecords.Shader shader) {
+		// Keep what was typed while the shader was read.
+		if (isModified()) {
+			saveShader();
+		}
+		++selection;
+		PreviewActivity.renderStatus.reset();
+		isInserting = false;
 		if (shader == null) {
 			selectedShaderId = NO_SHADER;
 			editorFragment.setText(activity.getString(
 					R.string.new_shader_template));
 			uiManager.setToolbarTitle(activity.getString(R.string.add_shader));
 			quality = 1f;
+			shaderWriter.reset(null);
 		} else {
-			selectedShaderId = id;
-			ShaderEditorApp.preferences.setLastOpenedShader(id);
+			selectedShaderId = shader.id();
+			ShaderEditorApp.preferences.setLastOpenedShader(selectedShaderId);
 			editorFragment.setText(shader.fragmentShader());
 			uiManager.setToolbarTitle(shader.getTitle());
 			quality = shader.quality();
+			shaderWriter.reset(new ShaderWriter.Content(shader.fragmentShader(),
+					quality));
 		}
 
 		ShaderEditorApp.preferences.setPendingCrashShaderId(
@@ -172,49 +307,35 @@ public class ShaderManager {
 						? selectedShaderId
 						: 0);
 
+		editorFragment.setUndoJournal(selectedShaderId);
 		shaderListManager.setSelectedShaderId(selectedShaderId);
 		shaderViewManager.setQuality(quality);
 		shaderViewManager.setFragmentShader(editorFragment.getText());
 		setModified(false);
 	}
 
-	public void saveShader() {
-		saveShader(false);
-	}
-
-	public void saveShader(boolean force) {
-		if (!force && !isModified()) {
-			return;
-		}
-
-		String src = editorFragment.getText();
-		if (src.trim().isEmpty() && selectedShaderId <= 0) {
+	private void requestThumbnail(long shaderId) {
+		if (!ShaderEditorApp.preferences.doesRunInBackground()) {
 			return;
 		}
+		shaderViewManager.requestThumbnail((thumbnail) -> {
+			if (thumbnail == null) {
+				return;
+			}
+			// The shader may have been switched before the frame was drawn.
+			handler.post(() -> {
+				if (shaderId == selectedShaderId) {
+					shaderWriter.writeThumbnail(shaderId, thumbnail);
+				}
+			});
+		});
+	}
 
-		byte[] thumbnail = getThumbnail();
-
-		if (selectedShaderId > 0) {
-			dataSource.shader.updateShader(
-					selectedShaderId, src, thumbnail, quality);
-		} else {
-			selectedShaderId = dataSource.shader.insertShader(
-					src, null, thumbnail, quality);
-			shaderListManager.setSelectedShaderId(selectedShaderId);
-		}
-
-		setModified(false);
-		shaderListManager.loadShadersAsync();
+	private void showSaved() {
 		Toast.makeText(activity, R.string.shader_saved,
 				Toast.LENGTH_SHORT).show();
 	}
 
-	private byte[] getThumbnail() {
-		return ShaderEditorApp.preferences.doesRunInBackground()
-				? shaderViewManager.getThumbnail()
-				: PreviewActivity.renderStatus.getThumbnail();
-	}
-
 	public void handleSendText(@Nullable Intent intent) {
 		if (intent == null || intent.getAction() == null) {
 			return;
@@ -267,6 +388,10 @@ public class ShaderManager {
 		dataSource.shader.removeShader(shaderId);
 		if (shaderId == selectedShaderId) {
 			selectedShaderId = NO_SHADER;
+			// Write what's pending before the journal is deleted, so it
+			// isn't created again afterwards.
+			editorFragment.setUndoJournal(NO_SHADER);
 		}
+		UndoJournal.delete(activity, shaderId);
 	}
 }
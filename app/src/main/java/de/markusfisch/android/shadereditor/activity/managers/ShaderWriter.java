@@ -0,0 +1,178 @@
+package de.markusfisch.android.shadereditor.activity.managers;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import de.markusfisch.android.shadereditor.database.DataRecords;
+import de.markusfisch.android.shadereditor.database.dao.ShaderDao;
+
+/**
+ * Writes shaders to the database in the background and skips what is
+ * stored already. Apart from {@link #writeThumbnail}, all methods must be
+ * called on the UI thread.
+ */
+final class ShaderWriter {
+	interface OnInsertedListener {
+		/**
+		 * @param id The id of the new shader or a value less than 1 if it
+		 *           couldn't be inserted.
+		 */
+		void onInserted(long id);
+	}
+
+	interface OnReadListener {
+		/**
+		 * @param shader The shader or null if there is none with that id.
+		 */
+		void onRead(@Nullable DataRecords.Shader shader);
+	}
+
+	/**
+	 * What was last handed to the writer for a shader.
+	 */
+	record Content(@NonNull String source, float quality) {
+	}
+
+	// Writes happen in order on this thread, even across activities.
+	private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	@NonNull
+	private final ShaderDao shaderDao;
+
+	// What the database has, or will have, for the current shader.
+	@Nullable
+	private Content stored;
+	@Nullable
+	private byte[] storedThumbnail;
+	private boolean destroyed;
+
+	// Only used on the executor.
+	private long insertedId;
+	private long writtenThumbnailId;
+	@Nullable
+	private byte[] writtenThumbnail;
+
+	ShaderWriter(@NonNull ShaderDao shaderDao) {
+		this.shaderDao = shaderDao;
+	}
+
+	/**
+	 * Start over for another shader.
+	 *
+	 * @param stored What the database has for it or null for a new one.
+	 */
+	void reset(@Nullable Content stored) {
+		this.stored = stored;
+		storedThumbnail = null;
+	}
+
+	/**
+	 * @return True if there's nothing new in {@code content} and
+	 * {@code thumbnail} to write.
+	 */
+	boolean isStored(@NonNull Content content, @Nullable byte[] thumbnail) {
+		return content.equals(stored) &&
+				(thumbnail == null || thumbnail == storedThumbnail);
+	}
+
+	void update(long id, @NonNull Content content, @Nullable byte[] thumbnail,
+			@NonNull Runnable onWritten) {
+		store(content, thumbnail);
+		executor.execute(() -> {
+			shaderDao.updateShader(id, content.source(), thumbnail,
+					content.quality());
+			post(onWritten);
+		});
+	}
+
+	void insert(@NonNull Content content, @Nullable byte[] thumbnail,
+			@NonNull OnInsertedListener listener) {
+		store(content, thumbnail);
+		executor.execute(() -> {
+			long id = shaderDao.insertShader(content.source(), null,
+					thumbnail, content.quality());
+			insertedId = id;
+			post(() -> listener.onInserted(id));
+		});
+	}
+
+	/**
+	 * Update the shader the last {@link #insert} created, before its id is
+	 * known on the UI thread.
+	 */
+	void updateInserted(@NonNull Content content, @Nullable byte[] thumbnail) {
+		store(content, thumbnail);
+		executor.execute(() -> {
+			if (insertedId > 0) {
+				shaderDao.updateShader(insertedId, content.source(),
+						thumbnail, content.quality());
+			}
+		});
+	}
+
+	/**
+	 * Write a thumbnail unless it's the one that was written last.
+	 * May be called from any thread.
+	 */
+	void writeThumbnail(long id, @NonNull byte[] thumbnail) {
+		executor.execute(() -> {
+			if (id == writtenThumbnailId &&
+					Arrays.equals(thumbnail, writtenThumbnail)) {
+				return;
+			}
+			shaderDao.updateShaderThumbnail(id, thumbnail);
+			writtenThumbnailId = id;
+			writtenThumbnail = thumbnail;
+		});
+	}
+
+	/**
+	 * Read a shader once everything queued so far is written, so the read
+	 * can't overtake a write of the same shader.
+	 */
+	void read(long id, @NonNull OnReadListener listener) {
+		executor.execute(() -> {
+			DataRecords.Shader shader = shaderDao.getShader(id);
+			post(() -> listener.onRead(shader));
+		});
+	}
+
+	/**
+	 * Run {@code runnable} on the UI thread once everything queued so far
+	 * is written.
+	 */
+	void runAfterWrites(@NonNull Runnable runnable) {
+		executor.execute(() -> post(runnable));
+	}
+
+	/**
+	 * Forget about callbacks. Queued writes are still carried out.
+	 */
+	void destroy() {
+		destroyed = true;
+		handler.removeCallbacksAndMessages(null);
+	}
+
+	private void post(@NonNull Runnable runnable) {
+		handler.post(() -> {
+			if (!destroyed) {
+				runnable.run();
+			}
+		});
+	}
+
+	private void store(@NonNull Content content, @Nullable byte[] thumbnail) {
+		stored = content;
+		if (thumbnail != null) {
+			storedThumbnail = thumbnail;
+		}
+	}
+}
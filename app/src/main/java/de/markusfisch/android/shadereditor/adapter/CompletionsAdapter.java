@@ -18,19 +18,23 @@ import de.markusfisch.android.shadereditor.R;
 
 public class CompletionsAdapter extends ListAdapter<String, CompletionsAdapter.ViewHolder> {
 	@FunctionalInterface
-	public interface OnInsertListener {
-		void onInsert(@NonNull CharSequence sequence);
+	public interface OnCompleteListener {
+		/**
+		 * @param typed Number of characters before the cursor that the completion
+		 *              replaces.
+		 */
+		void onComplete(@NonNull CharSequence completion, int typed);
 	}
 
 	private static final DiffUtil.ItemCallback<String> DIFF_CALLBACK = new StringDiffer();
 
-	private final OnInsertListener onInsertListener;
+	private final OnCompleteListener onCompleteListener;
 
 	private int position = 0;
 
-	public CompletionsAdapter(OnInsertListener onInsertListener) {
+	public CompletionsAdapter(OnCompleteListener onCompleteListener) {
 		super(DIFF_CALLBACK);
-		this.onInsertListener = onInsertListener;
+		this.onCompleteListener = onCompleteListener;
 	}
 
 	@NonNull
@@ -58,8 +62,7 @@ public class CompletionsAdapter extends ListAdapter<String, CompletionsAdapter.V
 			super(itemView);
 			btn = itemView.findViewById(R.id.btn);
 			btn.setOnClickListener((v) -> {
-				CharSequence text = btn.getText();
-				onInsertListener.onInsert(text.subSequence(position, text.length()));
+				onCompleteListener.onComplete(btn.getText(), position);
 			});
 			itemView.setOnTouchListener(new View.OnTouchListener() {
 				@SuppressLint("ClickableViewAccessibility")
@@ -26,6 +26,11 @@ import de.markusfisch.android.shadereditor.database.DatabaseTable;
 import de.markusfisch.android.shadereditor.resource.Resources;
 
 public class ShaderDao {
+	@FunctionalInterface
+	public interface SourceVisitor {
+		void visit(@NonNull String source);
+	}
+
 	@NonNull
 	private final SQLiteOpenHelper dbHelper;
 	@NonNull
@@ -82,6 +87,25 @@ public class ShaderDao {
 		return shaders;
 	}
 
+	/**
+	 * Hand the source of every shader to {@code visitor}, one at a time, so not all
+	 * sources need to be in memory at once.
+	 */
+	public void forEachFragmentShader(@NonNull SourceVisitor visitor) {
+		String query = "SELECT " + DatabaseContract.ShaderColumns.FRAGMENT_SHADER +
+				" FROM " + DatabaseContract.ShaderColumns.TABLE_NAME;
+		SQLiteDatabase db = dbHelper.getReadableDatabase();
+		try (var cursor = db.rawQuery(query, null)) {
+			while (cursor.moveToNext()) {
+				String source = CursorHelpers.getString(cursor,
+						DatabaseContract.ShaderColumns.FRAGMENT_SHADER);
+				if (source != null) {
+					visitor.visit(source);
+				}
+			}
+		}
+	}
+
 	@Nullable
 	public DataRecords.Shader getRandomShader() {
 		String query =
@@ -178,6 +202,18 @@ public class ShaderDao {
 				new String[]{String.valueOf(id)});
 	}
 
+	/**
+	 * Replace the thumbnail without touching the modification time.
+	 */
+	public void updateShaderThumbnail(long id, @NonNull byte[] thumbnail) {
+		SQLiteDatabase db = dbHelper.getWritableDatabase();
+		var cv = new ContentValues();
+		cv.put(DatabaseContract.ShaderColumns.THUMB, thumbnail);
+		db.update(DatabaseContract.ShaderColumns.TABLE_NAME, cv,
+				DatabaseContract.ShaderColumns._ID + " = ?",
+				new String[]{String.valueOf(id)});
+	}
+
 	public void updateShaderName(long id, @NonNull String name) {
 		SQLiteDatabase db = dbHelper.getWritableDatabase();
 		var cv = new ContentValues();
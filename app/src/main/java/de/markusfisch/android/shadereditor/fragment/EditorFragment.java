@@ -16,19 +16,32 @@ import java.util.List;
 
 import de.markusfisch.android.shadereditor.R;
 import de.markusfisch.android.shadereditor.app.ShaderEditorApp;
+import de.markusfisch.android.shadereditor.highlighter.Usage;
 import de.markusfisch.android.shadereditor.opengl.ShaderError;
 import de.markusfisch.android.shadereditor.preference.Preferences;
 import de.markusfisch.android.shadereditor.view.SoftKeyboard;
 import de.markusfisch.android.shadereditor.view.UndoRedo;
 import de.markusfisch.android.shadereditor.widget.ErrorListModal;
+import de.markusfisch.android.shadereditor.widget.LargeShaderEditor;
 import de.markusfisch.android.shadereditor.widget.ShaderEditor;
+import de.markusfisch.android.shadereditor.widget.SourceEditor;
 
 public class EditorFragment extends Fragment {
 	public static final String TAG = "EditorFragment";
 
+	private static final String LARGE_MODE = "large_mode";
+
 	private View editorContainer;
+	private View editorScroll;
 	private ShaderEditor shaderEditor;
+	private LargeShaderEditor largeEditor;
+	private UndoRedo shaderEditorUndoRedo;
+	private UndoRedo largeEditorUndoRedo;
+	// The editor that shows the text and its UndoRedo.
+	private SourceEditor editor;
 	private UndoRedo undoRedo;
+	@NonNull
+	private Usage libraryUsage = Usage.NONE;
 
 	@Nullable
 	private ShaderEditor.OnEditPausedListener editPausedListener;
@@ -42,28 +55,29 @@ public class EditorFragment extends Fragment {
 		View view = inflater.inflate(R.layout.fragment_editor, container, false);
 
 		editorContainer = view.findViewById(R.id.editor_container);
+		editorScroll = view.findViewById(R.id.editor_scroll);
 		shaderEditor = view.findViewById(R.id.editor);
-		shaderEditor.setOnEditPausedListener((text) -> {
-			if (editPausedListener != null) {
-				editPausedListener.onEditPaused(text);
-			}
-		});
-		shaderEditor.setOnTextModifiedListener(() -> {
-			if (textModifiedListener != null) {
-				textModifiedListener.onTextModified();
-			}
-		});
-		shaderEditor.setOnCompletionsListener((completions, position) -> {
-			if (codeCompletionListener != null) {
-				codeCompletionListener.onCodeCompletions(completions, position);
-			}
-		});
+		largeEditor = view.findViewById(R.id.large_editor);
+		initEditor(shaderEditor);
+		initEditor(largeEditor);
 		setShowLineNumbers(ShaderEditorApp.preferences.showLineNumbers());
-		undoRedo = new UndoRedo(shaderEditor, ShaderEditorApp.editHistory);
+		shaderEditorUndoRedo = new UndoRedo(shaderEditor, ShaderEditorApp.editHistory);
+		largeEditorUndoRedo = new UndoRedo(largeEditor.getEditableText(),
+				ShaderEditorApp.editHistory);
+		editor = null;
+		setLargeMode(state != null && state.getBoolean(LARGE_MODE));
 
 		return view;
 	}
 
+	@Override
+	public void onSaveInstanceState(@NonNull Bundle outState) {
+		super.onSaveInstanceState(outState);
+		if (editor != null) {
+			outState.putBoolean(LARGE_MODE, editor == largeEditor);
+		}
+	}
+
 	public void setOnTextModifiedListener(@Nullable ShaderEditor.OnTextModifiedListener listener) {
 		textModifiedListener = listener;
 	}
@@ -79,7 +93,8 @@ public class EditorFragment extends Fragment {
 	@Override
 	public void onDestroyView() {
 		super.onDestroyView();
-		undoRedo.detachListener();
+		shaderEditorUndoRedo.detachListener();
+		largeEditorUndoRedo.detachListener();
 	}
 
 	@Override
@@ -91,6 +106,13 @@ public class EditorFragment extends Fragment {
 		undoRedo.listenForChanges();
 	}
 
+	@Override
+	public void onPause() {
+		super.onPause();
+		// The process may be ended at any time from now on.
+		undoRedo.flushJournal();
+	}
+
 	public void undo() {
 		undoRedo.undo();
 	}
@@ -108,55 +130,91 @@ public class EditorFragment extends Fragment {
 	}
 
 	public boolean hasErrors() {
-		return shaderEditor.hasErrors();
+		return editor.hasErrors();
 	}
 
 	public void clearError() {
-		shaderEditor.setErrors(Collections.emptyList());
+		editor.setErrors(Collections.emptyList());
 	}
 
 	public void updateHighlighting() {
-		shaderEditor.updateHighlighting();
+		editor.updateHighlighting();
 	}
 
 	public void highlightErrors() {
-		shaderEditor.updateErrorHighlighting();
+		editor.updateErrorHighlighting();
 	}
 
 	public void setErrors(@NonNull List<ShaderError> errors) {
-		shaderEditor.setErrors(errors);
+		editor.setErrors(errors);
 		highlightErrors();
 	}
 
+	public void validate(@NonNull ShaderEditor.OnValidatedListener listener) {
+		editor.validate(listener);
+	}
+
 	public void showErrors() {
-		List<ShaderError> errors = shaderEditor.getErrors();
+		List<ShaderError> errors = editor.getErrors();
 		new ErrorListModal(errors, this::navigateToLine).show(getParentFragmentManager(),
 				ErrorListModal.TAG);
 	}
 
 	public void navigateToLine(int lineNumber) {
-		shaderEditor.navigateToLine(lineNumber);
+		editor.navigateToLine(lineNumber);
 	}
 
 
 	public String getText() {
-		return shaderEditor.getCleanText();
+		return editor.getCleanText();
 	}
 
 	public void setText(String text) {
 		clearError();
 		undoRedo.clearHistory();
 		undoRedo.stopListeningForChanges();
-		shaderEditor.setTextHighlighted(text);
+		setLargeMode(text != null &&
+				text.length() > ShaderEditorApp.preferences.getLargeFileThreshold());
+		editor.setTextHighlighted(text);
 		undoRedo.listenForChanges();
 	}
 
+	/**
+	 * @return True if the editor couldn't restore its text, which then has to be
+	 * read again.
+	 */
+	public boolean hasLostText() {
+		return editor == largeEditor && largeEditor.hasLostText();
+	}
+
+	/**
+	 * Keep the undo history of the shader with the given id, or of none
+	 * if it's not saved yet, in its journal.
+	 */
+	public void setUndoJournal(long shaderId) {
+		if (undoRedo != null) {
+			undoRedo.setJournal(requireContext(), shaderId);
+		}
+	}
+
 	public void insert(@NonNull CharSequence text) {
-		shaderEditor.insert(text);
+		editor.insert(text);
+	}
+
+	public void complete(@NonNull CharSequence completion, int typed) {
+		editor.complete(completion, typed);
+	}
+
+	public void setLibraryUsage(@NonNull Usage usage) {
+		libraryUsage = usage;
+		if (editor != null) {
+			shaderEditor.setLibraryUsage(usage);
+			largeEditor.setLibraryUsage(usage);
+		}
 	}
 
 	public void addUniform(String name) {
-		shaderEditor.addUniform(name);
+		editor.addUniform(name);
 	}
 
 	public boolean isCodeVisible() {
@@ -167,28 +225,74 @@ public class EditorFragment extends Fragment {
 		boolean visible = isCodeVisible();
 		editorContainer.setVisibility(visible ? View.GONE : View.VISIBLE);
 		if (visible) {
-			SoftKeyboard.hide(getActivity(), shaderEditor);
+			SoftKeyboard.hide(getActivity(), editorContainer);
 		}
 		return visible;
 	}
 
+	private void initEditor(@NonNull SourceEditor sourceEditor) {
+		// Only the editor that shows the text reports changes, the other
+		// one is cleared when it's hidden.
+		sourceEditor.setOnEditPausedListener((text) -> {
+			if (editor == sourceEditor && editPausedListener != null) {
+				editPausedListener.onEditPaused(text);
+			}
+		});
+		sourceEditor.setOnTextModifiedListener(() -> {
+			if (editor == sourceEditor && textModifiedListener != null) {
+				textModifiedListener.onTextModified();
+			}
+		});
+		sourceEditor.setOnCompletionsListener((completions, position) -> {
+			if (editor == sourceEditor && codeCompletionListener != null) {
+				codeCompletionListener.onCodeCompletions(completions, position);
+			}
+		});
+		sourceEditor.setLibraryUsage(libraryUsage);
+	}
+
+	/**
+	 * Show the text in the LargeShaderEditor, which only ever lays out the
+	 * visible lines, or in the ShaderEditor.
+	 */
+	private void setLargeMode(boolean large) {
+		SourceEditor previous = editor;
+		editor = large ? largeEditor : shaderEditor;
+		undoRedo = large ? largeEditorUndoRedo : shaderEditorUndoRedo;
+		if (editor == previous) {
+			return;
+		}
+		editorScroll.setVisibility(large ? View.GONE : View.VISIBLE);
+		largeEditor.setVisibility(large ? View.VISIBLE : View.GONE);
+		if (previous != null) {
+			// Don't keep a copy of the text in the hidden editor.
+			previous.setTextHighlighted("");
+		}
+	}
+
 	private void updateToPreferences() {
+		updateToPreferences(shaderEditor);
+		updateToPreferences(largeEditor);
+	}
+
+	private static void updateToPreferences(@NonNull SourceEditor sourceEditor) {
 		Preferences preferences = ShaderEditorApp.preferences;
-		shaderEditor.setUpdateDelay(preferences.getUpdateDelay());
-		shaderEditor.setTextSize(TypedValue.COMPLEX_UNIT_SP, preferences.getTextSize());
+		sourceEditor.setUpdateDelay(preferences.getUpdateDelay());
+		sourceEditor.setTextSize(TypedValue.COMPLEX_UNIT_SP, preferences.getTextSize());
 		Typeface font = preferences.getFont();
-		shaderEditor.setTypeface(font);
-		String features = shaderEditor.getFontFeatureSettings();
+		sourceEditor.setTypeface(font);
+		String features = sourceEditor.getFontFeatureSettings();
 		boolean isMono = font == Typeface.MONOSPACE;
 		// Don't touch font features for the default MONOSPACE font as
 		// this can impact performance.
 		if (!isMono || features != null) {
-			shaderEditor.setFontFeatureSettings(isMono ? null : preferences.useLigatures() ?
+			sourceEditor.setFontFeatureSettings(isMono ? null : preferences.useLigatures() ?
 					"normal" : "calt off");
 		}
 	}
 
 	public void setShowLineNumbers(boolean showLineNumbers) {
 		shaderEditor.setShowLineNumbers(showLineNumbers);
+		largeEditor.setShowLineNumbers(showLineNumbers);
 	}
 }
\ No newline at end of file
@@ -92,6 +92,8 @@ public enum Highlight {
 			case OUT:
 			case INOUT:
 			case UNIFORM:
+			case VARYING:
+			case ATTRIBUTE:
 			case PATCH:
 			case SAMPLE:
 			case BUFFER:
@@ -28,6 +28,13 @@ public class ShaderError {
 		return new ShaderError(0, -1, message);
 	}
 
+	/**
+	 * @param line The line of the error, starting at 1.
+	 */
+	public static ShaderError create(int line, @NonNull String message) {
+		return new ShaderError(0, line, message);
+	}
+
 	public boolean hasLine() {
 		return errorLine > 0;
 	}
@@ -14,6 +14,7 @@ import android.view.WindowManager;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -27,6 +28,16 @@ public class ShaderRenderer implements GLSurfaceView.Renderer {
 		void onFramesPerSecond(int fps);
 	}
 
+	public interface OnThumbnailListener {
+		/**
+		 * Called on the render thread.
+		 *
+		 * @param thumbnail The PNG of the next frame or null if no frame
+		 *                  could be rendered.
+		 */
+		void onThumbnail(@Nullable byte[] thumbnail);
+	}
+
 	public static final String UNIFORM_BACKBUFFER = "backbuffer";
 	public static final String UNIFORM_BATTERY = "battery";
 	public static final String UNIFORM_CAMERA_ADDENT = "cameraAddent";
@@ -81,6 +92,8 @@ public class ShaderRenderer implements GLSurfaceView.Renderer {
 	private final BuiltinUniforms builtinUniforms;
 	private final Context context;
 	private final Object thumbnailLock = new Object();
+	// Guarded by thumbnailLock.
+	private final List<OnThumbnailListener> thumbnailListeners = new ArrayList<>();
 
 	@Nullable
 	private OnRendererListener onRendererListener;
@@ -228,6 +241,16 @@ public class ShaderRenderer implements GLSurfaceView.Renderer {
 		builtinUniforms.updateOffset(x, y);
 	}
 
+	/**
+	 * Capture the next frame without waiting for it.
+	 */
+	public void requestThumbnail(@NonNull OnThumbnailListener listener) {
+		synchronized (thumbnailLock) {
+			thumbnailListeners.add(listener);
+			captureThumbnail = true;
+		}
+	}
+
 	public byte[] getThumbnail() {
 		synchronized (thumbnailLock) {
 			captureThumbnail = true;
@@ -262,27 +285,48 @@ public class ShaderRenderer implements GLSurfaceView.Renderer {
 	}
 
 	private void captureThumbnail() {
+		byte[] captured;
 		synchronized (thumbnailLock) {
 			var surfaceBindings = programManager.getSurfaceBindings();
 			var surfaceProgram = programManager.getSurfaceProgram();
-			if (captureThumbnail &&
-					surfaceBindings != null &&
-					surfaceProgram != null) {
-				thumbnail = renderPipeline.captureThumbnail(
-						surfaceBindings,
-						surfaceProgram);
-				captureThumbnail = false;
-				thumbnailLock.notifyAll();
+			if (!captureThumbnail ||
+					surfaceBindings == null ||
+					surfaceProgram == null) {
+				return;
 			}
+			thumbnail = renderPipeline.captureThumbnail(
+					surfaceBindings,
+					surfaceProgram);
+			captured = thumbnail;
+			captureThumbnail = false;
+			thumbnailLock.notifyAll();
 		}
+		notifyThumbnailListeners(captured);
 	}
 
 	private void cancelCaptureThumbnail() {
 		synchronized (thumbnailLock) {
-			if (captureThumbnail) {
-				captureThumbnail = false;
-				thumbnailLock.notifyAll();
+			if (!captureThumbnail) {
+				return;
 			}
+			captureThumbnail = false;
+			thumbnailLock.notifyAll();
+		}
+		notifyThumbnailListeners(null);
+	}
+
+	private void notifyThumbnailListeners(@Nullable byte[] captured) {
+		List<OnThumbnailListener> listeners;
+		synchronized (thumbnailLock) {
+			if (thumbnailListeners.isEmpty()) {
+				return;
+			}
+			listeners = new ArrayList<>(thumbnailListeners);
+			thumbnailListeners.clear();
+		}
+		// Outside the lock so a listener may request another one.
+		for (OnThumbnailListener listener : listeners) {
+			listener.onThumbnail(captured);
 		}
 	}
 
@@ -32,7 +32,8 @@ public class Preferences {
 	public static final String EXPORT_TABS = "export_tabs";
 	public static final String SAVE_ON_RUN = "save_on_run";
 	public static final String DEFAULT_NEW_SHADER = "default_new_shader";
-	public static final String DISABLE_HIGHLIGHTING = "disable_highlighting";
+	public static final String LARGE_FILE_THRESHOLD = "large_file_threshold";
+	public static final String FAST_HIGHLIGHTING = "fast_highlighting";
 	public static final String AUTO_SAVE = "auto_save";
 	public static final String IMPORT_FROM_DIRECTORY = "import_from_directory";
 	public static final String EXPORT_TO_DIRECTORY = "export_to_directory";
@@ -79,7 +80,8 @@ public class Preferences {
 	private int systemBarColor;
 	private long defaultNewShaderId = 0;
 	private long lastOpenedShaderId = 0;
-	private boolean disableHighlighting = false;
+	private int largeFileThreshold = 65536;
+	private boolean fastHighlighting = false;
 	private boolean autoSave = true;
 	private boolean showLineNumbers = true;
 	private boolean showExtraKeys = true;
@@ -151,9 +153,12 @@ public class Preferences {
 		saveOnRun = preferences.getBoolean(
 				SAVE_ON_RUN,
 				saveOnRun);
-		disableHighlighting = preferences.getBoolean(
-				DISABLE_HIGHLIGHTING,
-				disableHighlighting);
+		largeFileThreshold = parseInt(
+				preferences.getString(LARGE_FILE_THRESHOLD, null),
+				largeFileThreshold);
+		fastHighlighting = preferences.getBoolean(
+				FAST_HIGHLIGHTING,
+				fastHighlighting);
 		autoSave = preferences.getBoolean(
 				AUTO_SAVE,
 				autoSave);
@@ -342,8 +347,16 @@ public class Preferences {
 		powerConnected = isConnected;
 	}
 
-	public boolean disableHighlighting() {
-		return disableHighlighting;
+	/**
+	 * @return The number of characters above which a shader is edited
+	 * in the LargeShaderEditor.
+	 */
+	public int getLargeFileThreshold() {
+		return largeFileThreshold;
+	}
+
+	public boolean fastHighlighting() {
+		return fastHighlighting;
 	}
 
 	public boolean autoSave() {
@@ -0,0 +1,480 @@
+package de.markusfisch.android.shadereditor.view;
+
+import android.text.Editable;
+import android.text.InputFilter;
+import android.text.Selection;
+import android.text.SpanWatcher;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.TextWatcher;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.markusfisch.android.shadereditor.highlighter.ChunkedText;
+
+/**
+ * An Editable whose characters are kept in a {@link ChunkedText}.
+ * <p>
+ * A replacement takes O(log n) plus the length of the inserted text instead of moving
+ * the gap of a SpannableStringBuilder, and {@link #snapshot()} returns the current text
+ * without copying it.
+ * <p>
+ * Spans are moved like SpannableStringBuilder moves them, but they are kept in a plain
+ * list, since a custom view only attaches a handful: the selection, the composing region
+ * of the input method and some watchers. This is no Editable for a TextView, which puts
+ * a span on every word.
+ */
+public final class ChunkedEditable implements Editable {
+	private static final InputFilter[] NO_FILTERS = new InputFilter[0];
+	private static final int START_SHIFT = 4;
+	private static final int POINT = 2;
+
+	private static final class Span {
+		@NonNull
+		private final Object what;
+		private int start;
+		private int end;
+		private int flags;
+		// Where the span was before the current replacement.
+		private int oldStart;
+		private int oldEnd;
+
+		private Span(@NonNull Object what, int start, int end, int flags) {
+			this.what = what;
+			this.start = oldStart = start;
+			this.end = oldEnd = end;
+			this.flags = flags;
+		}
+	}
+
+	// In the order they were added.
+	private final List<Span> spans = new ArrayList<>();
+	@NonNull
+	private ChunkedText text = ChunkedText.EMPTY;
+	@NonNull
+	private InputFilter[] filters = NO_FILTERS;
+
+	/**
+	 * @return The current text. It's immutable, so it can be handed to
+	 * another thread.
+	 */
+	@NonNull
+	public ChunkedText snapshot() {
+		return text;
+	}
+
+	@Override
+	public int length() {
+		return text.length();
+	}
+
+	@Override
+	public char charAt(int index) {
+		return text.charAt(index);
+	}
+
+	@Override
+	public void getChars(int start, int end, char[] dest, int destoff) {
+		text.getChars(start, end, dest, destoff);
+	}
+
+	@NonNull
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		// With the spans, like SpannableStringBuilder does it.
+		return new SpannableStringBuilder(this, start, end);
+	}
+
+	@NonNull
+	@Override
+	public String toString() {
+		return text.toString();
+	}
+
+	@Override
+	public Editable replace(int st, int en, CharSequence source, int start, int end) {
+		checkRange("replace", st, en);
+		for (InputFilter filter : filters) {
+			CharSequence filtered = filter.filter(source, start, end, this, st, en);
+			if (filtered != null) {
+				source = filtered;
+				start = 0;
+				end = filtered.length();
+			}
+		}
+		int before = en - st;
+		int count = end - start;
+		if (before == 0 && count == 0 && !hasSpansToCopy(source, start)) {
+			return this;
+		}
+
+		TextWatcher[] watchers = getSpans(st, st + before, TextWatcher.class);
+		for (TextWatcher watcher : watchers) {
+			watcher.beforeTextChanged(this, st, before, count);
+		}
+
+		// Keep the selection at the same relative position when text is
+		// replaced by other text.
+		boolean adjustSelection = before > 0 && count > 0;
+		int selectionStart = adjustSelection ? Selection.getSelectionStart(this) : -1;
+		int selectionEnd = adjustSelection ? Selection.getSelectionEnd(this) : -1;
+
+		List<Span> removed = change(st, en, source, start, end);
+		if (adjustSelection) {
+			adjustSelection(Selection.SELECTION_START, selectionStart, st, en, count);
+			adjustSelection(Selection.SELECTION_END, selectionEnd, st, en, count);
+		}
+		List<Span> added = copySpans(source, start, end, st);
+
+		for (TextWatcher watcher : watchers) {
+			watcher.onTextChanged(this, st, before, count);
+		}
+		for (TextWatcher watcher : watchers) {
+			watcher.afterTextChanged(this);
+		}
+
+		// Span watchers come after text watchers, like in SpannableStringBuilder.
+		for (Span span : removed) {
+			sendSpanRemoved(span.what, span.oldStart, span.oldEnd);
+		}
+		for (Span span : new ArrayList<>(spans)) {
+			if (added.contains(span)) {
+				continue;
+			}
+			// Spans in the replaced range have changed even if their
+			// positions are the same.
+			if (span.start != span.oldStart || span.end != span.oldEnd ||
+					(span.oldEnd >= st && span.oldStart <= en && before + count > 0)) {
+				sendSpanChanged(span.what, span.oldStart, span.oldEnd,
+						span.start, span.end);
+			}
+		}
+		for (Span span : added) {
+			sendSpanAdded(span.what, span.start, span.end);
+		}
+		return this;
+	}
+
+	@Override
+	public Editable replace(int st, int en, CharSequence text) {
+		return replace(st, en, text, 0, text.length());
+	}
+
+	@Override
+	public Editable insert(int where, CharSequence text, int start, int end) {
+		return replace(where, where, text, start, end);
+	}
+
+	@Override
+	public Editable insert(int where, CharSequence text) {
+		return replace(where, where, text, 0, text.length());
+	}
+
+	@Override
+	public Editable delete(int st, int en) {
+		return replace(st, en, "", 0, 0);
+	}
+
+	@Override
+	public Editable append(CharSequence text) {
+		int length = length();
+		return replace(length, length, text, 0, text.length());
+	}
+
+	@Override
+	public Editable append(CharSequence text, int start, int end) {
+		int length = length();
+		return replace(length, length, text, start, end);
+	}
+
+	@Override
+	public Editable append(char text) {
+		return append(String.valueOf(text));
+	}
+
+	@Override
+	public void clear() {
+		replace(0, length(), "", 0, 0);
+	}
+
+	@Override
+	public void clearSpans() {
+		for (int i = spans.size() - 1; i >= 0; --i) {
+			Span span = spans.remove(i);
+			sendSpanRemoved(span.what, span.start, span.end);
+		}
+	}
+
+	@Override
+	public void setFilters(InputFilter[] filters) {
+		if (filters == null) {
+			throw new IllegalArgumentException();
+		}
+		this.filters = filters;
+	}
+
+	@Override
+	public InputFilter[] getFilters() {
+		return filters;
+	}
+
+	@Override
+	public void setSpan(Object what, int start, int end, int flags) {
+		checkRange("setSpan", start, end);
+		Span span = findSpan(what);
+		if (span == null) {
+			spans.add(new Span(what, start, end, flags));
+			sendSpanAdded(what, start, end);
+			return;
+		}
+		int oldStart = span.start;
+		int oldEnd = span.end;
+		span.start = span.oldStart = start;
+		span.end = span.oldEnd = end;
+		span.flags = flags;
+		sendSpanChanged(what, oldStart, oldEnd, start, end);
+	}
+
+	@Override
+	public void removeSpan(Object what) {
+		Span span = findSpan(what);
+		if (span != null) {
+			spans.remove(span);
+			sendSpanRemoved(what, span.start, span.end);
+		}
+	}
+
+	@Override
+	public int getSpanStart(Object what) {
+		Span span = findSpan(what);
+		return span != null ? span.start : -1;
+	}
+
+	@Override
+	public int getSpanEnd(Object what) {
+		Span span = findSpan(what);
+		return span != null ? span.end : -1;
+	}
+
+	@Override
+	public int getSpanFlags(Object what) {
+		Span span = findSpan(what);
+		return span != null ? span.flags : 0;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T[] getSpans(int queryStart, int queryEnd, Class<T> kind) {
+		if (kind == null) {
+			return (T[]) new Object[0];
+		}
+		List<Span> found = new ArrayList<>();
+		for (Span span : spans) {
+			if (kind.isInstance(span.what) &&
+					intersects(span, queryStart, queryEnd)) {
+				found.add(span);
+			}
+		}
+		// Higher priority first, the order of insertion otherwise.
+		found.sort((a, b) -> Integer.compare(priority(b), priority(a)));
+		T[] result = (T[]) Array.newInstance(kind, found.size());
+		for (int i = 0, size = found.size(); i < size; ++i) {
+			result[i] = (T) found.get(i).what;
+		}
+		return result;
+	}
+
+	@Override
+	public int nextSpanTransition(int start, int limit, Class kind) {
+		if (kind == null) {
+			kind = Object.class;
+		}
+		for (Span span : spans) {
+			if (!kind.isInstance(span.what)) {
+				continue;
+			}
+			if (span.start > start && span.start < limit) {
+				limit = span.start;
+			}
+			if (span.end > start && span.end < limit) {
+				limit = span.end;
+			}
+		}
+		return limit;
+	}
+
+	/**
+	 * Replace the text and move the spans.
+	 *
+	 * @return The spans that were removed because they would become empty.
+	 */
+	@NonNull
+	private List<Span> change(int st, int en, @NonNull CharSequence source, int start,
+			int end) {
+		int count = end - start;
+		int delta = count - (en - st);
+		boolean isRemoval = count == 0;
+		text = text.replace(st, en, source, start, end);
+		List<Span> removed = new ArrayList<>();
+		for (int i = 0; i < spans.size(); ) {
+			Span span = spans.get(i);
+			span.oldStart = span.start;
+			span.oldEnd = span.end;
+			// An exclusive span inside of the replaced text would become
+			// empty.
+			if (en > st &&
+					(span.flags & Spanned.SPAN_POINT_MARK_MASK) ==
+							Spanned.SPAN_EXCLUSIVE_EXCLUSIVE &&
+					span.start >= st && span.start < en &&
+					span.end >= st && span.end <= en &&
+					(isRemoval || span.start > st || span.end < en)) {
+				spans.remove(i);
+				removed.add(span);
+				continue;
+			}
+			span.start = move(span.start, st, en, count, delta,
+					(span.flags & Spanned.SPAN_POINT_MARK_MASK) >> START_SHIFT);
+			span.end = move(span.end, st, en, count, delta,
+					span.flags & (Spanned.SPAN_POINT_MARK_MASK >> START_SHIFT));
+			if (span.start > span.end) {
+				span.start = span.end;
+			}
+			++i;
+		}
+		return removed;
+	}
+
+	/**
+	 * @return Where {@code offset} is after {@code [st, en)} was replaced with
+	 * {@code count} characters. A point sticks to the text after it and a mark
+	 * to the text before it, like in SpannableStringBuilder.
+	 */
+	private static int move(int offset, int st, int en, int count, int delta, int flag) {
+		if (offset < st) {
+			return offset;
+		} else if (offset > en) {
+			return offset + delta;
+		} else if (flag == POINT) {
+			// A point at the start of replaced text stays there, every
+			// other point in the range moves to the end of the new text.
+			return offset == st && count > 0 && en > st ? st : st + count;
+		} else if (offset == en && en > st && count > 0) {
+			// A mark at the end of replaced text stays at its end.
+			return st + count;
+		}
+		return st;
+	}
+
+	private void adjustSelection(@NonNull Object what, int offset, int st, int en,
+			int count) {
+		if (offset > st && offset < en) {
+			long moved = (long) (offset - st) * count / (en - st);
+			Span span = findSpan(what);
+			if (span != null) {
+				span.start = span.end = st + (int) moved;
+			}
+		}
+	}
+
+	/**
+	 * Copy the spans of an inserted Spanned, like the composing region of the input
+	 * method. Spans that are already attached keep their position.
+	 *
+	 * @return The spans that were added.
+	 */
+	@NonNull
+	private List<Span> copySpans(@NonNull CharSequence source, int start, int end,
+			int where) {
+		List<Span> added = new ArrayList<>();
+		if (!(source instanceof Spanned spanned)) {
+			return added;
+		}
+		for (Object what : spanned.getSpans(start, end, Object.class)) {
+			if (findSpan(what) != null) {
+				continue;
+			}
+			int spanStart = Math.max(start, spanned.getSpanStart(what));
+			int spanEnd = Math.min(end, spanned.getSpanEnd(what));
+			Span span = new Span(what, spanStart - start + where,
+					spanEnd - start + where, spanned.getSpanFlags(what));
+			spans.add(span);
+			added.add(span);
+		}
+		return added;
+	}
+
+	private static boolean hasSpansToCopy(@NonNull CharSequence source, int start) {
+		if (!(source instanceof Spanned spanned)) {
+			return false;
+		}
+		for (Object what : spanned.getSpans(start, start, Object.class)) {
+			if ((spanned.getSpanFlags(what) & Spanned.SPAN_POINT_MARK_MASK) !=
+					Spanned.SPAN_EXCLUSIVE_EXCLUSIVE) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Nullable
+	private Span findSpan(@NonNull Object what) {
+		for (int i = 0, size = spans.size(); i < size; ++i) {
+			Span span = spans.get(i);
+			if (span.what == what) {
+				return span;
+			}
+		}
+		return null;
+	}
+
+	private void sendSpanAdded(@NonNull Object what, int start, int end) {
+		for (SpanWatcher watcher : getSpans(start, end, SpanWatcher.class)) {
+			watcher.onSpanAdded(this, what, start, end);
+		}
+	}
+
+	private void sendSpanRemoved(@NonNull Object what, int start, int end) {
+		int length = length();
+		for (SpanWatcher watcher : getSpans(Math.min(start, length),
+				Math.min(end, length), SpanWatcher.class)) {
+			watcher.onSpanRemoved(this, what, start, end);
+		}
+	}
+
+	private void sendSpanChanged(@NonNull Object what, int oldStart, int oldEnd,
+			int start, int end) {
+		for (SpanWatcher watcher : getSpans(Math.min(oldStart, start),
+				Math.min(Math.max(oldEnd, end), length()), SpanWatcher.class)) {
+			watcher.onSpanChanged(this, what, oldStart, oldEnd, start, end);
+		}
+	}
+
+	private void checkRange(@NonNull String operation, int start, int end) {
+		int length = length();
+		if (start < 0 || start > end || end > length) {
+			throw new IndexOutOfBoundsException(operation + " " + start + " ... " + end +
+					" of " + length);
+		}
+	}
+
+	/**
+	 * @return Whether {@code span} is in {@code [start, end]}. A span that only
+	 * touches a range doesn't count unless one of them is empty.
+	 */
+	private static boolean intersects(@NonNull Span span, int start, int end) {
+		if (span.start > end || span.end < start) {
+			return false;
+		}
+		return span.start == span.end || start == end ||
+				(span.start != end && span.end != start);
+	}
+
+	private static int priority(@NonNull Span span) {
+		return (span.flags & Spanned.SPAN_PRIORITY) >> Spanned.SPAN_PRIORITY_SHIFT;
+	}
+}
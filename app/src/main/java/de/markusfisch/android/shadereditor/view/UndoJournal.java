@@ -0,0 +1,525 @@
+package de.markusfisch.android.shadereditor.view;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import de.markusfisch.android.shadereditor.database.DatabaseContract;
+import de.markusfisch.android.shadereditor.highlighter.ChunkedText;
+
+/**
+ * Append-only file of the edits of a shader, so its undo history outlives the process.
+ * <p>
+ * Edits are collected in memory. Hashing, compressing, writing and reading the journal
+ * all happen on a background thread. Every block starts with the state of the text it applies to and ends with the state it
+ * leaves, each given by length and hash, so a block that doesn't continue the previous
+ * one starts the history over. The file is only read when the undo history in memory is
+ * used up.
+ * <p>
+ * The text is passed as an immutable snapshot, like the {@link ChunkedText} of a
+ * {@link ChunkedEditable}, so it can be hashed in the background.
+ */
+public final class UndoJournal {
+	/**
+	 * An edit that was read from the journal.
+	 */
+	static final class Edit {
+		final int start;
+		@NonNull
+		final String before;
+		@NonNull
+		final String after;
+
+		private Edit(int start, @NonNull String before, @NonNull String after) {
+			this.start = start;
+			this.before = before;
+			this.after = after;
+		}
+	}
+
+	interface OnLoadedListener {
+		/**
+		 * @param edits The edits, oldest first, or an empty list if the journal doesn't
+		 *              lead to the text it was loaded for.
+		 */
+		void onLoaded(@NonNull List<Edit> edits);
+	}
+
+	private static final String TAG = "UndoJournal";
+	private static final String DIRECTORY = "undo";
+	// A journal that has grown beyond this is started over.
+	private static final long MAX_FILE_BYTES = 4 << 20;
+	// A journal larger than this is rewritten with what is left after loading it.
+	private static final long COMPACT_FILE_BYTES = 256 << 10;
+	// Length of a state that isn't known.
+	private static final int UNKNOWN = -1;
+	private static final byte BASE = 0;
+	private static final byte EDIT = 1;
+	private static final byte UNDO = 2;
+	private static final byte REDO = 3;
+	// What comes after this doesn't continue what came before.
+	private static final byte BREAK = 4;
+	private static final byte CHECKPOINT = 5;
+	// Appending, reading and deleting journals happens in order on this thread.
+	private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final long shaderId;
+	@NonNull
+	private final File file;
+	// Length of the file when it was opened. Everything after it was
+	// written since and is already in memory.
+	@NonNull
+	private final Future<Long> openedLength;
+	private final ByteArrayOutputStream records = new ByteArrayOutputStream();
+	private final DataOutputStream out = new DataOutputStream(records);
+	private boolean hasBase;
+	// Snapshot of the text the recorded edits apply to, or null if that's
+	// the text of the last flush.
+	@Nullable
+	private CharSequence baseText;
+	private boolean isLoading;
+	private boolean isLoaded;
+
+	// Only used on the executor.
+	private int baseLength;
+	private long baseHash;
+
+	private UndoJournal(long shaderId, @NonNull File file) {
+		this.shaderId = shaderId;
+		this.file = file;
+		openedLength = executor.submit(() -> {
+			long length = file.length();
+			if (length > MAX_FILE_BYTES && file.delete()) {
+				return 0L;
+			}
+			return length;
+		});
+	}
+
+	/**
+	 * Open the journal of a shader. The file isn't touched on the calling thread.
+	 */
+	@NonNull
+	public static UndoJournal open(@NonNull Context context, long shaderId) {
+		return new UndoJournal(shaderId, getFile(context, shaderId));
+	}
+
+	/**
+	 * Delete the journal of a shader that doesn't exist anymore.
+	 */
+	public static void delete(@NonNull Context context, long shaderId) {
+		File file = getFile(context, shaderId);
+		executor.execute(() -> {
+			if (file.exists() && !file.delete()) {
+				Log.w(TAG, "Cannot delete " + file);
+			}
+		});
+	}
+
+	/**
+	 * @return A 64-bit FNV-1a hash of {@code text}.
+	 */
+	static long hash(@NonNull CharSequence text) {
+		long hash = 0xcbf29ce484222325L;
+		char[] buffer = new char[4096];
+		for (int start = 0, length = text.length(); start < length;
+				start += buffer.length) {
+			int end = Math.min(length, start + buffer.length);
+			ChunkedText.getChars(text, start, end, buffer, 0);
+			for (int i = 0, count = end - start; i < count; ++i) {
+				hash = (hash ^ buffer[i]) * 0x100000001b3L;
+			}
+		}
+		return hash;
+	}
+
+	boolean isFor(long shaderId) {
+		return this.shaderId == shaderId;
+	}
+
+	boolean hasBase() {
+		return hasBase;
+	}
+
+	/**
+	 * Set the text the next recorded edit applies to.
+	 *
+	 * @param snapshot Immutable copy of the text.
+	 */
+	void setBase(@NonNull CharSequence snapshot) {
+		baseText = snapshot;
+		hasBase = true;
+	}
+
+	/**
+	 * Record an edit whose removed text is {@code text[offset, offset + beforeLength)}
+	 * and whose inserted text follows right after it.
+	 */
+	void recordEdit(int start, @NonNull char[] text, int offset, int beforeLength,
+			int afterLength) {
+		try {
+			out.writeByte(EDIT);
+			out.writeInt(start);
+			out.writeInt(beforeLength);
+			out.writeInt(afterLength);
+			for (int i = offset, end = offset + beforeLength + afterLength; i < end; ++i) {
+				out.writeChar(text[i]);
+			}
+		} catch (IOException e) {
+			// Can't happen when writing to memory.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	void recordUndo() {
+		records.write(UNDO);
+	}
+
+	void recordRedo() {
+		records.write(REDO);
+	}
+
+	/**
+	 * Record that the text has left the recorded history, e.g. because an edit was undone
+	 * that had been made before the journal was opened.
+	 */
+	void recordBreak() {
+		records.write(BREAK);
+	}
+
+	/**
+	 * Write the recorded edits in the background.
+	 *
+	 * @param snapshot Immutable copy of the text after all recorded edits.
+	 */
+	void flush(@NonNull CharSequence snapshot) {
+		if (records.size() == 0) {
+			return;
+		}
+		if (!hasBase) {
+			// Shouldn't happen, but edits without a base can't be
+			// restored anyway.
+			records.reset();
+			return;
+		}
+		byte[] recorded = records.toByteArray();
+		records.reset();
+		CharSequence base = baseText;
+		baseText = null;
+		executor.execute(() -> {
+			if (base != null) {
+				baseLength = base.length();
+				baseHash = hash(base);
+			}
+			long endHash = hash(snapshot);
+			ByteArrayOutputStream block = new ByteArrayOutputStream();
+			try (DataOutputStream blockOut = new DataOutputStream(
+					new DeflaterOutputStream(block))) {
+				writeState(blockOut, BASE, baseLength, baseHash);
+				blockOut.write(recorded);
+				writeState(blockOut, CHECKPOINT, snapshot.length(), endHash);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			baseLength = snapshot.length();
+			baseHash = endHash;
+			append(block.toByteArray());
+		});
+	}
+
+	/**
+	 * @return False if it's certain that there is nothing to load.
+	 */
+	boolean mayHaveEdits() {
+		if (isLoaded) {
+			return false;
+		} else if (isLoading) {
+			return true;
+		}
+		try {
+			return !openedLength.isDone() || openedLength.get() > 0;
+		} catch (ExecutionException | InterruptedException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Read the edits that lead to {@code snapshot} from the part of the journal that
+	 * was written before it was opened. The journal is read in the background and only
+	 * once, so {@code listener} isn't called again after the first time.
+	 *
+	 * @param snapshot Immutable copy of the text the journal was opened with.
+	 * @param maxChars Maximum number of characters of the edits to return.
+	 * @param listener Gets the edits on the UI thread.
+	 */
+	void load(@NonNull CharSequence snapshot, int maxChars,
+			@NonNull OnLoadedListener listener) {
+		if (isLoaded || isLoading) {
+			return;
+		}
+		isLoading = true;
+		executor.execute(() -> {
+			List<Edit> edits = read(snapshot, maxChars);
+			handler.post(() -> {
+				isLoading = false;
+				isLoaded = true;
+				listener.onLoaded(edits);
+			});
+		});
+	}
+
+	/**
+	 * Must be called on the executor.
+	 */
+	@NonNull
+	private List<Edit> read(@NonNull CharSequence text, int maxChars) {
+		long length;
+		try {
+			// Done already, since it was submitted before.
+			length = openedLength.get();
+		} catch (ExecutionException | InterruptedException e) {
+			return new ArrayList<>();
+		}
+		if (length == 0) {
+			return new ArrayList<>();
+		}
+		Replay replay = new Replay(maxChars);
+		try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+			replay.read(new DataInputStream(in), length);
+		} catch (IOException e) {
+			// Use what could be read. A block that was cut off by the
+			// end of the process is expected.
+		}
+		long textHash = hash(text);
+		if (!replay.isAt(text.length(), textHash)) {
+			return new ArrayList<>();
+		}
+		List<Edit> edits = new ArrayList<>(replay.applied);
+		if (length > COMPACT_FILE_BYTES) {
+			compact(edits, text.length(), textHash, length);
+		}
+		return edits;
+	}
+
+	/**
+	 * Replace the part of the file that was loaded with the edits that were kept.
+	 * Must be called on the executor.
+	 */
+	private void compact(@NonNull List<Edit> edits, int textLength, long textHash,
+			long loadedLength) {
+		File compacted = new File(file.getPath() + ".tmp");
+		try (InputStream in = new FileInputStream(file);
+				DataOutputStream out = new DataOutputStream(
+						new FileOutputStream(compacted))) {
+			ByteArrayOutputStream block = new ByteArrayOutputStream();
+			try (DataOutputStream blockOut = new DataOutputStream(
+					new DeflaterOutputStream(block))) {
+				writeState(blockOut, BASE, UNKNOWN, 0);
+				for (Edit edit : edits) {
+					blockOut.writeByte(EDIT);
+					blockOut.writeInt(edit.start);
+					blockOut.writeInt(edit.before.length());
+					blockOut.writeInt(edit.after.length());
+					blockOut.writeChars(edit.before);
+					blockOut.writeChars(edit.after);
+				}
+				writeState(blockOut, CHECKPOINT, textLength, textHash);
+			}
+			out.writeInt(block.size());
+			block.writeTo(out);
+			// Keep the blocks that were written since the journal
+			// was opened.
+			long skip = loadedLength;
+			while (skip > 0) {
+				long skipped = in.skip(skip);
+				if (skipped <= 0) {
+					throw new EOFException();
+				}
+				skip -= skipped;
+			}
+			copy(in, out);
+		} catch (IOException e) {
+			Log.w(TAG, "Cannot compact " + file, e);
+			compacted.delete();
+			return;
+		}
+		if (!compacted.renameTo(file)) {
+			compacted.delete();
+		}
+	}
+
+	private void append(@NonNull byte[] data) {
+		File dir = file.getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			Log.w(TAG, "Cannot create " + dir);
+			return;
+		}
+		try (DataOutputStream out = new DataOutputStream(
+				new FileOutputStream(file, true))) {
+			out.writeInt(data.length);
+			out.write(data);
+		} catch (IOException e) {
+			Log.w(TAG, "Cannot write " + file, e);
+		}
+	}
+
+	@NonNull
+	private static File getFile(@NonNull Context context, long shaderId) {
+		return new File(new File(context.getDatabasePath(
+				DatabaseContract.FILE_NAME).getParentFile(), DIRECTORY),
+				Long.toString(shaderId));
+	}
+
+	private static void writeState(@NonNull DataOutputStream out, byte type, int length,
+			long hash) throws IOException {
+		out.writeByte(type);
+		out.writeInt(length);
+		out.writeLong(hash);
+	}
+
+	private static void copy(@NonNull InputStream in, @NonNull OutputStream out)
+			throws IOException {
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) > -1) {
+			out.write(buffer, 0, read);
+		}
+	}
+
+	/**
+	 * Applies the records of a journal to a stack of edits.
+	 */
+	private static final class Replay {
+		private final ArrayDeque<Edit> applied = new ArrayDeque<>();
+		private final ArrayDeque<Edit> undone = new ArrayDeque<>();
+		private final int maxChars;
+		private int chars;
+		private int length = UNKNOWN;
+		private long hash;
+
+		private Replay(int maxChars) {
+			this.maxChars = maxChars;
+		}
+
+		private boolean isAt(int length, long hash) {
+			return this.length == length && this.hash == hash;
+		}
+
+		private void read(@NonNull DataInputStream in, long limit) throws IOException {
+			long position = 0;
+			while (position + Integer.BYTES <= limit) {
+				int size = in.readInt();
+				position += Integer.BYTES + size;
+				if (size < 0 || position > limit) {
+					return;
+				}
+				byte[] data = new byte[size];
+				in.readFully(data);
+				readBlock(new DataInputStream(new InflaterInputStream(
+						new ByteArrayInputStream(data))));
+			}
+		}
+
+		private void readBlock(@NonNull DataInputStream in) throws IOException {
+			int type;
+			while ((type = in.read()) > -1) {
+				switch (type) {
+					case BASE: {
+						int baseLength = in.readInt();
+						long baseHash = in.readLong();
+						if (baseLength != UNKNOWN && length != UNKNOWN &&
+								!isAt(baseLength, baseHash)) {
+							restart();
+						}
+						break;
+					}
+					case EDIT: {
+						int start = in.readInt();
+						String before = readChars(in, in.readInt());
+						String after = readChars(in, in.readInt());
+						undone.clear();
+						push(new Edit(start, before, after));
+						break;
+					}
+					case UNDO:
+						if (applied.isEmpty()) {
+							restart();
+						} else {
+							Edit edit = applied.removeLast();
+							chars -= edit.before.length() + edit.after.length();
+							undone.addLast(edit);
+						}
+						break;
+					case REDO:
+						if (undone.isEmpty()) {
+							restart();
+						} else {
+							push(undone.removeLast());
+						}
+						break;
+					case BREAK:
+						restart();
+						break;
+					case CHECKPOINT:
+						length = in.readInt();
+						hash = in.readLong();
+						break;
+					default:
+						throw new IOException("Unknown record " + type);
+				}
+			}
+		}
+
+		private void push(@NonNull Edit edit) {
+			applied.addLast(edit);
+			chars += edit.before.length() + edit.after.length();
+			while (chars > maxChars && !applied.isEmpty()) {
+				Edit oldest = applied.removeFirst();
+				chars -= oldest.before.length() + oldest.after.length();
+			}
+		}
+
+		private void restart() {
+			applied.clear();
+			undone.clear();
+			chars = 0;
+		}
+
+		@NonNull
+		private static String readChars(@NonNull DataInputStream in, int count)
+				throws IOException {
+			char[] chars = new char[count];
+			for (int i = 0; i < count; ++i) {
+				chars[i] = in.readChar();
+			}
+			return new String(chars);
+		}
+	}
+}
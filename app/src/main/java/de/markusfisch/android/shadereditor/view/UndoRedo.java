@@ -1,117 +1,461 @@
 package de.markusfisch.android.shadereditor.view;
 
+import android.content.Context;
+import android.os.SystemClock;
 import android.text.Editable;
 import android.text.Selection;
+import android.text.Spanned;
+import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.text.style.UnderlineSpan;
 import android.widget.TextView;
 
-import java.util.LinkedList;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
 
 /**
- * A generic undo/redo implementation for TextViews.
+ * A generic undo/redo implementation for TextViews and Editables.
  * <p>
  * Based on this gist:
  * https://gist.github.com/zeleven/0cfa738c1e8b65b23ff7df1fc30c9f7e
  */
 public class UndoRedo {
+	/**
+	 * The edits of a text, oldest first.
+	 * <p>
+	 * Edits are kept in primitive arrays and their text in one append-only char buffer, so
+	 * the history doesn't hold an object per edit. Runs of typed or deleted characters are
+	 * coalesced into a single edit and the size of the history is limited by the memory
+	 * it uses rather than by the number of edits.
+	 */
 	public static final class EditHistory {
-		private final LinkedList<EditItem> history = new LinkedList<>();
+		// A pause this long starts a new edit, even if the typing continues
+		// where it stopped.
+		private static final long COALESCE_MILLIS = 1000;
+		// What the arrays take per edit.
+		private static final int BYTES_PER_EDIT = 3 * Integer.BYTES;
+		private static final int DEFAULT_MAX_BYTES = 1 << 21;
+
+		private int[] starts = new int[16];
+		// Offset of the removed text in `text`. The inserted text follows
+		// right after it.
+		private int[] textOffsets = new int[16];
+		private int[] beforeLengths = new int[16];
+		private int[] afterLengths = new int[16];
+		private int size;
+		private char[] text = new char[256];
+		private int textLength;
 
 		/**
-		 * The position from which an EditItem will be retrieved when getNext()
+		 * The position from which an edit will be retrieved when getNext()
 		 * is called. If getPrevious() has not been called, this has the same
-		 * value as history.size().
+		 * value as size.
 		 */
 		private int position = 0;
-		private int maxHistorySize = -1;
+		private int maxBytes = DEFAULT_MAX_BYTES;
+		// Whether the last edit may be extended by the next one.
+		private boolean canCoalesce;
+		private long lastEditTime;
+
+		@Nullable
+		private UndoJournal journal;
+		// Edits from this index on are in the journal or, for
+		// `unjournaled`, will be once they can't change anymore.
+		private int firstJournaled;
+		private int unjournaled = -1;
+		// Whether edits were dropped since the journal was opened, so the
+		// journal doesn't end where this history begins.
+		private boolean trimmedSinceJournal;
 
 		private void clear() {
 			position = 0;
-			history.clear();
+			size = 0;
+			textLength = 0;
+			canCoalesce = false;
+			journal = null;
+			firstJournaled = 0;
+			unjournaled = -1;
+		}
+
+		/**
+		 * Record the edits that are made from now on in {@code journal}.
+		 */
+		private void setJournal(@Nullable UndoJournal journal) {
+			this.journal = journal;
+			firstJournaled = size;
+			unjournaled = -1;
+			trimmedSinceJournal = false;
 		}
 
 		/**
-		 * Adds a new edit operation to the history at the current position. If
-		 * executed after a call to getPrevious() removes all the future history
-		 * (elements with positions >= current history position).
+		 * Write the last edit to the journal, so it isn't extended anymore.
 		 */
-		private void add(EditItem item) {
-			while (history.size() > position) {
-				history.removeLast();
+		private void sealJournal() {
+			canCoalesce = false;
+			if (journal != null && unjournaled > -1) {
+				journal.recordEdit(starts[unjournaled], text, textOffsets[unjournaled],
+						beforeLengths[unjournaled], afterLengths[unjournaled]);
 			}
-			history.add(item);
-			position++;
+			unjournaled = -1;
+		}
 
-			if (maxHistorySize >= 0) {
-				trimHistory();
+		/**
+		 * Whether undo may find more edits in the journal.
+		 */
+		private boolean mayLoadJournal() {
+			return journal != null && position == 0 && firstJournaled == 0 &&
+					!trimmedSinceJournal && journal.mayHaveEdits();
+		}
+
+		/**
+		 * Read the edits of the journal that lead to {@code current} in the
+		 * background and put them before the edits in memory.
+		 *
+		 * @param current  The text before the first edit in memory.
+		 * @param onLoaded Run when edits were added and the history is still
+		 *                 at its start.
+		 * @return False if there's nothing to load.
+		 */
+		private boolean loadJournal(@NonNull CharSequence current,
+				@NonNull Runnable onLoaded) {
+			if (!mayLoadJournal()) {
+				return false;
 			}
+			UndoJournal loading = journal;
+			int liveStart = size > 0 ? textOffsets[0] : textLength;
+			int live = textLength - liveStart;
+			int budget = maxBytes < 0
+					? Integer.MAX_VALUE
+					: (maxBytes - live * Character.BYTES - size * BYTES_PER_EDIT) /
+							Character.BYTES;
+			loading.load(snapshot(current), Math.max(0, budget), edits -> {
+				// The edits lead to the text before the first edit in memory,
+				// which stays the same unless edits were dropped since.
+				if (journal != loading || firstJournaled != 0 ||
+						trimmedSinceJournal || edits.isEmpty()) {
+					return;
+				}
+				boolean isAtStart = position == 0;
+				insertJournal(edits);
+				if (isAtStart) {
+					onLoaded.run();
+				}
+			});
+			return true;
 		}
 
 		/**
-		 * Set the maximum history size. If size is negative, then history size
-		 * is only limited by the device memory.
+		 * Put {@code edits} before the edits in memory.
 		 */
-		private void setMaxHistorySize(int size) {
-			maxHistorySize = size;
-			if (maxHistorySize >= 0) {
+		private void insertJournal(@NonNull List<UndoJournal.Edit> edits) {
+			int count = edits.size();
+			int liveStart = size > 0 ? textOffsets[0] : textLength;
+			int live = textLength - liveStart;
+			int chars = 0;
+			for (UndoJournal.Edit edit : edits) {
+				chars += edit.before.length() + edit.after.length();
+			}
+			char[] newText = new char[Math.max(text.length, chars + live)];
+			System.arraycopy(text, liveStart, newText, chars, live);
+			int[] newStarts = new int[Math.max(starts.length, count + size)];
+			int[] newOffsets = new int[newStarts.length];
+			int[] newBefore = new int[newStarts.length];
+			int[] newAfter = new int[newStarts.length];
+			System.arraycopy(starts, 0, newStarts, count, size);
+			System.arraycopy(beforeLengths, 0, newBefore, count, size);
+			System.arraycopy(afterLengths, 0, newAfter, count, size);
+			for (int i = 0; i < size; ++i) {
+				newOffsets[count + i] = textOffsets[i] - liveStart + chars;
+			}
+			int offset = 0;
+			for (int i = 0; i < count; ++i) {
+				UndoJournal.Edit edit = edits.get(i);
+				newStarts[i] = edit.start;
+				newOffsets[i] = offset;
+				newBefore[i] = edit.before.length();
+				newAfter[i] = edit.after.length();
+				edit.before.getChars(0, newBefore[i], newText, offset);
+				offset += newBefore[i];
+				edit.after.getChars(0, newAfter[i], newText, offset);
+				offset += newAfter[i];
+			}
+			starts = newStarts;
+			textOffsets = newOffsets;
+			beforeLengths = newBefore;
+			afterLengths = newAfter;
+			text = newText;
+			textLength = chars + live;
+			size += count;
+			position += count;
+			if (unjournaled > -1) {
+				unjournaled += count;
+			}
+			// Typing may have added edits while the journal was read.
+			trimHistory();
+		}
+
+		/**
+		 * Adds the replacement of {@code beforeLength} characters of
+		 * {@code before} at {@code start} with {@code [start, start + count)}
+		 * of {@code after} to the history at the current position. If
+		 * executed after a call to getPrevious() removes all the future
+		 * history (edits with positions >= current history position).
+		 */
+		private void add(int start, char[] before, int beforeLength, CharSequence after,
+				int count) {
+			if (position < size) {
+				size = position;
+				textLength = size > 0 ? textEnd(size - 1) : 0;
+				canCoalesce = false;
+				firstJournaled = Math.min(firstJournaled, size);
+			}
+			long now = SystemClock.uptimeMillis();
+			boolean isKeystroke = beforeLength + count == 1;
+			if (canCoalesce && isKeystroke && now - lastEditTime < COALESCE_MILLIS &&
+					coalesce(start, before, beforeLength, after)) {
+				lastEditTime = now;
+				if (count == 1 && after.charAt(start) == '\n') {
+					// Undo a line at a time.
+					canCoalesce = false;
+				}
 				trimHistory();
+				return;
 			}
+			sealJournal();
+			if (size == starts.length) {
+				int capacity = size * 2;
+				starts = Arrays.copyOf(starts, capacity);
+				textOffsets = Arrays.copyOf(textOffsets, capacity);
+				beforeLengths = Arrays.copyOf(beforeLengths, capacity);
+				afterLengths = Arrays.copyOf(afterLengths, capacity);
+			}
+			starts[size] = start;
+			textOffsets[size] = textLength;
+			beforeLengths[size] = beforeLength;
+			afterLengths[size] = count;
+			++size;
+			ensureTextCapacity(textLength + beforeLength + count);
+			System.arraycopy(before, 0, text, textLength, beforeLength);
+			textLength += beforeLength;
+			TextUtils.getChars(after, start, start + count, text, textLength);
+			textLength += count;
+			position = size;
+			canCoalesce = isKeystroke;
+			lastEditTime = now;
+			if (journal != null) {
+				unjournaled = size - 1;
+			}
+			trimHistory();
 		}
 
 		/**
-		 * Trim history when it exceeds max history size.
+		 * Extend the last edit by a single typed or deleted character.
+		 *
+		 * @return False if the character doesn't continue the last edit.
+		 */
+		private boolean coalesce(int start, char[] before, int beforeLength,
+				CharSequence after) {
+			int last = size - 1;
+			int lastStart = starts[last];
+			int lastBefore = beforeLengths[last];
+			int lastAfter = afterLengths[last];
+			if (beforeLength == 0) {
+				// Typing on at the end of the last insertion.
+				if (start != lastStart + lastAfter) {
+					return false;
+				}
+				ensureTextCapacity(textLength + 1);
+				text[textLength++] = after.charAt(start);
+				++afterLengths[last];
+				return true;
+			}
+			if (lastAfter > 0) {
+				// Deleting what was typed last.
+				if (start != lastStart + lastAfter - 1) {
+					return false;
+				}
+				--textLength;
+				if (--afterLengths[last] == 0 && lastBefore == 0) {
+					size = last;
+					position = size;
+					canCoalesce = false;
+					if (unjournaled == last) {
+						unjournaled = -1;
+					}
+				}
+				return true;
+			}
+			if (start == lastStart) {
+				// Deleting forward.
+				ensureTextCapacity(textLength + 1);
+				text[textLength++] = before[0];
+				++beforeLengths[last];
+				return true;
+			}
+			if (start == lastStart - 1) {
+				// Deleting backward, the removed text grows at its start.
+				int offset = textOffsets[last];
+				ensureTextCapacity(textLength + 1);
+				System.arraycopy(text, offset, text, offset + 1, lastBefore);
+				text[offset] = before[0];
+				++textLength;
+				++beforeLengths[last];
+				starts[last] = start;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Set the maximum number of bytes the history may use. If bytes is
+		 * negative, then the history is only limited by the device memory.
+		 */
+		private void setMaxHistoryBytes(int bytes) {
+			maxBytes = bytes;
+			trimHistory();
+		}
+
+		/**
+		 * Drop the oldest edits until the history fits into its budget.
 		 */
 		private void trimHistory() {
-			while (history.size() > maxHistorySize) {
-				history.removeFirst();
-				position--;
+			if (maxBytes < 0 || size == 0) {
+				return;
+			}
+			int textStart = textOffsets[0];
+			int drop = 0;
+			while (drop < size && (textLength - textStart) * Character.BYTES +
+					(size - drop) * BYTES_PER_EDIT > maxBytes) {
+				++drop;
+				textStart = drop < size ? textOffsets[drop] : textLength;
 			}
+			if (drop > 0) {
+				if (unjournaled > -1 && unjournaled < drop) {
+					sealJournal();
+				}
+				size -= drop;
+				position = Math.max(0, position - drop);
+				System.arraycopy(starts, drop, starts, 0, size);
+				System.arraycopy(textOffsets, drop, textOffsets, 0, size);
+				System.arraycopy(beforeLengths, drop, beforeLengths, 0, size);
+				System.arraycopy(afterLengths, drop, afterLengths, 0, size);
+				canCoalesce &= size > 0;
+				firstJournaled = Math.max(0, firstJournaled - drop);
+				if (unjournaled > -1) {
+					unjournaled -= drop;
+				}
+				trimmedSinceJournal = true;
+			}
+			// Reclaim the text of dropped edits once it's the larger part
+			// of the buffer, so the buffer doesn't grow forever.
+			if (textStart > textLength - textStart) {
+				textLength -= textStart;
+				System.arraycopy(text, textStart, text, 0, textLength);
+				for (int i = 0; i < size; ++i) {
+					textOffsets[i] -= textStart;
+				}
+			}
+		}
 
-			if (position < 0) {
-				position = 0;
+		private void ensureTextCapacity(int capacity) {
+			if (capacity > text.length) {
+				text = Arrays.copyOf(text, Math.max(capacity, text.length * 2));
 			}
 		}
 
+		private int textEnd(int index) {
+			return textOffsets[index] + beforeLengths[index] + afterLengths[index];
+		}
+
 		/**
-		 * Traverses the history backward by one position, returns and item at
-		 * that position.
+		 * Traverses the history backward by one position and returns the
+		 * index of the edit at that position or -1 if there is none.
 		 */
-		private EditItem getPrevious() {
+		private int getPrevious() {
+			sealJournal();
 			if (position == 0) {
-				return null;
+				return -1;
 			}
 			--position;
-			return history.get(position);
+			journalMove(position, true);
+			return position;
 		}
 
 		/**
-		 * Traverses the history forward by one position, returns and item at
-		 * that position.
+		 * Traverses the history forward by one position and returns the
+		 * index of the edit at that position or -1 if there is none.
 		 */
-		private EditItem getNext() {
-			if (position >= history.size()) {
-				return null;
+		private int getNext() {
+			sealJournal();
+			if (position >= size) {
+				return -1;
 			}
+			journalMove(position, false);
+			return position++;
+		}
 
-			EditItem item = history.get(position);
-			++position;
-			return item;
+		/**
+		 * Record undoing or redoing the edit at {@code index}.
+		 */
+		private void journalMove(int index, boolean isUndo) {
+			if (journal == null) {
+				return;
+			}
+			if (index < firstJournaled) {
+				// The journal doesn't know this edit, so it can't
+				// follow from here.
+				journal.recordBreak();
+				firstJournaled = size;
+			} else if (isUndo) {
+				journal.recordUndo();
+			} else {
+				journal.recordRedo();
+			}
 		}
 
 		private boolean hasNext() {
-			return position < history.size();
+			return position < size;
 		}
 
 		private boolean hasPrevious() {
 			return position > 0;
 		}
+
+		private int start(int index) {
+			return starts[index];
+		}
+
+		private int beforeLength(int index) {
+			return beforeLengths[index];
+		}
+
+		private int afterLength(int index) {
+			return afterLengths[index];
+		}
+
+		@NonNull
+		private String before(int index) {
+			return new String(text, textOffsets[index], beforeLengths[index]);
+		}
+
+		@NonNull
+		private String after(int index) {
+			return new String(text, textOffsets[index] + beforeLengths[index],
+					afterLengths[index]);
+		}
 	}
 
 	private final EditTextChangeListener changeListener =
 			new EditTextChangeListener();
 	private final EditHistory editHistory;
+	@Nullable
 	private final TextView textView;
+	// Text that is edited without a TextView, which never replaces it.
+	@Nullable
+	private final Editable editable;
 
 	/**
 	 * Is undo/redo being performed? This member signals if an undo/redo
@@ -123,10 +467,21 @@ public class UndoRedo {
 
 	public UndoRedo(TextView textView, EditHistory editHistory) {
 		this.textView = textView;
+		this.editable = null;
 		this.editHistory = editHistory;
 		textView.addTextChangedListener(changeListener);
 	}
 
+	public UndoRedo(@NonNull Editable editable, EditHistory editHistory) {
+		this.textView = null;
+		this.editable = editable;
+		this.editHistory = editHistory;
+		// Like TextView does it, so the listener covers all of the text
+		// no matter where it is changed.
+		editable.setSpan(changeListener, 0, editable.length(),
+				Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+	}
+
 	public UndoRedo(TextView textView) {
 		this(textView, new EditHistory());
 	}
@@ -140,43 +495,86 @@ public class UndoRedo {
 	}
 
 	public void detachListener() {
-		textView.removeTextChangedListener(changeListener);
+		isListening = false;
+		if (textView != null) {
+			textView.removeTextChangedListener(changeListener);
+		} else if (editable != null) {
+			editable.removeSpan(changeListener);
+		}
 	}
 
 	/**
-	 * Set the maximum history size. If size is negative, then history size is
-	 * only limited by the device memory.
+	 * Set the maximum number of bytes the history may use. If bytes is
+	 * negative, then the history is only limited by the device memory.
 	 */
-	public void setMaxHistorySize(int size) {
-		editHistory.setMaxHistorySize(size);
+	public void setMaxHistoryBytes(int bytes) {
+		editHistory.setMaxHistoryBytes(bytes);
 	}
 
 	public void clearHistory() {
+		flushJournal();
 		editHistory.clear();
 	}
 
+	/**
+	 * Keep the history of the shader with the given id in its journal,
+	 * so it can be undone after the process has ended. The current text
+	 * must be the text of that shader.
+	 */
+	public void setJournal(@NonNull Context context, long shaderId) {
+		UndoJournal journal = editHistory.journal;
+		if (journal != null && journal.isFor(shaderId)) {
+			return;
+		}
+		flushJournal();
+		editHistory.setJournal(shaderId > 0
+				? UndoJournal.open(context, shaderId)
+				: null);
+	}
+
+	/**
+	 * Write the history that isn't in the journal yet in the background.
+	 */
+	public void flushJournal() {
+		UndoJournal journal = editHistory.journal;
+		if (journal == null) {
+			return;
+		}
+		editHistory.sealJournal();
+		journal.flush(snapshot(getEditable()));
+	}
+
 	public boolean canUndo() {
-		return editHistory.hasPrevious();
+		return editHistory.hasPrevious() || editHistory.mayLoadJournal();
 	}
 
 	public void undo() {
-		EditItem edit = editHistory.getPrevious();
-		if (edit == null) {
+		Editable text = getEditable();
+		// Only read the journal when it's really needed, and undo once
+		// its edits are there.
+		if (!editHistory.hasPrevious() && editHistory.loadJournal(text, () -> {
+			if (isListening) {
+				undo();
+			}
+		})) {
+			return;
+		}
+		setJournalBase(text);
+		int edit = editHistory.getPrevious();
+		if (edit < 0) {
 			return;
 		}
 
-		Editable text = textView.getEditableText();
-		int start = edit.start;
-		int end = start + (edit.after != null ? edit.after.length() : 0);
+		int start = editHistory.start(edit);
+		int end = start + editHistory.afterLength(edit);
 
 		isUndoOrRedo = true;
-		text.replace(start, end, edit.before);
+		text.replace(start, end, editHistory.before(edit));
 		isUndoOrRedo = false;
 
 		removeUnderlineSpans(text);
 
-		Selection.setSelection(text, edit.before == null ? start
-				: (start + edit.before.length()));
+		Selection.setSelection(text, start + editHistory.beforeLength(edit));
 	}
 
 	public boolean canRedo() {
@@ -184,51 +582,58 @@ public class UndoRedo {
 	}
 
 	public void redo() {
-		EditItem edit = editHistory.getNext();
-		if (edit == null) {
+		Editable text = getEditable();
+		setJournalBase(text);
+		int edit = editHistory.getNext();
+		if (edit < 0) {
 			return;
 		}
 
-		Editable text = textView.getEditableText();
-		int start = edit.start;
-		int end = start + (edit.before != null ? edit.before.length() : 0);
+		int start = editHistory.start(edit);
+		int end = start + editHistory.beforeLength(edit);
 
 		isUndoOrRedo = true;
-		text.replace(start, end, edit.after);
+		text.replace(start, end, editHistory.after(edit));
 		isUndoOrRedo = false;
 
 		removeUnderlineSpans(text);
 
-		Selection.setSelection(text, edit.after == null ? start
-				: (start + edit.after.length()));
+		Selection.setSelection(text, start + editHistory.afterLength(edit));
+	}
+
+	@NonNull
+	private Editable getEditable() {
+		return textView != null ? textView.getEditableText() : editable;
 	}
 
 	/**
-	 * Get rid of underlines inserted when editor tries to come
-	 * up with a suggestion.
+	 * Remember the text before the first change that goes into the journal.
 	 */
-	private static void removeUnderlineSpans(Editable text) {
-		for (Object o : text.getSpans(0, text.length(), UnderlineSpan.class)) {
-			text.removeSpan(o);
+	private void setJournalBase(@NonNull CharSequence text) {
+		UndoJournal journal = editHistory.journal;
+		if (journal != null && !journal.hasBase()) {
+			journal.setBase(snapshot(text));
 		}
 	}
 
 	/**
-	 * Represents the changes performed by a single edit operation.
+	 * @return An immutable copy of {@code text}, which is free for a
+	 * ChunkedEditable.
 	 */
-	private static final class EditItem {
-		private final int start;
-		private final CharSequence before;
-		private final CharSequence after;
+	@NonNull
+	private static CharSequence snapshot(@NonNull CharSequence text) {
+		return text instanceof ChunkedEditable
+				? ((ChunkedEditable) text).snapshot()
+				: text.toString();
+	}
 
-		/**
-		 * Constructs EditItem of a modification that was applied at position
-		 * start and replaced CharSequence before with CharSequence after.
-		 */
-		private EditItem(int start, CharSequence before, CharSequence after) {
-			this.start = start;
-			this.before = before;
-			this.after = after;
+	/**
+	 * Get rid of underlines inserted when editor tries to come
+	 * up with a suggestion.
+	 */
+	private static void removeUnderlineSpans(Editable text) {
+		for (Object o : text.getSpans(0, text.length(), UnderlineSpan.class)) {
+			text.removeSpan(o);
 		}
 	}
 
@@ -239,7 +644,8 @@ public class UndoRedo {
 		/**
 		 * The text that will be removed by the change event.
 		 */
-		private CharSequence beforeChange;
+		private char[] beforeChange = new char[16];
+		private int beforeLength;
 
 		@Override
 		public void beforeTextChanged(CharSequence s, int start, int count,
@@ -247,7 +653,12 @@ public class UndoRedo {
 			if (isUndoOrRedo || !isListening) {
 				return;
 			}
-			beforeChange = s.subSequence(start, start + count);
+			setJournalBase(s);
+			if (count > beforeChange.length) {
+				beforeChange = new char[count];
+			}
+			TextUtils.getChars(s, start, start + count, beforeChange, 0);
+			beforeLength = count;
 		}
 
 		@Override
@@ -256,8 +667,7 @@ public class UndoRedo {
 			if (isUndoOrRedo || !isListening) {
 				return;
 			}
-			editHistory.add(new EditItem(start, beforeChange,
-					s.subSequence(start, start + count)));
+			editHistory.add(start, beforeChange, beforeLength, s, count);
 		}
 
 		@Override
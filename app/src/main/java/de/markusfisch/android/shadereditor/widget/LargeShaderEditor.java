@@ -0,0 +1,1334 @@
+package de.markusfisch.android.shadereditor.widget;
+
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.text.Editable;
+import android.text.InputFilter;
+import android.text.InputType;
+import android.text.Selection;
+import android.text.SpanWatcher;
+import android.text.Spannable;
+import android.text.Spanned;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.text.TextWatcher;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.ActionMode;
+import android.view.GestureDetector;
+import android.view.HapticFeedbackConstants;
+import android.view.KeyCharacterMap;
+import android.view.KeyEvent;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.inputmethod.BaseInputConnection;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputConnection;
+import android.view.inputmethod.InputMethodManager;
+import android.widget.OverScroller;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+
+import de.markusfisch.android.shadereditor.app.ShaderEditorApp;
+import de.markusfisch.android.shadereditor.highlighter.Completer;
+import de.markusfisch.android.shadereditor.highlighter.LineIndex;
+import de.markusfisch.android.shadereditor.highlighter.Preprocessor;
+import de.markusfisch.android.shadereditor.highlighter.TokenBuffer;
+import de.markusfisch.android.shadereditor.highlighter.Usage;
+import de.markusfisch.android.shadereditor.opengl.ShaderError;
+import de.markusfisch.android.shadereditor.view.ChunkedEditable;
+
+/**
+ * An editor for shaders that are too long for {@link ShaderEditor}. An EditText lays out
+ * and measures all of its text, this view only ever measures and draws the lines that
+ * are visible.
+ * <p>
+ * That works because all lines have the same height and a tab is always as wide as
+ * {@code tabWidth} characters, like the TabWidthSpan of {@link ShaderEditor}, so where a
+ * line or character is can be calculated without looking at the lines before it.
+ * <p>
+ * The text is kept in a {@link ChunkedEditable}, so an edit doesn't move the rest of
+ * the text and the lexer and the undo journal get a snapshot of it for free.
+ */
+public class LargeShaderEditor extends View implements SourceEditor {
+	private static final int BLINK_MILLIS = 500;
+	private static final float DEFAULT_TEXT_SIZE = 12f;
+	// A longer text isn't put into the saved state, which is sent in a
+	// binder transaction of at most 1 MB for the whole app.
+	private static final int MAX_SAVED_CHARS = 16 * 1024;
+
+	// Text of the last saved state that was too long to be parceled, so
+	// it can still be restored after a configuration change.
+	@Nullable
+	private static CharSequence retainedText;
+	private static int retainedId;
+
+	@NonNull
+	private final ChunkedEditable text = new ChunkedEditable();
+	// Line starts of the text, kept up to date by the ChangeWatcher.
+	@NonNull
+	private final LineIndex lineIndex = new LineIndex();
+	@NonNull
+	private final TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+	@NonNull
+	private final Paint.FontMetricsInt fontMetrics = new Paint.FontMetricsInt();
+	@NonNull
+	private final Paint highlightPaint = new Paint();
+	@NonNull
+	private final Paint errorPaint = new Paint();
+	@NonNull
+	private final OverScroller scroller;
+	@NonNull
+	private final GestureDetector gestureDetector;
+	@NonNull
+	private final LineNumbers lineNumbers;
+	@NonNull
+	private final SyntaxColors syntaxColors;
+	@NonNull
+	private final ShaderEditor.TokenListUpdater tokenListUpdater =
+			new ShaderEditor.TokenListUpdater((tokenRevision, tokens, text) -> post(
+					() -> onTokenized(tokenRevision, tokens, text)));
+	@NonNull
+	private final Completer completer = new Completer(ShaderEditor.MAX_COMPLETIONS);
+	// Edits since `tokens` were made, to find the token of a character
+	// when drawing.
+	@NonNull
+	private final ShaderEditor.PendingChange editsSinceTokens =
+			new ShaderEditor.PendingChange();
+	@Nullable
+	private ShaderEditor.OnTextModifiedListener onTextModifiedListener;
+	@Nullable
+	private ShaderEditor.OnEditPausedListener onEditPausedListener;
+	@NonNull
+	private final Runnable updateRunnable = () -> {
+		if (onEditPausedListener != null) {
+			onEditPausedListener.onEditPaused(text.toString());
+		}
+	};
+	@NonNull
+	private final Runnable blinkRunnable = new Runnable() {
+		@Override
+		public void run() {
+			isCursorVisible = !isCursorVisible;
+			invalidate();
+			postDelayed(this, BLINK_MILLIS);
+		}
+	};
+
+	@Nullable
+	private ShaderEditor.CodeCompletionListener codeCompletionListener;
+	@NonNull
+	private Usage libraryUsage = Usage.NONE;
+	@NonNull
+	private List<ShaderError> shaderErrors = Collections.emptyList();
+	// Tokens of the text before `editsSinceTokens` or null.
+	@Nullable
+	private TokenBuffer tokens;
+	@NonNull
+	private Preprocessor.InactiveRegions inactiveRegions = Preprocessor.InactiveRegions.NONE;
+	@Nullable
+	private ActionMode actionMode;
+	private float[] widths = new float[64];
+	// Block of the text for scanning it, see widestLine().
+	private final char[] scanChars = new char[1024];
+	private int revision = 0;
+	private int updateDelay = 1000;
+	private boolean isUserInteraction = true;
+	private boolean isCursorVisible;
+	// Whether a long press started a selection that follows the finger.
+	private boolean isSelecting;
+	private int lineHeight;
+	private int baseline;
+	private float charWidth;
+	private int tabWidthInCharacters;
+	private float tabWidth;
+	private float cursorWidth;
+	// Number of characters of the longest line, with tabs expanded.
+	// Only valid unless `isWidestStale`, see getWidestColumns().
+	private int widestColumns;
+	// Whether the longest line got shorter or the tab width changed, so
+	// the text has to be scanned for the longest line again.
+	private boolean isWidestStale;
+	// Whether the last restored state had no text, because the process
+	// was ended since it was saved.
+	private boolean hasLostText;
+
+	public LargeShaderEditor(Context context) {
+		this(context, null);
+	}
+
+	public LargeShaderEditor(Context context, @Nullable AttributeSet attrs) {
+		super(context, attrs);
+		setFocusable(true);
+		setFocusableInTouchMode(true);
+
+		float density = getResources().getDisplayMetrics().density;
+		cursorWidth = Math.max(1f, 2f * density);
+		paint.setTypeface(Typeface.MONOSPACE);
+		paint.setTextSize(TypedValue.applyDimension(
+				TypedValue.COMPLEX_UNIT_SP,
+				DEFAULT_TEXT_SIZE,
+				getResources().getDisplayMetrics()));
+		lineNumbers = new LineNumbers(context, attrs, paint);
+		syntaxColors = new SyntaxColors(context);
+		paint.setColor(syntaxColors.textColor());
+		errorPaint.setColor(syntaxColors.errorColor());
+
+		TypedArray a = context.obtainStyledAttributes(
+				new int[]{android.R.attr.textColorHighlight});
+		try {
+			highlightPaint.setColor(a.getColor(0, 0x6633b5e5));
+		} finally {
+			a.recycle();
+		}
+
+		scroller = new OverScroller(context);
+		gestureDetector = new GestureDetector(context, new GestureListener());
+
+		text.setFilters(new InputFilter[]{(source,
+				start, end,
+				dest, dstart, dend) -> {
+			if (isUserInteraction &&
+					end - start == 1 &&
+					start < source.length() &&
+					dstart < dest.length() &&
+					source.charAt(start) == '\n') {
+				return ShaderEditor.autoIndent(source, dest, dstart, dend, lineIndex,
+						tokenListUpdater.getCompletedTokens(revision));
+			}
+			// Only look at what is inserted, never at the whole text.
+			return ShaderEditor.replaceNoBreakSpaces(source, start, end);
+		}});
+		text.setSpan(new ChangeWatcher(), 0, 0, Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+		Selection.setSelection(text, 0);
+
+		tabWidthInCharacters = ShaderEditorApp.preferences.getTabWidth();
+		updateMetrics();
+	}
+
+	public void setOnEditPausedListener(
+			@Nullable ShaderEditor.OnEditPausedListener listener) {
+		onEditPausedListener = listener;
+	}
+
+	public void setOnTextModifiedListener(
+			@Nullable ShaderEditor.OnTextModifiedListener listener) {
+		onTextModifiedListener = listener;
+	}
+
+	public void setOnCompletionsListener(
+			@Nullable ShaderEditor.CodeCompletionListener listener) {
+		codeCompletionListener = listener;
+	}
+
+	public void setLibraryUsage(@NonNull Usage usage) {
+		libraryUsage = usage;
+	}
+
+	public void setUpdateDelay(int ms) {
+		updateDelay = ms;
+	}
+
+	public void setTabWidth(int characters) {
+		if (tabWidthInCharacters == characters) {
+			return;
+		}
+		tabWidthInCharacters = characters;
+		isWidestStale = true;
+		updateMetrics();
+	}
+
+	public void setTextSize(int unit, float size) {
+		float px = TypedValue.applyDimension(unit, size,
+				getResources().getDisplayMetrics());
+		if (px == paint.getTextSize()) {
+			return;
+		}
+		paint.setTextSize(px);
+		lineNumbers.setTextSize(px);
+		updateMetrics();
+	}
+
+	public void setTypeface(@Nullable Typeface tf) {
+		paint.setTypeface(tf);
+		lineNumbers.setTypeface(tf);
+		updateMetrics();
+	}
+
+	@Nullable
+	public String getFontFeatureSettings() {
+		return paint.getFontFeatureSettings();
+	}
+
+	public void setFontFeatureSettings(@Nullable String fontFeatureSettings) {
+		paint.setFontFeatureSettings(fontFeatureSettings);
+		updateMetrics();
+	}
+
+	public void setShowLineNumbers(boolean showLineNumbers) {
+		if (lineNumbers.setVisible(showLineNumbers)) {
+			invalidate();
+		}
+	}
+
+	public boolean hasErrors() {
+		return !shaderErrors.isEmpty();
+	}
+
+	public List<ShaderError> getErrors() {
+		return shaderErrors;
+	}
+
+	public void setErrors(@NonNull List<ShaderError> errors) {
+		shaderErrors = errors;
+	}
+
+	public void updateHighlighting() {
+		// Does nothing if this revision is already being tokenized.
+		tokenListUpdater.update(text, revision);
+		invalidate();
+	}
+
+	public void updateErrorHighlighting() {
+		invalidate();
+	}
+
+	/**
+	 * Find obvious errors in the current text in the background, like
+	 * {@link ShaderEditor#validate} does.
+	 */
+	public void validate(@NonNull ShaderEditor.OnValidatedListener listener) {
+		int validatedRevision = revision;
+		tokenListUpdater.update(text, validatedRevision);
+		tokenListUpdater.validate(validatedRevision, errors -> post(() -> {
+			if (validatedRevision == revision) {
+				listener.onValidated(errors);
+			}
+		}));
+	}
+
+	public void navigateToLine(int lineNumber) {
+		if (lineNumber < 1 || lineNumber > lineIndex.lineCount()) {
+			return;
+		}
+		int lineStart = lineIndex.lineStart(lineNumber - 1);
+		int lineEnd = lineIndex.lineEnd(lineNumber - 1);
+		if (getSelectionStart() >= lineStart &&
+				getSelectionEnd() <= lineEnd) {
+			return;
+		}
+		Selection.setSelection(text, lineStart);
+	}
+
+	@NonNull
+	public Editable getEditableText() {
+		return text;
+	}
+
+	public void setTextHighlighted(CharSequence text) {
+		if (text == null) {
+			text = "";
+		}
+		CharSequence replaced = ShaderEditor.replaceNoBreakSpaces(text, 0, text.length());
+		if (replaced != null) {
+			text = replaced;
+		}
+		removeCallbacks(updateRunnable);
+		shaderErrors = Collections.emptyList();
+		setText(text);
+
+		if (onTextModifiedListener != null) {
+			onTextModifiedListener.onTextModified();
+		}
+		if (onEditPausedListener != null) {
+			onEditPausedListener.onEditPaused(this.text.toString());
+		}
+	}
+
+	public String getCleanText() {
+		return ShaderEditor.cleanText(text);
+	}
+
+	public void insert(@NonNull CharSequence text) {
+		replace(getSelectionMin(), getSelectionMax(), text);
+	}
+
+	/**
+	 * Replace the {@code typed} characters before the cursor with {@code completion}.
+	 */
+	public void complete(@NonNull CharSequence completion, int typed) {
+		replace(Math.max(0, getSelectionMin() - typed), getSelectionMax(), completion);
+	}
+
+	public void addUniform(String statement) {
+		ShaderEditor.addUniform(text, statement);
+	}
+
+	public int getSelectionStart() {
+		return Selection.getSelectionStart(text);
+	}
+
+	public int getSelectionEnd() {
+		return Selection.getSelectionEnd(text);
+	}
+
+	@Override
+	public boolean onCheckIsTextEditor() {
+		return true;
+	}
+
+	@Nullable
+	@Override
+	public InputConnection onCreateInputConnection(@NonNull EditorInfo outAttrs) {
+		outAttrs.inputType = ShaderEditorApp.preferences.hideNativeSuggestions()
+				? InputType.TYPE_NULL
+				: InputType.TYPE_CLASS_TEXT |
+						InputType.TYPE_TEXT_FLAG_MULTI_LINE |
+						InputType.TYPE_TEXT_FLAG_NO_SUGGESTIONS;
+		outAttrs.imeOptions = EditorInfo.IME_FLAG_NO_EXTRACT_UI |
+				EditorInfo.IME_FLAG_NO_FULLSCREEN;
+		outAttrs.initialSelStart = getSelectionStart();
+		outAttrs.initialSelEnd = getSelectionEnd();
+		return new BaseInputConnection(this, true) {
+			@Override
+			public Editable getEditable() {
+				return text;
+			}
+
+			@Override
+			public boolean performContextMenuAction(int id) {
+				return onTextContextMenuItem(id);
+			}
+		};
+	}
+
+	@Override
+	public boolean onKeyDown(int keyCode, KeyEvent event) {
+		return onKey(keyCode, event) || super.onKeyDown(keyCode, event);
+	}
+
+	@Override
+	public boolean onTouchEvent(MotionEvent event) {
+		if (isSelecting) {
+			switch (event.getActionMasked()) {
+				case MotionEvent.ACTION_MOVE:
+					Selection.extendSelection(text,
+							offsetAt(event.getX(), event.getY()));
+					return true;
+				case MotionEvent.ACTION_UP:
+				case MotionEvent.ACTION_CANCEL:
+					isSelecting = false;
+					startTextActionMode();
+					return true;
+				default:
+					return true;
+			}
+		}
+		return gestureDetector.onTouchEvent(event) || super.onTouchEvent(event);
+	}
+
+	@Override
+	public void computeScroll() {
+		if (scroller.computeScrollOffset()) {
+			scrollTo(scroller.getCurrX(), scroller.getCurrY());
+			postInvalidateOnAnimation();
+		}
+	}
+
+	@Override
+	public void scrollTo(int x, int y) {
+		super.scrollTo(
+				Math.max(0, Math.min(x, getMaxScrollX())),
+				Math.max(0, Math.min(y, getMaxScrollY())));
+	}
+
+	@Override
+	protected int computeVerticalScrollRange() {
+		return getContentHeight();
+	}
+
+	@Override
+	protected int computeHorizontalScrollRange() {
+		return getContentWidth();
+	}
+
+	@Override
+	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+		// The soft keyboard may cover the cursor now.
+		scrollTo(getScrollX(), getScrollY());
+		if (hasFocus()) {
+			bringCursorIntoView();
+		}
+	}
+
+	@Override
+	protected void onFocusChanged(boolean gainFocus, int direction,
+			@Nullable Rect previouslyFocusedRect) {
+		super.onFocusChanged(gainFocus, direction, previouslyFocusedRect);
+		if (gainFocus) {
+			restartBlink();
+		} else {
+			removeCallbacks(blinkRunnable);
+			isCursorVisible = false;
+			finishTextActionMode();
+			invalidate();
+		}
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		removeCallbacks(updateRunnable);
+		removeCallbacks(blinkRunnable);
+		tokenListUpdater.shutdown();
+	}
+
+	@Override
+	protected void onDraw(@NonNull Canvas canvas) {
+		int lineCount = lineIndex.lineCount();
+		int scrollX = getScrollX();
+		int scrollY = getScrollY();
+		int top = getPaddingTop();
+		int firstLine = Math.max(0, (scrollY - top) / lineHeight);
+		int lastLine = Math.min(lineCount - 1,
+				(scrollY + getHeight() - top) / lineHeight);
+		float textLeft = getTextLeft();
+		float right = scrollX + getWidth();
+
+		drawErrors(canvas, firstLine, lastLine, scrollX, right);
+
+		int save = canvas.save();
+		canvas.clipRect(scrollX + textLeft, scrollY, right, scrollY + getHeight());
+		drawSelection(canvas, firstLine, lastLine, textLeft);
+		for (int line = firstLine; line <= lastLine; ++line) {
+			drawLine(canvas, line, textLeft, getLineTop(line) + baseline, right);
+		}
+		drawCursor(canvas, textLeft);
+		canvas.restoreToCount(save);
+
+		if (lineNumbers.isVisible()) {
+			float numbersRight = scrollX + lineNumbers.numbersRight(lineCount);
+			for (int line = firstLine; line <= lastLine; ++line) {
+				lineNumbers.draw(canvas, line, numbersRight, getLineTop(line) + baseline);
+			}
+		}
+	}
+
+	@Override
+	protected Parcelable onSaveInstanceState() {
+		SavedState state = new SavedState(super.onSaveInstanceState());
+		if (text.length() <= MAX_SAVED_CHARS) {
+			state.text = text.toString();
+		} else {
+			// Taking a snapshot doesn't copy the text.
+			retainedText = text.snapshot();
+			state.retainedId = ++retainedId;
+		}
+		state.selectionStart = getSelectionStart();
+		state.selectionEnd = getSelectionEnd();
+		state.scrollX = getScrollX();
+		state.scrollY = getScrollY();
+		return state;
+	}
+
+	@Override
+	protected void onRestoreInstanceState(Parcelable state) {
+		if (!(state instanceof SavedState savedState)) {
+			super.onRestoreInstanceState(state);
+			return;
+		}
+		super.onRestoreInstanceState(savedState.getSuperState());
+		CharSequence restored = savedState.text;
+		if (restored == null && savedState.retainedId == retainedId) {
+			restored = retainedText;
+			retainedText = null;
+		}
+		setText(restored != null ? restored : "");
+		hasLostText = restored == null;
+		int length = text.length();
+		Selection.setSelection(text,
+				Math.min(savedState.selectionStart, length),
+				Math.min(savedState.selectionEnd, length));
+		int scrollX = savedState.scrollX;
+		int scrollY = savedState.scrollY;
+		// The size of the view isn't known yet.
+		post(() -> scrollTo(scrollX, scrollY));
+	}
+
+	/**
+	 * @return True if the text couldn't be restored because it was too long for the
+	 * saved state and the process was ended in between.
+	 */
+	public boolean hasLostText() {
+		return hasLostText;
+	}
+
+	/**
+	 * Perform a text action like TextView does.
+	 *
+	 * @param id One of {@code android.R.id.selectAll}, {@code cut}, {@code copy} or
+	 *           {@code paste}.
+	 * @return Whether the action was performed.
+	 */
+	public boolean onTextContextMenuItem(int id) {
+		int min = getSelectionMin();
+		int max = getSelectionMax();
+		ClipboardManager clipboard = (ClipboardManager) getContext().getSystemService(
+				Context.CLIPBOARD_SERVICE);
+		if (id == android.R.id.selectAll) {
+			Selection.selectAll(text);
+			startTextActionMode();
+			return true;
+		} else if (id == android.R.id.cut || id == android.R.id.copy) {
+			if (min == max || clipboard == null) {
+				return false;
+			}
+			clipboard.setPrimaryClip(ClipData.newPlainText(null,
+					text.subSequence(min, max).toString()));
+			if (id == android.R.id.cut) {
+				replace(min, max, "");
+			}
+			return true;
+		} else if (id == android.R.id.paste) {
+			ClipData clip = clipboard != null ? clipboard.getPrimaryClip() : null;
+			if (clip == null || clip.getItemCount() < 1) {
+				return false;
+			}
+			replace(min, max, clip.getItemAt(0).coerceToText(getContext()));
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Set the text without telling the listeners.
+	 */
+	private void setText(@NonNull CharSequence newText) {
+		finishTextActionMode();
+		isUserInteraction = false;
+		hasLostText = false;
+		tokenListUpdater.reset();
+		tokenListUpdater.update(newText, ++revision);
+		widestColumns = 0;
+		isWidestStale = false;
+		text.replace(0, text.length(), newText);
+		// The tokens already describe the new text.
+		tokenListUpdater.discardEdits();
+		isUserInteraction = true;
+		Selection.setSelection(text, 0);
+		scroller.forceFinished(true);
+		scrollTo(0, 0);
+		InputMethodManager imm = getInputMethodManager();
+		if (imm != null) {
+			imm.restartInput(this);
+		}
+		invalidate();
+	}
+
+	/**
+	 * Replace the given range and put the cursor after the new text.
+	 */
+	private void replace(int start, int end, @NonNull CharSequence replacement) {
+		int length = text.length();
+		text.replace(start, end, replacement);
+		// Filters may have changed what was inserted.
+		Selection.setSelection(text, end + text.length() - length);
+	}
+
+	private void onTokenized(int tokenRevision, @NonNull TokenBuffer newTokens,
+			@NonNull CharSequence tokenizedText) {
+		if (tokenRevision != revision) {
+			// The text has changed since, a newer result is coming.
+			return;
+		}
+		if (tokens != null && tokens != newTokens) {
+			tokenListUpdater.recycle(tokens);
+		}
+		tokens = newTokens;
+		inactiveRegions = tokenListUpdater.getCompletedInactiveRegions(tokenRevision);
+		editsSinceTokens.clear();
+		invalidate();
+		provideCompletions(newTokens, tokenizedText);
+	}
+
+	private void provideCompletions(@NonNull TokenBuffer completedTokens,
+			@NonNull CharSequence completedText) {
+		ShaderEditor.CodeCompletionListener listener = codeCompletionListener;
+		if (listener != null && getSelectionStart() == getSelectionEnd()) {
+			ShaderEditor.provideCompletions(listener, completer, tokenListUpdater,
+					libraryUsage, completedTokens, completedText, getSelectionStart());
+		}
+	}
+
+	private void onSelectionChanged() {
+		restartBlink();
+		bringCursorIntoView();
+		if (actionMode != null) {
+			actionMode.invalidateContentRect();
+		}
+		InputMethodManager imm = getInputMethodManager();
+		if (imm != null) {
+			imm.updateSelection(this,
+					getSelectionStart(),
+					getSelectionEnd(),
+					BaseInputConnection.getComposingSpanStart(text),
+					BaseInputConnection.getComposingSpanEnd(text));
+		}
+		TokenBuffer completedTokens = tokenListUpdater.getCompletedTokens(revision);
+		if (completedTokens != null) {
+			provideCompletions(completedTokens, text);
+		}
+	}
+
+	private boolean onKey(int keyCode, @NonNull KeyEvent event) {
+		int min = getSelectionMin();
+		int max = getSelectionMax();
+		int cursor = getSelectionEnd();
+		boolean shift = event.isShiftPressed();
+		if (event.isCtrlPressed()) {
+			return switch (keyCode) {
+				case KeyEvent.KEYCODE_A -> onTextContextMenuItem(android.R.id.selectAll);
+				case KeyEvent.KEYCODE_C -> onTextContextMenuItem(android.R.id.copy);
+				case KeyEvent.KEYCODE_X -> onTextContextMenuItem(android.R.id.cut);
+				case KeyEvent.KEYCODE_V -> onTextContextMenuItem(android.R.id.paste);
+				default -> false;
+			};
+		}
+		switch (keyCode) {
+			case KeyEvent.KEYCODE_DPAD_LEFT:
+				moveCursor(!shift && min < max ? min : Math.max(0, cursor - 1), shift);
+				return true;
+			case KeyEvent.KEYCODE_DPAD_RIGHT:
+				moveCursor(!shift && min < max
+						? max
+						: Math.min(text.length(), cursor + 1), shift);
+				return true;
+			case KeyEvent.KEYCODE_DPAD_UP:
+				moveCursor(offsetInLine(cursor, -1), shift);
+				return true;
+			case KeyEvent.KEYCODE_DPAD_DOWN:
+				moveCursor(offsetInLine(cursor, 1), shift);
+				return true;
+			case KeyEvent.KEYCODE_PAGE_UP:
+				moveCursor(offsetInLine(cursor, -getLinesPerPage()), shift);
+				return true;
+			case KeyEvent.KEYCODE_PAGE_DOWN:
+				moveCursor(offsetInLine(cursor, getLinesPerPage()), shift);
+				return true;
+			case KeyEvent.KEYCODE_MOVE_HOME:
+				moveCursor(lineIndex.lineStart(lineIndex.lineOf(cursor)), shift);
+				return true;
+			case KeyEvent.KEYCODE_MOVE_END:
+				moveCursor(getLineTextEnd(lineIndex.lineOf(cursor)), shift);
+				return true;
+			case KeyEvent.KEYCODE_DEL:
+				if (min < max) {
+					replace(min, max, "");
+				} else if (min > 0) {
+					replace(min - 1, min, "");
+				}
+				return true;
+			case KeyEvent.KEYCODE_FORWARD_DEL:
+				if (min < max) {
+					replace(min, max, "");
+				} else if (max < text.length()) {
+					replace(min, max + 1, "");
+				}
+				return true;
+			case KeyEvent.KEYCODE_ENTER:
+			case KeyEvent.KEYCODE_NUMPAD_ENTER:
+				replace(min, max, "\n");
+				return true;
+			case KeyEvent.KEYCODE_TAB:
+				if (!ShaderEditorApp.preferences.useTabForIndent()) {
+					return false;
+				}
+				replace(min, max, "\t");
+				return true;
+			default:
+				int c = event.getUnicodeChar();
+				if (c == 0 || (c & KeyCharacterMap.COMBINING_ACCENT) != 0) {
+					return false;
+				}
+				replace(min, max, String.valueOf((char) c));
+				return true;
+		}
+	}
+
+	private void moveCursor(int offset, boolean extend) {
+		if (extend) {
+			Selection.extendSelection(text, offset);
+		} else {
+			Selection.setSelection(text, offset);
+		}
+	}
+
+	/**
+	 * @return The offset that is {@code lines} lines below {@code offset} at the
+	 * same horizontal position.
+	 */
+	private int offsetInLine(int offset, int lines) {
+		int line = lineIndex.lineOf(offset);
+		int target = Math.max(0, Math.min(lineIndex.lineCount() - 1, line + lines));
+		return offsetAtX(target, measureRange(lineIndex.lineStart(line), offset));
+	}
+
+	private int getLinesPerPage() {
+		return Math.max(1, getHeight() / lineHeight - 1);
+	}
+
+	private void drawErrors(@NonNull Canvas canvas, int firstLine, int lastLine,
+			float left, float right) {
+		if (shaderErrors.isEmpty()) {
+			return;
+		}
+		for (ShaderError error : shaderErrors) {
+			int line = error.getLine() - 1;
+			if (line >= firstLine && line <= lastLine) {
+				float top = getLineTop(line);
+				canvas.drawRect(left, top, right, top + lineHeight, errorPaint);
+			}
+		}
+	}
+
+	private void drawSelection(@NonNull Canvas canvas, int firstLine, int lastLine,
+			float textLeft) {
+		int min = getSelectionMin();
+		int max = getSelectionMax();
+		if (min >= max) {
+			return;
+		}
+		int from = Math.max(firstLine, lineIndex.lineOf(min));
+		int to = Math.min(lastLine, lineIndex.lineOf(max));
+		for (int line = from; line <= to; ++line) {
+			int lineStart = lineIndex.lineStart(line);
+			int lineEnd = getLineTextEnd(line);
+			float left = textLeft + measureRange(lineStart, Math.max(min, lineStart));
+			float right = textLeft + measureRange(lineStart, Math.min(max, lineEnd));
+			if (max > lineEnd) {
+				// Show that the line break is selected.
+				right += charWidth;
+			}
+			float top = getLineTop(line);
+			canvas.drawRect(left, top, right, top + lineHeight, highlightPaint);
+		}
+	}
+
+	/**
+	 * Draw {@code line} in the colors of its tokens, up to {@code right}.
+	 */
+	private void drawLine(@NonNull Canvas canvas, int line, float x, float y, float right) {
+		int offset = lineIndex.lineStart(line);
+		int end = getLineTextEnd(line);
+		while (offset < end && x < right) {
+			if (text.charAt(offset) == '\t') {
+				x += tabWidth;
+				++offset;
+				continue;
+			}
+			int runEnd = Math.min(end, syntaxColors.runEnd(
+					tokens,
+					editsSinceTokens,
+					inactiveRegions,
+					offset));
+			int tab = TextUtils.indexOf(text, '\t', offset, runEnd);
+			if (tab > -1) {
+				runEnd = tab;
+			}
+			paint.setColor(syntaxColors.runColor());
+			canvas.drawText(text, offset, runEnd, x, y, paint);
+			x += paint.measureText(text, offset, runEnd);
+			offset = runEnd;
+		}
+	}
+
+	private void drawCursor(@NonNull Canvas canvas, float textLeft) {
+		int cursor = getSelectionEnd();
+		if (!isCursorVisible || cursor < 0 || cursor != getSelectionStart()) {
+			return;
+		}
+		int line = lineIndex.lineOf(cursor);
+		float x = textLeft + measureRange(lineIndex.lineStart(line), cursor);
+		float top = getLineTop(line);
+		paint.setColor(syntaxColors.textColor());
+		canvas.drawRect(x, top, x + cursorWidth, top + lineHeight, paint);
+	}
+
+	/**
+	 * @return The width of the text from {@code start} to {@code end}, which
+	 * must be in the same line.
+	 */
+	private float measureRange(int start, int end) {
+		float width = 0;
+		while (start < end) {
+			if (text.charAt(start) == '\t') {
+				width += tabWidth;
+				++start;
+				continue;
+			}
+			int tab = TextUtils.indexOf(text, '\t', start, end);
+			int runEnd = tab > -1 ? tab : end;
+			width += paint.measureText(text, start, runEnd);
+			start = runEnd;
+		}
+		return width;
+	}
+
+	/**
+	 * @return The offset of the character at the given point of the view.
+	 */
+	private int offsetAt(float x, float y) {
+		int line = (int) ((y + getScrollY() - getPaddingTop()) / lineHeight);
+		line = Math.max(0, Math.min(lineIndex.lineCount() - 1, line));
+		return offsetAtX(line, x + getScrollX() - getTextLeft());
+	}
+
+	/**
+	 * @return The offset in {@code line} that is closest to {@code x}.
+	 */
+	private int offsetAtX(int line, float x) {
+		int offset = lineIndex.lineStart(line);
+		int end = getLineTextEnd(line);
+		float left = 0;
+		while (offset < end) {
+			if (text.charAt(offset) == '\t') {
+				if (x < left + tabWidth / 2) {
+					return offset;
+				}
+				left += tabWidth;
+				++offset;
+				continue;
+			}
+			int tab = TextUtils.indexOf(text, '\t', offset, end);
+			int runEnd = tab > -1 ? tab : end;
+			int count = runEnd - offset;
+			if (widths.length < count) {
+				widths = new float[count];
+			}
+			paint.getTextWidths(text, offset, runEnd, widths);
+			for (int i = 0; i < count; ++i) {
+				if (x < left + widths[i] / 2) {
+					return offset + i;
+				}
+				left += widths[i];
+			}
+			offset = runEnd;
+		}
+		return end;
+	}
+
+	/**
+	 * Select the word at the given point of the view.
+	 */
+	private void selectWordAt(float x, float y) {
+		int offset = offsetAt(x, y);
+		int start = offset;
+		while (start > 0 && isWordChar(text.charAt(start - 1))) {
+			--start;
+		}
+		int end = offset;
+		while (end < text.length() && isWordChar(text.charAt(end))) {
+			++end;
+		}
+		Selection.setSelection(text, start, end);
+	}
+
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+
+	private void bringCursorIntoView() {
+		int cursor = getSelectionEnd();
+		if (cursor < 0 || getWidth() == 0) {
+			return;
+		}
+		int line = lineIndex.lineOf(cursor);
+		int top = getLineTop(line);
+		int x = Math.round(measureRange(lineIndex.lineStart(line), cursor));
+		int scrollX = getScrollX();
+		int scrollY = getScrollY();
+		int visibleWidth = Math.round(getWidth() - getTextLeft() -
+				getPaddingRight() - charWidth);
+		if (x < scrollX) {
+			scrollX = x;
+		} else if (x > scrollX + visibleWidth) {
+			scrollX = x - visibleWidth;
+		}
+		if (top < scrollY) {
+			scrollY = top;
+		} else if (top + lineHeight > scrollY + getHeight()) {
+			scrollY = top + lineHeight - getHeight();
+		}
+		if (scrollX != getScrollX() || scrollY != getScrollY()) {
+			scroller.forceFinished(true);
+			scrollTo(scrollX, scrollY);
+		}
+	}
+
+	private void restartBlink() {
+		removeCallbacks(blinkRunnable);
+		if (hasFocus()) {
+			isCursorVisible = true;
+			postDelayed(blinkRunnable, BLINK_MILLIS);
+		}
+		invalidate();
+	}
+
+	private void startTextActionMode() {
+		if (actionMode != null) {
+			actionMode.invalidate();
+			return;
+		}
+		actionMode = startActionMode(new TextActionModeCallback(),
+				ActionMode.TYPE_FLOATING);
+	}
+
+	private void finishTextActionMode() {
+		if (actionMode != null) {
+			actionMode.finish();
+		}
+	}
+
+	private void showSoftInput() {
+		InputMethodManager imm = getInputMethodManager();
+		if (imm != null) {
+			imm.showSoftInput(this, 0);
+		}
+	}
+
+	@Nullable
+	private InputMethodManager getInputMethodManager() {
+		return (InputMethodManager) getContext().getSystemService(
+				Context.INPUT_METHOD_SERVICE);
+	}
+
+	private void updateMetrics() {
+		lineHeight = Math.max(1, paint.getFontMetricsInt(fontMetrics));
+		baseline = -fontMetrics.ascent;
+		charWidth = paint.measureText("m");
+		tabWidth = Math.round(charWidth * tabWidthInCharacters);
+		scrollTo(getScrollX(), getScrollY());
+		invalidate();
+	}
+
+	/**
+	 * @return The number of characters of the longest line, with tabs expanded.
+	 */
+	private int getWidestColumns() {
+		if (isWidestStale) {
+			isWidestStale = false;
+			widestColumns = widestLine(0, text.length());
+		}
+		return widestColumns;
+	}
+
+	/**
+	 * @return The number of characters of the longest of the lines from
+	 * {@code start} to {@code end}, with tabs expanded.
+	 */
+	private int widestLine(int start, int end) {
+		int from = lineIndex.lineStart(lineIndex.lineOf(start));
+		int to = lineIndex.lineEnd(lineIndex.lineOf(end));
+		int widest = 0;
+		int columns = 0;
+		for (int offset = from; offset < to; offset += scanChars.length) {
+			int count = Math.min(to - offset, scanChars.length);
+			text.getChars(offset, offset + count, scanChars, 0);
+			for (int i = 0; i < count; ++i) {
+				char c = scanChars[i];
+				if (c == '\n') {
+					widest = Math.max(widest, columns);
+					columns = 0;
+				} else {
+					columns += c == '\t' ? tabWidthInCharacters : 1;
+				}
+			}
+		}
+		return Math.max(widest, columns);
+	}
+
+	/**
+	 * @return The end of the text of {@code line}, without the line break.
+	 */
+	private int getLineTextEnd(int line) {
+		int end = lineIndex.lineEnd(line);
+		return end > lineIndex.lineStart(line) && text.charAt(end - 1) == '\n'
+				? end - 1
+				: end;
+	}
+
+	private int getLineTop(int line) {
+		return getPaddingTop() + line * lineHeight;
+	}
+
+	private float getTextLeft() {
+		return lineNumbers.isVisible()
+				? lineNumbers.width(lineIndex.lineCount())
+				: getPaddingLeft();
+	}
+
+	private int getContentWidth() {
+		return Math.round(getTextLeft() + (getWidestColumns() + 1) * charWidth) +
+				getPaddingRight();
+	}
+
+	private int getContentHeight() {
+		return getLineTop(lineIndex.lineCount()) + getPaddingBottom();
+	}
+
+	private int getMaxScrollX() {
+		return Math.max(0, getContentWidth() - getWidth());
+	}
+
+	private int getMaxScrollY() {
+		return Math.max(0, getContentHeight() - getHeight());
+	}
+
+	private int getSelectionMin() {
+		return Math.max(0, Math.min(getSelectionStart(), getSelectionEnd()));
+	}
+
+	private int getSelectionMax() {
+		return Math.max(0, Math.max(getSelectionStart(), getSelectionEnd()));
+	}
+
+	/**
+	 * Keeps everything that depends on the text up to date, like TextView's
+	 * ChangeWatcher does.
+	 */
+	private final class ChangeWatcher implements TextWatcher, SpanWatcher {
+		private int start = 0;
+		private int count = 0;
+		// Width of the longest of the lines that are changed.
+		private int replacedColumns = 0;
+
+		@Override
+		public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+			replacedColumns = widestColumns > 0 && !isWidestStale
+					? widestLine(start, start + count)
+					: 0;
+		}
+
+		@Override
+		public void onTextChanged(CharSequence s, int start, int before, int count) {
+			this.start = start;
+			this.count = count;
+			tokenListUpdater.recordEdit(s, start, before, count);
+			lineIndex.replace(s, start, before, count);
+			editsSinceTokens.add(start, before, count);
+			if (!isWidestStale) {
+				int columns = widestLine(start, start + count);
+				if (columns >= widestColumns) {
+					widestColumns = columns;
+				} else if (replacedColumns == widestColumns) {
+					// The longest line got shorter, another one may be
+					// the longest now.
+					isWidestStale = true;
+				}
+			}
+		}
+
+		@Override
+		public void afterTextChanged(Editable e) {
+			removeCallbacks(updateRunnable);
+			invalidate();
+
+			String converted = ShaderEditor.convertShaderToySource(e, start, count);
+			if (converted != null) {
+				// Tells the listeners itself.
+				setTextHighlighted(converted);
+				return;
+			}
+
+			if (!isUserInteraction) {
+				return;
+			}
+
+			if (onTextModifiedListener != null) {
+				onTextModifiedListener.onTextModified();
+			}
+
+			tokenListUpdater.update(e, ++revision);
+			postDelayed(updateRunnable, updateDelay);
+		}
+
+		@Override
+		public void onSpanAdded(Spannable text, Object what, int start, int end) {
+			onSpanChanged(what);
+		}
+
+		@Override
+		public void onSpanRemoved(Spannable text, Object what, int start, int end) {
+		}
+
+		@Override
+		public void onSpanChanged(Spannable text, Object what, int ostart, int oend,
+				int nstart, int nend) {
+			onSpanChanged(what);
+		}
+
+		private void onSpanChanged(Object what) {
+			if (what == Selection.SELECTION_START || what == Selection.SELECTION_END) {
+				onSelectionChanged();
+			}
+		}
+	}
+
+	private final class GestureListener extends GestureDetector.SimpleOnGestureListener {
+		@Override
+		public boolean onDown(@NonNull MotionEvent e) {
+			scroller.forceFinished(true);
+			return true;
+		}
+
+		@Override
+		public boolean onSingleTapUp(@NonNull MotionEvent e) {
+			finishTextActionMode();
+			requestFocus();
+			Selection.setSelection(text, offsetAt(e.getX(), e.getY()));
+			showSoftInput();
+			performClick();
+			return true;
+		}
+
+		@Override
+		public boolean onDoubleTap(@NonNull MotionEvent e) {
+			selectWordAt(e.getX(), e.getY());
+			startTextActionMode();
+			return true;
+		}
+
+		@Override
+		public void onLongPress(@NonNull MotionEvent e) {
+			requestFocus();
+			performHapticFeedback(HapticFeedbackConstants.LONG_PRESS);
+			selectWordAt(e.getX(), e.getY());
+			isSelecting = true;
+		}
+
+		@Override
+		public boolean onScroll(@Nullable MotionEvent e1, @NonNull MotionEvent e2,
+				float distanceX, float distanceY) {
+			scrollBy(Math.round(distanceX), Math.round(distanceY));
+			return true;
+		}
+
+		@Override
+		public boolean onFling(@Nullable MotionEvent e1, @NonNull MotionEvent e2,
+				float velocityX, float velocityY) {
+			scroller.fling(getScrollX(), getScrollY(),
+					-Math.round(velocityX), -Math.round(velocityY),
+					0, getMaxScrollX(),
+					0, getMaxScrollY());
+			postInvalidateOnAnimation();
+			return true;
+		}
+	}
+
+	private final class TextActionModeCallback extends ActionMode.Callback2 {
+		@Override
+		public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+			menu.add(Menu.NONE, android.R.id.cut, 0, android.R.string.cut);
+			menu.add(Menu.NONE, android.R.id.copy, 1, android.R.string.copy);
+			menu.add(Menu.NONE, android.R.id.paste, 2, android.R.string.paste);
+			menu.add(Menu.NONE, android.R.id.selectAll, 3, android.R.string.selectAll);
+			return true;
+		}
+
+		@Override
+		public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+			boolean hasSelection = getSelectionMin() < getSelectionMax();
+			menu.findItem(android.R.id.cut).setVisible(hasSelection);
+			menu.findItem(android.R.id.copy).setVisible(hasSelection);
+			return true;
+		}
+
+		@Override
+		public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+			int id = item.getItemId();
+			boolean handled = onTextContextMenuItem(id);
+			if (id != android.R.id.selectAll) {
+				mode.finish();
+			}
+			return handled;
+		}
+
+		@Override
+		public void onDestroyActionMode(ActionMode mode) {
+			actionMode = null;
+		}
+
+		@Override
+		public void onGetContentRect(ActionMode mode, View view, Rect outRect) {
+			int min = getSelectionMin();
+			int line = lineIndex.lineOf(min);
+			int x = Math.round(getTextLeft() +
+					measureRange(lineIndex.lineStart(line), min)) - getScrollX();
+			int top = getLineTop(line) - getScrollY();
+			outRect.set(x, top, x + 1, top + lineHeight);
+		}
+	}
+
+	static class SavedState extends BaseSavedState {
+		public static final Creator<SavedState> CREATOR = new Creator<>() {
+			@Override
+			public SavedState createFromParcel(Parcel in) {
+				return new SavedState(in);
+			}
+
+			@Override
+			public SavedState[] newArray(int size) {
+				return new SavedState[size];
+			}
+		};
+
+		// Null if the text is retained or lost.
+		@Nullable
+		private String text;
+		private int retainedId;
+		private int selectionStart;
+		private int selectionEnd;
+		private int scrollX;
+		private int scrollY;
+
+		SavedState(Parcelable superState) {
+			super(superState);
+		}
+
+		private SavedState(Parcel in) {
+			super(in);
+			text = in.readString();
+			retainedId = in.readInt();
+			selectionStart = in.readInt();
+			selectionEnd = in.readInt();
+			scrollX = in.readInt();
+			scrollY = in.readInt();
+		}
+
+		@Override
+		public void writeToParcel(Parcel out, int flags) {
+			super.writeToParcel(out, flags);
+			out.writeString(text);
+			out.writeInt(retainedId);
+			out.writeInt(selectionStart);
+			out.writeInt(selectionEnd);
+			out.writeInt(scrollX);
+			out.writeInt(scrollY);
+		}
+	}
+}
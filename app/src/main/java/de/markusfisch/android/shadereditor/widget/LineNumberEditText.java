@@ -1,25 +1,30 @@
 package de.markusfisch.android.shadereditor.widget;
 
 import android.content.Context;
-import android.content.res.TypedArray;
 import android.graphics.Canvas;
-import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.Typeface;
+import android.text.Layout;
 import android.util.AttributeSet;
+import android.view.ViewTreeObserver;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.widget.AppCompatEditText;
 
-import de.markusfisch.android.shadereditor.R;
-
 public class LineNumberEditText extends AppCompatEditText {
-	private final float lineNumberSpacing;
-	private final float lineNumberPadding;
+	private final Rect clipRect = new Rect();
+	private final Rect visibleRect = new Rect();
+	private final ViewTreeObserver.OnScrollChangedListener onScrollChangedListener =
+			this::onViewportScrolled;
 
-	private boolean showLineNumbers;
-	private Paint lineNumberPaint;
-	private float bigChar;
+	private LineNumbers lineNumbers;
 	private int paddingLeft;
+	// Vertical range of the view that was drawn last.
+	private int drawnTop;
+	private int drawnBottom = -1;
+	private int firstDrawnLine;
+	private int lastDrawnLine = -1;
 
 	public LineNumberEditText(Context context) {
 		this(context, null);
@@ -27,52 +32,21 @@ public class LineNumberEditText extends AppCompatEditText {
 
 	public LineNumberEditText(Context context, AttributeSet attrs) {
 		super(context, attrs);
-		int lineColor;
-		//noinspection resource
-		TypedArray a = context.getTheme().obtainStyledAttributes(
-				attrs,
-				R.styleable.LineNumberEditText,
-				0, 0);
-
-		try {
-			showLineNumbers = a.getBoolean(
-					R.styleable.LineNumberEditText_showLineNumbers,
-					true);
-			lineColor = a.getColor(
-					R.styleable.LineNumberEditText_lineNumberColor,
-					0x88888888);
-			lineNumberSpacing = a.getDimension(
-					R.styleable.LineNumberEditText_lineNumberSpacing,
-					16);
-			lineNumberPadding = a.getDimension(
-					R.styleable.LineNumberEditText_lineNumberPadding,
-					8);
-		} finally {
-			a.recycle();
-		}
-		init(lineColor);
+		paddingLeft = getPaddingLeft();
+		lineNumbers = new LineNumbers(context, attrs, getPaint());
 	}
 
 	public void setShowLineNumbers(boolean showLineNumbers) {
-		if (showLineNumbers != this.showLineNumbers) {
-			this.showLineNumbers = showLineNumbers;
+		if (lineNumbers.setVisible(showLineNumbers)) {
 			postInvalidate();
 		}
 	}
 
-	private void init(int color) {
-		paddingLeft = getPaddingLeft();
-		lineNumberPaint = new Paint(getPaint());
-		lineNumberPaint.setColor(color);
-		measureBigChar();
-	}
-
 	@Override
 	public void setTypeface(@Nullable Typeface tf) {
 		super.setTypeface(tf);
-		if (lineNumberPaint != null) {
-			lineNumberPaint.setTypeface(tf);
-			measureBigChar();
+		if (lineNumbers != null) {
+			lineNumbers.setTypeface(tf);
 		}
 	}
 
@@ -82,71 +56,98 @@ public class LineNumberEditText extends AppCompatEditText {
 		super.setPadding(left, top, right, bottom);
 	}
 
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		getViewTreeObserver().addOnScrollChangedListener(onScrollChangedListener);
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		getViewTreeObserver().removeOnScrollChangedListener(onScrollChangedListener);
+	}
+
 	@Override
 	protected void onDraw(Canvas canvas) {
-		if (!showLineNumbers) {
-			super.setPadding(
-					paddingLeft,
-					getPaddingTop(),
-					getPaddingRight(),
-					getPaddingBottom());
+		if (!lineNumbers.isVisible()) {
+			setPaddingLeftWhileDrawing(paddingLeft);
+			updateDrawnLines(canvas);
 			super.onDraw(canvas);
 			return;
 		}
 		int lineCount = getLineCount();
-		final int lineCountNumDigits = numDigits(lineCount);
-		int editTextPaddingLeft = (int) (bigChar * lineCountNumDigits + lineNumberPadding);
-		super.setPadding(
-				(int) (editTextPaddingLeft + lineNumberSpacing),
-				getPaddingTop(),
-				getPaddingRight(),
-				getPaddingBottom());
+		float numbersRight = lineNumbers.numbersRight(lineCount);
+		setPaddingLeftWhileDrawing((int) lineNumbers.width(lineCount));
+		updateDrawnLines(canvas);
 		super.onDraw(canvas);
-		for (int i = 0, lineNumber = 1; i < lineCount; ++i) {
-			int baseline = getLineBounds(i, null);
-			canvas.drawText(
-					Integer.toString(lineNumber),
-					bigChar * (lineCountNumDigits - numDigits(lineNumber)) + lineNumberPadding,
-					baseline,
-					lineNumberPaint);
-			++lineNumber;
+		for (int i = firstDrawnLine; i <= lastDrawnLine; ++i) {
+			lineNumbers.draw(canvas, i, numbersRight, getLineBounds(i, null));
 		}
 	}
 
-	private void measureBigChar() {
-		bigChar = lineNumberPaint.measureText("m");
+	/**
+	 * @return The first line of the layout that was drawn last.
+	 */
+	protected int getFirstDrawnLine() {
+		return firstDrawnLine;
+	}
+
+	/**
+	 * @return The last line of the layout that was drawn last or -1 if there was none.
+	 */
+	protected int getLastDrawnLine() {
+		return lastDrawnLine;
 	}
 
 	/**
-	 * Taken from
-	 * <a href="https://www.baeldung.com/java-number-of-digits-in-int#5-divide-and-conquer">Baeldung (Number of Digits in an Integer in Java)</a>
-	 *
-	 * @param number the number of which you want to get the number of digits.
-	 * @return the number of decimal digits of the given {@code number}
+	 * Find the lines to draw. The view usually sits in a ScrollView that
+	 * records the whole view when hardware acceleration is enabled, so the
+	 * clip bounds alone would mean drawing every line. Instead, only the
+	 * visible lines and a screen above and below are drawn, and the view
+	 * is drawn again when it's scrolled beyond that.
 	 */
-	private static int numDigits(int number) {
-		if (number < 100000) {
-			if (number < 100) {
-				if (number < 10) {
-					return 1;
-				} else {
-					return 2;
-				}
-			} else if (number < 1000) {
-				return 3;
-			} else if (number < 10000) {
-				return 4;
-			} else {
-				return 5;
-			}
-		} else if (number < 10000000) {
-			return number < 1000000 ? 6 : 7;
-		} else if (number < 100000000) {
-			return 8;
-		} else if (number < 1000000000) {
-			return 9;
-		} else {
-			return 10;
+	private void updateDrawnLines(@NonNull Canvas canvas) {
+		Layout layout = getLayout();
+		if (layout == null || !canvas.getClipBounds(clipRect)) {
+			drawnTop = 0;
+			drawnBottom = -1;
+			firstDrawnLine = 0;
+			lastDrawnLine = -1;
+			return;
+		}
+		if (getLocalVisibleRect(visibleRect)) {
+			visibleRect.offset(getScrollX(), getScrollY());
+			int height = visibleRect.height();
+			clipRect.top = Math.max(clipRect.top, visibleRect.top - height);
+			clipRect.bottom = Math.min(clipRect.bottom, visibleRect.bottom + height);
+		}
+		drawnTop = clipRect.top;
+		drawnBottom = clipRect.bottom;
+		int top = getExtendedPaddingTop();
+		firstDrawnLine = layout.getLineForVertical(Math.max(0, clipRect.top - top));
+		lastDrawnLine = layout.getLineForVertical(Math.max(0, clipRect.bottom - top));
+	}
+
+	private void onViewportScrolled() {
+		if (drawnBottom < drawnTop || !getLocalVisibleRect(visibleRect)) {
+			return;
+		}
+		visibleRect.offset(getScrollX(), getScrollY());
+		if (visibleRect.top < drawnTop || visibleRect.bottom > drawnBottom) {
+			invalidate();
+		}
+	}
+
+	private void setPaddingLeftWhileDrawing(int left) {
+		// TextView.setPadding() always invalidates the view, which would
+		// make onDraw() run again and again.
+		if (left != getPaddingLeft()) {
+			super.setPadding(
+					left,
+					getPaddingTop(),
+					getPaddingRight(),
+					getPaddingBottom());
 		}
 	}
 }
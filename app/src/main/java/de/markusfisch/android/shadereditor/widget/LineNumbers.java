@@ -2,63 +2,126 @@ package de.markusfisch.android.shadereditor.widget;
 
 import android.content.Context;
 import android.content.res.TypedArray;
-import android.text.Editable;
-import android.text.TextWatcher;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
 import android.util.AttributeSet;
-import android.widget.TextView;
 
 import androidx.annotation.NonNull;
-import androidx.appcompat.widget.AppCompatTextView;
+import androidx.annotation.Nullable;
 
 import de.markusfisch.android.shadereditor.R;
 
-public class LineNumbers extends AppCompatTextView implements TextWatcher {
-	private final int sourceId;
-	private TextView source;
+/**
+ * The gutter with the numbers of the lines of a text, configured by the
+ * {@code LineNumberEditText} attributes.
+ */
+final class LineNumbers {
+	private final float spacing;
+	private final float padding;
+	private final float[] digitWidths = new float[10];
+	private final char[] digits = new char[10];
+	private final Paint paint;
 
-	public LineNumbers(Context context) {
-		this(context, null);
-	}
+	private boolean visible;
+	private float bigChar;
 
-	public LineNumbers(Context context, AttributeSet attrs) {
-		super(context, attrs);
-		// Try-with-resources not allowed for API < 31
-		// noinspection resource
+	LineNumbers(@NonNull Context context, @Nullable AttributeSet attrs,
+			@NonNull Paint textPaint) {
+		int color;
+		//noinspection resource
 		TypedArray a = context.getTheme().obtainStyledAttributes(
 				attrs,
-				R.styleable.LineNumbers,
+				R.styleable.LineNumberEditText,
 				0, 0);
+
 		try {
-			sourceId = a.getResourceId(R.styleable.LineNumbers_source, 0);
+			visible = a.getBoolean(
+					R.styleable.LineNumberEditText_showLineNumbers,
+					true);
+			color = a.getColor(
+					R.styleable.LineNumberEditText_lineNumberColor,
+					0x88888888);
+			spacing = a.getDimension(
+					R.styleable.LineNumberEditText_lineNumberSpacing,
+					16);
+			padding = a.getDimension(
+					R.styleable.LineNumberEditText_lineNumberPadding,
+					8);
 		} finally {
 			a.recycle();
 		}
-		setClickable(false);
-		setFocusable(false);
-		setTextIsSelectable(false);
-		setText("0");
+		paint = new Paint(textPaint);
+		paint.setColor(color);
+		measure();
 	}
 
-	public void setSource(@NonNull TextView source) {
-		if (this.source != null) {
-			source.removeTextChangedListener(this);
-		}
-		this.source = source;
-		setTypeface(source.getTypeface());
-		source.addTextChangedListener(this);
-		post(() -> {
-			updateLineNumbers();
-			invalidate();
-		});
+	boolean isVisible() {
+		return visible;
 	}
 
-	@Override
-	protected void onAttachedToWindow() {
-		super.onAttachedToWindow();
-		TextView source = getRootView().findViewById(sourceId);
-		if (source != null) {
-			setSource(source);
+	/**
+	 * @return Whether visibility has changed.
+	 */
+	boolean setVisible(boolean visible) {
+		if (visible == this.visible) {
+			return false;
 		}
+		this.visible = visible;
+		return true;
+	}
+
+	void setTypeface(@Nullable Typeface tf) {
+		paint.setTypeface(tf);
+		measure();
+	}
+
+	void setTextSize(float size) {
+		paint.setTextSize(size);
+		measure();
+	}
+
+	/**
+	 * @return Where the numbers end for a text with {@code lineCount} lines.
+	 */
+	float numbersRight(int lineCount) {
+		return bigChar * numDigits(lineCount) + padding;
+	}
+
+	/**
+	 * @return The width of the gutter for a text with {@code lineCount} lines.
+	 */
+	float width(int lineCount) {
+		return numbersRight(lineCount) + spacing;
+	}
+
+	/**
+	 * Draw the number of {@code line}, counting from zero, right aligned to
+	 * {@code right}.
+	 */
+	void draw(@NonNull Canvas canvas, int line, float right, float baseline) {
+		// Compose the number from the end so no String is needed.
+		int number = line + 1;
+		int start = digits.length;
+		float width = 0;
+		do {
+			int digit = number % 10;
+			digits[--start] = (char) ('0' + digit);
+			width += digitWidths[digit];
+			number /= 10;
+		} while (number > 0);
+		canvas.drawText(
+				digits,
+				start,
+				digits.length - start,
+				right - width,
+				baseline,
+				paint);
+	}
+
+	private void measure() {
+		bigChar = paint.measureText("m");
+		paint.getTextWidths("0123456789", digitWidths);
 	}
 
 	/**
@@ -68,46 +131,29 @@ public class LineNumbers extends AppCompatTextView implements TextWatcher {
 	 * @param number the number of which you want to get the number of digits.
 	 * @return the number of decimal digits of the given {@code number}
 	 */
-	private int numDigits(int number) {
+	private static int numDigits(int number) {
 		if (number < 100000) {
 			if (number < 100) {
-				return number < 10 ? 1 : 2;
+				if (number < 10) {
+					return 1;
+				} else {
+					return 2;
+				}
 			} else if (number < 1000) {
 				return 3;
+			} else if (number < 10000) {
+				return 4;
 			} else {
-				return number < 10000 ? 4 : 5;
+				return 5;
 			}
 		} else if (number < 10000000) {
-			return (number < 1000000) ? 6 : 7;
+			return number < 1000000 ? 6 : 7;
 		} else if (number < 100000000) {
 			return 8;
+		} else if (number < 1000000000) {
+			return 9;
 		} else {
-			return number < 1000000000 ? 9 : 10;
+			return 10;
 		}
 	}
-
-	@Override
-	public void beforeTextChanged(CharSequence s, int start, int count, int after) {
-	}
-
-	@Override
-	public void onTextChanged(CharSequence s, int start, int before, int count) {
-
-	}
-
-	private void updateLineNumbers() {
-		int lineCount = source.getLineCount();
-		final String lineFormat = "%" + numDigits(lineCount) + "d\n";
-
-		StringBuilder builder = new StringBuilder();
-		for (int i = 1; i <= lineCount; ++i) {
-			builder.append(String.format(lineFormat, i));
-		}
-		setText(builder);
-	}
-
-	@Override
-	public void afterTextChanged(Editable s) {
-		post(this::updateLineNumbers);
-	}
 }
@@ -1,8 +1,11 @@
 package de.markusfisch.android.shadereditor.widget;
 
 import android.content.Context;
+import android.content.res.ColorStateList;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.os.Build;
 import android.text.Editable;
 import android.text.InputFilter;
@@ -12,6 +15,7 @@ import android.text.Spannable;
 import android.text.SpannableStringBuilder;
 import android.text.Spanned;
 import android.text.TextPaint;
+import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.text.style.BackgroundColorSpan;
 import android.text.style.ForegroundColorSpan;
@@ -19,6 +23,7 @@ import android.text.style.LineHeightSpan;
 import android.text.style.ReplacementSpan;
 import android.util.AttributeSet;
 import android.view.KeyEvent;
+import android.view.ViewTreeObserver;
 import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.InputConnection;
 
@@ -26,27 +31,34 @@ import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
-import androidx.core.content.ContextCompat;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import de.markusfisch.android.shadereditor.R;
 import de.markusfisch.android.shadereditor.app.ShaderEditorApp;
-import de.markusfisch.android.shadereditor.highlighter.Highlight;
+import de.markusfisch.android.shadereditor.highlighter.ChunkedText;
+import de.markusfisch.android.shadereditor.highlighter.Completer;
+import de.markusfisch.android.shadereditor.highlighter.LatestRevision;
 import de.markusfisch.android.shadereditor.highlighter.Lexer;
-import de.markusfisch.android.shadereditor.highlighter.Token;
+import de.markusfisch.android.shadereditor.highlighter.LineIndex;
+import de.markusfisch.android.shadereditor.highlighter.Parser;
+import de.markusfisch.android.shadereditor.highlighter.Preprocessor;
+import de.markusfisch.android.shadereditor.highlighter.SymbolTable;
+import de.markusfisch.android.shadereditor.highlighter.SyntaxTree;
+import de.markusfisch.android.shadereditor.highlighter.TokenBuffer;
+import de.markusfisch.android.shadereditor.highlighter.Usage;
+import de.markusfisch.android.shadereditor.highlighter.Validator;
 import de.markusfisch.android.shadereditor.opengl.ShaderError;
+import de.markusfisch.android.shadereditor.view.ChunkedEditable;
 
-public class ShaderEditor extends LineNumberEditText {
+public class ShaderEditor extends LineNumberEditText implements SourceEditor {
 	private static final Pattern PATTERN_TRAILING_WHITE_SPACE = Pattern.compile(
 			"[\\t ]+$",
 			Pattern.MULTILINE);
@@ -59,9 +71,14 @@ public class ShaderEditor extends LineNumberEditText {
 			".*void\\s+mainImage\\s*\\(.*");
 	private static final Pattern PATTERN_MAIN = Pattern.compile(
 			".*void\\s+main\\s*\\(.*");
-	private static final Pattern PATTERN_NO_BREAK_SPACE = Pattern.compile(
-			"\\xA0");
+	// Shorter inserts are typed and can't contain a whole ShaderToy shader.
+	private static final int MIN_SHADER_TOY_PASTE = "void mainImage(".length();
+	// When pasting text from other apps, e.g. Github Mobile code viewer,
+	// the text can be tainted with No-Break Space (U+00A0) characters.
+	private static final char NO_BREAK_SPACE = '\u00a0';
 	private static final ArrayList<String> DEFAULT_COMPLETIONS = new ArrayList<>();
+	// Completions that fit on the extra keys bar, more are never looked at.
+	static final int MAX_COMPLETIONS = 24;
 
 	static {
 		DEFAULT_COMPLETIONS.add("{");
@@ -73,13 +90,9 @@ public class ShaderEditor extends LineNumberEditText {
 	}
 
 	private int revision = 0;
-	private final int[] colors = new int[Highlight.values().length];
 	private final TokenListUpdater tokenListUpdater = new TokenListUpdater(
-			(tokenRevision, tokens, text) -> post(() -> {
-				if (tokenRevision == revision) {
-					provideCompletions(tokens, text);
-				}
-			}));
+			(tokenRevision, tokens, text) -> post(
+					() -> onTokenized(tokenRevision, tokens, text)));
 	private final Runnable updateRunnable = new Runnable() {
 		@Override
 		public void run() {
@@ -106,12 +119,46 @@ public class ShaderEditor extends LineNumberEditText {
 	@NonNull
 	private List<ShaderError> shaderErrors = Collections.emptyList();
 	private boolean isUserInteraction = true;
-	private int colorError;
-	private int textColor;
+	private SyntaxColors syntaxColors;
 	private int tabWidthInCharacters = 0;
 	private int tabWidth = 0;
-	private List<Token> tokens = new ArrayList<>();
+	@NonNull
+	private TokenBuffer tokens = new TokenBuffer();
+	// Revision of `tokens` or -1 if there are no tokens for the text.
+	private int tokensRevision = -1;
+	// Parts of the text of `tokens` that the preprocessor skips.
+	@NonNull
+	private Preprocessor.InactiveRegions inactiveRegions = Preprocessor.InactiveRegions.NONE;
+	@NonNull
+	private final Completer completer = new Completer(MAX_COMPLETIONS);
+	// How often names are used in all shaders.
+	@NonNull
+	private Usage libraryUsage = Usage.NONE;
+	// Revision that highlight() waits for the tokens of or -1.
+	private int pendingHighlightRevision = -1;
+	private boolean pendingHighlightComplete = false;
+	@NonNull
+	private final SpanCoverage spanCoverage = new SpanCoverage();
+	@NonNull
+	private final Rect visibleRect = new Rect();
+	private final ViewTreeObserver.OnScrollChangedListener onScrollChangedListener =
+			this::onViewportChanged;
+	private final ViewTreeObserver.OnGlobalLayoutListener onGlobalLayoutListener =
+			this::onViewportChanged;
+	// Whether syntax colors are drawn by onDraw() instead of spans.
+	private boolean drawsColors = false;
+	// Edits since `tokens` were made, to find the token of a character
+	// when drawing colors.
+	@NonNull
+	private final PendingChange editsSinceTokens = new PendingChange();
+	@NonNull
+	private final TextPaint colorPaint = new TextPaint();
+	@Nullable
+	private ColorStateList textColors;
 	private boolean isApplyingEdit = false;
+	// Line starts of the text, kept up to date by onTextChanged().
+	@NonNull
+	private final LineIndex lineIndex = new LineIndex();
 
 	public ShaderEditor(Context context) {
 		super(context);
@@ -137,7 +184,21 @@ public class ShaderEditor extends LineNumberEditText {
 		}
 	}
 
-	private static String convertShaderToySource(String src) {
+	/**
+	 * Convert the text to a regular shader if the inserted range brought in
+	 * the main function of a ShaderToy shader.
+	 *
+	 * @return The converted text or null if there's nothing to convert.
+	 */
+	@Nullable
+	static String convertShaderToySource(@NonNull Editable e, int start, int count) {
+		// Only a paste can bring in a ShaderToy shader, so there's no need
+		// to look at the whole text for every typed character.
+		if (count < MIN_SHADER_TOY_PASTE ||
+				TextUtils.indexOf(e, "mainImage", start, start + count) < 0) {
+			return null;
+		}
+		String src = e.toString();
 		if (!PATTERN_SHADER_TOY.matcher(src).find() ||
 				PATTERN_MAIN.matcher(src).find()) {
 			return null;
@@ -225,14 +286,13 @@ public class ShaderEditor extends LineNumberEditText {
 		}
 		for (ShaderError shaderError : shaderErrors) {
 			int line = shaderError.getLine() - 1;
-			Layout layout = getLayout();
-			if (line < 0 || line >= layout.getLineCount()) {
+			if (line < 0 || line >= lineIndex.lineCount()) {
 				continue;
 			}
 			e.setSpan(
-					new BackgroundColorSpan(colorError),
-					layout.getLineStart(line),
-					layout.getLineEnd(line),
+					new BackgroundColorSpan(syntaxColors.errorColor()),
+					lineIndex.lineStart(line),
+					lineIndex.lineEnd(line),
 					Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
 		}
 	}
@@ -249,6 +309,12 @@ public class ShaderEditor extends LineNumberEditText {
 		if (text == null) {
 			text = "";
 		}
+		// Replace them before the text is tokenized. The input filter
+		// would do it only after that.
+		CharSequence replaced = replaceNoBreakSpaces(text, 0, text.length());
+		if (replaced != null) {
+			text = replaced;
+		}
 
 		cancelUpdate();
 
@@ -257,8 +323,17 @@ public class ShaderEditor extends LineNumberEditText {
 		isUserInteraction = false;
 
 		// `setText` can't be overridden
+		tokenListUpdater.reset();
 		tokenListUpdater.update(text, ++revision);
-		setText(highlight(new SpannableStringBuilder(text), true));
+		// Highlight after setting the text so the visible range is
+		// known from the new layout.
+		setText(text);
+		Editable highlighted = getText();
+		if (highlighted != null) {
+			highlight(highlighted, true);
+		}
+		// The tokens already describe the new text.
+		tokenListUpdater.discardEdits();
 		isUserInteraction = true;
 
 		Editable e = getText();
@@ -275,9 +350,14 @@ public class ShaderEditor extends LineNumberEditText {
 
 	public String getCleanText() {
 		Editable text = getText();
-		if (text == null) {
-			return "";
-		}
+		return text == null ? "" : cleanText(text);
+	}
+
+	/**
+	 * @return {@code text} without white space at the end of its lines.
+	 */
+	@NonNull
+	static String cleanText(@NonNull CharSequence text) {
 		return PATTERN_TRAILING_WHITE_SPACE
 				.matcher(text)
 				.replaceAll("");
@@ -297,14 +377,67 @@ public class ShaderEditor extends LineNumberEditText {
 				text.length());
 	}
 
+	/**
+	 * Replace the {@code typed} characters before the cursor with {@code completion}.
+	 */
+	public void complete(@NonNull CharSequence completion, int typed) {
+		Editable e = getText();
+		if (e == null) {
+			return;
+		}
+		int start = getSelectionStart();
+		int end = getSelectionEnd();
+		e.replace(Math.max(0, Math.min(start, end) - typed),
+				Math.max(start, end),
+				completion,
+				0,
+				completion.length());
+	}
+
+	/**
+	 * Set how often names are used across all shaders to rank completions.
+	 */
+	public void setLibraryUsage(@NonNull Usage usage) {
+		libraryUsage = usage;
+	}
+
+	/**
+	 * @return The syntax tree of the current text or an empty tree if the text
+	 * hasn't been parsed yet. Its token indices refer to the tokens of the same
+	 * revision.
+	 */
+	@NonNull
+	public SyntaxTree getSyntaxTree() {
+		return tokenListUpdater.getCompletedSyntaxTree(revision);
+	}
+
+	/**
+	 * Find obvious errors in the current text in the background, without
+	 * compiling it. {@code listener} is called on the UI thread, unless the text
+	 * changes in the meantime.
+	 */
+	public void validate(@NonNull OnValidatedListener listener) {
+		Editable e = getText();
+		if (e == null) {
+			return;
+		}
+		int validatedRevision = revision;
+		// Does nothing if this revision is already being tokenized.
+		tokenListUpdater.update(e, validatedRevision);
+		tokenListUpdater.validate(validatedRevision, errors -> post(() -> {
+			if (validatedRevision == revision) {
+				listener.onValidated(errors);
+			}
+		}));
+	}
+
 	public void navigateToLine(int lineNumber) {
 		// Navigate to start of line if not already there.
-		if (lineNumber < 1) {
+		if (lineNumber < 1 || lineNumber > lineIndex.lineCount()) {
 			return;
 		}
-		Layout layout = getLayout();
-		int lineStart = layout.getLineStart(lineNumber - 1);
-		int lineEnd = layout.getLineEnd(lineNumber - 1);
+		int lineStart = lineIndex.lineStart(lineNumber - 1);
+		int lineEnd = lineIndex.lineEnd(lineNumber - 1);
 		if (getSelectionStart() >= lineStart &&
 				getSelectionEnd() <= lineEnd) {
 			return;
@@ -313,14 +446,21 @@ public class ShaderEditor extends LineNumberEditText {
 	}
 
 	public void addUniform(String statement) {
-		if (statement == null) {
-			return;
+		Editable e = getText();
+		if (e != null) {
+			addUniform(e, statement);
 		}
+	}
 
-		Editable e = getText();
-		if (e == null) {
+	/**
+	 * Insert {@code statement} after the last uniform of {@code e} and remove an
+	 * earlier declaration of the same uniform.
+	 */
+	static void addUniform(@NonNull Editable e, @Nullable String statement) {
+		if (statement == null) {
 			return;
 		}
+
 		removeUniform(e, statement);
 
 		Matcher m = PATTERN_INSERT_UNIFORM.matcher(e);
@@ -377,7 +517,7 @@ public class ShaderEditor extends LineNumberEditText {
 	protected void onSelectionChanged(int selStart, int selEnd) {
 		super.onSelectionChanged(selStart, selEnd);
 		Editable text = getText();
-		List<Token> completedTokens;
+		TokenBuffer completedTokens;
 		if (text != null &&
 				codeCompletionListener != null &&
 				getSelectionStart() == getSelectionEnd() &&
@@ -387,7 +527,7 @@ public class ShaderEditor extends LineNumberEditText {
 		}
 	}
 
-	private void removeUniform(Editable e, String statement) {
+	private static void removeUniform(Editable e, String statement) {
 		if (statement == null) {
 			return;
 		}
@@ -405,7 +545,7 @@ public class ShaderEditor extends LineNumberEditText {
 		}
 	}
 
-	private int endIndexOfLastEndIf(Editable e) {
+	private static int endIndexOfLastEndIf(Editable e) {
 		Matcher m = PATTERN_ENDIF.matcher(e);
 		int idx = -1;
 
@@ -430,11 +570,13 @@ public class ShaderEditor extends LineNumberEditText {
 				char c = source.charAt(start);
 
 				if (c == '\n') {
-					return autoIndent(source, dest, dstart, dend);
+					return autoIndent(source, dest, dstart, dend, lineIndex,
+							tokenListUpdater.getCompletedTokens(revision));
 				}
 			}
 
-			return source;
+			// Only look at what is inserted, never at the whole text.
+			return replaceNoBreakSpaces(source, start, end);
 		}});
 
 		addTextChangedListener(new TextWatcher() {
@@ -449,6 +591,10 @@ public class ShaderEditor extends LineNumberEditText {
 					int count) {
 				this.start = start;
 				this.count = count;
+				tokenListUpdater.recordEdit(s, start, before, count);
+				lineIndex.replace(s, start, before, count);
+				spanCoverage.shift(start, before, count);
+				editsSinceTokens.add(start, before, count);
 			}
 
 			@Override
@@ -465,7 +611,7 @@ public class ShaderEditor extends LineNumberEditText {
 				cancelUpdate();
 				convertTabs(e, start, count);
 
-				String converted = convertShaderToySource(e.toString());
+				String converted = convertShaderToySource(e, start, count);
 				if (converted != null) {
 					setTextHighlighted(converted);
 				}
@@ -485,7 +631,7 @@ public class ShaderEditor extends LineNumberEditText {
 			}
 		});
 
-		setSyntaxColors(context);
+		syntaxColors = new SyntaxColors(context);
 		setUpdateDelay(ShaderEditorApp.preferences.getUpdateDelay());
 		setTabWidth(ShaderEditorApp.preferences.getTabWidth());
 
@@ -502,168 +648,389 @@ public class ShaderEditor extends LineNumberEditText {
 		});
 	}
 
-	private void setSyntaxColors(Context context) {
-		for (Highlight highlight : Highlight.values()) {
-			colors[highlight.ordinal()] =
-					ContextCompat.getColor(context, highlight.id());
-		}
-		textColor = ContextCompat.getColor(context, R.color.editor_text);
-		colorError = ContextCompat.getColor(
-				context,
-				R.color.syntax_error);
-	}
-
 	private void cancelUpdate() {
 		removeCallbacks(updateRunnable);
 	}
 
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		ViewTreeObserver observer = getViewTreeObserver();
+		observer.addOnScrollChangedListener(onScrollChangedListener);
+		observer.addOnGlobalLayoutListener(onGlobalLayoutListener);
+	}
+
 	@Override
 	protected void onDetachedFromWindow() {
 		super.onDetachedFromWindow();
+		ViewTreeObserver observer = getViewTreeObserver();
+		observer.removeOnScrollChangedListener(onScrollChangedListener);
+		observer.removeOnGlobalLayoutListener(onGlobalLayoutListener);
 		cancelUpdate();
 		tokenListUpdater.shutdown();
 	}
 
+	private void onViewportChanged() {
+		Editable e = getText();
+		// Stale tokens would put spans at the wrong offsets, the next
+		// highlight() fills in the visible range anyway.
+		if (e != null && tokensRevision == revision) {
+			highlightVisible(e);
+		}
+	}
+
 	private void highlightWithoutChange(@NonNull Editable e) {
 		isUserInteraction = false;
 		highlight(e, false);
 		isUserInteraction = true;
 	}
 
-	private Editable highlight(@NonNull Editable e, boolean complete) {
+	private void highlight(@NonNull Editable e, boolean complete) {
 		int length = e.length();
 
 		clearError(e);
+		pendingHighlightRevision = -1;
 
 		if (length == 0) {
-			tokens = new ArrayList<>();
-			return e;
+			tokens = new TokenBuffer();
+			tokensRevision = -1;
+			inactiveRegions = Preprocessor.InactiveRegions.NONE;
+			spanCoverage.clear();
+			return;
 		}
 
-		// When pasting text from other apps, e.g. Github Mobile code
-		// viewer, the text can be tainted with No-Break Space (U+00A0)
-		// characters.
-		for (Matcher m = PATTERN_NO_BREAK_SPACE.matcher(e); m.find(); ) {
-			e.replace(m.start(), m.end(), " ");
+		setDrawsColors(e, ShaderEditorApp.preferences.fastHighlighting());
+
+		// Never wait for the lexer here. If the tokens of this revision
+		// aren't done yet, onTokenized() applies them when they are.
+		complete |= pendingHighlightComplete;
+		TokenBuffer newTokens = tokenListUpdater.getCompletedTokens(revision);
+		if (newTokens == null) {
+			pendingHighlightRevision = revision;
+			pendingHighlightComplete = complete;
+			// Does nothing if this revision is already being tokenized.
+			tokenListUpdater.update(e, revision);
+			return;
 		}
+		applyTokens(e, newTokens, complete);
+	}
 
-		if (ShaderEditorApp.preferences.disableHighlighting() &&
-				length > 4096) {
-			clearSpans(e, 0, length, ForegroundColorSpan.class);
-			return e;
+	/**
+	 * Called on the UI thread when the tokens of {@code tokenRevision} are done.
+	 */
+	private void onTokenized(int tokenRevision, @NonNull TokenBuffer newTokens,
+			@NonNull CharSequence text) {
+		if (tokenRevision != revision) {
+			// The text has changed since, a newer result is coming.
+			return;
 		}
-		List<Token> newTokens = tokenListUpdater.ensureUpdated(e, revision);
+		Editable e = getText();
+		if (e != null && tokenRevision == pendingHighlightRevision) {
+			pendingHighlightRevision = -1;
+			applyTokens(e, newTokens, pendingHighlightComplete);
+		}
+		provideCompletions(newTokens, text);
+	}
 
-		if (complete) {
+	private void applyTokens(@NonNull Editable e, @NonNull TokenBuffer newTokens,
+			boolean complete) {
+		int length = e.length();
+		pendingHighlightComplete = false;
+		Preprocessor.InactiveRegions newRegions =
+				tokenListUpdater.getCompletedInactiveRegions(revision);
+		if (newRegions.generation() != inactiveRegions.generation()) {
+			// Dimmed regions may have changed anywhere in the text.
+			complete = true;
+		}
+		inactiveRegions = newRegions;
+
+		// Spans are only set for the visible part of the text, the rest
+		// is filled in by highlightVisible() when it is scrolled into view.
+		if (drawsColors) {
+			invalidate();
+		} else if (complete || tokensRevision < 0) {
 			clearSpans(e, 0, length, ForegroundColorSpan.class);
-			for (Token token : newTokens) {
-				@ColorInt int color = colors[Highlight.from(token.type()).ordinal()];
-				if (color != textColor) {
-					e.setSpan(
-							new ForegroundColorSpan(color),
-							token.startOffset(), token.endOffset(),
-							Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+			spanCoverage.clear();
+		} else {
+			// Only the tokens around the edits need to be compared.
+			Lexer.Diff diff = editsSinceTokens.isFull || editsSinceTokens.start < 0
+					? Lexer.diff(tokens, newTokens)
+					: Lexer.diff(tokens, newTokens, editsSinceTokens.start,
+							editsSinceTokens.oldEnd, editsSinceTokens.newEnd);
+			if (diff.start <= diff.insertEnd) {
+				int startOffset = newTokens.startOffset(diff.start);
+				int endOffset = newTokens.endOffset(diff.insertEnd);
+				if (diff.start <= diff.deleteEnd) {
+					clearSpans(e, startOffset, endOffset, ForegroundColorSpan.class);
+				}
+				spanCoverage.remove(startOffset, endOffset);
+			}
+		}
+
+		if (newTokens != tokens) {
+			// The previous tokens aren't referenced anymore and can be
+			// reused for the next result.
+			tokenListUpdater.recycle(tokens);
+			tokens = newTokens;
+		}
+		tokensRevision = revision;
+		editsSinceTokens.clear();
+		highlightVisible(e);
+	}
+
+	/**
+	 * Switch between drawing syntax colors in onDraw() and setting spans.
+	 */
+	private void setDrawsColors(@NonNull Spannable e, boolean drawsColors) {
+		if (drawsColors == this.drawsColors) {
+			return;
+		}
+		this.drawsColors = drawsColors;
+		clearSpans(e, 0, e.length(), ForegroundColorSpan.class);
+		spanCoverage.clear();
+		// Make sure the next highlight() starts over.
+		tokensRevision = -1;
+		if (drawsColors) {
+			// The layout still draws selections and the cursor but
+			// the text is drawn by drawColors().
+			textColors = getTextColors();
+			setTextColor(Color.TRANSPARENT);
+		} else if (textColors != null) {
+			setTextColor(textColors);
+		}
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		super.onDraw(canvas);
+		if (drawsColors) {
+			drawColors(canvas);
+		}
+	}
+
+	/**
+	 * Draw the visible text in the colors of its tokens.
+	 */
+	private void drawColors(@NonNull Canvas canvas) {
+		Layout layout = getLayout();
+		Editable e = getText();
+		if (layout == null || e == null || e.length() == 0) {
+			return;
+		}
+		int left = getCompoundPaddingLeft();
+		int top = getExtendedPaddingTop();
+		int firstLine = getFirstDrawnLine();
+		int lastLine = Math.min(getLastDrawnLine(), layout.getLineCount() - 1);
+
+		colorPaint.set(getPaint());
+		int save = canvas.save();
+		canvas.translate(left, top);
+		for (int line = firstLine; line <= lastLine; ++line) {
+			drawLineColors(canvas, layout, e, line);
+		}
+		canvas.restoreToCount(save);
+	}
+
+	private void drawLineColors(@NonNull Canvas canvas, @NonNull Layout layout,
+			@NonNull CharSequence text, int line) {
+		int offset = layout.getLineStart(line);
+		int end = layout.getLineEnd(line);
+		if (end > offset && text.charAt(end - 1) == '\n') {
+			--end;
+		}
+		float x = layout.getPrimaryHorizontal(offset);
+		int baseline = layout.getLineBaseline(line);
+		while (offset < end) {
+			if (text.charAt(offset) == '\t') {
+				// Tabs may be replaced by a TabWidthSpan, so let the
+				// layout tell where the next character goes.
+				x = layout.getPrimaryHorizontal(++offset);
+				continue;
+			}
+			int runEnd = Math.min(end, syntaxColors.runEnd(
+					tokensRevision < 0 ? null : tokens,
+					editsSinceTokens,
+					inactiveRegions,
+					offset));
+			for (int i = offset; i < runEnd; ++i) {
+				if (text.charAt(i) == '\t') {
+					runEnd = i;
+					break;
 				}
 			}
+			colorPaint.setColor(syntaxColors.runColor());
+			canvas.drawText(text, offset, runEnd, x, baseline, colorPaint);
+			x += colorPaint.measureText(text, offset, runEnd);
+			offset = runEnd;
+		}
+	}
+
+	/**
+	 * Set syntax spans for the tokens in the visible part of the text that don't have them
+	 * yet.
+	 */
+	private void highlightVisible(@NonNull Spannable e) {
+		int length = e.length();
+		if (drawsColors || length == 0 || tokens.isEmpty()) {
+			return;
+		}
+
+		int top;
+		int bottom;
+		if (getLocalVisibleRect(visibleRect)) {
+			int offset = getScrollY() - getExtendedPaddingTop();
+			top = visibleRect.top + offset;
+			bottom = visibleRect.bottom + offset;
+		} else {
+			// Not laid out yet, assume the top of the text is shown.
+			top = 0;
+			bottom = getResources().getDisplayMetrics().heightPixels;
+		}
+		// Add a screen above and below so scrolling a little doesn't
+		// immediately require new spans.
+		int height = bottom - top;
+		top = Math.max(0, top - height);
+		bottom += height;
+
+		int start;
+		int end;
+		Layout layout = getLayout();
+		if (layout != null && layout.getText() == e) {
+			start = layout.getLineStart(layout.getLineForVertical(top));
+			end = layout.getLineEnd(layout.getLineForVertical(bottom));
 		} else {
-			Lexer.Diff diff = Lexer.diff(tokens, newTokens);
-			if (diff.start <= diff.deleteEnd) {
-				int startOffset = newTokens.get(diff.start).startOffset();
-				int endOffset = newTokens.get(diff.insertEnd).endOffset();
-				clearSpans(e, startOffset, endOffset, ForegroundColorSpan.class);
-			}
-			for (int i = diff.start; i <= diff.insertEnd; ++i) {
-				Token token = newTokens.get(i);
+			int lineHeight = Math.max(1, getLineHeight());
+			int lastLine = lineIndex.lineCount() - 1;
+			start = lineIndex.lineStart(Math.min(top / lineHeight, lastLine));
+			end = lineIndex.lineEnd(Math.min(bottom / lineHeight, lastLine));
+		}
+		if (start >= end || spanCoverage.covers(start, end)) {
+			return;
+		}
+
+		int size = tokens.size();
+		int i = tokens.findFrom(start);
+		if (i < size) {
+			start = Math.min(start, tokens.startOffset(i));
+		}
+		for (; i < size && tokens.startOffset(i) < end; ++i) {
+			int tokenStart = tokens.startOffset(i);
+			int tokenEnd = Math.min(tokens.endOffset(i), length);
+			end = Math.max(end, tokenEnd);
+			if (tokenStart >= tokenEnd || spanCoverage.covers(tokenStart, tokenEnd)) {
+				continue;
+			}
+			@ColorInt int color = syntaxColors.color(tokens, i, inactiveRegions);
+			if (color != syntaxColors.textColor()) {
 				e.setSpan(
-						new ForegroundColorSpan(
-								colors[Highlight.from(token.type()).ordinal()]),
-						token.startOffset(),
-						token.endOffset(),
+						new ForegroundColorSpan(color),
+						tokenStart,
+						tokenEnd,
 						Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
 			}
 		}
-
-		tokens = newTokens;
-
-		return e;
+		spanCoverage.add(start, end);
 	}
 
 	private void provideCompletions(
-			@NonNull List<Token> tokens,
+			@NonNull TokenBuffer tokens,
 			@NonNull CharSequence text) {
 		CodeCompletionListener listener = codeCompletionListener;
-		if (listener == null) {
-			return;
+		if (listener != null) {
+			provideCompletions(listener, completer, tokenListUpdater, libraryUsage,
+					tokens, text, getSelectionStart());
 		}
-		int start = getSelectionStart();
-		Token tok = Lexer.findToken(tokens, start);
-		if (tok == null && start > 0) {
+	}
+
+	/**
+	 * Tell {@code listener} the names that complete the token at {@code start}.
+	 *
+	 * @param tokens The completed tokens of {@code text}.
+	 */
+	static void provideCompletions(
+			@NonNull CodeCompletionListener listener,
+			@NonNull Completer completer,
+			@NonNull TokenListUpdater tokenListUpdater,
+			@NonNull Usage libraryUsage,
+			@NonNull TokenBuffer tokens,
+			@NonNull CharSequence text,
+			int start) {
+		int tok = Lexer.findToken(tokens, start);
+		if (tok < 0 && start > 0) {
 			tok = Lexer.findToken(tokens, start - 1);
 		}
-		if (tok == null) {
+		if (tok < 0) {
 			listener.onCodeCompletions(DEFAULT_COMPLETIONS, 0);
 			return;
 		}
-		int positionInToken = start - tok.startOffset();
-		List<String> completions = Lexer.completeKeyword(
-				Lexer.tokenSource(tok, text).subSequence(0, positionInToken).toString(),
-				tok.category());
+		int tokenStart = tokens.startOffset(tok);
+		int positionInToken = start - tokenStart;
+		String prefix = Lexer.tokenSource(tokens, tok, text)
+				.subSequence(0, positionInToken).toString();
+		List<String> completions = new ArrayList<>();
+		completer.complete(prefix,
+				tokens.category(tok),
+				tokenListUpdater.getCompletedSymbols(),
+				tokenListUpdater.getCompletedUsage(),
+				libraryUsage,
+				completions);
 
 		if (completions.isEmpty()) {
 			completions = DEFAULT_COMPLETIONS;
 			positionInToken = 0;
 		}
-		if (completions.size() == 1 && completions.get(0).contentEquals(
-				text.subSequence(tok.startOffset(), start))) {
-			completions = DEFAULT_COMPLETIONS;
-			positionInToken = 0;
-		}
 		listener.onCodeCompletions(
 				completions,
 				positionInToken);
 	}
 
-	private CharSequence autoIndent(
+	/**
+	 * @param lineIndex       The lines of {@code dest}.
+	 * @param completedTokens The tokens of {@code dest} or null if they aren't done.
+	 * @return {@code source}, which is a line break, with the indent of the new line.
+	 */
+	static CharSequence autoIndent(
 			CharSequence source,
 			Spanned dest,
 			int dstart,
-			int dend) {
+			int dend,
+			@NonNull LineIndex lineIndex,
+			@Nullable TokenBuffer completedTokens) {
 		String indent = "";
-		int istart = dstart - 1;
+		// Offset of the line break before this line or -1.
+		int istart = lineIndex.lineStart(lineIndex.lineOf(dstart)) - 1;
 
-		// Find start of this line.
-		boolean dataBefore = false;
 		int pt = 0;
 
-		for (; istart > -1; --istart) {
-			char c = dest.charAt(istart);
-
-			if (c == '\n') {
-				break;
+		if (completedTokens != null && completedTokens.isBracketsIndexed()) {
+			// The tokens describe `dest`, so matching brackets can be
+			// looked up instead of counted.
+			if (opensBracket(completedTokens, istart + 1, dstart) ||
+					endsWithOperator(dest, istart + 1, dstart)) {
+				--pt;
 			}
+		} else {
+			boolean dataBefore = false;
 
-			if (c != ' ' && c != '\t') {
-				if (!dataBefore) {
-					// Indent always after those characters.
-					if (c == '{' ||
-							c == '+' ||
-							c == '-' ||
-							c == '*' ||
-							c == '/' ||
-							c == '%' ||
-							c == '^' ||
-							c == '=') {
-						--pt;
-					}
+			for (int i = dstart - 1; i > istart; --i) {
+				char c = dest.charAt(i);
 
-					dataBefore = true;
-				}
+				if (c != ' ' && c != '\t') {
+					if (!dataBefore) {
+						// Indent always after those characters.
+						if (c == '{' || isOperator(c)) {
+							--pt;
+						}
 
-				// Parenthesis counter.
-				if (c == '(') {
-					--pt;
-				} else if (c == ')') {
-					++pt;
+						dataBefore = true;
+					}
+
+					// Parenthesis counter.
+					if (c == '(') {
+						--pt;
+					} else if (c == ')') {
+						++pt;
+					}
 				}
 			}
 		}
@@ -702,16 +1069,56 @@ public class ShaderEditor extends LineNumberEditText {
 		return source + indent;
 	}
 
+	/**
+	 * @return Whether a bracket between {@code start} and {@code end} is still open at
+	 * {@code end}.
+	 */
+	private static boolean opensBracket(@NonNull TokenBuffer tokens, int start, int end) {
+		for (int i = tokens.findFrom(start), size = tokens.size();
+				i < size && tokens.startOffset(i) < end; ++i) {
+			if (!tokens.isOpeningBracket(i)) {
+				continue;
+			}
+			int match = tokens.matchingBracket(i);
+			if (match < 0 || tokens.startOffset(match) >= end) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return Whether the last character before {@code end} that isn't white space is an
+	 * operator that continues on the next line.
+	 */
+	private static boolean endsWithOperator(@NonNull CharSequence text, int start, int end) {
+		for (int i = end - 1; i >= start; --i) {
+			char c = text.charAt(i);
+			if (c != ' ' && c != '\t') {
+				return isOperator(c);
+			}
+		}
+		return false;
+	}
+
+	private static boolean isOperator(char c) {
+		return c == '+' ||
+				c == '-' ||
+				c == '*' ||
+				c == '/' ||
+				c == '%' ||
+				c == '^' ||
+				c == '=';
+	}
+
 	private void convertTabs(Editable e, int start, int count) {
-		clearSpans(e, start, count, TabWidthSpan.class);
+		int stop = start + count;
+		clearSpans(e, start, stop, TabWidthSpan.class);
 		if (tabWidth < 1) {
 			return;
 		}
 
-		String s = e.toString();
-
-		for (int stop = start + count;
-				(start = s.indexOf("\t", start)) > -1 && start < stop;
+		for (; (start = TextUtils.indexOf(e, '\t', start, stop)) > -1;
 				++start) {
 			e.setSpan(
 					new TabWidthSpan(tabWidth),
@@ -721,11 +1128,33 @@ public class ShaderEditor extends LineNumberEditText {
 		}
 	}
 
+	/**
+	 * @return A copy of the range with all No-Break Spaces replaced by
+	 * regular spaces or null if there are none.
+	 */
+	@Nullable
+	static CharSequence replaceNoBreakSpaces(@NonNull CharSequence source, int start,
+			int end) {
+		SpannableStringBuilder replaced = null;
+		for (int i = start; (i = TextUtils.indexOf(source, NO_BREAK_SPACE, i, end)) > -1; ++i) {
+			if (replaced == null) {
+				replaced = new SpannableStringBuilder(source, start, end);
+			}
+			replaced.replace(i - start, i - start + 1, " ");
+		}
+		return replaced;
+	}
+
 	@FunctionalInterface
 	public interface OnEditPausedListener {
 		void onEditPaused(@NonNull String text);
 	}
 
+	@FunctionalInterface
+	public interface OnValidatedListener {
+		void onValidated(@NonNull List<ShaderError> errors);
+	}
+
 	@FunctionalInterface
 	public interface OnTextModifiedListener {
 		void onTextModified();
@@ -738,7 +1167,7 @@ public class ShaderEditor extends LineNumberEditText {
 
 	@FunctionalInterface
 	interface OnTokenized {
-		void onTokens(int revision, @NonNull List<Token> tokens, @NonNull CharSequence text);
+		void onTokens(int revision, @NonNull TokenBuffer tokens, @NonNull CharSequence text);
 	}
 
 	private static class TabWidthSpan
@@ -786,114 +1215,491 @@ public class ShaderEditor extends LineNumberEditText {
 		}
 	}
 
-	static class TokenizeCalculation implements Callable<List<Token>> {
-		private final String text;
+	/**
+	 * A range of text that changed since it was last tokenized. Subsequent edits are merged
+	 * into a single range that covers all of them.
+	 */
+	static final class PendingChange {
+		boolean isFull;
+		int start = -1;
+		int oldEnd;
+		int newEnd;
+
+		boolean isEmpty() {
+			return !isFull && start < 0;
+		}
+
+		void clear() {
+			isFull = false;
+			start = -1;
+		}
+
+		void setFull() {
+			isFull = true;
+		}
+
+		/**
+		 * Add the replacement of {@code before} characters at {@code start} with {@code count}
+		 * characters. The position refers to the text after all previously added edits.
+		 */
+		void add(int start, int before, int count) {
+			if (isFull) {
+				return;
+			}
+			if (this.start < 0) {
+				this.start = start;
+				this.oldEnd = start + before;
+				this.newEnd = start + count;
+				return;
+			}
+			int end = start + before;
+			this.oldEnd = Math.max(oldEnd, end - (newEnd - oldEnd));
+			this.newEnd = Math.max(newEnd, end) + count - before;
+			this.start = Math.min(this.start, start);
+		}
+
+		void add(@NonNull PendingChange change) {
+			if (change.isFull) {
+				setFull();
+			} else if (change.start > -1) {
+				add(change.start, change.oldEnd - change.start, change.newEnd - change.start);
+			}
+		}
+
+		@NonNull
+		PendingChange copy() {
+			PendingChange copy = new PendingChange();
+			copy.isFull = isFull;
+			copy.start = start;
+			copy.oldEnd = oldEnd;
+			copy.newEnd = newEnd;
+			return copy;
+		}
+	}
+
+	/**
+	 * Sorted and disjoint ranges of text that have syntax spans. The ranges move with edits
+	 * just like the spans do, so only text that wasn't highlighted yet or that has changed
+	 * needs new spans.
+	 */
+	static final class SpanCoverage {
+		private int[] starts = new int[8];
+		private int[] ends = new int[8];
+		private int size;
+
+		void clear() {
+			size = 0;
+		}
+
+		boolean covers(int start, int end) {
+			int i = firstEndingAfter(start);
+			return i < size && starts[i] <= start && ends[i] >= end;
+		}
+
+		void add(int start, int end) {
+			if (start >= end) {
+				return;
+			}
+			// Ranges [from, to) overlap or touch the new range.
+			int from = firstEndingAfter(start - 1);
+			int to = from;
+			while (to < size && starts[to] <= end) {
+				++to;
+			}
+			if (from < to) {
+				start = Math.min(start, starts[from]);
+				end = Math.max(end, ends[to - 1]);
+			}
+			splice(from, to, 1);
+			starts[from] = start;
+			ends[from] = end;
+		}
+
+		void remove(int start, int end) {
+			if (start >= end) {
+				return;
+			}
+			// Ranges [from, to) overlap the removed range.
+			int from = firstEndingAfter(start);
+			int to = from;
+			while (to < size && starts[to] < end) {
+				++to;
+			}
+			if (from == to) {
+				return;
+			}
+			int leftStart = starts[from];
+			int rightEnd = ends[to - 1];
+			int i = from;
+			int pieces = (leftStart < start ? 1 : 0) + (rightEnd > end ? 1 : 0);
+			splice(from, to, pieces);
+			if (leftStart < start) {
+				starts[i] = leftStart;
+				ends[i++] = start;
+			}
+			if (rightEnd > end) {
+				starts[i] = end;
+				ends[i] = rightEnd;
+			}
+		}
+
+		/**
+		 * Move the ranges like {@link TextWatcher#onTextChanged} describes it.
+		 */
+		void shift(int start, int before, int count) {
+			remove(start, start + before);
+			int i = firstEndingAfter(start);
+			if (count > 0 && i < size && starts[i] < start) {
+				// Inserted text has no spans yet.
+				splice(i + 1, i + 1, 1);
+				starts[i + 1] = start;
+				ends[i + 1] = ends[i];
+				ends[i++] = start;
+			}
+			int delta = count - before;
+			for (int j = i; j < size; ++j) {
+				starts[j] += delta;
+				ends[j] += delta;
+			}
+			if (count == 0 && i > 0 && i < size && ends[i - 1] == starts[i]) {
+				// Join the ranges around deleted text.
+				ends[i - 1] = ends[i];
+				splice(i, i + 1, 0);
+			}
+		}
+
+		private int firstEndingAfter(int offset) {
+			int low = 0;
+			int high = size;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (ends[mid] <= offset) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Replace the ranges {@code [from, to)} with {@code count} unset ranges.
+		 */
+		private void splice(int from, int to, int count) {
+			int newSize = size - (to - from) + count;
+			if (newSize > starts.length) {
+				int capacity = Math.max(newSize, starts.length * 2);
+				starts = Arrays.copyOf(starts, capacity);
+				ends = Arrays.copyOf(ends, capacity);
+			}
+			System.arraycopy(starts, to, starts, from + count, size - to);
+			System.arraycopy(ends, to, ends, from + count, size - to);
+			size = newSize;
+		}
+	}
+
+	static class TokenizeCalculation implements Runnable {
+		@NonNull
+		private final CharSequence text;
 		private final int revision;
 		@NonNull
-		private final OnTokenized onTokenized;
+		private final PendingChange change;
+		@NonNull
+		private final TokenListUpdater updater;
 
 		public TokenizeCalculation(
 				int revision,
-				@NonNull String text,
-				@NonNull OnTokenized onTokenized) {
+				@NonNull CharSequence text,
+				@NonNull PendingChange change,
+				@NonNull TokenListUpdater updater) {
 			this.revision = revision;
 			this.text = text;
-			this.onTokenized = onTokenized;
+			this.change = change;
+			this.updater = updater;
 		}
 
 		@Override
-		public List<Token> call() {
-			Lexer lexer = new Lexer(text);
-			List<Token> tokens = new ArrayList<>();
-			for (Token token : lexer) {
-				tokens.add(token);
-				if (Thread.currentThread().isInterrupted()) {
-					break;
-				}
-			}
-			onTokenized.onTokens(revision, tokens, text);
-			return tokens;
+		public void run() {
+			updater.tokenize(revision, text, change);
 		}
 	}
 
 	static class TokenListUpdater {
+		/**
+		 * Everything that is made from the text of a revision.
+		 */
+		private record Result(
+				@NonNull TokenBuffer tokens,
+				@NonNull Preprocessor.InactiveRegions inactiveRegions,
+				@NonNull SymbolTable.Symbols symbols,
+				@NonNull Usage usage,
+				@NonNull SyntaxTree syntaxTree) {
+		}
+
+		// Texts that are at least this long are tokenized in parallel
+		// when they need to be tokenized from scratch.
+		private static final int PARALLEL_THRESHOLD = 64 * 1024;
+
 		@NonNull
 		private final OnTokenized onTokenized;
 		@NonNull
 		private final ExecutorService executor = Executors.newSingleThreadExecutor();
+		@NonNull
+		private final ForkJoinPool pool = new ForkJoinPool(
+				Math.min(4, Runtime.getRuntime().availableProcessors()));
+		@NonNull
+		private final PendingChange pendingChange = new PendingChange();
+		@NonNull
+		private final LatestRevision<Result> results = new LatestRevision<>();
+		@Nullable
+		private TokenBuffer recycledTokens;
+		// Only accessed from the executor thread.
 		@Nullable
-		private FutureTask<List<Token>> task;
+		private Lexer lexer;
+		@NonNull
+		private final Preprocessor preprocessor = new Preprocessor();
+		@NonNull
+		private final SymbolTable symbolTable = new SymbolTable();
+		@NonNull
+		private final Usage.Counter usageCounter = new Usage.Counter();
+		@NonNull
+		private final Parser parser = new Parser();
+		@NonNull
+		private final Validator validator = new Validator();
+		// Text of the tokens of the lexer.
 		@NonNull
-		private List<Token> completedTokens = Collections.emptyList();
-		private int revision = -1;
-		private int completedRevision = -1;
+		private CharSequence tokenizedText = "";
+		@NonNull
+		private final PendingChange unappliedChange = new PendingChange();
+		// Copy of the editor text that is kept in sync by `recordEdit`,
+		// unless the text is a ChunkedEditable, which has one already.
+		// Every revision shares all chunks it didn't change with its
+		// predecessor, so taking a snapshot for the lexer is free.
+		@NonNull
+		private ChunkedText mirror = ChunkedText.EMPTY;
 
 		public TokenListUpdater(@NonNull OnTokenized onTokenized) {
 			this.onTokenized = onTokenized;
 		}
 
 		@Nullable
-		public synchronized List<Token> getCompletedTokens(int revision) {
-			return revision == completedRevision ? completedTokens : null;
+		public TokenBuffer getCompletedTokens(int revision) {
+			Result result = results.get(revision);
+			return result != null ? result.tokens() : null;
 		}
 
-		private synchronized void setCompleted(int revision, @NonNull List<Token> tokens) {
-			if (revision != this.revision) {
-				return;
-			}
-			completedRevision = revision;
-			completedTokens = tokens;
+		/**
+		 * @return The inactive regions of the completed tokens of {@code revision} or
+		 * none if there are no such tokens.
+		 */
+		@NonNull
+		public Preprocessor.InactiveRegions getCompletedInactiveRegions(int revision) {
+			Result result = results.get(revision);
+			return result != null
+					? result.inactiveRegions()
+					: Preprocessor.InactiveRegions.NONE;
 		}
 
+		/**
+		 * @return The names that the text of the completed tokens declares. Unlike
+		 * the tokens, these stay available until newer ones are completed, so
+		 * completions don't flicker while typing.
+		 */
 		@NonNull
-		public List<Token> ensureUpdated(@NonNull CharSequence text, int revision) {
-			FutureTask<List<Token>> futureTask;
-			synchronized (this) {
-				if (task == null || revision != this.revision) {
-					update(text, revision);
-				}
-				futureTask = task;
-			}
-			if (futureTask == null) {
-				return Collections.emptyList();
-			}
-			try {
-				List<Token> tokens = futureTask.get();
-				setCompleted(revision, tokens);
-				return tokens;
-			} catch (ExecutionException | InterruptedException e) {
-				throw new RuntimeException(e);
+		public SymbolTable.Symbols getCompletedSymbols() {
+			Result result = results.latest();
+			return result != null ? result.symbols() : SymbolTable.Symbols.NONE;
+		}
+
+		/**
+		 * @return How often the names of the completed tokens are used. Like the
+		 * symbols, this stays available until newer tokens are completed.
+		 */
+		@NonNull
+		public Usage getCompletedUsage() {
+			Result result = results.latest();
+			return result != null ? result.usage() : Usage.NONE;
+		}
+
+		/**
+		 * @return The syntax tree of the completed tokens of {@code revision} or an
+		 * empty tree if there are no such tokens.
+		 */
+		@NonNull
+		public SyntaxTree getCompletedSyntaxTree(int revision) {
+			Result result = results.get(revision);
+			return result != null ? result.syntaxTree() : SyntaxTree.EMPTY;
+		}
+
+		/**
+		 * Remember an edit so the next update only needs to re-tokenize around it.
+		 *
+		 * @param text The text after the edit.
+		 */
+		public synchronized void recordEdit(@NonNull CharSequence text, int start, int before,
+				int count) {
+			pendingChange.add(start, before, count);
+			if (!(text instanceof ChunkedEditable) &&
+					start + before <= mirror.length()) {
+				mirror = mirror.replace(start, start + before, text, start, start + count);
 			}
 		}
 
+		/**
+		 * Forget recorded edits because the next or last update already covers them.
+		 */
+		public synchronized void discardEdits() {
+			pendingChange.clear();
+		}
+
+		/**
+		 * Make the next update tokenize the whole text.
+		 */
+		public synchronized void reset() {
+			pendingChange.setFull();
+		}
+
+		/**
+		 * Tokenize {@code text} in the background. The result is handed to
+		 * {@link OnTokenized} and is available from
+		 * {@link #getCompletedTokens(int)} afterwards, as long as no newer
+		 * revision was requested in the meantime.
+		 */
 		public void update(@NonNull CharSequence text, int revision) {
-			FutureTask<List<Token>> currentTask;
+			TokenizeCalculation calculation;
 			synchronized (this) {
-				if (revision == this.revision && task != null) {
+				if (!results.request(revision)) {
 					return;
 				}
-				currentTask = task;
-				this.revision = revision;
-				task = new FutureTask<>(new TokenizeCalculation(
+				// Outdated tasks are not cancelled because their edits
+				// still need to be applied. They return early instead.
+				calculation = new TokenizeCalculation(
 						revision,
-						text.toString(),
-						(tokenRevision, tokens, tokenText) -> {
-							setCompleted(tokenRevision, tokens);
-							onTokenized.onTokens(tokenRevision, tokens, tokenText);
-						}));
+						snapshot(text),
+						pendingChange.copy(),
+						this);
+				pendingChange.clear();
+			}
+			executor.execute(calculation);
+		}
+
+		/**
+		 * @return An immutable copy of {@code text}.
+		 */
+		@NonNull
+		private ChunkedText snapshot(@NonNull CharSequence text) {
+			if (text instanceof ChunkedEditable) {
+				return ((ChunkedEditable) text).snapshot();
 			}
-			if (currentTask != null) {
-				currentTask.cancel(false);
+			if (pendingChange.isFull) {
+				// `text` may not be set yet, so leave the mirror to
+				// follow the edits that will set it.
+				return ChunkedText.of(text);
 			}
-			executor.submit(task);
+			if (mirror.length() != text.length()) {
+				// Edits were missed, start over.
+				mirror = ChunkedText.of(text);
+				pendingChange.setFull();
+			}
+			return mirror;
 		}
 
-		public void shutdown() {
-			if (task != null) {
-				task.cancel(true);
-				task = null;
+		/**
+		 * Hand back tokens that were returned before and are no longer used,
+		 * so their buffer can be filled again.
+		 */
+		public synchronized void recycle(@NonNull TokenBuffer tokens) {
+			Result result = results.latest();
+			if (result == null || tokens != result.tokens()) {
+				recycledTokens = tokens;
+			}
+		}
+
+		@NonNull
+		private synchronized TokenBuffer obtainTokens() {
+			TokenBuffer tokens = recycledTokens;
+			recycledTokens = null;
+			return tokens != null ? tokens : new TokenBuffer();
+		}
+
+		private void tokenize(
+				int revision,
+				@NonNull CharSequence text,
+				@NonNull PendingChange change) {
+			unappliedChange.add(change);
+			if (!results.isCurrent(revision)) {
+				return;
+			}
+			if (lexer == null || unappliedChange.isFull) {
+				lexer = text.length() < PARALLEL_THRESHOLD
+						? Lexer.tokenize(text)
+						: Lexer.tokenize(text, pool);
+				preprocessor.reset(lexer.tokens(), text);
+				symbolTable.reset(lexer.tokens(), text);
+				usageCounter.reset(lexer.tokens(), text);
+				parser.reset(lexer.tokens());
+			} else {
+				Lexer.Diff diff = unappliedChange.isEmpty()
+						? lexer.update(text, 0, 0, 0)
+						: lexer.update(
+								text,
+								unappliedChange.start,
+								unappliedChange.oldEnd,
+								unappliedChange.newEnd);
+				preprocessor.update(lexer.tokens(), text, diff);
+				symbolTable.update(lexer.tokens(), text, diff);
+				usageCounter.update(lexer.tokens(), text, diff);
+				parser.update(lexer.tokens(), diff);
+			}
+			unappliedChange.clear();
+			tokenizedText = text;
+			if (!results.isCurrent(revision)) {
+				// Nobody is waiting for this result anymore, the lexer
+				// is up to date for the next revision anyway.
+				return;
+			}
+			// The lexer keeps modifying its buffer, so the result is
+			// copied into one that stays untouched until it is recycled.
+			TokenBuffer tokens = obtainTokens();
+			tokens.set(lexer.tokens());
+			tokens.indexBrackets();
+			if (!results.complete(revision, new Result(tokens,
+					preprocessor.inactiveRegions(), symbolTable.symbols(),
+					usageCounter.usage(), parser.tree()))) {
+				recycle(tokens);
+				return;
 			}
+			onTokenized.onTokens(revision, tokens, text);
+		}
+
+		/**
+		 * Validate the text of {@code revision} after it has been tokenized.
+		 * Nothing is reported if a newer revision was requested in the meantime.
+		 */
+		public void validate(int revision, @NonNull OnValidatedListener listener) {
+			executor.execute(() -> {
+				if (!results.isCurrent(revision)) {
+					return;
+				}
+				List<ShaderError> errors = new ArrayList<>();
+				// The lexer, parser and preprocessor are still at this
+				// revision if it's completed and current.
+				if (lexer != null && results.isCompleted(revision)) {
+					for (Validator.Problem problem : validator.validate(
+							lexer.tokens(),
+							tokenizedText,
+							parser.tree(),
+							preprocessor.inactiveRegions())) {
+						errors.add(ShaderError.create(problem.line(), problem.message()));
+					}
+				}
+				listener.onValidated(errors);
+			});
+		}
+
+		public void shutdown() {
 			executor.shutdownNow();
+			pool.shutdownNow();
 		}
 	}
 }
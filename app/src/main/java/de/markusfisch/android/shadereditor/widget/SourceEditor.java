@@ -0,0 +1,64 @@
+package de.markusfisch.android.shadereditor.widget;
+
+import android.graphics.Typeface;
+import android.text.Editable;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+import de.markusfisch.android.shadereditor.highlighter.Usage;
+import de.markusfisch.android.shadereditor.opengl.ShaderError;
+
+/**
+ * A view that edits the source of a shader.
+ */
+public interface SourceEditor {
+	void setOnEditPausedListener(@Nullable ShaderEditor.OnEditPausedListener listener);
+
+	void setOnTextModifiedListener(@Nullable ShaderEditor.OnTextModifiedListener listener);
+
+	void setOnCompletionsListener(@Nullable ShaderEditor.CodeCompletionListener listener);
+
+	void setLibraryUsage(@NonNull Usage usage);
+
+	void setUpdateDelay(int ms);
+
+	void setTextSize(int unit, float size);
+
+	void setTypeface(@Nullable Typeface tf);
+
+	@Nullable
+	String getFontFeatureSettings();
+
+	void setFontFeatureSettings(@Nullable String fontFeatureSettings);
+
+	void setShowLineNumbers(boolean showLineNumbers);
+
+	boolean hasErrors();
+
+	List<ShaderError> getErrors();
+
+	void setErrors(@NonNull List<ShaderError> errors);
+
+	void updateHighlighting();
+
+	void updateErrorHighlighting();
+
+	void validate(@NonNull ShaderEditor.OnValidatedListener listener);
+
+	void navigateToLine(int lineNumber);
+
+	Editable getEditableText();
+
+	void setTextHighlighted(CharSequence text);
+
+	String getCleanText();
+
+	void insert(@NonNull CharSequence text);
+
+	void complete(@NonNull CharSequence completion, int typed);
+
+	void addUniform(String statement);
+}
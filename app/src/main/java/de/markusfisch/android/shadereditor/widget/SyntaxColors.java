@@ -0,0 +1,116 @@
+package de.markusfisch.android.shadereditor.widget;
+
+import android.content.Context;
+import android.graphics.Color;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import de.markusfisch.android.shadereditor.R;
+import de.markusfisch.android.shadereditor.highlighter.Highlight;
+import de.markusfisch.android.shadereditor.highlighter.Preprocessor;
+import de.markusfisch.android.shadereditor.highlighter.TokenBuffer;
+
+/**
+ * The colors of the tokens of a shader, shared by all views that draw its source.
+ */
+final class SyntaxColors {
+	private final int[] colors = new int[Highlight.values().length];
+	@ColorInt
+	private final int textColor;
+	@ColorInt
+	private final int errorColor;
+	// Color of the last run found by runEnd().
+	@ColorInt
+	private int runColor;
+
+	SyntaxColors(@NonNull Context context) {
+		for (Highlight highlight : Highlight.values()) {
+			colors[highlight.ordinal()] =
+					ContextCompat.getColor(context, highlight.id());
+		}
+		textColor = ContextCompat.getColor(context, R.color.editor_text);
+		errorColor = ContextCompat.getColor(context, R.color.syntax_error);
+	}
+
+	@ColorInt
+	int textColor() {
+		return textColor;
+	}
+
+	@ColorInt
+	int errorColor() {
+		return errorColor;
+	}
+
+	/**
+	 * @return The color of token {@code i}.
+	 */
+	@ColorInt
+	int color(@NonNull TokenBuffer tokens, int i,
+			@NonNull Preprocessor.InactiveRegions inactiveRegions) {
+		@ColorInt int color = colors[Highlight.from(tokens.type(i)).ordinal()];
+		return inactiveRegions.contains(tokens.startOffset(i))
+				? inactiveColor(color)
+				: color;
+	}
+
+	/**
+	 * @return The color of the run found by the last call of {@link #runEnd}.
+	 */
+	@ColorInt
+	int runColor() {
+		return runColor;
+	}
+
+	/**
+	 * Find the run of characters that starts at {@code offset} and has the same color. The
+	 * color is available from {@link #runColor()} afterwards.
+	 *
+	 * @param tokens          The tokens of the text before {@code edits} or null if there
+	 *                        are none.
+	 * @param edits           The edits since {@code tokens} were made.
+	 * @param inactiveRegions The inactive regions of {@code tokens}.
+	 * @return The end of the run.
+	 */
+	int runEnd(@Nullable TokenBuffer tokens, @NonNull ShaderEditor.PendingChange edits,
+			@NonNull Preprocessor.InactiveRegions inactiveRegions, int offset) {
+		runColor = textColor;
+		if (tokens == null || edits.isFull) {
+			return Integer.MAX_VALUE;
+		}
+		// Map the offset into the text the tokens were made for.
+		int tokenOffset = offset;
+		int limit = Integer.MAX_VALUE;
+		if (edits.start > -1) {
+			if (offset >= edits.newEnd) {
+				tokenOffset = offset - edits.newEnd + edits.oldEnd;
+			} else if (offset >= edits.start) {
+				// Changed text has no tokens yet.
+				return edits.newEnd;
+			} else {
+				limit = edits.start;
+			}
+		}
+		int i = tokens.findFrom(tokenOffset);
+		if (i >= tokens.size()) {
+			return limit;
+		}
+		int tokenStart = tokens.startOffset(i);
+		if (tokenOffset < tokenStart) {
+			return Math.min(limit, offset + tokenStart - tokenOffset);
+		}
+		runColor = color(tokens, i, inactiveRegions);
+		return Math.min(limit, offset + tokens.endOffset(i) - tokenOffset);
+	}
+
+	/**
+	 * @return {@code color} dimmed for code that the preprocessor skips.
+	 */
+	@ColorInt
+	private static int inactiveColor(@ColorInt int color) {
+		return (color & 0xffffff) | (Color.alpha(color) / 2 << 24);
+	}
+}
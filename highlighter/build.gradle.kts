@@ -0,0 +1,54 @@
+plugins {
+	`java-library`
+}
+
+java {
+	sourceCompatibility = JavaVersion.VERSION_17
+	targetCompatibility = JavaVersion.VERSION_17
+}
+
+val jmh: SourceSet by sourceSets.creating {
+	compileClasspath += sourceSets.main.get().output
+	runtimeClasspath += sourceSets.main.get().output
+}
+
+tasks.withType<JavaCompile>().configureEach {
+	options.encoding = "UTF-8"
+}
+
+configurations[jmh.implementationConfigurationName]
+	.extendsFrom(configurations.implementation.get())
+
+dependencies {
+	implementation(libs.androidx.annotation)
+	compileOnly(libs.jetbrains.annotations)
+
+	testImplementation(libs.junit)
+
+	"jmhImplementation"(libs.jmh.core)
+	"jmhAnnotationProcessor"(libs.jmh.generator.annprocess)
+}
+
+// ValidatorTest checks the sample shaders of the app.
+tasks.test {
+	systemProperty(
+		"samples",
+		rootProject.file("app/src/main/res/raw").absolutePath
+	)
+}
+
+// Run with `./gradlew :highlighter:jmh`. Arguments for JMH can be given
+// with `-Pjmh="<args>"`, for example `-Pjmh="-p lines=1000 Lexer.lex"`.
+tasks.register<JavaExec>("jmh") {
+	group = "verification"
+	description = "Runs the highlighter benchmarks."
+	classpath = jmh.runtimeClasspath
+	mainClass = "org.openjdk.jmh.Main"
+	systemProperty(
+		"samples",
+		rootProject.file("app/src/main/res/raw").absolutePath
+	)
+	providers.gradleProperty("jmh").orNull?.let {
+		args(it.trim().split(Regex("\\s+")))
+	}
+}
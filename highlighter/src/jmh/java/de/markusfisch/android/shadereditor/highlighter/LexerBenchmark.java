@@ -0,0 +1,252 @@
+package de.markusfisch.android.shadereditor.highlighter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the highlighter over a corpus that is built from the bundled sample shaders.
+ * The directory of the samples is given by the system property {@code samples}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+	private static final int LOOKUPS = 1024;
+	private static final int PASTE_LENGTH = 8192;
+	private static final String[] PREFIXES = {
+			"f", "fl", "vec", "te", "uni", "sampler", "mat2", "de", "xyz"
+	};
+
+	@Param({"1000", "10000", "100000"})
+	public int lines;
+
+	private CharSequence source;
+	private CharSequence edited;
+	private int editOffset;
+	private TokenBuffer sourceTokens;
+	private TokenBuffer editedTokens;
+	private final int[] offsets = new int[LOOKUPS];
+	private final Lexer lexer = new Lexer();
+	private final TokenBuffer sink = new TokenBuffer();
+	private final Preprocessor preprocessor = new Preprocessor();
+	private final SymbolTable symbolTable = new SymbolTable();
+	private final Parser parser = new Parser();
+	private final Parser incrementalParser = new Parser();
+	private final Validator validator = new Validator();
+	private final Completer completer = new Completer(24);
+	private final LineIndex lineIndex = new LineIndex();
+	private final List<String> completions = new ArrayList<>();
+	private Lexer incremental;
+	private Lexer symbolLexer;
+	private Lexer parserLexer;
+	private SyntaxTree sourceTree;
+	private Preprocessor.InactiveRegions sourceInactiveRegions;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		String text = corpus(lines);
+		source = ChunkedText.of(text);
+
+		// Type one character into the middle of the text, the way an edit
+		// in the editor does.
+		editOffset = text.indexOf('\n', text.length() / 2) + 1;
+		edited = ChunkedText.of(new StringBuilder(text).insert(editOffset, 'x'));
+
+		sourceTokens = Lexer.tokenize(source).tokens();
+		editedTokens = Lexer.tokenize(edited).tokens();
+		incremental = Lexer.tokenize(source);
+		symbolLexer = Lexer.tokenize(source);
+		symbolTable.reset(symbolLexer.tokens(), source);
+		parserLexer = Lexer.tokenize(source);
+		incrementalParser.reset(parserLexer.tokens());
+		Parser sourceParser = new Parser();
+		sourceParser.reset(sourceTokens);
+		sourceTree = sourceParser.tree();
+		Preprocessor sourcePreprocessor = new Preprocessor();
+		sourcePreprocessor.reset(sourceTokens, source);
+		sourceInactiveRegions = sourcePreprocessor.inactiveRegions();
+		lineIndex.set(source);
+
+		Random random = new Random(42);
+		for (int i = 0; i < LOOKUPS; ++i) {
+			offsets[i] = random.nextInt(text.length());
+		}
+	}
+
+	@Benchmark
+	public int lex() {
+		lexer.lex(source, sink);
+		return sink.size();
+	}
+
+	@Benchmark
+	public int tokenize() {
+		return Lexer.tokenize(source).tokens().size();
+	}
+
+	@Benchmark
+	public int tokenizeParallel() {
+		return Lexer.tokenize(source, ForkJoinPool.commonPool()).tokens().size();
+	}
+
+	@Benchmark
+	public Lexer.Diff update() {
+		incremental.update(edited, editOffset, editOffset, editOffset + 1);
+		return incremental.update(source, editOffset, editOffset + 1, editOffset);
+	}
+
+	/**
+	 * The work the editor does on the UI thread for a typed character, which
+	 * must not depend on the length of the text.
+	 */
+	@Benchmark
+	public int keystroke() {
+		ChunkedText mirror = ((ChunkedText) source).replace(editOffset, editOffset,
+				edited, editOffset, editOffset + 1);
+		lineIndex.replace(mirror, editOffset, 0, 1);
+		mirror = mirror.replace(editOffset, editOffset + 1, source, editOffset, editOffset);
+		lineIndex.replace(mirror, editOffset, 1, 0);
+		return lineIndex.lineCount();
+	}
+
+	/**
+	 * Paste a block of text over another one in the middle of the text and undo it.
+	 */
+	@Benchmark
+	public int replaceBlock() {
+		ChunkedText text = (ChunkedText) source;
+		int start = editOffset - PASTE_LENGTH;
+		ChunkedText pasted = text.replace(start, editOffset, source, 0, PASTE_LENGTH);
+		return pasted.replace(start, editOffset, source, start, editOffset).length();
+	}
+
+	@Benchmark
+	public Lexer.Diff diff() {
+		return Lexer.diff(sourceTokens, editedTokens);
+	}
+
+	@Benchmark
+	public Lexer.Diff diffEdit() {
+		return Lexer.diff(sourceTokens, editedTokens, editOffset, editOffset, editOffset + 1);
+	}
+
+	@Benchmark
+	public int findToken() {
+		return Lexer.findToken(sourceTokens, offsets[next++ & (LOOKUPS - 1)]);
+	}
+
+	@Benchmark
+	public int indexBrackets() {
+		sourceTokens.indexBrackets();
+		return sourceTokens.depth(sourceTokens.size() - 1);
+	}
+
+	@Benchmark
+	public Preprocessor.InactiveRegions preprocess() {
+		preprocessor.reset(sourceTokens, source);
+		return preprocessor.inactiveRegions();
+	}
+
+	@Benchmark
+	public SymbolTable.Symbols updateSymbols() {
+		symbolTable.update(symbolLexer.tokens(), edited,
+				symbolLexer.update(edited, editOffset, editOffset, editOffset + 1));
+		symbolTable.update(symbolLexer.tokens(), source,
+				symbolLexer.update(source, editOffset, editOffset + 1, editOffset));
+		return symbolTable.symbols();
+	}
+
+	@Benchmark
+	public SyntaxTree parse() {
+		parser.reset(sourceTokens);
+		return parser.tree();
+	}
+
+	@Benchmark
+	public SyntaxTree updateSyntaxTree() {
+		incrementalParser.update(parserLexer.tokens(),
+				parserLexer.update(edited, editOffset, editOffset, editOffset + 1));
+		incrementalParser.update(parserLexer.tokens(),
+				parserLexer.update(source, editOffset, editOffset + 1, editOffset));
+		return incrementalParser.tree();
+	}
+
+	@Benchmark
+	public List<Validator.Problem> validate() {
+		return validator.validate(sourceTokens, source, sourceTree, sourceInactiveRegions);
+	}
+
+	@Benchmark
+	public List<String> completeKeyword() {
+		return Lexer.completeKeyword(PREFIXES[next++ % PREFIXES.length],
+				Token.Category.NORMAL);
+	}
+
+	@Benchmark
+	public List<String> complete() {
+		completions.clear();
+		completer.complete(PREFIXES[next++ % PREFIXES.length],
+				Token.Category.NORMAL,
+				symbolTable.symbols(),
+				Usage.NONE,
+				Usage.NONE,
+				completions);
+		return completions;
+	}
+
+	/**
+	 * @return The sample shaders, repeated until the text has {@code lines} lines.
+	 */
+	private static String corpus(int lines) throws IOException {
+		String samples = System.getProperty("samples");
+		if (samples == null) {
+			throw new IllegalStateException("system property `samples` is not set");
+		}
+		File[] files = new File(samples).listFiles((dir, name) ->
+				name.startsWith("sample_") && name.endsWith(".glsl"));
+		if (files == null || files.length == 0) {
+			throw new IllegalStateException("no samples in " + samples);
+		}
+		Arrays.sort(files);
+
+		StringBuilder sb = new StringBuilder();
+		int count = 0;
+		while (count < lines) {
+			for (File file : files) {
+				for (String line : Files.readAllLines(file.toPath(),
+						StandardCharsets.UTF_8)) {
+					sb.append(line).append('\n');
+					if (++count == lines) {
+						return sb.toString();
+					}
+				}
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -27,10 +27,10 @@ public final class CharIterator {
 	 * Check whether this character is beyond an iterators bounds.
 	 *
 	 * @param position The absolute char position to check.
-	 * @param source   The source string.
+	 * @param source   The source text.
 	 * @return whether {@code ch} marks is beyond an iterators bounds.
 	 */
-	public static boolean isValid(int position, @NonNull String source) {
+	public static boolean isValid(int position, @NonNull CharSequence source) {
 		return isValid(ch(position, source));
 	}
 
@@ -40,10 +40,10 @@ public final class CharIterator {
 	 * invalid unicode.
 	 *
 	 * @param position The absolute char position.
-	 * @param source   The source string.
+	 * @param source   The source text.
 	 * @return The char at the position.
 	 */
-	public static char ch(int position, @NonNull String source) {
+	public static char ch(int position, @NonNull CharSequence source) {
 		if (position < source.length()) {
 			return source.charAt(position);
 		}
@@ -55,10 +55,10 @@ public final class CharIterator {
 	 * This character is used, because it is invalid unicode.
 	 *
 	 * @param position The absolute current char position.
-	 * @param source   The source string.
+	 * @param source   The source text.
 	 * @return The peeked character.
 	 */
-	public static char peek(int position, @NonNull String source) {
+	public static char peek(int position, @NonNull CharSequence source) {
 		return ch(next(position), source);
 	}
 
@@ -77,10 +77,10 @@ public final class CharIterator {
 	 * Get the position of the end of a newline at this position.
 	 *
 	 * @param position The current position.
-	 * @param source   The source string.
+	 * @param source   The source text.
 	 * @return The position of the end of the newline. If there was none, `iter` is returned.
 	 */
-	public static int nextNewline(int position, @NonNull String source) {
+	public static int nextNewline(int position, @NonNull CharSequence source) {
 		char peek = peek(position, source);
 		// is next \r or \n? -> iterate
 		if (peek == '\r' || peek == '\n') {
@@ -101,10 +101,10 @@ public final class CharIterator {
 	 * unicode.
 	 *
 	 * @param position The absolute current char position.
-	 * @param source   The source string.
+	 * @param source   The source text.
 	 * @return the peeked char.
 	 */
-	public static char peekC(int position, @NonNull String source) {
+	public static char peekC(int position, @NonNull CharSequence source) {
 		int length = source.length();
 		int positionBeforeNewline;
 		char ch = CharIterator.INVALID;
@@ -126,9 +126,9 @@ public final class CharIterator {
 	 * Go to next char, skipping C-style line continuations.
 	 *
 	 * @param position The absolute current char position.
-	 * @param source   The source string.
+	 * @param source   The source text.
 	 */
-	public static int nextC(int position, @NonNull String source) {
+	public static int nextC(int position, @NonNull CharSequence source) {
 		int length = source.length();
 		int positionBeforeNewline;
 		char ch = CharIterator.INVALID;
@@ -0,0 +1,323 @@
+package de.markusfisch.android.shadereditor.highlighter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Immutable text that is split into chunks of at most {@link #CHUNK_SIZE} characters.
+ * <p>
+ * The chunks are the leaves of a balanced tree, so finding a position and
+ * {@link #replace(int, int, CharSequence, int, int)} take O(log n) plus the length of the
+ * inserted text. A replacement returns a new instance that shares all chunks and subtrees
+ * outside the replaced range, so keeping a snapshot of every revision of a document only
+ * costs the chunks that were actually edited and the path to them.
+ */
+public final class ChunkedText implements CharSequence {
+	static final int CHUNK_SIZE = 2048;
+
+	public static final ChunkedText EMPTY = new ChunkedText(null);
+
+	/**
+	 * A chunk or two subtrees of about the same height. Nodes are never modified.
+	 */
+	private static final class Node {
+		// Set for a chunk only.
+		@Nullable
+		private final char[] chars;
+		// Set for a subtree only.
+		@Nullable
+		private final Node left;
+		@Nullable
+		private final Node right;
+		private final int length;
+		private final int height;
+
+		private Node(@NonNull char[] chars) {
+			this.chars = chars;
+			this.left = null;
+			this.right = null;
+			this.length = chars.length;
+			this.height = 0;
+		}
+
+		private Node(@NonNull Node left, @NonNull Node right) {
+			this.chars = null;
+			this.left = left;
+			this.right = right;
+			this.length = left.length + right.length;
+			this.height = Math.max(left.height, right.height) + 1;
+		}
+	}
+
+	@Nullable
+	private final Node root;
+
+	private ChunkedText(@Nullable Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * Copy {@code text} into a new instance.
+	 */
+	public static @NonNull ChunkedText of(@NonNull CharSequence text) {
+		return EMPTY.replace(0, 0, text, 0, text.length());
+	}
+
+	/**
+	 * Copy characters from {@code text} into {@code dest}, using the bulk copy methods of
+	 * known implementations.
+	 */
+	public static void getChars(@NonNull CharSequence text, int start, int end,
+			@NonNull char[] dest, int destOffset) {
+		if (text instanceof String) {
+			((String) text).getChars(start, end, dest, destOffset);
+		} else if (text instanceof ChunkedText) {
+			((ChunkedText) text).getChars(start, end, dest, destOffset);
+		} else if (text instanceof StringBuilder) {
+			((StringBuilder) text).getChars(start, end, dest, destOffset);
+		} else {
+			for (int i = start; i < end; ++i) {
+				dest[destOffset++] = text.charAt(i);
+			}
+		}
+	}
+
+	@Override
+	public int length() {
+		return root != null ? root.length : 0;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length()) {
+			throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+		}
+		Node node = root;
+		while (node.chars == null) {
+			if (index < node.left.length) {
+				node = node.left;
+			} else {
+				index -= node.left.length;
+				node = node.right;
+			}
+		}
+		return node.chars[index];
+	}
+
+	/**
+	 * Copy the characters {@code [start, end)} into {@code dest}.
+	 */
+	public void getChars(int start, int end, @NonNull char[] dest, int destOffset) {
+		if (start < 0 || start > end || end > length()) {
+			throw new IndexOutOfBoundsException("start " + start + ", end " + end +
+					", length " + length());
+		}
+		if (start < end) {
+			getChars(root, start, end, dest, destOffset);
+		}
+	}
+
+	/**
+	 * Replace {@code [start, end)} with {@code [replacementStart, replacementEnd)} of
+	 * {@code replacement}.
+	 *
+	 * @return The edited text; this instance is not modified.
+	 */
+	public @NonNull ChunkedText replace(int start, int end, @NonNull CharSequence replacement,
+			int replacementStart, int replacementEnd) {
+		int length = length();
+		if (start < 0 || start > end || end > length) {
+			throw new IndexOutOfBoundsException("start " + start + ", end " + end +
+					", length " + length);
+		}
+		int count = replacementEnd - replacementStart;
+		if (start == end && count == 0) {
+			return this;
+		}
+		// The chunks that are affected by the edit.
+		int regionStart = 0;
+		int regionEnd = 0;
+		if (length > 0) {
+			regionStart = chunkStart(Math.min(start, length - 1));
+			regionEnd = chunkEnd(end > start ? end - 1 : Math.min(start, length - 1));
+		}
+		int regionLength = regionEnd - regionStart - (end - start) + count;
+		// Merge with the following chunk if both would fit into one.
+		if (regionEnd < length) {
+			int next = chunkEnd(regionEnd);
+			if (regionLength + next - regionEnd <= CHUNK_SIZE) {
+				regionLength += next - regionEnd;
+				regionEnd = next;
+			}
+		}
+
+		char[] region = new char[regionLength];
+		getChars(regionStart, start, region, 0);
+		getChars(replacement, replacementStart, replacementEnd, region, start - regionStart);
+		getChars(end, regionEnd, region, start - regionStart + count);
+
+		return new ChunkedText(join(join(head(root, regionStart),
+						build(region, 0, regionLength)),
+				tail(root, regionEnd)));
+	}
+
+	@Override
+	public @NonNull CharSequence subSequence(int start, int end) {
+		char[] chars = new char[end - start];
+		getChars(start, end, chars, 0);
+		return new String(chars);
+	}
+
+	@Override
+	public @NonNull String toString() {
+		return subSequence(0, length()).toString();
+	}
+
+	/**
+	 * @return Start of the chunk that contains {@code index}.
+	 */
+	private int chunkStart(int index) {
+		int start = 0;
+		Node node = root;
+		while (node.chars == null) {
+			if (index < start + node.left.length) {
+				node = node.left;
+			} else {
+				start += node.left.length;
+				node = node.right;
+			}
+		}
+		return start;
+	}
+
+	/**
+	 * @return End of the chunk that contains {@code index}.
+	 */
+	private int chunkEnd(int index) {
+		int start = 0;
+		Node node = root;
+		while (node.chars == null) {
+			if (index < start + node.left.length) {
+				node = node.left;
+			} else {
+				start += node.left.length;
+				node = node.right;
+			}
+		}
+		return start + node.length;
+	}
+
+	private static void getChars(@NonNull Node node, int start, int end,
+			@NonNull char[] dest, int destOffset) {
+		while (node.chars == null) {
+			int split = node.left.length;
+			if (end <= split) {
+				node = node.left;
+			} else if (start >= split) {
+				start -= split;
+				end -= split;
+				node = node.right;
+			} else {
+				getChars(node.left, start, split, dest, destOffset);
+				destOffset += split - start;
+				start = 0;
+				end -= split;
+				node = node.right;
+			}
+		}
+		System.arraycopy(node.chars, start, dest, destOffset, end - start);
+	}
+
+	/**
+	 * @return A tree of chunks of {@code [from, to)} of {@code chars}, split evenly so
+	 * no tiny chunk is left behind.
+	 */
+	@Nullable
+	private static Node build(@NonNull char[] chars, int from, int to) {
+		int length = to - from;
+		if (length == 0) {
+			return null;
+		}
+		int pieces = (length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		if (pieces == 1) {
+			return new Node(Arrays.copyOfRange(chars, from, to));
+		}
+		int split = from + (int) ((long) length * (pieces / 2) / pieces);
+		return new Node(build(chars, from, split), build(chars, split, to));
+	}
+
+	/**
+	 * @return The first {@code index} characters of {@code node}.
+	 */
+	@Nullable
+	private static Node head(@Nullable Node node, int index) {
+		if (node == null || index <= 0) {
+			return null;
+		} else if (index >= node.length) {
+			return node;
+		} else if (node.chars != null) {
+			return new Node(Arrays.copyOf(node.chars, index));
+		} else if (index <= node.left.length) {
+			return head(node.left, index);
+		}
+		return join(node.left, head(node.right, index - node.left.length));
+	}
+
+	/**
+	 * @return The characters of {@code node} from {@code index} on.
+	 */
+	@Nullable
+	private static Node tail(@Nullable Node node, int index) {
+		if (node == null || index >= node.length) {
+			return null;
+		} else if (index <= 0) {
+			return node;
+		} else if (node.chars != null) {
+			return new Node(Arrays.copyOfRange(node.chars, index, node.length));
+		} else if (index >= node.left.length) {
+			return tail(node.right, index - node.left.length);
+		}
+		return join(tail(node.left, index), node.right);
+	}
+
+	/**
+	 * @return A balanced tree of {@code left} followed by {@code right}.
+	 */
+	@Nullable
+	private static Node join(@Nullable Node left, @Nullable Node right) {
+		if (left == null) {
+			return right;
+		} else if (right == null) {
+			return left;
+		} else if (left.height > right.height + 1) {
+			return balance(left.left, join(left.right, right));
+		} else if (right.height > left.height + 1) {
+			return balance(join(left, right.left), right.right);
+		}
+		return new Node(left, right);
+	}
+
+	/**
+	 * @return A node of two subtrees whose heights differ by at most two, rotated so
+	 * they differ by at most one.
+	 */
+	@NonNull
+	private static Node balance(@NonNull Node left, @NonNull Node right) {
+		if (left.height > right.height + 1) {
+			if (left.left.height >= left.right.height) {
+				return new Node(left.left, new Node(left.right, right));
+			}
+			return new Node(new Node(left.left, left.right.left),
+					new Node(left.right.right, right));
+		} else if (right.height > left.height + 1) {
+			if (right.right.height >= right.left.height) {
+				return new Node(new Node(left, right.left), right.right);
+			}
+			return new Node(new Node(left, right.left.left),
+					new Node(right.left.right, right.right));
+		}
+		return new Node(left, right);
+	}
+}
@@ -0,0 +1,347 @@
+package de.markusfisch.android.shadereditor.highlighter;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * Ranks the names that complete what was typed so far.
+ * <p>
+ * A name matches if it contains the typed characters in the same order. Uppercase
+ * characters only match at the start of a word, so {@code tLO} finds
+ * {@code textureLodOffset}. Matches at the start of the name, right after the previous
+ * match or at the start of a word score higher, and so do names that are used often in the
+ * current shader and across all shaders. Only the best names are kept while the candidates
+ * are scored, so a query of one letter doesn't create a list of every keyword.
+ */
+public final class Completer {
+	private static final int NO_MATCH = Integer.MIN_VALUE;
+	private static final int START_BONUS = 12;
+	private static final int WORD_BONUS = 10;
+	private static final int CONSECUTIVE_BONUS = 8;
+	private static final int CASE_BONUS = 1;
+	private static final int PREFIX_BONUS = 40;
+	private static final int MAX_GAP_PENALTY = 6;
+	// Bonus for how often a name is used, indexed by the number of uses.
+	private static final int[] DOCUMENT_BONUS = frequencyBonus(64, 6);
+	private static final int[] LIBRARY_BONUS = frequencyBonus(256, 3);
+	// Bit of every character in the masks of `Candidates`.
+	private static final int UNDERSCORE_BIT = 36;
+	private static final int OTHER_BIT = 37;
+
+	private static final Candidates KEYWORDS = new Candidates(
+			Lexer.keywords(Token.Category.NORMAL));
+	private static final Candidates PREPROC_KEYWORDS = new Candidates(
+			Lexer.keywords(Token.Category.PREPROC));
+
+	private final int limit;
+	// Min-heap of the best names so far, with the worst name at the top.
+	private final String[] heapNames;
+	private final int[] heapScores;
+	private int heapSize;
+	// Candidates for the last symbols, which only change when a name
+	// is declared or removed.
+	@NonNull
+	private SymbolTable.Symbols indexedSymbols = SymbolTable.Symbols.NONE;
+	@NonNull
+	private Candidates symbolCandidates = new Candidates(new String[0]);
+
+	/**
+	 * @param limit Maximum number of completions to return.
+	 */
+	public Completer(int limit) {
+		this.limit = limit;
+		heapNames = new String[limit];
+		heapScores = new int[limit];
+	}
+
+	/**
+	 * Add the best names that complete {@code query} to {@code result}, the best first.
+	 * Names that are equal to {@code query} are left out.
+	 *
+	 * @param category Category of the token that is completed.
+	 * @param symbols  Names the shader declares.
+	 * @param document Usage of names in the shader.
+	 * @param library  Usage of names in all shaders.
+	 */
+	public void complete(
+			@NonNull String query,
+			@NonNull Token.Category category,
+			@NonNull SymbolTable.Symbols symbols,
+			@NonNull Usage document,
+			@NonNull Usage library,
+			@NonNull List<String> result) {
+		int queryLength = query.length();
+		if (queryLength == 0 || category == Token.Category.TRIVIA) {
+			return;
+		}
+		long queryMask = 0;
+		for (int i = 0; i < queryLength; ++i) {
+			queryMask |= charBit(query.charAt(i));
+		}
+		heapSize = 0;
+		rank(category == Token.Category.PREPROC ? PREPROC_KEYWORDS : KEYWORDS,
+				query, queryMask, document, library);
+		if (symbols != indexedSymbols) {
+			String[] names = new String[symbols.size()];
+			for (int i = 0; i < names.length; ++i) {
+				names[i] = symbols.name(i);
+			}
+			symbolCandidates = new Candidates(names);
+			indexedSymbols = symbols;
+		}
+		rank(symbolCandidates, query, queryMask, document, library);
+
+		// Sort the heap by moving the worst name to the end until
+		// the best one is left at the front.
+		for (int end = heapSize - 1; end > 0; --end) {
+			swap(0, end);
+			siftDown(0, end);
+		}
+		for (int i = 0; i < heapSize; ++i) {
+			result.add(heapNames[i]);
+			heapNames[i] = null;
+		}
+		heapSize = 0;
+	}
+
+	private void rank(
+			@NonNull Candidates candidates,
+			@NonNull String query,
+			long queryMask,
+			@NonNull Usage document,
+			@NonNull Usage library) {
+		int queryLength = query.length();
+		String[] names = candidates.names;
+		for (int i = 0, size = names.length; i < size; ++i) {
+			String name = names[i];
+			if ((candidates.characters[i] & queryMask) != queryMask ||
+					name.equals(query)) {
+				continue;
+			}
+			int score = score(name, candidates.words[i], query, queryLength);
+			if (score == NO_MATCH) {
+				continue;
+			}
+			score += DOCUMENT_BONUS[Math.min(document.count(name),
+					DOCUMENT_BONUS.length - 1)];
+			score += LIBRARY_BONUS[Math.min(library.count(name),
+					LIBRARY_BONUS.length - 1)];
+			offer(name, score);
+		}
+	}
+
+	private void offer(@NonNull String name, int score) {
+		if (heapSize == limit && !isBetter(score, name, heapScores[0], heapNames[0])) {
+			return;
+		}
+		for (int i = 0; i < heapSize; ++i) {
+			if (heapNames[i].equals(name)) {
+				// Directives and keywords share some names.
+				return;
+			}
+		}
+		if (heapSize < limit) {
+			int i = heapSize++;
+			heapNames[i] = name;
+			heapScores[i] = score;
+			siftUp(i);
+		} else {
+			heapNames[0] = name;
+			heapScores[0] = score;
+			siftDown(0, heapSize);
+		}
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >> 1;
+			if (!isBetter(heapScores[parent], heapNames[parent],
+					heapScores[i], heapNames[i])) {
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i, int size) {
+		for (int child; (child = i * 2 + 1) < size; i = child) {
+			if (child + 1 < size && isBetter(heapScores[child], heapNames[child],
+					heapScores[child + 1], heapNames[child + 1])) {
+				++child;
+			}
+			if (!isBetter(heapScores[i], heapNames[i],
+					heapScores[child], heapNames[child])) {
+				break;
+			}
+			swap(i, child);
+		}
+	}
+
+	private void swap(int a, int b) {
+		String name = heapNames[a];
+		heapNames[a] = heapNames[b];
+		heapNames[b] = name;
+		int score = heapScores[a];
+		heapScores[a] = heapScores[b];
+		heapScores[b] = score;
+	}
+
+	private static boolean isBetter(int score, @NonNull String name, int otherScore,
+			@NonNull String otherName) {
+		if (score != otherScore) {
+			return score > otherScore;
+		}
+		if (name.length() != otherName.length()) {
+			return name.length() < otherName.length();
+		}
+		return name.compareTo(otherName) < 0;
+	}
+
+	/**
+	 * @return How well {@code name} matches {@code query} or {@link #NO_MATCH}.
+	 */
+	private static int score(@NonNull String name, long words, @NonNull String query,
+			int queryLength) {
+		int length = name.length();
+		int score = 0;
+		int position = 0;
+		for (int q = 0; q < queryLength; ++q) {
+			char ch = query.charAt(q);
+			char folded = fold(ch);
+			boolean upper = ch != folded;
+			int found;
+			if (position < length && fold(name.charAt(position)) == folded &&
+					(!upper || name.charAt(position) == ch ||
+							isWordStart(words, position))) {
+				found = position;
+			} else {
+				found = findWordStart(name, words, position, folded);
+				if (found < 0 && !upper) {
+					found = find(name, position, folded);
+				}
+				if (found < 0) {
+					return NO_MATCH;
+				}
+			}
+			if (found == 0) {
+				score += START_BONUS;
+			} else if (isWordStart(words, found)) {
+				score += WORD_BONUS;
+			} else if (found == position) {
+				score += CONSECUTIVE_BONUS;
+			}
+			if (name.charAt(found) == ch) {
+				score += CASE_BONUS;
+			}
+			score -= Math.min(found - position, MAX_GAP_PENALTY);
+			position = found + 1;
+		}
+		if (name.startsWith(query)) {
+			score += PREFIX_BONUS;
+		}
+		// Prefer shorter names when everything else is equal.
+		return score - ((length - queryLength) >> 2);
+	}
+
+	private static int findWordStart(@NonNull String name, long words, int from,
+			char folded) {
+		if (from >= Long.SIZE) {
+			return -1;
+		}
+		for (long bits = words & (-1L << from); bits != 0; bits &= bits - 1) {
+			int i = Long.numberOfTrailingZeros(bits);
+			if (fold(name.charAt(i)) == folded) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int find(@NonNull String name, int from, char folded) {
+		for (int i = from, length = name.length(); i < length; ++i) {
+			if (fold(name.charAt(i)) == folded) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isWordStart(long words, int position) {
+		return position < Long.SIZE && (words & (1L << position)) != 0;
+	}
+
+	private static char fold(char ch) {
+		return ch >= 'A' && ch <= 'Z' ? (char) (ch + ('a' - 'A')) : ch;
+	}
+
+	private static long charBit(char ch) {
+		ch = fold(ch);
+		if (ch >= 'a' && ch <= 'z') {
+			return 1L << (ch - 'a');
+		} else if (ch >= '0' && ch <= '9') {
+			return 1L << (26 + ch - '0');
+		} else if (ch == '_') {
+			return 1L << UNDERSCORE_BIT;
+		}
+		return 1L << OTHER_BIT;
+	}
+
+	@NonNull
+	private static int[] frequencyBonus(int size, int weight) {
+		int[] bonus = new int[size];
+		for (int i = 0; i < size; ++i) {
+			bonus[i] = (int) Math.round(weight * Math.log(1 + i) / Math.log(2));
+		}
+		return bonus;
+	}
+
+	/**
+	 * Names with the characters they contain and where their words start, so most
+	 * names can be rejected without looking at them and camel humps are found
+	 * without classifying characters again.
+	 */
+	private static final class Candidates {
+		private final String[] names;
+		private final long[] characters;
+		// Bit n is set if a word starts at character n.
+		private final long[] words;
+
+		private Candidates(@NonNull String[] names) {
+			int size = names.length;
+			this.names = names;
+			characters = new long[size];
+			words = new long[size];
+			for (int i = 0; i < size; ++i) {
+				String name = names[i];
+				long mask = 0;
+				long starts = 0;
+				char previous = 0;
+				for (int c = 0, length = name.length(); c < length; ++c) {
+					char ch = name.charAt(c);
+					mask |= charBit(ch);
+					if (c < Long.SIZE && startsWord(previous, ch, c)) {
+						starts |= 1L << c;
+					}
+					previous = ch;
+				}
+				characters[i] = mask;
+				words[i] = starts;
+			}
+		}
+
+		private static boolean startsWord(char previous, char ch, int position) {
+			if (position == 0) {
+				return true;
+			} else if (ch == '_') {
+				return false;
+			}
+			boolean upper = Character.isUpperCase(ch);
+			boolean digit = Character.isDigit(ch);
+			return previous == '_' ||
+					(upper && !Character.isUpperCase(previous)) ||
+					(digit && !Character.isDigit(previous));
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package de.markusfisch.android.shadereditor.highlighter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A type of GLSL ES as far as the {@link Validator} needs to know it.
+ * <p>
+ * Scalars, vectors and matrices exist only once, so they can be compared by identity. A
+ * struct is equal to itself only.
+ */
+final class GlslType {
+	static final int FLOAT = 0;
+	static final int INT = 1;
+	static final int UINT = 2;
+	static final int BOOL = 3;
+	static final int VOID = 4;
+	// Samplers and images, which can only be passed around.
+	static final int OPAQUE = 5;
+	static final int STRUCT = 6;
+	static final int ARRAY = 7;
+
+	private static final String[] SCALAR_NAMES = {"float", "int", "uint", "bool"};
+	private static final String[] VECTOR_PREFIXES = {"vec", "ivec", "uvec", "bvec"};
+	// Indexed by base and number of components.
+	private static final GlslType[][] VECTORS = new GlslType[4][5];
+	// Indexed by columns and rows.
+	private static final GlslType[][] MATRICES = new GlslType[5][5];
+
+	static {
+		for (int base = FLOAT; base <= BOOL; ++base) {
+			VECTORS[base][1] = new GlslType(base, 1, 1, SCALAR_NAMES[base]);
+			for (int size = 2; size <= 4; ++size) {
+				VECTORS[base][size] = new GlslType(base, 1, size,
+						VECTOR_PREFIXES[base] + size);
+			}
+		}
+		for (int columns = 2; columns <= 4; ++columns) {
+			for (int rows = 2; rows <= 4; ++rows) {
+				MATRICES[columns][rows] = new GlslType(FLOAT, columns, rows,
+						columns == rows
+								? "mat" + columns
+								: "mat" + columns + "x" + rows);
+			}
+		}
+	}
+
+	static final GlslType FLOAT_TYPE = VECTORS[FLOAT][1];
+	static final GlslType INT_TYPE = VECTORS[INT][1];
+	static final GlslType UINT_TYPE = VECTORS[UINT][1];
+	static final GlslType BOOL_TYPE = VECTORS[BOOL][1];
+	static final GlslType VOID_TYPE = new GlslType(VOID, 0, 0, "void");
+
+	final int kind;
+	final int columns;
+	final int rows;
+	@NonNull
+	final String name;
+	// Fields of a struct.
+	@NonNull
+	final String[] fieldNames;
+	@NonNull
+	final GlslType[] fieldTypes;
+	// Element type of an array.
+	@Nullable
+	final GlslType element;
+	// Length of an array or 0 if it isn't known.
+	final int length;
+
+	private GlslType(int kind, int columns, int rows, @NonNull String name) {
+		this(kind, columns, rows, name, new String[0], new GlslType[0], null, 0);
+	}
+
+	private GlslType(int kind, int columns, int rows, @NonNull String name,
+			@NonNull String[] fieldNames, @NonNull GlslType[] fieldTypes,
+			@Nullable GlslType element, int length) {
+		this.kind = kind;
+		this.columns = columns;
+		this.rows = rows;
+		this.name = name;
+		this.fieldNames = fieldNames;
+		this.fieldTypes = fieldTypes;
+		this.element = element;
+		this.length = length;
+	}
+
+	/**
+	 * @return A scalar for a size of 1, a vector otherwise.
+	 */
+	@NonNull
+	static GlslType vector(int base, int size) {
+		return VECTORS[base][size];
+	}
+
+	@NonNull
+	static GlslType matrix(int columns, int rows) {
+		return MATRICES[columns][rows];
+	}
+
+	@NonNull
+	static GlslType opaque(@NonNull String name) {
+		return new GlslType(OPAQUE, 0, 0, name);
+	}
+
+	@NonNull
+	static GlslType struct(@NonNull String name, @NonNull String[] fieldNames,
+			@NonNull GlslType[] fieldTypes) {
+		return new GlslType(STRUCT, 0, 0, name, fieldNames, fieldTypes, null, 0);
+	}
+
+	/**
+	 * @param length The length of the array or 0 if it isn't known.
+	 */
+	@NonNull
+	static GlslType array(@NonNull GlslType element, int length) {
+		return new GlslType(ARRAY, 0, 0, element.name + "[" + (length > 0 ? length : "") + "]",
+				new String[0], new GlslType[0], element, length);
+	}
+
+	/**
+	 * @return The type that is named by a keyword or null if it's not a type of
+	 * GLSL ES.
+	 */
+	@Nullable
+	static GlslType ofKeyword(@NonNull TokenType type) {
+		switch (type) {
+			case VOID:
+				return VOID_TYPE;
+			case FLOAT:
+				return FLOAT_TYPE;
+			case INT:
+				return INT_TYPE;
+			case UINT:
+				return UINT_TYPE;
+			case BOOL:
+				return BOOL_TYPE;
+			case VEC2:
+			case VEC3:
+			case VEC4:
+				return vector(FLOAT, 2 + type.ordinal() - TokenType.VEC2.ordinal());
+			case IVEC2:
+			case IVEC3:
+			case IVEC4:
+				return vector(INT, 2 + type.ordinal() - TokenType.IVEC2.ordinal());
+			case UVEC2:
+			case UVEC3:
+			case UVEC4:
+				return vector(UINT, 2 + type.ordinal() - TokenType.UVEC2.ordinal());
+			case BVEC2:
+			case BVEC3:
+			case BVEC4:
+				return vector(BOOL, 2 + type.ordinal() - TokenType.BVEC2.ordinal());
+			case MAT2:
+			case MAT3:
+			case MAT4:
+				int size = 2 + type.ordinal() - TokenType.MAT2.ordinal();
+				return matrix(size, size);
+			case MAT2X2:
+			case MAT2X3:
+			case MAT2X4:
+			case MAT3X2:
+			case MAT3X3:
+			case MAT3X4:
+			case MAT4X2:
+			case MAT4X3:
+			case MAT4X4:
+				int index = type.ordinal() - TokenType.MAT2X2.ordinal();
+				return matrix(2 + index / 3, 2 + index % 3);
+			default:
+				return null;
+		}
+	}
+
+	boolean isScalar() {
+		return kind <= BOOL && columns == 1 && rows == 1;
+	}
+
+	boolean isVector() {
+		return kind <= BOOL && columns == 1 && rows > 1;
+	}
+
+	boolean isMatrix() {
+		return columns > 1;
+	}
+
+	/**
+	 * @return True for scalars, vectors and matrices that aren't bool.
+	 */
+	boolean isNumeric() {
+		return kind <= UINT;
+	}
+
+	boolean isInteger() {
+		return kind == INT || kind == UINT;
+	}
+
+	/**
+	 * @return Number of scalars of a scalar, vector or matrix.
+	 */
+	int components() {
+		return columns * rows;
+	}
+
+	static boolean same(@NonNull GlslType a, @NonNull GlslType b) {
+		if (a == b) {
+			return true;
+		}
+		if (a.kind == ARRAY && b.kind == ARRAY) {
+			return (a.length == b.length || a.length == 0 || b.length == 0) &&
+					same(a.element, b.element);
+		}
+		// Opaque types are made for every declaration.
+		return a.kind == OPAQUE && b.kind == OPAQUE && a.name.equals(b.name);
+	}
+
+	@Override
+	public @NonNull String toString() {
+		return name;
+	}
+}
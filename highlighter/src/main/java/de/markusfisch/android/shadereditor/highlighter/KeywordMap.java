@@ -0,0 +1,268 @@
+package de.markusfisch.android.shadereditor.highlighter;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable map from keywords to values.
+ * <p>
+ * All keys are stored in one sorted character pool. Exact lookups go through an
+ * open-addressing hash table over that pool, prefix queries use a binary search on the
+ * sorted keys. Lookups don't allocate.
+ */
+public final class KeywordMap {
+	private final char[] pool;
+	// Start of every key in `pool`, sorted by key. The last entry marks
+	// the end of the last key.
+	private final int[] offsets;
+	private final short[] values;
+	private final int[] hashes;
+	// Index of a key plus one, or 0 for an empty slot.
+	private final short[] slots;
+	private final int mask;
+	private final int maxLength;
+
+	private KeywordMap(@NonNull TreeMap<String, Short> entries) {
+		int size = entries.size();
+		int poolSize = 0;
+		int maxLength = 0;
+		for (String key : entries.keySet()) {
+			poolSize += key.length();
+			maxLength = Math.max(maxLength, key.length());
+		}
+		pool = new char[poolSize];
+		offsets = new int[size + 1];
+		values = new short[size];
+		hashes = new int[size];
+		int capacity = Integer.highestOneBit(Math.max(1, size * 2 - 1)) << 1;
+		slots = new short[capacity];
+		mask = capacity - 1;
+		this.maxLength = maxLength;
+
+		int index = 0;
+		int offset = 0;
+		for (Map.Entry<String, Short> entry : entries.entrySet()) {
+			String key = entry.getKey();
+			key.getChars(0, key.length(), pool, offset);
+			offsets[index] = offset;
+			values[index] = entry.getValue();
+			int hash = hash(pool, offset, key.length());
+			hashes[index] = hash;
+			int slot = mix(hash) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = (short) (index + 1);
+			offset += key.length();
+			++index;
+		}
+		offsets[size] = offset;
+	}
+
+	public int size() {
+		return values.length;
+	}
+
+	/**
+	 * Look up the key that starts at {@code keyStart} in {@code keySource}. C-style line
+	 * continuations inside the key are skipped.
+	 *
+	 * @return The value of the key or 0 if there is none.
+	 */
+	public short find(@NonNull CharSequence keySource, int keyStart, int keyLength) {
+		int keyEnd = Math.min(keyStart + keyLength, keySource.length());
+		int hash = 0;
+		for (int i = keyStart; i < keyEnd; ++i) {
+			char ch = keySource.charAt(i);
+			if (ch == '\\') {
+				return findContinued(keySource, keyStart, keyEnd);
+			}
+			hash = 31 * hash + ch;
+		}
+		int length = keyEnd - keyStart;
+		if (length > maxLength) {
+			return 0;
+		}
+		for (int slot = mix(hash) & mask, entry; (entry = slots[slot]) != 0;
+				slot = (slot + 1) & mask) {
+			int index = entry - 1;
+			int offset = offsets[index];
+			if (hashes[index] == hash &&
+					offsets[index + 1] - offset == length &&
+					regionMatches(offset, keySource, keyStart, length)) {
+				return values[index];
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Slow path of {@link #find(CharSequence, int, int)} for keys that may contain line
+	 * continuations.
+	 */
+	private short findContinued(@NonNull CharSequence keySource, int keyStart, int keyEnd) {
+		int hash = 0;
+		int length = 0;
+		for (int i = keyStart; i < keyEnd; i = CharIterator.nextC(i, keySource)) {
+			char ch = CharIterator.ch(i, keySource);
+			if (!CharIterator.isValid(ch)) {
+				break;
+			}
+			if (++length > maxLength) {
+				return 0;
+			}
+			hash = 31 * hash + ch;
+		}
+		for (int slot = mix(hash) & mask, entry; (entry = slots[slot]) != 0;
+				slot = (slot + 1) & mask) {
+			int index = entry - 1;
+			if (hashes[index] == hash &&
+					offsets[index + 1] - offsets[index] == length &&
+					matches(index, keySource, keyStart, keyEnd)) {
+				return values[index];
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Add all keys that start with {@code prefix} and whose value isn't {@code invalid} to
+	 * {@code result}, in lexicographic order.
+	 */
+	public void findAll(String prefix, short invalid, List<String> result) {
+		if (prefix == null || prefix.isEmpty()) {
+			return;
+		}
+		int prefixLength = prefix.length();
+		for (int i = lowerBound(prefix), size = values.length; i < size; ++i) {
+			int offset = offsets[i];
+			int length = offsets[i + 1] - offset;
+			if (length < prefixLength || compare(i, prefix, prefixLength) != 0) {
+				break;
+			}
+			if (values[i] != invalid) {
+				result.add(new String(pool, offset, length));
+			}
+		}
+	}
+
+	/**
+	 * @return All keys whose value isn't {@code invalid}, in lexicographic order.
+	 */
+	public @NonNull String[] keys(short invalid) {
+		int count = 0;
+		for (short value : values) {
+			if (value != invalid) {
+				++count;
+			}
+		}
+		String[] keys = new String[count];
+		for (int i = 0, k = 0, size = values.length; i < size; ++i) {
+			if (values[i] != invalid) {
+				int offset = offsets[i];
+				keys[k++] = new String(pool, offset, offsets[i + 1] - offset);
+			}
+		}
+		return keys;
+	}
+
+	private boolean regionMatches(int offset, @NonNull CharSequence source, int start, int length) {
+		for (int i = 0; i < length; ++i) {
+			if (pool[offset + i] != source.charAt(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean matches(int index, @NonNull CharSequence source, int start, int end) {
+		int offset = offsets[index];
+		for (int i = start; i < end; i = CharIterator.nextC(i, source)) {
+			char ch = CharIterator.ch(i, source);
+			if (!CharIterator.isValid(ch)) {
+				break;
+			}
+			if (pool[offset++] != ch) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The index of the first key that is not less than {@code prefix}.
+	 */
+	private int lowerBound(@NonNull String prefix) {
+		int prefixLength = prefix.length();
+		int low = 0;
+		int high = values.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compare(mid, prefix, prefixLength) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Compare at most the first {@code length} characters of key {@code index} with
+	 * {@code prefix}.
+	 */
+	private int compare(int index, @NonNull String prefix, int length) {
+		int offset = offsets[index];
+		int keyLength = Math.min(offsets[index + 1] - offset, length);
+		for (int i = 0; i < keyLength; ++i) {
+			int diff = pool[offset + i] - prefix.charAt(i);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return keyLength - length;
+	}
+
+	private static int hash(@NonNull char[] chars, int offset, int length) {
+		int hash = 0;
+		for (int i = offset, end = offset + length; i < end; ++i) {
+			hash = 31 * hash + chars[i];
+		}
+		return hash;
+	}
+
+	private static int mix(int hash) {
+		hash *= 0x9e3779b9;
+		return hash ^ (hash >>> 16);
+	}
+
+	public static final class Builder {
+		private final TreeMap<String, Short> entries = new TreeMap<>();
+
+		/**
+		 * Add a key, replacing any previous value.
+		 *
+		 * @param key   Where to insert the value.
+		 * @param value Value to insert.
+		 * @return this
+		 */
+		public @NonNull Builder insert(@NonNull String key, short value) {
+			entries.put(key, value);
+			return this;
+		}
+
+		/**
+		 * @see #insert(String, short)
+		 */
+		public @NonNull Builder insert(@NonNull String key, @NonNull Enum<?> value) {
+			return insert(key, (short) value.ordinal());
+		}
+
+		public @NonNull KeywordMap build() {
+			return new KeywordMap(entries);
+		}
+	}
+}
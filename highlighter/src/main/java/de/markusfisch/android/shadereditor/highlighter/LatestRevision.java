@@ -0,0 +1,82 @@
+package de.markusfisch.android.shadereditor.highlighter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The result of the newest revision of a text that was asked for.
+ * <p>
+ * Results are computed in the background. A result of a revision that was
+ * superseded in the meantime is dropped, so a slow, stale computation can
+ * never replace a newer result. Work for a stale revision should stop as
+ * soon as {@link #isCurrent(int)} returns false.
+ * <p>
+ * All methods only hold the lock for a field access, so they can be called
+ * from the UI thread while a result is computed.
+ *
+ * @param <T> Type of the result.
+ */
+public final class LatestRevision<T> {
+	private int requested = -1;
+	private int completed = -1;
+	@Nullable
+	private T result;
+
+	/**
+	 * Ask for the result of {@code revision}, which makes all others stale.
+	 *
+	 * @return False if {@code revision} has been asked for already.
+	 */
+	public synchronized boolean request(int revision) {
+		if (revision == requested) {
+			return false;
+		}
+		requested = revision;
+		return true;
+	}
+
+	/**
+	 * @return Whether {@code revision} is the one that was asked for last.
+	 */
+	public synchronized boolean isCurrent(int revision) {
+		return revision == requested;
+	}
+
+	/**
+	 * @return Whether {@code revision} is current and its result is there.
+	 */
+	public synchronized boolean isCompleted(int revision) {
+		return revision == requested && revision == completed;
+	}
+
+	/**
+	 * Publish the result of {@code revision} unless it is stale.
+	 *
+	 * @return False if {@code result} was dropped because it is stale.
+	 */
+	public synchronized boolean complete(int revision, @NonNull T result) {
+		if (revision != requested) {
+			return false;
+		}
+		completed = revision;
+		this.result = result;
+		return true;
+	}
+
+	/**
+	 * @return The result of {@code revision} or null if there is none.
+	 */
+	@Nullable
+	public synchronized T get(int revision) {
+		return revision == completed ? result : null;
+	}
+
+	/**
+	 * @return The last result that was published, whatever its revision, or
+	 * null if there is none yet.
+	 */
+	@Nullable
+	public synchronized T latest() {
+		return result;
+	}
+}
@@ -0,0 +1,1530 @@
+package de.markusfisch.android.shadereditor.highlighter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.jetbrains.annotations.Contract;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class Lexer {
+	@NonNull
+	public static CharSequence tokenSource(@NonNull TokenBuffer tokens, int index,
+			@NonNull CharSequence source) {
+		return source.subSequence(tokens.startOffset(index), tokens.endOffset(index));
+	}
+
+	public static class Diff {
+		public final int start;
+		public final int deleteEnd;
+		public final int insertEnd;
+
+		public Diff(int start, int deleteEnd, int insertEnd) {
+			this.start = start;
+			this.deleteEnd = deleteEnd;
+			this.insertEnd = insertEnd;
+		}
+
+		@Override
+		public @NonNull String toString() {
+			return "Change{" +
+					"start=" + start +
+					", deleteEnd=" + deleteEnd +
+					", insertEnd=" + insertEnd +
+					'}';
+		}
+	}
+	/**
+	 * Lexer states at the start of logical lines, sorted by position. Every entry holds the
+	 * state right before the token at {@code tokenIndex} was scanned, so lexing can be resumed
+	 * from there after an edit.
+	 */
+	private static final class Checkpoints {
+		private int size;
+		private int[] tokenIndex = new int[0];
+		private int[] position = new int[0];
+		private int[] unicodePosition = new int[0];
+		private int[] lineStart = new int[0];
+		private int[] lineCount = new int[0];
+		private int[] lastNormalIndex = new int[0];
+		private int[] lastNormalType = new int[0];
+
+		private void clear() {
+			size = 0;
+		}
+
+		private void add(int tokenIndex, int position, int unicodePosition, int lineStart,
+				int lineCount, int lastNormalIndex, int lastNormalType) {
+			if (size == this.tokenIndex.length) {
+				grow(Math.max(16, size * 2));
+			}
+			this.tokenIndex[size] = tokenIndex;
+			this.position[size] = position;
+			this.unicodePosition[size] = unicodePosition;
+			this.lineStart[size] = lineStart;
+			this.lineCount[size] = lineCount;
+			this.lastNormalIndex[size] = lastNormalIndex;
+			this.lastNormalType[size] = lastNormalType;
+			++size;
+		}
+
+		/**
+		 * Append the entries {@code [from, size)} of {@code other}, moved by the given deltas.
+		 * The line of entry {@code from} may start before the edit, so it gets
+		 * {@code lineStart}. Entries whose last normal token lies before {@code firstToken}
+		 * refer to {@code lastNormalIndex} instead, and take over its type unless the previous
+		 * result has turned it into a type name afterwards.
+		 */
+		private void addShifted(@NonNull Checkpoints other, int from, int firstToken,
+				int tokenDelta, int positionDelta, int unicodeDelta, int lineDelta,
+				int lineStart, int lastNormalIndex, int lastNormalType) {
+			int replacedType = other.lastNormalType[from];
+			for (int i = from; i < other.size; ++i) {
+				int normalIndex = other.lastNormalIndex[i];
+				int normalType = other.lastNormalType[i];
+				if (normalIndex < firstToken) {
+					normalIndex = lastNormalIndex;
+					if (normalType == replacedType) {
+						normalType = lastNormalType;
+					}
+				} else {
+					normalIndex += tokenDelta;
+				}
+				add(other.tokenIndex[i] + tokenDelta,
+						other.position[i] + positionDelta,
+						other.unicodePosition[i] + unicodeDelta,
+						i == from ? lineStart : other.lineStart[i] + unicodeDelta,
+						other.lineCount[i] + lineDelta,
+						normalIndex,
+						normalType);
+			}
+		}
+
+		private void addRange(@NonNull Checkpoints other, int to) {
+			for (int i = 0; i < to; ++i) {
+				add(other.tokenIndex[i], other.position[i], other.unicodePosition[i],
+						other.lineStart[i], other.lineCount[i], other.lastNormalIndex[i],
+						other.lastNormalType[i]);
+			}
+		}
+
+		/**
+		 * @return the index of the last checkpoint before {@code offset} or -1 if there is none.
+		 */
+		private int lastBefore(int offset) {
+			int low = 0;
+			int high = size - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				if (position[mid] < offset) {
+					low = mid + 1;
+				} else {
+					high = mid - 1;
+				}
+			}
+			return high;
+		}
+
+		private void grow(int capacity) {
+			tokenIndex = Arrays.copyOf(tokenIndex, capacity);
+			position = Arrays.copyOf(position, capacity);
+			unicodePosition = Arrays.copyOf(unicodePosition, capacity);
+			lineCount = Arrays.copyOf(lineCount, capacity);
+			lineStart = Arrays.copyOf(lineStart, capacity);
+			lastNormalIndex = Arrays.copyOf(lastNormalIndex, capacity);
+			lastNormalType = Arrays.copyOf(lastNormalType, capacity);
+		}
+	}
+
+	// Sources are only split into chunks that are at least this long.
+	private static final int MIN_CHUNK_SIZE = 32 * 1024;
+	private static final TokenType[] TYPES = TokenType.values();
+	private static final KeywordMap KEYWORDS;
+	private static final KeywordMap DIRECTIVES;
+	private @NonNull TokenType previousType = TokenType.INVALID;
+	private @NonNull Token.Category previousCategory = Token.Category.NORMAL;
+	private @NonNull TokenType lastNormalType = TokenType.INVALID;
+	private int lastNormalIndex = -1;
+	private final @NonNull SourceWindow source = new SourceWindow();
+	private int unicodePosition;  // codepoint index
+	private int lineStart;
+	private int position;       // current position byte offset
+	private int readPosition;  // read position byte offset
+	private int lineCount;
+	private boolean isNewLogicLine;
+	// Tokens of the last result; `window` receives the tokens that are
+	// scanned again, starting at index `firstToken`.
+	private @NonNull TokenBuffer tokens = new TokenBuffer();
+	private @NonNull TokenBuffer window = new TokenBuffer();
+	private int firstToken;
+	private @NonNull TokenType restoredType = TokenType.INVALID;
+	private @NonNull Checkpoints checkpoints = new Checkpoints();
+	private @NonNull Checkpoints spareCheckpoints = new Checkpoints();
+
+	public Lexer() {
+		reset();
+	}
+
+	/**
+	 * Tokenize the whole {@code source} and remember where lexing can be resumed, so later
+	 * changes can be applied with {@link #update(CharSequence, int, int, int)}.
+	 *
+	 * @param source The source to tokenize.
+	 * @return A lexer holding the tokens of {@code source}.
+	 */
+	public static @NonNull Lexer tokenize(@NonNull CharSequence source) {
+		Lexer lexer = new Lexer();
+		lexer.update(source, 0, 0, source.length());
+		return lexer;
+	}
+
+	/**
+	 * Like {@link #tokenize(CharSequence)}, but big sources are split into chunks at line
+	 * breaks that are lexed in parallel on {@code pool}.
+	 * <p>
+	 * Every chunk is lexed as if it started a new source. The chunks are joined and then
+	 * every chunk border is checked like an edit with
+	 * {@link #update(CharSequence, int, int, int)}: lexing resumes in the last line of the
+	 * previous chunk and stops as soon as it reaches a line with the state the chunk was
+	 * lexed with. So a chunk that starts inside a comment or a continued line is only lexed
+	 * again until its tokens agree with the actual state.
+	 *
+	 * @param source The source to tokenize, must not change while it is tokenized.
+	 * @param pool   The pool to lex the chunks on.
+	 * @return A lexer holding the tokens of {@code source}.
+	 */
+	public static @NonNull Lexer tokenize(@NonNull CharSequence source,
+			@NonNull ForkJoinPool pool) {
+		int length = source.length();
+		int chunkSize = Math.max(MIN_CHUNK_SIZE, length / pool.getParallelism());
+		List<Integer> borders = new ArrayList<>();
+		borders.add(0);
+		for (int offset = chunkSize; offset < length; offset += chunkSize) {
+			while (offset < length && source.charAt(offset - 1) != '\n') {
+				++offset;
+			}
+			if (offset < length) {
+				borders.add(offset);
+			}
+		}
+		int chunkCount = borders.size();
+		if (chunkCount < 2) {
+			return tokenize(source);
+		}
+		borders.add(length);
+
+		List<Callable<Lexer>> tasks = new ArrayList<>(chunkCount);
+		for (int i = 0; i < chunkCount; ++i) {
+			int start = borders.get(i);
+			int end = borders.get(i + 1);
+			tasks.add(() -> {
+				Lexer lexer = new Lexer();
+				lexer.source.reset(source, start, end);
+				lexer.update(0, 0, 0, end - start);
+				return lexer;
+			});
+		}
+		Lexer lexer;
+		try {
+			List<Future<Lexer>> chunks = pool.invokeAll(tasks);
+			lexer = chunks.get(0).get();
+			for (int i = 1; i < chunkCount; ++i) {
+				lexer.append(chunks.get(i).get(), borders.get(i));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return new Lexer();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+
+		lexer.source.reset(source);
+		for (int i = 1; i < chunkCount; ++i) {
+			int border = borders.get(i);
+			lexer.update(length, border, border, border);
+		}
+		return lexer;
+	}
+
+	/**
+	 * Append the tokens and checkpoints of {@code chunk}, that was lexed from
+	 * {@code offset} on, to the tokens of this lexer. The state at the start of the chunk
+	 * is not checked.
+	 */
+	private void append(@NonNull Lexer chunk, int offset) {
+		// Drop EOF and the checkpoint before it.
+		int eof = tokens.size() - 1;
+		tokens.removeLast();
+		while (checkpoints.size > 0 && checkpoints.tokenIndex[checkpoints.size - 1] >= eof) {
+			--checkpoints.size;
+		}
+		int normalIndex = eof - 1;
+		while (normalIndex > -1 && tokens.category(normalIndex) != Token.Category.NORMAL) {
+			--normalIndex;
+		}
+		int unicodeDelta = unicodePosition;
+		int lineDelta = lineCount - 1;
+		Checkpoints other = chunk.checkpoints;
+		if (other.size > 0) {
+			// Checkpoints without a normal token in the chunk refer to the
+			// last normal token before but keep the type the chunk was
+			// lexed with, so the check of the border doesn't take them
+			// for equivalent by mistake.
+			checkpoints.addShifted(other, 0, 0, eof, offset, unicodeDelta, lineDelta,
+					other.lineStart[0] + unicodeDelta, normalIndex,
+					TokenType.INVALID.ordinal());
+		}
+		tokens.append(chunk.tokens, offset, unicodeDelta, lineDelta);
+		unicodePosition += chunk.unicodePosition;
+		lineCount += chunk.lineCount - 1;
+	}
+
+	/**
+	 * Tokenize the whole {@code source} into {@code sink}, replacing its contents.
+	 * <p>
+	 * Unlike {@link #tokenize(CharSequence)} no checkpoints are recorded, so a lexer and a sink
+	 * that are reused for every call don't allocate anything once the sink has grown large
+	 * enough. This discards the state kept for {@link #update(CharSequence, int, int, int)}.
+	 *
+	 * @param source The source to tokenize.
+	 * @param sink   Receives the tokens of {@code source}, ending with {@link TokenType#EOF}.
+	 */
+	public void lex(@NonNull CharSequence source, @NonNull TokenBuffer sink) {
+		tokens.clear();
+		checkpoints.clear();
+		TokenBuffer window = this.window;
+		this.window = sink;
+		try {
+			sink.clear();
+			this.source.reset(source);
+			reset();
+			while (scan() != TokenType.EOF) {
+				if (Thread.currentThread().isInterrupted()) {
+					break;
+				}
+			}
+		} finally {
+			this.window = window;
+		}
+	}
+
+	/**
+	 * @return The tokens of the last full or incremental tokenization, ending with
+	 * {@link TokenType#EOF}. The buffer is modified by the next update.
+	 */
+	public @NonNull TokenBuffer tokens() {
+		return tokens;
+	}
+
+	/**
+	 * Re-tokenize after the range {@code [editStart, oldEditEnd)} of the previous source has
+	 * been replaced with {@code [editStart, newEditEnd)} of {@code source}.
+	 * <p>
+	 * Lexing resumes at the last logical line that starts before the edit and stops as soon
+	 * as the lexer reaches a state it had at a line start of the previous source. The
+	 * remaining tokens are taken over from the previous result, so the cost scales with the
+	 * size of the edit rather than the size of the source.
+	 * <p>
+	 * {@code source} must not change while it is tokenized. Use a snapshot like
+	 * {@link ChunkedText} instead of copying text that is still edited.
+	 *
+	 * @param source     The edited source.
+	 * @param editStart  Start of the changed range.
+	 * @param oldEditEnd End of the changed range in the previous source.
+	 * @param newEditEnd End of the changed range in {@code source}.
+	 * @return A {@link Diff} that describes which tokens have changed.
+	 */
+	public @NonNull Diff update(@NonNull CharSequence source, int editStart, int oldEditEnd,
+			int newEditEnd) {
+		int oldLength = this.source.length();
+		this.source.reset(source);
+		return update(oldLength, editStart, oldEditEnd, newEditEnd);
+	}
+
+	/**
+	 * @see #update(CharSequence, int, int, int)
+	 */
+	private @NonNull Diff update(int oldLength, int editStart, int oldEditEnd,
+			int newEditEnd) {
+		TokenBuffer original = tokens;
+		Checkpoints originalCheckpoints = checkpoints;
+		if (editStart < 0 || editStart > oldEditEnd || oldEditEnd > oldLength ||
+				newEditEnd - oldEditEnd != source.length() - oldLength ||
+				original.isEmpty()) {
+			// Not a valid change of the previous source, start over.
+			editStart = 0;
+			oldEditEnd = oldLength;
+			newEditEnd = source.length();
+			original.clear();
+			originalCheckpoints.clear();
+		}
+		int delta = newEditEnd - oldEditEnd;
+		int originalSize = original.size();
+
+		Checkpoints updated = spareCheckpoints;
+		updated.clear();
+		window.clear();
+
+		int restart = originalCheckpoints.lastBefore(editStart);
+		restore(originalCheckpoints, restart);
+		updated.addRange(originalCheckpoints, Math.max(restart, 0));
+		int restoredNormalIndex = lastNormalIndex;
+
+		int deleteEnd = originalSize - 1;
+		int oldCheckpoint = restart + 1;
+		boolean converged = false;
+		while (true) {
+			int startPosition = position;
+			int startUnicodePosition = unicodePosition;
+			int startLineStart = lineStart;
+			int startLineCount = lineCount;
+			boolean afterHash = previousType == TokenType.PREPROC_HASH;
+			int normalIndex = lastNormalIndex;
+			int normalType = lastNormalType.ordinal();
+
+			TokenType type = scan();
+			int index = firstToken + window.size() - 1;
+			if (isNewLogicLine) {
+				if (startPosition >= newEditEnd) {
+					int oldPosition = startPosition - delta;
+					while (oldCheckpoint < originalCheckpoints.size &&
+							originalCheckpoints.position[oldCheckpoint] < oldPosition) {
+						++oldCheckpoint;
+					}
+					if (oldCheckpoint < originalCheckpoints.size &&
+							originalCheckpoints.position[oldCheckpoint] == oldPosition &&
+							isEquivalent(originalCheckpoints, oldCheckpoint, original,
+									afterHash, normalType)) {
+						window.removeLast();
+						int oldToken = originalCheckpoints.tokenIndex[oldCheckpoint];
+						int oldNormalIndex = originalCheckpoints.lastNormalIndex[oldCheckpoint];
+						TokenType oldNormalType = oldNormalIndex == restoredNormalIndex
+								? restoredType
+								: original.type(oldNormalIndex);
+						// The previous result may have turned the last normal token
+						// into a type name after this point.
+						if (oldNormalType == TokenType.TYPE_NAME &&
+								lastNormalType == TokenType.IDENTIFIER) {
+							setLastNormalType(TokenType.TYPE_NAME);
+						}
+						int unicodeDelta = startUnicodePosition -
+								originalCheckpoints.unicodePosition[oldCheckpoint];
+						int lineDelta = startLineCount -
+								originalCheckpoints.lineCount[oldCheckpoint];
+						updated.addShifted(originalCheckpoints, oldCheckpoint, oldToken,
+								index - oldToken, delta, unicodeDelta, lineDelta,
+								startLineStart, normalIndex, normalType);
+						original.replace(firstToken, oldToken, window, delta, unicodeDelta,
+								lineDelta);
+						deleteEnd = oldToken - 1;
+						converged = true;
+						break;
+					}
+				}
+				updated.add(index, startPosition, startUnicodePosition, startLineStart,
+						startLineCount, normalIndex, normalType);
+			}
+			if (type == TokenType.EOF) {
+				break;
+			}
+			if (Thread.currentThread().isInterrupted()) {
+				// Leave no partial state behind, the next update starts over.
+				original.clear();
+				originalCheckpoints.clear();
+				return new Diff(0, deleteEnd, -1);
+			}
+		}
+		if (!converged) {
+			if (firstToken == 0) {
+				tokens = window;
+				window = original;
+			} else {
+				original.replace(firstToken, originalSize, window, 0, 0, 0);
+			}
+		}
+
+		int start = firstToken;
+		if (restoredNormalIndex > -1 && restoredNormalIndex < start &&
+				tokens.type(restoredNormalIndex) != restoredType) {
+			start = restoredNormalIndex;
+		}
+		int insertEnd = tokens.size() - 1 - (originalSize - 1 - deleteEnd);
+		spareCheckpoints = originalCheckpoints;
+		checkpoints = updated;
+		return new Diff(start, deleteEnd, insertEnd);
+	}
+
+	/**
+	 * Restore the lexer state of checkpoint {@code index}. The tokens before the checkpoint
+	 * are kept in {@link #tokens}, scanning continues at {@link #firstToken}.
+	 */
+	private void restore(@NonNull Checkpoints checkpoints, int index) {
+		reset();
+		if (index < 0) {
+			return;
+		}
+		int tokenIndex = checkpoints.tokenIndex[index];
+		firstToken = tokenIndex;
+		position = checkpoints.position[index];
+		readPosition = position + 1;
+		unicodePosition = checkpoints.unicodePosition[index];
+		lineStart = checkpoints.lineStart[index];
+		lineCount = checkpoints.lineCount[index];
+		int normalIndex = checkpoints.lastNormalIndex[index];
+		if (normalIndex > -1) {
+			// Later tokens may have changed the type of the last normal token,
+			// so it is reset to the type it had at this checkpoint.
+			restoredType = tokens.type(normalIndex);
+			lastNormalIndex = normalIndex;
+			lastNormalType = TYPES[checkpoints.lastNormalType[index]];
+			tokens.setType(normalIndex, lastNormalType);
+		}
+		if (tokenIndex > 0) {
+			previousType = tokens.type(tokenIndex - 1);
+			previousCategory = tokens.category(tokenIndex - 1);
+		}
+	}
+
+	private void reset() {
+		previousType = TokenType.INVALID;
+		previousCategory = Token.Category.NORMAL;
+		lastNormalType = TokenType.INVALID;
+		lastNormalIndex = -1;
+		restoredType = TokenType.INVALID;
+		firstToken = 0;
+		unicodePosition = 0;
+		lineStart = 0;
+		position = 0;
+		readPosition = 1;
+		lineCount = 1;
+	}
+
+	/**
+	 * Whether continuing from checkpoint {@code index} of the previous result yields the same
+	 * tokens as the current state. Only the parts of the state that influence later tokens
+	 * are compared.
+	 */
+	private static boolean isEquivalent(@NonNull Checkpoints checkpoints, int index,
+			@NonNull TokenBuffer original, boolean afterHash, int lastNormalType) {
+		int tokenIndex = checkpoints.tokenIndex[index];
+		boolean originalAfterHash = tokenIndex > 0 &&
+				original.type(tokenIndex - 1) == TokenType.PREPROC_HASH;
+		return originalAfterHash == afterHash &&
+				significantType(checkpoints.lastNormalType[index]) ==
+						significantType(lastNormalType);
+	}
+
+	/**
+	 * Reduce the type of the last normal token to what matters for the following identifier.
+	 */
+	private static int significantType(int type) {
+		if (type == TokenType.DOT.ordinal() ||
+				type == TokenType.STRUCT.ordinal() ||
+				type == TokenType.IDENTIFIER.ordinal()) {
+			return type;
+		}
+		return TokenType.INVALID.ordinal();
+	}
+
+	private void setLastNormalType(@NonNull TokenType type) {
+		lastNormalType = type;
+		if (lastNormalIndex >= firstToken) {
+			window.setType(lastNormalIndex - firstToken, type);
+		} else {
+			tokens.setType(lastNormalIndex, type);
+		}
+	}
+
+	private @NonNull TokenType advance(@NonNull TokenType type) {
+		readNext();
+		return type;
+	}
+
+	/**
+	 * Scan the next token and append it to {@link #window}.
+	 *
+	 * @return The type of the scanned token.
+	 */
+	private @NonNull TokenType scan() {
+		boolean isFirstLine = this.position == 0;
+		boolean isNewLogicLine = skipWhitespace() != 0 || isFirstLine;
+		this.isNewLogicLine = isNewLogicLine;
+		int start = this.unicodePosition;
+		int startOffset = this.position;
+		short line = (short) this.lineCount;
+		short column = (short) (this.unicodePosition - this.lineStart);
+		TokenType type = TokenType.INVALID;
+		Token.Category category = Token.Category.NORMAL;
+
+		if (!isNewLogicLine && previousCategory == Token.Category.PREPROC) {
+			category = Token.Category.PREPROC;
+		}
+		char ch = getCurrentChar();
+		char peek = peekNextChar();
+		switch (ch) {
+			case '#':
+				if (isNewLogicLine) {
+					category = Token.Category.PREPROC;
+					type = advance(TokenType.PREPROC_HASH);
+				} else {
+					type = advance(TokenType.INVALID);
+				}
+				break;
+			// 1 - 3 char cases + comments
+			// Comparison operations
+			case '<':
+				switch (peek) {
+					case '=':
+						readNext();
+						type = advance(TokenType.LE_OP);
+						break;
+					case '<':
+						readNext();
+						if (peekNextChar() == '=') {
+							readNext();
+							type = advance(TokenType.LEFT_ASSIGN);
+						} else {
+							type = advance(TokenType.LEFT_OP);
+						}
+						break;
+					default:
+						type = advance(TokenType.LEFT_ANGLE);
+						break;
+				}
+				break;
+			case '>':
+				switch (peek) {
+					case '=':
+						readNext();
+						type = advance(TokenType.GE_OP);
+						break;
+					case '>':
+						readNext();
+						if (peekNextChar() == '=') {
+							readNext();
+							type = advance(TokenType.RIGHT_ASSIGN);
+						} else {
+							type = advance(TokenType.RIGHT_OP);
+						}
+						break;
+					default:
+						type = advance(TokenType.RIGHT_ANGLE);
+						break;
+				}
+				break;
+			// Arithmetic operations + comments
+			case '+':
+				switch (peek) {
+					case '+':
+						readNext();
+						type = advance(TokenType.INC_OP);
+						break;
+					case '=':
+						readNext();
+						type = advance(TokenType.ADD_ASSIGN);
+						break;
+					default:
+						type = advance(TokenType.PLUS);
+						break;
+				}
+				break;
+			case '-':
+				switch (peek) {
+					case '-':
+						readNext();
+						type = advance(TokenType.DEC_OP);
+						break;
+					case '=':
+						readNext();
+						type = advance(TokenType.SUB_ASSIGN);
+						break;
+					default:
+						type = advance(TokenType.DASH);
+						break;
+				}
+				break;
+			case '*':
+				if (peek == '=') {
+					readNext();
+					type = advance(TokenType.MUL_ASSIGN);
+				} else {
+					type = advance(TokenType.STAR);
+				}
+				break;
+			case '/':
+				switch (peek) {
+					case '=':
+						readNext();
+						type = advance(TokenType.DIV_ASSIGN);
+						break;
+					case '*':
+						type = advance(TokenType.BLOCK_COMMENT);
+						category = Token.Category.TRIVIA;
+						do {
+							readNext();
+							handleLineColumn();
+						} while (CharIterator.isValid(this.position, this.source) && !(getCurrentChar() == '*' && peekNextChar() == '/'));
+						if (CharIterator.isValid(this.position, this.source)) {
+							readNext();
+							readNext();
+						}
+						break;
+					case '/':
+						type = advance(TokenType.LINE_COMMENT);
+						category = Token.Category.TRIVIA;
+						do {
+							readNext();
+						} while (CharIterator.isValid(this.position, this.source) && getCurrentChar() != '\n');
+						break;
+					default:
+						type = advance(TokenType.SLASH);
+				}
+				break;
+			case '%':
+				if (peek == '=') {
+					readNext();
+					type = advance(TokenType.MOD_ASSIGN);
+				} else {
+					type = advance(TokenType.PERCENT);
+				}
+				break;
+			// Logical and binary operations
+			case '&':
+				switch (peek) {
+					case '&':
+						readNext();
+						type = advance(TokenType.AND_OP);
+						break;
+					case '=':
+						readNext();
+						type = advance(TokenType.AND_ASSIGN);
+						break;
+					default:
+						type = advance(TokenType.AMPERSAND);
+						break;
+				}
+				break;
+			case '|':
+				switch (peek) {
+					case '|':
+						readNext();
+						type = advance(TokenType.OR_OP);
+						break;
+					case '=':
+						readNext();
+						type = advance(TokenType.OR_ASSIGN);
+						break;
+					default:
+						type = advance(TokenType.VERTICAL_BAR);
+						break;
+				}
+				break;
+			case '^':
+				switch (peek) {
+					case '^':
+						readNext();
+						type = advance(TokenType.XOR_OP);
+						break;
+					case '=':
+						readNext();
+						type = advance(TokenType.XOR_ASSIGN);
+						break;
+					default:
+						type = advance(TokenType.CARET);
+						break;
+				}
+				break;
+			// cases =, ==, !, !=
+			case '=':
+				if (peek == '=') {
+					readNext();
+					type = advance(TokenType.EQ_OP);
+				} else {
+					type = advance(TokenType.EQUAL);
+				}
+				break;
+			case '!':
+				if (peek == '=') {
+					readNext();
+					type = advance(TokenType.NE_OP);
+				} else {
+					type = advance(TokenType.BANG);
+				}
+				break;
+			// Simple cases
+			case ',':
+				type = advance(TokenType.COMMA);
+				break;
+			case '~':
+				type = advance(TokenType.TILDE);
+				break;
+			case ';':
+				type = advance(TokenType.SEMICOLON);
+				break;
+			case ':':
+				type = advance(TokenType.COLON);
+				break;
+			case '?':
+				type = advance(TokenType.QUESTION);
+				break;
+			case '(':
+				type = advance(TokenType.LEFT_PAREN);
+				break;
+			case ')':
+				type = advance(TokenType.RIGHT_PAREN);
+				break;
+			case '{':
+				type = advance(TokenType.LEFT_BRACE);
+				break;
+			case '}':
+				type = advance(TokenType.RIGHT_BRACE);
+				break;
+			case '[':
+				type = advance(TokenType.LEFT_BRACKET);
+				break;
+			case ']':
+				type = advance(TokenType.RIGHT_BRACKET);
+				break;
+			case CharIterator.INVALID:
+				type = TokenType.EOF;
+				break;
+			case '.':
+				if (Character.isDigit(peek)) {
+					type = readNumber();
+				} else {
+					type = advance(TokenType.DOT);
+				}
+				break;
+			default:
+				if (Character.isDigit(ch)) {
+					type = readNumber();
+				} else if (Character.isLetter(ch) || ch == '_') {
+					skipIdentifier();
+					int length = this.position - startOffset;
+					// first check if previous token indicates a preprocessor directive
+					if (previousType == TokenType.PREPROC_HASH) {
+						type = TYPES[DIRECTIVES.find(source, startOffset, length)];
+					}
+					// is not a preprocessor directive? -> is it a keyword?
+					if (type == TokenType.INVALID) {
+						type = TYPES[KEYWORDS.find(source, startOffset, length)];
+					}
+					if (type == TokenType.INVALID) {
+						type = TokenType.IDENTIFIER;
+					}
+					if (type == TokenType.IDENTIFIER && category == Token.Category.NORMAL) {
+						if (lastNormalType == TokenType.DOT) {
+							type = TokenType.FIELD_SELECTION;
+						} else if (lastNormalType == TokenType.STRUCT) {
+							type = TokenType.TYPE_NAME;
+						} else if (lastNormalType == TokenType.IDENTIFIER) {
+							setLastNormalType(TokenType.TYPE_NAME);
+						}
+					}
+				} else {
+					type = TokenType.INVALID;
+					if (CharIterator.isSurrogate(this.getCurrentChar())) {
+						++this.readPosition;
+					}
+					this.position = this.readPosition++;
+					++this.unicodePosition;
+				}
+				break;
+		}
+		int index = firstToken + window.add(type, category, start, this.unicodePosition,
+				startOffset, this.position, line, column);
+
+		previousType = type;
+		previousCategory = category;
+		if (category == Token.Category.NORMAL) {
+			lastNormalType = type;
+			lastNormalIndex = index;
+		}
+		return type;
+	}
+
+	/**
+	 * Find an area of change between two token buffers.
+	 *
+	 * @param original Tokens before change.
+	 * @param edited   Tokens after change.
+	 * @return A {@link Diff} object that describes the area of change.
+	 */
+	public static @NonNull Diff diff(@NonNull TokenBuffer original,
+			@NonNull TokenBuffer edited) {
+		int start = 0;
+		int end = 1;
+		int originalSize = original.size();
+		int editedSize = edited.size();
+		int max = Math.min(originalSize, editedSize);
+
+		// Find the longest common prefix
+		while (start < max && original.isSame(start, edited, start)) {
+			start++;
+		}
+
+		// Find the longest common suffix
+		while (end < max && original.isSame(originalSize - end, edited, editedSize - end)) {
+			end++;
+		}
+
+		// Calculate the changes
+		int deleteEnd = originalSize - end;
+		int insertEnd = editedSize - end;
+		return new Diff(start, deleteEnd, insertEnd);
+	}
+
+	/**
+	 * Find an area of change between two token buffers when it's known that
+	 * {@code [editStart, oldEditEnd)} of the original text was replaced with
+	 * {@code [editStart, newEditEnd)}.
+	 * <p>
+	 * Unlike {@link #diff(TokenBuffer, TokenBuffer)} this doesn't compare the whole buffers.
+	 * Tokens before the edit have the same offsets in both buffers and tokens after it are
+	 * moved by the length difference of the edit, so only the tokens in and next to the edit
+	 * need to be looked at.
+	 *
+	 * @param original   Tokens before change.
+	 * @param edited     Tokens after change.
+	 * @param editStart  Start of the changed range.
+	 * @param oldEditEnd End of the changed range in the original text.
+	 * @param newEditEnd End of the changed range in the edited text.
+	 * @return A {@link Diff} object that describes the area of change.
+	 */
+	public static @NonNull Diff diff(@NonNull TokenBuffer original,
+			@NonNull TokenBuffer edited, int editStart, int oldEditEnd, int newEditEnd) {
+		int originalSize = original.size();
+		int editedSize = edited.size();
+		int delta = newEditEnd - oldEditEnd;
+		if (originalSize == 0 || editedSize == 0 || editStart < 0 ||
+				editStart > oldEditEnd || editStart > newEditEnd ||
+				original.endOffset(originalSize - 1) + delta !=
+						edited.endOffset(editedSize - 1)) {
+			// Not an edit of the original text.
+			return diff(original, edited);
+		}
+
+		// The first normal token after the edit that is still the same, only
+		// moved. Its type and category fix all the state the lexer carries
+		// over to the next token, so all that follow are the same too. A
+		// comment, whitespace or preprocessor token doesn't, since it leaves
+		// the last normal token alone, which may make an identifier after it
+		// a type name in one buffer but not in the other.
+		int deleteEnd = original.findFrom(oldEditEnd);
+		if (deleteEnd < originalSize && original.startOffset(deleteEnd) < oldEditEnd) {
+			++deleteEnd;
+		}
+		int insertEnd = 0;
+		if (deleteEnd < originalSize) {
+			insertEnd = edited.findFrom(original.startOffset(deleteEnd) + delta);
+		}
+		while (deleteEnd < originalSize) {
+			int offset = original.startOffset(deleteEnd) + delta;
+			while (insertEnd < editedSize && edited.startOffset(insertEnd) < offset) {
+				++insertEnd;
+			}
+			if (insertEnd == editedSize) {
+				deleteEnd = originalSize;
+				break;
+			}
+			if (edited.startOffset(insertEnd) == offset &&
+					original.category(deleteEnd) == Token.Category.NORMAL &&
+					original.isSame(deleteEnd, edited, insertEnd)) {
+				break;
+			}
+			++deleteEnd;
+		}
+		if (deleteEnd == originalSize) {
+			insertEnd = editedSize;
+		}
+
+		// The token that ends at the edit may have been extended by it.
+		int start = original.findFrom(editStart - 1);
+		// And an identifier is turned into a type name by a following
+		// identifier, so the last normal token before the edit may have
+		// changed its type.
+		int normal = Math.min(start, Math.min(deleteEnd, insertEnd)) - 1;
+		while (normal >= 0 && original.category(normal) != Token.Category.NORMAL) {
+			--normal;
+		}
+		if (normal >= 0 && !original.isSame(normal, edited, normal)) {
+			start = normal;
+		}
+		start = Math.min(start, Math.min(deleteEnd, insertEnd));
+		while (start < deleteEnd && start < insertEnd &&
+				original.startOffset(start) == edited.startOffset(start) &&
+				original.isSame(start, edited, start)) {
+			++start;
+		}
+		return new Diff(start, deleteEnd - 1, insertEnd - 1);
+	}
+
+	@Contract(pure = true)
+	private char peekNextChar() {
+		return CharIterator.peekC(this.position, this.source);
+	}
+
+	@Contract(pure = true)
+	private char getCurrentChar() {
+		return CharIterator.ch(this.position, this.source);
+	}
+
+	private void handleLineColumn() {
+		char ch = getCurrentChar();
+		if (ch == '\n' || ch == '\r') {
+			++this.lineCount;
+			this.lineStart = this.unicodePosition + 1;
+		}
+	}
+
+	private void readNext() {
+		while (true) {
+			++this.unicodePosition;
+			this.position = this.readPosition++;
+			int oldPosition = this.position;
+			// if ch == \, then check if line continuation
+			if (getCurrentChar() == '\\' && CharIterator.hasMoved(oldPosition, this.position =
+					CharIterator.nextNewline(this.position, this.source))) {
+				this.readPosition = this.position + 1;
+				handleLineColumn();
+				continue;
+			}
+			return;
+		}
+	}
+
+	private int skipWhitespace() {
+		int lineCountBefore = this.lineCount;
+		while (Character.isWhitespace(getCurrentChar())) {
+			handleLineColumn();
+			readNext();
+		}
+		return this.lineCount - lineCountBefore;
+	}
+
+	// Skip over an identifier
+	private void skipIdentifier() {
+		while (getCurrentChar() == '_' || Character.isLetterOrDigit(getCurrentChar())) {
+			readNext();
+		}
+	}
+
+	// Read a number token
+	private @NonNull TokenType readNumber() {
+		TokenType type = TokenType.INTCONSTANT;
+		boolean possibleOctal = false;
+		boolean incorrectOctal = false;
+		if (getCurrentChar() == '0') {
+			possibleOctal = true;
+			readNext();
+			// Check for hexadecimal number
+			if (getCurrentChar() == 'x' || getCurrentChar() == 'X') {
+				readNext();
+
+				// Read hexadecimal part
+				while (Character.digit(getCurrentChar(), 16) != -1) {
+					readNext();
+				}
+
+				return TokenType.INTCONSTANT;
+			}
+		}
+		// Read integer part
+		while (Character.isDigit(getCurrentChar())) {
+			if (getCurrentChar() > '7') {
+				incorrectOctal = true;
+			}
+			readNext();
+		}
+
+		// Check for decimal part
+		if (getCurrentChar() == '.') {
+			type = TokenType.FLOATCONSTANT;
+			readNext();
+			// Read decimal part
+			while (Character.isDigit(getCurrentChar())) {
+				readNext();
+			}
+		}
+
+		// Check for exponent part
+		if ((getCurrentChar() == 'e' || getCurrentChar() == 'E')) {
+			type = TokenType.FLOATCONSTANT;
+			readNext();
+
+			// Check for sign of exponent
+			if (getCurrentChar() == '+' || getCurrentChar() == '-') {
+				readNext();
+			}
+			if (!Character.isDigit(getCurrentChar())) {
+				return TokenType.INVALID;
+			}
+			// Read exponent part
+			do {
+				readNext();
+			} while ((Character.isDigit(getCurrentChar())));
+		}
+		if (type == TokenType.FLOATCONSTANT) {
+			if (getCurrentChar() == 'f' || getCurrentChar() == 'F') {
+				readNext();
+			}
+			return TokenType.FLOATCONSTANT;
+		}
+		// Check for unsigned suffix
+		if (getCurrentChar() == 'u' || getCurrentChar() == 'U') {
+			readNext();
+			type = TokenType.UINTCONSTANT;
+		}
+
+		// Integer without suffix
+		return possibleOctal && incorrectOctal ? TokenType.INVALID : type;
+	}
+
+	public static List<String> completeKeyword(@NonNull String text,
+			@NonNull Token.Category type) {
+		List<String> result = new ArrayList<>();
+		KeywordMap root = tokenRoot(type);
+		if (root != null) {
+			root.findAll(text, (short) TokenType.INVALID.ordinal(), result);
+		}
+
+		if (type == Token.Category.PREPROC) {
+			// Also add normal keywords to the list
+			KEYWORDS.findAll(text, (short) TokenType.INVALID.ordinal(), result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return All keywords that {@link #completeKeyword(String, Token.Category)} may
+	 * return for {@code type}.
+	 */
+	static @NonNull String[] keywords(@NonNull Token.Category type) {
+		KeywordMap root = tokenRoot(type);
+		if (root == null) {
+			return new String[0];
+		}
+		short invalid = (short) TokenType.INVALID.ordinal();
+		String[] keywords = root.keys(invalid);
+		if (type == Token.Category.PREPROC) {
+			String[] normal = KEYWORDS.keys(invalid);
+			int length = keywords.length;
+			keywords = Arrays.copyOf(keywords, length + normal.length);
+			System.arraycopy(normal, 0, keywords, length, normal.length);
+		}
+		return keywords;
+	}
+
+	/**
+	 * Performs a binary search to find the token that includes the given position.
+	 * Assumes tokens are non-overlapping and touch each other.
+	 *
+	 * @param tokens   Tokens sorted by their start offsets.
+	 * @param position The offset to search for.
+	 * @return The index of the token that contains the position, or -1 if no such token
+	 * exists.
+	 */
+	public static int findToken(@NonNull TokenBuffer tokens, int position) {
+		return tokens.find(position);
+	}
+
+	@Nullable
+	private static KeywordMap tokenRoot(@NonNull Token.Category type) {
+		switch (type) {
+			case NORMAL:
+				return KEYWORDS;
+			case TRIVIA:
+				return null;
+			case PREPROC:
+				return DIRECTIVES;
+		}
+		return null;
+	}
+
+	// initialize lookup
+	static {
+		// Keyword lookup
+		KEYWORDS = new KeywordMap.Builder()
+				.insert("const", TokenType.CONST)
+				.insert("bool", TokenType.BOOL)
+				.insert("float", TokenType.FLOAT)
+				.insert("int", TokenType.INT)
+				.insert("uint", TokenType.UINT)
+				.insert("double", TokenType.DOUBLE)
+				.insert("bvec2", TokenType.BVEC2)
+				.insert("bvec3", TokenType.BVEC3)
+				.insert("bvec4", TokenType.BVEC4)
+				.insert("ivec2", TokenType.IVEC2)
+				.insert("ivec3", TokenType.IVEC3)
+				.insert("ivec4", TokenType.IVEC4)
+				.insert("uvec2", TokenType.UVEC2)
+				.insert("uvec3", TokenType.UVEC3)
+				.insert("uvec4", TokenType.UVEC4)
+				.insert("vec2", TokenType.VEC2)
+				.insert("vec3", TokenType.VEC3)
+				.insert("vec4", TokenType.VEC4)
+				.insert("mat2", TokenType.MAT2)
+				.insert("mat3", TokenType.MAT3)
+				.insert("mat4", TokenType.MAT4)
+				.insert("mat2x2", TokenType.MAT2X2)
+				.insert("mat2x3", TokenType.MAT2X3)
+				.insert("mat2x4", TokenType.MAT2X4)
+				.insert("mat3x2", TokenType.MAT3X2)
+				.insert("mat3x3", TokenType.MAT3X3)
+				.insert("mat3x4", TokenType.MAT3X4)
+				.insert("mat4x2", TokenType.MAT4X2)
+				.insert("mat4x3", TokenType.MAT4X3)
+				.insert("mat4x4", TokenType.MAT4X4)
+				.insert("dvec2", TokenType.DVEC2)
+				.insert("dvec3", TokenType.DVEC3)
+				.insert("dvec4", TokenType.DVEC4)
+				.insert("dmat2", TokenType.DMAT2)
+				.insert("dmat3", TokenType.DMAT3)
+				.insert("dmat4", TokenType.DMAT4)
+				.insert("dmat2x2", TokenType.DMAT2X2)
+				.insert("dmat2x3", TokenType.DMAT2X3)
+				.insert("dmat2x4", TokenType.DMAT2X4)
+				.insert("dmat3x2", TokenType.DMAT3X2)
+				.insert("dmat3x3", TokenType.DMAT3X3)
+				.insert("dmat3x4", TokenType.DMAT3X4)
+				.insert("dmat4x2", TokenType.DMAT4X2)
+				.insert("dmat4x3", TokenType.DMAT4X3)
+				.insert("dmat4x4", TokenType.DMAT4X4)
+				.insert("centroid", TokenType.CENTROID)
+				.insert("in", TokenType.IN)
+				.insert("out", TokenType.OUT)
+				.insert("inout", TokenType.INOUT)
+				.insert("uniform", TokenType.UNIFORM)
+				.insert("varying", TokenType.VARYING)
+				.insert("attribute", TokenType.ATTRIBUTE)
+				.insert("patch", TokenType.PATCH)
+				.insert("sample", TokenType.SAMPLE)
+				.insert("buffer", TokenType.BUFFER)
+				.insert("shared", TokenType.SHARED)
+				.insert("coherent", TokenType.COHERENT)
+				.insert("volatile", TokenType.VOLATILE)
+				.insert("restrict", TokenType.RESTRICT)
+				.insert("readonly", TokenType.READONLY)
+				.insert("writeonly", TokenType.WRITEONLY)
+				.insert("noperspective", TokenType.NOPERSPECTIVE)
+				.insert("flat", TokenType.FLAT)
+				.insert("smooth", TokenType.SMOOTH)
+				.insert("layout", TokenType.LAYOUT)
+				.insert("atomic_uint", TokenType.ATOMIC_UINT)
+				.insert("sampler2D", TokenType.SAMPLER2D)
+				.insert("sampler3D", TokenType.SAMPLER3D)
+				.insert("samplerCube", TokenType.SAMPLERCUBE)
+				.insert("sampler2DShadow", TokenType.SAMPLER2DSHADOW)
+				.insert("samplerCubeShadow", TokenType.SAMPLERCUBESHADOW)
+				.insert("sampler2DArray", TokenType.SAMPLER2DARRAY)
+				.insert("sampler2DArrayShadow", TokenType.SAMPLER2DARRAYSHADOW)
+				.insert("isampler2D", TokenType.ISAMPLER2D)
+				.insert("isampler3D", TokenType.ISAMPLER3D)
+				.insert("isamplerCube", TokenType.ISAMPLERCUBE)
+				.insert("isampler2DArray", TokenType.ISAMPLER2DARRAY)
+				.insert("usampler2D", TokenType.USAMPLER2D)
+				.insert("usampler3D", TokenType.USAMPLER3D)
+				.insert("usamplerCube", TokenType.USAMPLERCUBE)
+				.insert("usampler2DArray", TokenType.USAMPLER2DARRAY)
+				.insert("sampler1D", TokenType.SAMPLER1D)
+				.insert("sampler1DShadow", TokenType.SAMPLER1DSHADOW)
+				.insert("sampler1DArray", TokenType.SAMPLER1DARRAY)
+				.insert("sampler1DArrayShadow", TokenType.SAMPLER1DARRAYSHADOW)
+				.insert("isampler1D", TokenType.ISAMPLER1D)
+				.insert("isampler1DArray", TokenType.ISAMPLER1DARRAY)
+				.insert("usampler1D", TokenType.USAMPLER1D)
+				.insert("usampler1DArray", TokenType.USAMPLER1DARRAY)
+				.insert("sampler2DRect", TokenType.SAMPLER2DRECT)
+				.insert("sampler2DRectShadow", TokenType.SAMPLER2DRECTSHADOW)
+				.insert("isampler2DRect", TokenType.ISAMPLER2DRECT)
+				.insert("usampler2DRect", TokenType.USAMPLER2DRECT)
+				.insert("samplerbuffer", TokenType.SAMPLERBUFFER)
+				.insert("isamplerbuffer", TokenType.ISAMPLERBUFFER)
+				.insert("usamplerbuffer", TokenType.USAMPLERBUFFER)
+				.insert("samplerCubeArray", TokenType.SAMPLERCUBEARRAY)
+				.insert("samplerCubeArrayShadow", TokenType.SAMPLERCUBEARRAYSHADOW)
+				.insert("isamplerCubeArray", TokenType.ISAMPLERCUBEARRAY)
+				.insert("usamplerCubeArray", TokenType.USAMPLERCUBEARRAY)
+				.insert("sampler2DMS", TokenType.SAMPLER2DMS)
+				.insert("isampler2DMS", TokenType.ISAMPLER2DMS)
+				.insert("usampler2DMS", TokenType.USAMPLER2DMS)
+				.insert("sampler2DMSArray", TokenType.SAMPLER2DMSARRAY)
+				.insert("isampler2DMSArray", TokenType.ISAMPLER2DMSARRAY)
+				.insert("usampler2DMSArray", TokenType.USAMPLER2DMSARRAY)
+				.insert("image2D", TokenType.IMAGE2D)
+				.insert("iimage2D", TokenType.IIMAGE2D)
+				.insert("uimage2D", TokenType.UIMAGE2D)
+				.insert("image3D", TokenType.IMAGE3D)
+				.insert("iimage3D", TokenType.IIMAGE3D)
+				.insert("uimage3D", TokenType.UIMAGE3D)
+				.insert("imageCube", TokenType.IMAGECUBE)
+				.insert("iimageCube", TokenType.IIMAGECUBE)
+				.insert("uimageCube", TokenType.UIMAGECUBE)
+				.insert("imagebuffer", TokenType.IMAGEBUFFER)
+				.insert("iimagebuffer", TokenType.IIMAGEBUFFER)
+				.insert("uimagebuffer", TokenType.UIMAGEBUFFER)
+				.insert("image2DArray", TokenType.IMAGE2DARRAY)
+				.insert("iimage2DArray", TokenType.IIMAGE2DARRAY)
+				.insert("uimage2DArray", TokenType.UIMAGE2DARRAY)
+				.insert("imageCubeArray", TokenType.IMAGECUBEARRAY)
+				.insert("iimageCubeArray", TokenType.IIMAGECUBEARRAY)
+				.insert("uimageCubeArray", TokenType.UIMAGECUBEARRAY)
+				.insert("image1D", TokenType.IMAGE1D)
+				.insert("iimage1D", TokenType.IIMAGE1D)
+				.insert("uimage1D", TokenType.UIMAGE1D)
+				.insert("image1DArray", TokenType.IMAGE1DARRAY)
+				.insert("iimage1DArray", TokenType.IIMAGE1DARRAY)
+				.insert("iimage1DArray", TokenType.UIMAGE1DARRAY)
+				.insert("image2DRect", TokenType.IMAGE2DRECT)
+				.insert("iimage2DRect", TokenType.IIMAGE2DRECT)
+				.insert("uimage2DRect", TokenType.UIMAGE2DRECT)
+				.insert("image2DMS", TokenType.IMAGE2DMS)
+				.insert("iimage2DMS", TokenType.IIMAGE2DMS)
+				.insert("uimage2DMS", TokenType.UIMAGE2DMS)
+				.insert("image2DMSArray", TokenType.IMAGE2DMSARRAY)
+				.insert("iimage2DMSArray", TokenType.IIMAGE2DMSARRAY)
+				.insert("uimage2DMSArray", TokenType.UIMAGE2DMSARRAY)
+				.insert("struct", TokenType.STRUCT)
+				.insert("void", TokenType.VOID)
+				.insert("while", TokenType.WHILE)
+				.insert("break", TokenType.BREAK)
+				.insert("continue", TokenType.CONTINUE)
+				.insert("do", TokenType.DO)
+				.insert("else", TokenType.ELSE)
+				.insert("for", TokenType.FOR)
+				.insert("if", TokenType.IF)
+				.insert("discard", TokenType.DISCARD)
+				.insert("return", TokenType.RETURN)
+				.insert("switch", TokenType.SWITCH)
+				.insert("case", TokenType.CASE)
+				.insert("default", TokenType.DEFAULT)
+				.insert("subroutine", TokenType.SUBROUTINE)
+				.insert("invariant", TokenType.INVARIANT)
+				.insert("precise", TokenType.PRECISE)
+				.insert("highp", TokenType.HIGH_PRECISION)
+				.insert("mediump", TokenType.MEDIUM_PRECISION)
+				.insert("lowp", TokenType.LOW_PRECISION)
+				.insert("precision", TokenType.PRECISION)
+				// builtins taken from taken from
+				// https://registry.khronos.org/OpenGL-Refpages/gl4/index.php
+				.insert("abs", TokenType.BUILTIN_FUNCTION)
+				.insert("acos", TokenType.BUILTIN_FUNCTION)
+				.insert("acosh", TokenType.BUILTIN_FUNCTION)
+				.insert("all", TokenType.BUILTIN_FUNCTION)
+				.insert("any", TokenType.BUILTIN_FUNCTION)
+				.insert("asin", TokenType.BUILTIN_FUNCTION)
+				.insert("asinh", TokenType.BUILTIN_FUNCTION)
+				.insert("atan", TokenType.BUILTIN_FUNCTION)
+				.insert("atanh", TokenType.BUILTIN_FUNCTION)
+				.insert("atomicAdd", TokenType.BUILTIN_FUNCTION)
+				.insert("atomicAnd", TokenType.BUILTIN_FUNCTION)
+				.insert("atomicCompSwap", TokenType.BUILTIN_FUNCTION)
+				.insert("atomicCounter", TokenType.BUILTIN_FUNCTION)
+				.insert("atomicCounterDecrement", TokenType.BUILTIN_FUNCTION)
+				.insert("atomicCounterIncrement", TokenType.BUILTIN_FUNCTION)
+				.insert("atomicExchange", TokenType.BUILTIN_FUNCTION)
+				.insert("atomicMax", TokenType.BUILTIN_FUNCTION)
+				.insert("atomicMin", TokenType.BUILTIN_FUNCTION)
+				.insert("atomicOr", TokenType.BUILTIN_FUNCTION)
+				.insert("atomicXor", TokenType.BUILTIN_FUNCTION)
+				.insert("barrier", TokenType.BUILTIN_FUNCTION)
+				.insert("bitCount", TokenType.BUILTIN_FUNCTION)
+				.insert("bitfieldExtract", TokenType.BUILTIN_FUNCTION)
+				.insert("bitfieldInsert", TokenType.BUILTIN_FUNCTION)
+				.insert("bitfieldReverse", TokenType.BUILTIN_FUNCTION)
+				.insert("ceil", TokenType.BUILTIN_FUNCTION)
+				.insert("clamp", TokenType.BUILTIN_FUNCTION)
+				.insert("cos", TokenType.BUILTIN_FUNCTION)
+				.insert("cosh", TokenType.BUILTIN_FUNCTION)
+				.insert("cross", TokenType.BUILTIN_FUNCTION)
+				.insert("degrees", TokenType.BUILTIN_FUNCTION)
+				.insert("determinant", TokenType.BUILTIN_FUNCTION)
+				.insert("dFdx", TokenType.BUILTIN_FUNCTION)
+				.insert("dFdxCoarse", TokenType.BUILTIN_FUNCTION)
+				.insert("dFdxFine", TokenType.BUILTIN_FUNCTION)
+				.insert("dFdy", TokenType.BUILTIN_FUNCTION)
+				.insert("dFdyCoarse", TokenType.BUILTIN_FUNCTION)
+				.insert("dFdyFine", TokenType.BUILTIN_FUNCTION)
+				.insert("distance", TokenType.BUILTIN_FUNCTION)
+				.insert("dot", TokenType.BUILTIN_FUNCTION)
+				.insert("EmitStreamVertex", TokenType.BUILTIN_FUNCTION)
+				.insert("EmitVertex", TokenType.BUILTIN_FUNCTION)
+				.insert("EndPrimitive", TokenType.BUILTIN_FUNCTION)
+				.insert("EndStreamPrimitive", TokenType.BUILTIN_FUNCTION)
+				.insert("equal", TokenType.BUILTIN_FUNCTION)
+				.insert("exp", TokenType.BUILTIN_FUNCTION)
+				.insert("exp2", TokenType.BUILTIN_FUNCTION)
+				.insert("faceforward", TokenType.BUILTIN_FUNCTION)
+				.insert("findLSB", TokenType.BUILTIN_FUNCTION)
+				.insert("findMSB", TokenType.BUILTIN_FUNCTION)
+				.insert("floatBitsToInt", TokenType.BUILTIN_FUNCTION)
+				.insert("floatBitsToUint", TokenType.BUILTIN_FUNCTION)
+				.insert("floor", TokenType.BUILTIN_FUNCTION)
+				.insert("fma", TokenType.BUILTIN_FUNCTION)
+				.insert("fract", TokenType.BUILTIN_FUNCTION)
+				.insert("frexp", TokenType.BUILTIN_FUNCTION)
+				.insert("fwidth", TokenType.BUILTIN_FUNCTION)
+				.insert("fwidthCoarse", TokenType.BUILTIN_FUNCTION)
+				.insert("fwidthFine", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_ClipDistance", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_CullDistance", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_FragCoord", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_FragDepth", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_FrontFacing", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_GlobalInvocationID", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_HelperInvocation", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_InstanceID", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_InvocationID", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_Layer", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_LocalInvocationID", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_LocalInvocationIndex", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_NumSamples", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_NumWorkGroups", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_PatchVerticesIn", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_PointCoord", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_PointSize", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_Position", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_PrimitiveID", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_PrimitiveIDIn", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_SampleID", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_SampleMask", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_SampleMaskIn", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_SamplePosition", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_TessCoord", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_TessLevelInner", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_TessLevelOuter", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_VertexID", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_ViewportIndex", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_WorkGroupID", TokenType.BUILTIN_FUNCTION)
+				.insert("gl_WorkGroupSize", TokenType.BUILTIN_FUNCTION)
+				.insert("greaterThan", TokenType.BUILTIN_FUNCTION)
+				.insert("greaterThanEqual", TokenType.BUILTIN_FUNCTION)
+				.insert("groupMemoryBarrier", TokenType.BUILTIN_FUNCTION)
+				.insert("imageAtomicAdd", TokenType.BUILTIN_FUNCTION)
+				.insert("imageAtomicAnd", TokenType.BUILTIN_FUNCTION)
+				.insert("imageAtomicCompSwap", TokenType.BUILTIN_FUNCTION)
+				.insert("imageAtomicExchange", TokenType.BUILTIN_FUNCTION)
+				.insert("imageAtomicMax", TokenType.BUILTIN_FUNCTION)
+				.insert("imageAtomicMin", TokenType.BUILTIN_FUNCTION)
+				.insert("imageAtomicOr", TokenType.BUILTIN_FUNCTION)
+				.insert("imageAtomicXor", TokenType.BUILTIN_FUNCTION)
+				.insert("imageLoad", TokenType.BUILTIN_FUNCTION)
+				.insert("imageSamples", TokenType.BUILTIN_FUNCTION)
+				.insert("imageSize", TokenType.BUILTIN_FUNCTION)
+				.insert("imageStore", TokenType.BUILTIN_FUNCTION)
+				.insert("imulExtended", TokenType.BUILTIN_FUNCTION)
+				.insert("intBitsToFloat", TokenType.BUILTIN_FUNCTION)
+				.insert("interpolateAtCentroid", TokenType.BUILTIN_FUNCTION)
+				.insert("interpolateAtOffset", TokenType.BUILTIN_FUNCTION)
+				.insert("interpolateAtSample", TokenType.BUILTIN_FUNCTION)
+				.insert("inverse", TokenType.BUILTIN_FUNCTION)
+				.insert("inversesqrt", TokenType.BUILTIN_FUNCTION)
+				.insert("isinf", TokenType.BUILTIN_FUNCTION)
+				.insert("isnan", TokenType.BUILTIN_FUNCTION)
+				.insert("ldexp", TokenType.BUILTIN_FUNCTION)
+				.insert("length", TokenType.BUILTIN_FUNCTION)
+				.insert("lessThan", TokenType.BUILTIN_FUNCTION)
+				.insert("lessThanEqual", TokenType.BUILTIN_FUNCTION)
+				.insert("log", TokenType.BUILTIN_FUNCTION)
+				.insert("log2", TokenType.BUILTIN_FUNCTION)
+				.insert("matrixCompMult", TokenType.BUILTIN_FUNCTION)
+				.insert("max", TokenType.BUILTIN_FUNCTION)
+				.insert("memoryBarrier", TokenType.BUILTIN_FUNCTION)
+				.insert("memoryBarrierAtomicCounter", TokenType.BUILTIN_FUNCTION)
+				.insert("memoryBarrierBuffer", TokenType.BUILTIN_FUNCTION)
+				.insert("memoryBarrierImage", TokenType.BUILTIN_FUNCTION)
+				.insert("memoryBarrierShared", TokenType.BUILTIN_FUNCTION)
+				.insert("min", TokenType.BUILTIN_FUNCTION)
+				.insert("mix", TokenType.BUILTIN_FUNCTION)
+				.insert("mod", TokenType.BUILTIN_FUNCTION)
+				.insert("modf", TokenType.BUILTIN_FUNCTION)
+				.insert("noise", TokenType.BUILTIN_FUNCTION)
+				.insert("noise1", TokenType.BUILTIN_FUNCTION)
+				.insert("noise2", TokenType.BUILTIN_FUNCTION)
+				.insert("noise3", TokenType.BUILTIN_FUNCTION)
+				.insert("noise4", TokenType.BUILTIN_FUNCTION)
+				.insert("normalize", TokenType.BUILTIN_FUNCTION)
+				.insert("not", TokenType.BUILTIN_FUNCTION)
+				.insert("notEqual", TokenType.BUILTIN_FUNCTION)
+				.insert("outerProduct", TokenType.BUILTIN_FUNCTION)
+				.insert("packDouble2x32", TokenType.BUILTIN_FUNCTION)
+				.insert("packHalf2x16", TokenType.BUILTIN_FUNCTION)
+				.insert("packSnorm2x16", TokenType.BUILTIN_FUNCTION)
+				.insert("packSnorm4x8", TokenType.BUILTIN_FUNCTION)
+				.insert("packUnorm", TokenType.BUILTIN_FUNCTION)
+				.insert("packUnorm2x16", TokenType.BUILTIN_FUNCTION)
+				.insert("packUnorm4x8", TokenType.BUILTIN_FUNCTION)
+				.insert("pow", TokenType.BUILTIN_FUNCTION)
+				.insert("radians", TokenType.BUILTIN_FUNCTION)
+				.insert("reflect", TokenType.BUILTIN_FUNCTION)
+				.insert("refract", TokenType.BUILTIN_FUNCTION)
+				.insert("round", TokenType.BUILTIN_FUNCTION)
+				.insert("roundEven", TokenType.BUILTIN_FUNCTION)
+				.insert("sign", TokenType.BUILTIN_FUNCTION)
+				.insert("sin", TokenType.BUILTIN_FUNCTION)
+				.insert("sinh", TokenType.BUILTIN_FUNCTION)
+				.insert("smoothstep", TokenType.BUILTIN_FUNCTION)
+				.insert("sqrt", TokenType.BUILTIN_FUNCTION)
+				.insert("step", TokenType.BUILTIN_FUNCTION)
+				.insert("tan", TokenType.BUILTIN_FUNCTION)
+				.insert("tanh", TokenType.BUILTIN_FUNCTION)
+				.insert("texelFetch", TokenType.BUILTIN_FUNCTION)
+				.insert("texelFetchOffset", TokenType.BUILTIN_FUNCTION)
+				.insert("texture", TokenType.BUILTIN_FUNCTION)
+				.insert("textureGather", TokenType.BUILTIN_FUNCTION)
+				.insert("textureGatherOffset", TokenType.BUILTIN_FUNCTION)
+				.insert("textureGatherOffsets", TokenType.BUILTIN_FUNCTION)
+				.insert("textureGrad", TokenType.BUILTIN_FUNCTION)
+				.insert("textureGradOffset", TokenType.BUILTIN_FUNCTION)
+				.insert("textureLod", TokenType.BUILTIN_FUNCTION)
+				.insert("textureLodOffset", TokenType.BUILTIN_FUNCTION)
+				.insert("textureOffset", TokenType.BUILTIN_FUNCTION)
+				.insert("textureProj", TokenType.BUILTIN_FUNCTION)
+				.insert("textureProjGrad", TokenType.BUILTIN_FUNCTION)
+				.insert("textureProjGradOffset", TokenType.BUILTIN_FUNCTION)
+				.insert("textureProjLod", TokenType.BUILTIN_FUNCTION)
+				.insert("textureProjLodOffset", TokenType.BUILTIN_FUNCTION)
+				.insert("textureProjOffset", TokenType.BUILTIN_FUNCTION)
+				.insert("textureQueryLevels", TokenType.BUILTIN_FUNCTION)
+				.insert("textureQueryLod", TokenType.BUILTIN_FUNCTION)
+				.insert("textureSamples", TokenType.BUILTIN_FUNCTION)
+				.insert("textureSize", TokenType.BUILTIN_FUNCTION)
+				.insert("transpose", TokenType.BUILTIN_FUNCTION)
+				.insert("trunc", TokenType.BUILTIN_FUNCTION)
+				.insert("uaddCarry", TokenType.BUILTIN_FUNCTION)
+				.insert("uintBitsToFloat", TokenType.BUILTIN_FUNCTION)
+				.insert("umulExtended", TokenType.BUILTIN_FUNCTION)
+				.insert("unpackDouble2x32", TokenType.BUILTIN_FUNCTION)
+				.insert("unpackHalf2x16", TokenType.BUILTIN_FUNCTION)
+				.insert("unpackSnorm2x16", TokenType.BUILTIN_FUNCTION)
+				.insert("unpackSnorm4x8", TokenType.BUILTIN_FUNCTION)
+				.insert("unpackUnorm", TokenType.BUILTIN_FUNCTION)
+				.insert("unpackUnorm2x16", TokenType.BUILTIN_FUNCTION)
+				.insert("unpackUnorm4x8", TokenType.BUILTIN_FUNCTION)
+				.insert("usubBorrow", TokenType.BUILTIN_FUNCTION)
+				.build();
+		// Preprocessor directives
+		DIRECTIVES = new KeywordMap.Builder()
+				.insert("if", TokenType.PREPROC_IF)
+				.insert("ifdef", TokenType.PREPROC_IFDEF)
+				.insert("ifndef", TokenType.PREPROC_IFNDEF)
+				.insert("elif", TokenType.PREPROC_ELIF)
+				.insert("else", TokenType.PREPROC_ELSE)
+				.insert("endif", TokenType.PREPROC_ENDIF)
+				.insert("include", TokenType.PREPROC_INCLUDE)
+				.insert("define", TokenType.PREPROC_DEFINE)
+				.insert("undef", TokenType.PREPROC_UNDEF)
+				.insert("line", TokenType.PREPROC_LINE)
+				.insert("error", TokenType.PREPROC_ERROR)
+				.insert("pragma", TokenType.PREPROC_PRAGMA)
+				.insert("version", TokenType.PREPROC_VERSION)
+				.build();
+	}
+}
@@ -0,0 +1,224 @@
+package de.markusfisch.android.shadereditor.highlighter;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Offsets of the line starts of a text that are kept up to date from edits, so finding the
+ * line of an offset or the offset of a line doesn't need to scan the text.
+ * <p>
+ * The starts are kept in a gap buffer, so adding or removing lines where the last edit
+ * happened is cheap. Moving the starts after an edit is deferred: the starts of all lines
+ * after {@code stepLine} still miss {@code stepLength}, which is only added to a line when
+ * an edit after it needs it to be correct. Typing into the same region therefore only
+ * touches the few lines between the edits.
+ */
+public final class LineIndex {
+	private int[] starts = new int[64];
+	// Number of lines, which is never less than one.
+	private int lineCount;
+	// Index of the gap in `starts` and its size.
+	private int gapStart;
+	private int gapLength;
+	// The starts of the lines after this one are missing `stepLength`.
+	private int stepLine;
+	private int stepLength;
+	private int length;
+
+	public LineIndex() {
+		clear();
+	}
+
+	/**
+	 * @return The number of lines, including the line after a final line break.
+	 */
+	public int lineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * @return The length of the text this index describes.
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * @return The offset of the first character of {@code line}.
+	 */
+	public int lineStart(int line) {
+		int start = raw(line);
+		return line > stepLine ? start + stepLength : start;
+	}
+
+	/**
+	 * @return The offset after the line break of {@code line} or the length of the text for
+	 * the last line, like {@code Layout.getLineEnd()}.
+	 */
+	public int lineEnd(int line) {
+		return line + 1 < lineCount ? lineStart(line + 1) : length;
+	}
+
+	/**
+	 * @return The line that contains {@code offset}.
+	 */
+	public int lineOf(int offset) {
+		int low = 0;
+		int high = lineCount - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (lineStart(mid) <= offset) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Index all lines of {@code text}.
+	 */
+	public void set(@NonNull CharSequence text) {
+		clear();
+		replace(text, 0, 0, text.length());
+	}
+
+	/**
+	 * Update the index for the replacement of {@code before} characters at {@code start}
+	 * with {@code count} characters, like {@code TextWatcher.onTextChanged()} reports it.
+	 * If the index doesn't describe the text before the edit, all of {@code text} is
+	 * indexed again.
+	 *
+	 * @param text The text after the edit.
+	 */
+	public void replace(@NonNull CharSequence text, int start, int before, int count) {
+		if (start < 0 || start + before > length ||
+				length - before + count != text.length()) {
+			set(text);
+			return;
+		}
+		int line = lineOf(start);
+		for (int last = lineOf(start + before); last > line; --last) {
+			removeLine(last);
+		}
+		moveLinesAfter(line, count - before);
+		length += count - before;
+		for (int i = start, end = start + count; i < end; ++i) {
+			if (text.charAt(i) == '\n') {
+				insertLine(++line, i + 1);
+			}
+		}
+	}
+
+	private void clear() {
+		lineCount = 1;
+		gapStart = 1;
+		gapLength = starts.length - 1;
+		starts[0] = 0;
+		stepLine = 0;
+		stepLength = 0;
+		length = 0;
+	}
+
+	private void moveLinesAfter(int line, int delta) {
+		if (delta == 0) {
+			return;
+		}
+		if (stepLength == 0) {
+			stepLine = line;
+			stepLength = delta;
+		} else if (line >= stepLine) {
+			applyStep(line);
+			stepLength += delta;
+		} else if (line >= stepLine - lineCount / 10) {
+			// Close enough to take the step back instead of applying
+			// it to the end of the text.
+			for (int i = line + 1; i <= stepLine; ++i) {
+				setRaw(i, raw(i) - stepLength);
+			}
+			stepLine = line;
+			stepLength += delta;
+		} else {
+			applyStep(lineCount - 1);
+			stepLine = line;
+			stepLength = delta;
+		}
+	}
+
+	/**
+	 * Add the step to the lines up to and including {@code line}.
+	 */
+	private void applyStep(int line) {
+		if (stepLength != 0) {
+			for (int i = stepLine + 1; i <= line; ++i) {
+				setRaw(i, raw(i) + stepLength);
+			}
+		}
+		stepLine = line;
+		if (stepLine >= lineCount - 1) {
+			stepLine = lineCount - 1;
+			stepLength = 0;
+		}
+	}
+
+	private void insertLine(int line, int start) {
+		if (stepLine < line) {
+			applyStep(line - 1);
+		}
+		moveGap(line);
+		if (gapLength == 0) {
+			int capacity = starts.length * 2;
+			int[] grown = new int[capacity];
+			System.arraycopy(starts, 0, grown, 0, gapStart);
+			int tail = lineCount - gapStart;
+			System.arraycopy(starts, gapStart, grown, capacity - tail, tail);
+			gapLength = capacity - lineCount;
+			starts = grown;
+		}
+		starts[gapStart++] = start;
+		--gapLength;
+		++lineCount;
+		++stepLine;
+	}
+
+	private void removeLine(int line) {
+		if (line > stepLine) {
+			applyStep(line);
+		}
+		--stepLine;
+		moveGap(line + 1);
+		--gapStart;
+		++gapLength;
+		--lineCount;
+	}
+
+	private void moveGap(int position) {
+		if (position < gapStart) {
+			System.arraycopy(starts, position, starts, position + gapLength,
+					gapStart - position);
+		} else if (position > gapStart) {
+			System.arraycopy(starts, gapStart + gapLength, starts, gapStart,
+					position - gapStart);
+		}
+		gapStart = position;
+	}
+
+	private int raw(int line) {
+		return starts[line < gapStart ? line : line + gapLength];
+	}
+
+	private void setRaw(int line, int start) {
+		starts[line < gapStart ? line : line + gapLength] = start;
+	}
+
+	@Override
+	public @NonNull String toString() {
+		int[] lineStarts = new int[lineCount];
+		for (int i = 0; i < lineCount; ++i) {
+			lineStarts[i] = lineStart(i);
+		}
+		return "LineIndex" + Arrays.toString(lineStarts);
+	}
+}
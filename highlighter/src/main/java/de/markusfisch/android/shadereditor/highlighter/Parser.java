@@ -0,0 +1,955 @@
+package de.markusfisch.android.shadereditor.highlighter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * An error tolerant recursive descent parser for GLSL ES 1.00 and 3.00 that builds a
+ * {@link SyntaxTree} from the tokens of the {@link Lexer}.
+ * <p>
+ * Comments and preprocessor directives are skipped. Code that doesn't parse ends up in
+ * {@link SyntaxTree.Kind#ERROR} nodes or in nodes that are marked to have an error, so
+ * the rest of the shader still gets a useful tree while it's being typed.
+ * <p>
+ * After an edit, only the top level declarations around the {@link Lexer.Diff} are parsed
+ * again. The parser remembers how far it looked ahead for every declaration, so the
+ * declarations that ended before the change are kept as they are, and as soon as parsing
+ * arrives at the start of a declaration after the change, that one and all following
+ * declarations are reused.
+ */
+public final class Parser {
+	// Deeper nesting is an error, so the parser can't run out of stack.
+	private static final int MAX_DEPTH = 256;
+
+	@NonNull
+	private SyntaxTree tree = SyntaxTree.EMPTY;
+	@NonNull
+	private TokenBuffer tokens = new TokenBuffer();
+	private int eof;
+	// Current token, which is never a comment or directive.
+	private int pos;
+	// Last consumed token.
+	private int last;
+	// Furthest token that was looked at.
+	private int examined;
+	private int depth;
+	private int errorCount;
+	// Finished nodes whose parent is still being parsed and their
+	// first tokens.
+	@NonNull
+	private SyntaxTree.Node[] stackNodes = new SyntaxTree.Node[64];
+	@NonNull
+	private int[] stackStarts = new int[64];
+	private int stackSize;
+	// Look ahead of the top level nodes on the stack.
+	@NonNull
+	private int[] examinedStack = new int[64];
+
+	/**
+	 * @return The tree after the last update.
+	 */
+	public @NonNull SyntaxTree tree() {
+		return tree;
+	}
+
+	/**
+	 * Parse all of {@code tokens}.
+	 */
+	public void reset(@NonNull TokenBuffer tokens) {
+		begin(tokens);
+		pos = nextSignificant(0);
+		parseDeclarations(null, 0, 0);
+	}
+
+	/**
+	 * Update the tree after {@code tokens} changed as described by {@code diff}.
+	 *
+	 * @param tokens The tokens after the change.
+	 */
+	public void update(@NonNull TokenBuffer tokens, @NonNull Lexer.Diff diff) {
+		SyntaxTree old = tree;
+		int delta = diff.insertEnd - diff.deleteEnd;
+		if (old.tokenCount() + delta != tokens.size()) {
+			// Not the tokens of the last tree.
+			reset(tokens);
+			return;
+		}
+		begin(tokens);
+		SyntaxTree.Node root = old.root();
+		int count = root.childCount();
+		int kept = 0;
+		int end = 0;
+		for (; kept < count; ++kept) {
+			int start = root.childStart(kept);
+			if (start + old.examined(kept) >= diff.start) {
+				break;
+			}
+			push(root.child(kept), start, old.examined(kept));
+			end = start + root.child(kept).length();
+		}
+		pos = nextSignificant(end);
+		int reuse = kept;
+		while (reuse < count && root.childStart(reuse) <= diff.deleteEnd) {
+			++reuse;
+		}
+		parseDeclarations(old, reuse, delta);
+	}
+
+	private void begin(@NonNull TokenBuffer tokens) {
+		this.tokens = tokens;
+		eof = tokens.size() - 1;
+		stackSize = 0;
+		depth = 0;
+		errorCount = 0;
+		last = -1;
+	}
+
+	private void parseDeclarations(@Nullable SyntaxTree old, int reuse, int delta) {
+		if (eof < 0) {
+			tree = SyntaxTree.EMPTY;
+			return;
+		}
+		SyntaxTree.Node oldRoot = old != null ? old.root() : null;
+		int count = oldRoot != null ? oldRoot.childCount() : 0;
+		while (pos < eof) {
+			while (reuse < count && oldRoot.childStart(reuse) + delta < pos) {
+				++reuse;
+			}
+			if (reuse < count && oldRoot.childStart(reuse) + delta == pos) {
+				for (; reuse < count; ++reuse) {
+					push(oldRoot.child(reuse), oldRoot.childStart(reuse) + delta,
+							old.examined(reuse));
+				}
+				break;
+			}
+			int start = pos;
+			examined = pos;
+			externalDeclaration();
+			examinedStack[stackSize - 1] = examined - start;
+		}
+		int size = stackSize;
+		SyntaxTree.Node[] children = Arrays.copyOf(stackNodes, size);
+		int[] starts = Arrays.copyOf(stackStarts, size);
+		int[] lookAhead = Arrays.copyOf(examinedStack, size);
+		Arrays.fill(stackNodes, 0, size, null);
+		stackSize = 0;
+		boolean hasError = false;
+		for (SyntaxTree.Node child : children) {
+			hasError |= child.hasError();
+		}
+		tree = new SyntaxTree(
+				new SyntaxTree.Node(SyntaxTree.Kind.TRANSLATION_UNIT, eof + 1, -1,
+						children, starts, hasError),
+				lookAhead,
+				eof + 1);
+	}
+
+	private void externalDeclaration() {
+		TokenType type = peek();
+		if (type == TokenType.SEMICOLON) {
+			int start = pos;
+			advance();
+			leaf(SyntaxTree.Kind.EMPTY, start);
+		} else if (startsDeclaration()) {
+			declaration();
+		} else {
+			skipDeclaration();
+		}
+	}
+
+	/**
+	 * Skip tokens that don't start a declaration up to the next one.
+	 */
+	private void skipDeclaration() {
+		int start = pos;
+		int mark = stackSize;
+		int errors = errorCount++;
+		int braces = 0;
+		do {
+			TokenType type = peek();
+			advance();
+			if (type == TokenType.LEFT_BRACE) {
+				++braces;
+			} else if (type == TokenType.RIGHT_BRACE) {
+				if (--braces < 1) {
+					break;
+				}
+			} else if (type == TokenType.SEMICOLON && braces == 0) {
+				break;
+			}
+		} while (peek() != TokenType.EOF && (braces > 0 || !startsDeclaration()));
+		finish(SyntaxTree.Kind.ERROR, start, mark, -1, errors);
+	}
+
+	private boolean startsDeclaration() {
+		TokenType type = peek();
+		if (isQualifier(type) ||
+				type == TokenType.STRUCT ||
+				type == TokenType.PRECISION) {
+			return true;
+		} else if (isTypeKeyword(type)) {
+			// Unless it's a constructor.
+			return peekAt(1) != TokenType.LEFT_PAREN;
+		} else if (type == TokenType.TYPE_NAME || type == TokenType.IDENTIFIER) {
+			return isName(peekAt(1));
+		}
+		return false;
+	}
+
+	private void declaration() {
+		int start = pos;
+		int mark = stackSize;
+		int errors = errorCount;
+		if (accept(TokenType.PRECISION)) {
+			qualifiers();
+			if (!typeSpecifier()) {
+				++errorCount;
+			}
+			expect(TokenType.SEMICOLON);
+			finish(SyntaxTree.Kind.PRECISION, start, mark, -1, errors);
+			return;
+		}
+		boolean qualified = qualifiers();
+		TokenType type = peek();
+		if (qualified &&
+				(type == TokenType.IDENTIFIER || type == TokenType.TYPE_NAME) &&
+				peekAt(1) == TokenType.LEFT_BRACE) {
+			interfaceBlock(start, mark, errors);
+			return;
+		}
+		// A declaration like `invariant gl_Position;` has no type.
+		if (!(qualified && isName(type)) && !typeSpecifier()) {
+			++errorCount;
+		}
+		if (isName(peek())) {
+			if (peekAt(1) == TokenType.LEFT_PAREN) {
+				function(start, mark, errors);
+				return;
+			}
+			variables();
+		}
+		expect(TokenType.SEMICOLON);
+		finish(SyntaxTree.Kind.DECLARATION, start, mark, -1, errors);
+	}
+
+	private void function(int start, int mark, int errors) {
+		int name = pos;
+		advance();
+		advance();
+		if (peek() == TokenType.VOID && peekAt(1) == TokenType.RIGHT_PAREN) {
+			advance();
+		} else if (peek() != TokenType.RIGHT_PAREN) {
+			do {
+				parameter();
+			} while (accept(TokenType.COMMA));
+		}
+		expect(TokenType.RIGHT_PAREN);
+		if (peek() == TokenType.LEFT_BRACE) {
+			block();
+		} else {
+			expect(TokenType.SEMICOLON);
+		}
+		finish(SyntaxTree.Kind.FUNCTION, start, mark, name, errors);
+	}
+
+	private void parameter() {
+		int start = pos;
+		int mark = stackSize;
+		int errors = errorCount;
+		qualifiers();
+		if (!typeSpecifier()) {
+			++errorCount;
+			if (pos == start) {
+				return;
+			}
+		}
+		int name = -1;
+		if (isName(peek())) {
+			name = pos;
+			advance();
+			arraySpecifiers();
+		}
+		finish(SyntaxTree.Kind.PARAMETER, start, mark, name, errors);
+	}
+
+	private void interfaceBlock(int start, int mark, int errors) {
+		int name = pos;
+		advance();
+		members();
+		if (isName(peek())) {
+			variables();
+		}
+		expect(TokenType.SEMICOLON);
+		finish(SyntaxTree.Kind.INTERFACE_BLOCK, start, mark, name, errors);
+	}
+
+	private void structSpecifier() {
+		int start = pos;
+		int mark = stackSize;
+		int errors = errorCount;
+		advance();
+		int name = -1;
+		TokenType type = peek();
+		if (type == TokenType.TYPE_NAME || isName(type)) {
+			name = pos;
+			advance();
+		}
+		members();
+		finish(SyntaxTree.Kind.STRUCT, start, mark, name, errors);
+	}
+
+	/**
+	 * Parse the member declarations of a struct or block.
+	 */
+	private void members() {
+		if (!expect(TokenType.LEFT_BRACE)) {
+			return;
+		}
+		while (peek() != TokenType.RIGHT_BRACE && peek() != TokenType.EOF) {
+			int start = pos;
+			int mark = stackSize;
+			int errors = errorCount;
+			qualifiers();
+			if (!typeSpecifier()) {
+				if (pos == start) {
+					errorToken();
+				} else {
+					++errorCount;
+					finish(SyntaxTree.Kind.DECLARATION, start, mark, -1, errors);
+				}
+				continue;
+			}
+			variables();
+			expect(TokenType.SEMICOLON);
+			finish(SyntaxTree.Kind.DECLARATION, start, mark, -1, errors);
+		}
+		expect(TokenType.RIGHT_BRACE);
+	}
+
+	private boolean typeSpecifier() {
+		int start = pos;
+		int mark = stackSize;
+		int errors = errorCount;
+		TokenType type = peek();
+		if (type == TokenType.STRUCT) {
+			structSpecifier();
+		} else if (isTypeKeyword(type) ||
+				type == TokenType.TYPE_NAME ||
+				type == TokenType.IDENTIFIER) {
+			advance();
+		} else {
+			return false;
+		}
+		arraySpecifiers();
+		finish(SyntaxTree.Kind.TYPE, start, mark, start, errors);
+		return true;
+	}
+
+	/**
+	 * Skip qualifiers like `uniform`, `highp` or `layout(...)`.
+	 *
+	 * @return True if there was at least one qualifier.
+	 */
+	private boolean qualifiers() {
+		boolean qualified = false;
+		for (TokenType type; isQualifier(type = peek()); qualified = true) {
+			advance();
+			if (type == TokenType.LAYOUT && accept(TokenType.LEFT_PAREN)) {
+				while (peek() != TokenType.RIGHT_PAREN &&
+						peek() != TokenType.SEMICOLON &&
+						peek() != TokenType.EOF) {
+					advance();
+				}
+				expect(TokenType.RIGHT_PAREN);
+			}
+		}
+		return qualified;
+	}
+
+	private void arraySpecifiers() {
+		while (peek() == TokenType.LEFT_BRACKET) {
+			int start = pos;
+			int mark = stackSize;
+			int errors = errorCount;
+			advance();
+			if (peek() != TokenType.RIGHT_BRACKET && !expression()) {
+				++errorCount;
+			}
+			expect(TokenType.RIGHT_BRACKET);
+			finish(SyntaxTree.Kind.ARRAY, start, mark, -1, errors);
+		}
+	}
+
+	/**
+	 * Parse a comma separated list of variables.
+	 */
+	private void variables() {
+		do {
+			int start = pos;
+			int mark = stackSize;
+			int errors = errorCount;
+			if (!isName(peek())) {
+				++errorCount;
+				return;
+			}
+			advance();
+			arraySpecifiers();
+			if (accept(TokenType.EQUAL) && !assignment()) {
+				++errorCount;
+			}
+			finish(SyntaxTree.Kind.VARIABLE, start, mark, start, errors);
+		} while (accept(TokenType.COMMA));
+	}
+
+	private void block() {
+		int start = pos;
+		int mark = stackSize;
+		int errors = errorCount;
+		advance();
+		while (peek() != TokenType.RIGHT_BRACE && peek() != TokenType.EOF) {
+			statement();
+		}
+		expect(TokenType.RIGHT_BRACE);
+		finish(SyntaxTree.Kind.BLOCK, start, mark, -1, errors);
+	}
+
+	/**
+	 * Parse one statement, which always consumes at least one token.
+	 */
+	private void statement() {
+		if (depth >= MAX_DEPTH) {
+			errorToken();
+			return;
+		}
+		++depth;
+		parseStatement();
+		--depth;
+	}
+
+	private void parseStatement() {
+		int start = pos;
+		int mark = stackSize;
+		int errors = errorCount;
+		switch (peek()) {
+			case LEFT_BRACE:
+				block();
+				return;
+			case IF:
+				advance();
+				condition();
+				body();
+				if (accept(TokenType.ELSE)) {
+					body();
+				}
+				finish(SyntaxTree.Kind.IF, start, mark, -1, errors);
+				return;
+			case FOR:
+				advance();
+				expect(TokenType.LEFT_PAREN);
+				if (!accept(TokenType.SEMICOLON)) {
+					if (startsDeclaration()) {
+						declaration();
+					} else {
+						expressionStatement();
+					}
+				}
+				if (peek() != TokenType.SEMICOLON && !expression()) {
+					++errorCount;
+				}
+				expect(TokenType.SEMICOLON);
+				if (peek() != TokenType.RIGHT_PAREN && !expression()) {
+					++errorCount;
+				}
+				expect(TokenType.RIGHT_PAREN);
+				body();
+				finish(SyntaxTree.Kind.FOR, start, mark, -1, errors);
+				return;
+			case WHILE:
+				advance();
+				condition();
+				body();
+				finish(SyntaxTree.Kind.WHILE, start, mark, -1, errors);
+				return;
+			case DO:
+				advance();
+				body();
+				expect(TokenType.WHILE);
+				condition();
+				expect(TokenType.SEMICOLON);
+				finish(SyntaxTree.Kind.DO, start, mark, -1, errors);
+				return;
+			case SWITCH:
+				advance();
+				condition();
+				if (peek() == TokenType.LEFT_BRACE) {
+					block();
+				} else {
+					++errorCount;
+				}
+				finish(SyntaxTree.Kind.SWITCH, start, mark, -1, errors);
+				return;
+			case CASE:
+				advance();
+				if (!expression()) {
+					++errorCount;
+				}
+				expect(TokenType.COLON);
+				finish(SyntaxTree.Kind.CASE, start, mark, -1, errors);
+				return;
+			case DEFAULT:
+				advance();
+				expect(TokenType.COLON);
+				finish(SyntaxTree.Kind.CASE, start, mark, -1, errors);
+				return;
+			case RETURN:
+				advance();
+				if (peek() != TokenType.SEMICOLON && !expression()) {
+					++errorCount;
+				}
+				expect(TokenType.SEMICOLON);
+				finish(SyntaxTree.Kind.RETURN, start, mark, -1, errors);
+				return;
+			case BREAK:
+			case CONTINUE:
+			case DISCARD:
+				advance();
+				expect(TokenType.SEMICOLON);
+				finish(SyntaxTree.Kind.JUMP, start, mark, start, errors);
+				return;
+			case SEMICOLON:
+				advance();
+				leaf(SyntaxTree.Kind.EMPTY, start);
+				return;
+			default:
+				if (startsDeclaration()) {
+					declaration();
+				} else {
+					expressionStatement();
+				}
+		}
+	}
+
+	/**
+	 * Parse the body of a control statement.
+	 */
+	private void body() {
+		TokenType type = peek();
+		if (type == TokenType.RIGHT_BRACE || type == TokenType.EOF) {
+			++errorCount;
+		} else {
+			statement();
+		}
+	}
+
+	private void condition() {
+		expect(TokenType.LEFT_PAREN);
+		if (!expression()) {
+			++errorCount;
+		}
+		expect(TokenType.RIGHT_PAREN);
+	}
+
+	private void expressionStatement() {
+		int start = pos;
+		int mark = stackSize;
+		int errors = errorCount;
+		if (!expression()) {
+			errorToken();
+			return;
+		}
+		expect(TokenType.SEMICOLON);
+		finish(SyntaxTree.Kind.EXPRESSION_STATEMENT, start, mark, -1, errors);
+	}
+
+	/**
+	 * @return True if an expression was parsed.
+	 */
+	private boolean expression() {
+		int start = pos;
+		int mark = stackSize;
+		int errors = errorCount;
+		if (!assignment()) {
+			return false;
+		}
+		if (peek() == TokenType.COMMA) {
+			while (accept(TokenType.COMMA)) {
+				if (!assignment()) {
+					++errorCount;
+				}
+			}
+			finish(SyntaxTree.Kind.SEQUENCE, start, mark, -1, errors);
+		}
+		return true;
+	}
+
+	private boolean assignment() {
+		if (depth >= MAX_DEPTH) {
+			return false;
+		}
+		++depth;
+		int start = pos;
+		int mark = stackSize;
+		int errors = errorCount;
+		boolean parsed = conditional();
+		if (parsed && isAssignment(peek())) {
+			int operator = pos;
+			advance();
+			if (!assignment()) {
+				++errorCount;
+			}
+			finish(SyntaxTree.Kind.ASSIGNMENT, start, mark, operator, errors);
+		}
+		--depth;
+		return parsed;
+	}
+
+	private boolean conditional() {
+		int start = pos;
+		int mark = stackSize;
+		int errors = errorCount;
+		if (!binary(1)) {
+			return false;
+		}
+		if (peek() == TokenType.QUESTION) {
+			int operator = pos;
+			advance();
+			if (!expression()) {
+				++errorCount;
+			}
+			expect(TokenType.COLON);
+			if (!assignment()) {
+				++errorCount;
+			}
+			finish(SyntaxTree.Kind.CONDITIONAL, start, mark, operator, errors);
+		}
+		return true;
+	}
+
+	private boolean binary(int minPrecedence) {
+		int start = pos;
+		int mark = stackSize;
+		int errors = errorCount;
+		if (!unary()) {
+			return false;
+		}
+		for (int precedence; (precedence = precedence(peek())) >= minPrecedence; ) {
+			int operator = pos;
+			advance();
+			if (!binary(precedence + 1)) {
+				++errorCount;
+			}
+			finish(SyntaxTree.Kind.BINARY, start, mark, operator, errors);
+		}
+		return true;
+	}
+
+	private boolean unary() {
+		switch (peek()) {
+			case PLUS:
+			case DASH:
+			case BANG:
+			case TILDE:
+			case INC_OP:
+			case DEC_OP:
+				if (depth >= MAX_DEPTH) {
+					return false;
+				}
+				int start = pos;
+				int mark = stackSize;
+				int errors = errorCount;
+				advance();
+				++depth;
+				if (!unary()) {
+					++errorCount;
+				}
+				--depth;
+				finish(SyntaxTree.Kind.UNARY, start, mark, start, errors);
+				return true;
+			default:
+				return postfix();
+		}
+	}
+
+	private boolean postfix() {
+		int start = pos;
+		int mark = stackSize;
+		int errors = errorCount;
+		if (!primary()) {
+			return false;
+		}
+		for (; ; ) {
+			switch (peek()) {
+				case LEFT_BRACKET:
+					// The size of an array constructor can be left out,
+					// like in `float[](1.0, 2.0)`.
+					boolean isTypeName = last == start &&
+							!isConstant(tokens.type(start));
+					advance();
+					boolean unsized = isTypeName &&
+							peek() == TokenType.RIGHT_BRACKET &&
+							peekAt(1) == TokenType.LEFT_PAREN;
+					if (!unsized && !expression()) {
+						++errorCount;
+					}
+					expect(TokenType.RIGHT_BRACKET);
+					finish(SyntaxTree.Kind.INDEX, start, mark, -1, errors);
+					break;
+				case LEFT_PAREN:
+					advance();
+					arguments();
+					expect(TokenType.RIGHT_PAREN);
+					finish(SyntaxTree.Kind.CALL, start, mark, -1, errors);
+					break;
+				case DOT:
+					advance();
+					int field = -1;
+					TokenType type = peek();
+					if (type == TokenType.FIELD_SELECTION || isName(type)) {
+						field = pos;
+						advance();
+					} else {
+						++errorCount;
+					}
+					finish(SyntaxTree.Kind.MEMBER, start, mark, field, errors);
+					break;
+				case INC_OP:
+				case DEC_OP:
+					int operator = pos;
+					advance();
+					finish(SyntaxTree.Kind.POSTFIX, start, mark, operator, errors);
+					break;
+				default:
+					return true;
+			}
+		}
+	}
+
+	private void arguments() {
+		TokenType type = peek();
+		if (type == TokenType.RIGHT_PAREN) {
+			return;
+		} else if (type == TokenType.VOID && peekAt(1) == TokenType.RIGHT_PAREN) {
+			advance();
+			return;
+		}
+		do {
+			if (!assignment()) {
+				++errorCount;
+				return;
+			}
+		} while (accept(TokenType.COMMA));
+	}
+
+	private boolean primary() {
+		int start = pos;
+		TokenType type = peek();
+		if (isName(type) || type == TokenType.TYPE_NAME || isTypeKeyword(type)) {
+			advance();
+			leaf(SyntaxTree.Kind.NAME, start);
+			return true;
+		} else if (isConstant(type)) {
+			advance();
+			leaf(SyntaxTree.Kind.LITERAL, start);
+			return true;
+		} else if (type == TokenType.LEFT_PAREN) {
+			int mark = stackSize;
+			int errors = errorCount;
+			advance();
+			if (!expression()) {
+				++errorCount;
+			}
+			expect(TokenType.RIGHT_PAREN);
+			finish(SyntaxTree.Kind.PARENTHESES, start, mark, -1, errors);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Consume one token that can't be parsed.
+	 */
+	private void errorToken() {
+		int start = pos;
+		int mark = stackSize;
+		int errors = errorCount++;
+		advance();
+		finish(SyntaxTree.Kind.ERROR, start, mark, -1, errors);
+	}
+
+	private boolean expect(@NonNull TokenType type) {
+		if (accept(type)) {
+			return true;
+		}
+		++errorCount;
+		return false;
+	}
+
+	private boolean accept(@NonNull TokenType type) {
+		if (peek() == type) {
+			advance();
+			return true;
+		}
+		return false;
+	}
+
+	private @NonNull TokenType peek() {
+		if (pos > examined) {
+			examined = pos;
+		}
+		return tokens.type(pos);
+	}
+
+	private @NonNull TokenType peekAt(int ahead) {
+		int index = pos;
+		for (int i = 0; i < ahead && index < eof; ++i) {
+			index = nextSignificant(index + 1);
+		}
+		if (index > examined) {
+			examined = index;
+		}
+		return tokens.type(index);
+	}
+
+	private void advance() {
+		last = pos;
+		if (pos < eof) {
+			pos = nextSignificant(pos + 1);
+		}
+	}
+
+	/**
+	 * @return The first token at or after {@code index} that isn't a comment or part
+	 * of a directive.
+	 */
+	private int nextSignificant(int index) {
+		while (index < eof && tokens.category(index) != Token.Category.NORMAL) {
+			++index;
+		}
+		return Math.min(index, eof);
+	}
+
+	private void leaf(@NonNull SyntaxTree.Kind kind, int start) {
+		push(new SyntaxTree.Node(kind, 1, 0, new SyntaxTree.Node[0], new int[0], false),
+				start, 0);
+	}
+
+	/**
+	 * Make a node of all nodes that were pushed since {@code mark} and push it.
+	 *
+	 * @param start      The first token of the node.
+	 * @param mainToken  The main token of the node or -1.
+	 * @param errorsMark The error count when the node was started.
+	 */
+	private void finish(@NonNull SyntaxTree.Kind kind, int start, int mark,
+			int mainToken, int errorsMark) {
+		int count = stackSize - mark;
+		SyntaxTree.Node[] children = new SyntaxTree.Node[count];
+		int[] starts = new int[count];
+		for (int i = 0; i < count; ++i) {
+			children[i] = stackNodes[mark + i];
+			starts[i] = stackStarts[mark + i] - start;
+			stackNodes[mark + i] = null;
+		}
+		stackSize = mark;
+		push(new SyntaxTree.Node(
+						kind,
+						Math.max(last, start) - start + 1,
+						mainToken < 0 ? -1 : mainToken - start,
+						children,
+						starts,
+						errorCount != errorsMark),
+				start,
+				0);
+	}
+
+	private void push(@NonNull SyntaxTree.Node node, int start, int lookAhead) {
+		if (stackSize == stackNodes.length) {
+			int capacity = stackSize * 2;
+			stackNodes = Arrays.copyOf(stackNodes, capacity);
+			stackStarts = Arrays.copyOf(stackStarts, capacity);
+			examinedStack = Arrays.copyOf(examinedStack, capacity);
+		}
+		stackNodes[stackSize] = node;
+		stackStarts[stackSize] = start;
+		examinedStack[stackSize] = lookAhead;
+		++stackSize;
+	}
+
+	private static boolean isName(@NonNull TokenType type) {
+		return type == TokenType.IDENTIFIER || type == TokenType.BUILTIN_FUNCTION;
+	}
+
+	static boolean isTypeKeyword(@NonNull TokenType type) {
+		int ordinal = type.ordinal();
+		return (ordinal >= TokenType.BOOL.ordinal() &&
+				ordinal <= TokenType.DMAT4X4.ordinal()) ||
+				(ordinal >= TokenType.ATOMIC_UINT.ordinal() &&
+						ordinal <= TokenType.UIMAGE2DMSARRAY.ordinal()) ||
+				type == TokenType.VOID;
+	}
+
+	private static boolean isQualifier(@NonNull TokenType type) {
+		int ordinal = type.ordinal();
+		return type == TokenType.CONST ||
+				(ordinal >= TokenType.CENTROID.ordinal() &&
+						ordinal <= TokenType.LAYOUT.ordinal()) ||
+				(ordinal >= TokenType.INVARIANT.ordinal() &&
+						ordinal <= TokenType.LOW_PRECISION.ordinal()) ||
+				type == TokenType.SUBROUTINE;
+	}
+
+	private static boolean isConstant(@NonNull TokenType type) {
+		int ordinal = type.ordinal();
+		return ordinal >= TokenType.FLOATCONSTANT.ordinal() &&
+				ordinal <= TokenType.BOOLCONSTANT.ordinal();
+	}
+
+	private static boolean isAssignment(@NonNull TokenType type) {
+		int ordinal = type.ordinal();
+		return type == TokenType.EQUAL ||
+				(ordinal >= TokenType.MUL_ASSIGN.ordinal() &&
+						ordinal <= TokenType.SUB_ASSIGN.ordinal());
+	}
+
+	/**
+	 * @return The precedence of a binary operator, higher binds stronger, or 0.
+	 */
+	private static int precedence(@NonNull TokenType type) {
+		switch (type) {
+			case OR_OP:
+				return 1;
+			case XOR_OP:
+				return 2;
+			case AND_OP:
+				return 3;
+			case VERTICAL_BAR:
+				return 4;
+			case CARET:
+				return 5;
+			case AMPERSAND:
+				return 6;
+			case EQ_OP:
+			case NE_OP:
+				return 7;
+			case LEFT_ANGLE:
+			case RIGHT_ANGLE:
+			case LE_OP:
+			case GE_OP:
+				return 8;
+			case LEFT_OP:
+			case RIGHT_OP:
+				return 9;
+			case PLUS:
+			case DASH:
+				return 10;
+			case STAR:
+			case SLASH:
+			case PERCENT:
+				return 11;
+			default:
+				return 0;
+		}
+	}
+}
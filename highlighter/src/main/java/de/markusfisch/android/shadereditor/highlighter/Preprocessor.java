@@ -0,0 +1,791 @@
+package de.markusfisch.android.shadereditor.highlighter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Finds the parts of a shader that the preprocessor skips, by following the conditional
+ * directives through the tokens of the shader.
+ * <p>
+ * The evaluation is conservative: a branch is only inactive if it certainly is. A
+ * condition that depends on the device, like an extension macro, or that can't be
+ * evaluated, like a function-like macro, leaves all its branches active.
+ * <p>
+ * The directives are kept in a list of token indices that is updated from the
+ * {@link Lexer.Diff} of every edit. Edits that don't touch a directive only move the
+ * inactive regions, the directives are only evaluated again when one of them changes.
+ */
+public final class Preprocessor {
+	/**
+	 * Inactive regions of a text, as sorted pairs of start and end offsets.
+	 */
+	public static final class InactiveRegions {
+		public static final InactiveRegions NONE = new InactiveRegions(new int[0], 0);
+
+		private final int[] ranges;
+		private final int generation;
+
+		private InactiveRegions(@NonNull int[] ranges, int generation) {
+			this.ranges = ranges;
+			this.generation = generation;
+		}
+
+		/**
+		 * @return A number that changes whenever the directives were evaluated with a
+		 * different result. Regions of the same generation only differ by the edits
+		 * between them.
+		 */
+		public int generation() {
+			return generation;
+		}
+
+		public int size() {
+			return ranges.length / 2;
+		}
+
+		public int start(int index) {
+			return ranges[index * 2];
+		}
+
+		public int end(int index) {
+			return ranges[index * 2 + 1];
+		}
+
+		/**
+		 * @return The index of the first region that ends after {@code offset} or
+		 * {@link #size()} if there is none.
+		 */
+		public int findFrom(int offset) {
+			int low = 0;
+			int high = size();
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (end(mid) <= offset) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		public boolean contains(int offset) {
+			int index = findFrom(offset);
+			return index < size() && start(index) <= offset;
+		}
+
+		@Override
+		public @NonNull String toString() {
+			return "InactiveRegions" + Arrays.toString(ranges);
+		}
+	}
+
+	// Results of a condition.
+	private static final int FALSE = 0;
+	private static final int TRUE = 1;
+	private static final int MAYBE = 2;
+	// Value of an expression that can't be evaluated.
+	private static final long UNKNOWN = Long.MIN_VALUE;
+	// Kinds of expression atoms that aren't token types.
+	private static final int NUMBER = -1;
+	private static final int END = -2;
+	private static final int MAX_EXPANSION_DEPTH = 16;
+
+	private static final class Macro {
+		@Nullable
+		private final String body;
+		private final boolean isFunction;
+		// Whether the macro was defined in a branch that may not be active.
+		private final boolean isUncertain;
+
+		private Macro(@Nullable String body, boolean isFunction, boolean isUncertain) {
+			this.body = body;
+			this.isFunction = isFunction;
+			this.isUncertain = isUncertain;
+		}
+	}
+
+	private static final Macro DEFINED = new Macro("1", false, false);
+	private static final Macro UNCERTAIN = new Macro(null, false, true);
+
+	// Token indices of the `#` of all directives, sorted.
+	private int[] hashes = new int[16];
+	private int hashCount;
+	// Inactive regions as pairs of token indices, from the first skipped
+	// token to the `#` of the directive that ends the region.
+	private int[] regions = new int[16];
+	private int regionCount;
+	private int generation;
+	@NonNull
+	private InactiveRegions inactiveRegions = InactiveRegions.NONE;
+
+	// Evaluation state, only valid during evaluate().
+	private final HashMap<String, Macro> macros = new HashMap<>();
+	private final HashSet<String> expanding = new HashSet<>();
+	private final Lexer bodyLexer = new Lexer();
+	private int[] atomKinds = new int[32];
+	private long[] atomValues = new long[32];
+	private int atomCount;
+	private int atom;
+	private boolean[] levelParentActive = new boolean[8];
+	private boolean[] levelParentCertain = new boolean[8];
+	private int[] levelTaken = new int[8];
+	private int[] levelRegionStart = new int[8];
+
+	/**
+	 * @return The inactive regions of the text of the last update.
+	 */
+	public @NonNull InactiveRegions inactiveRegions() {
+		return inactiveRegions;
+	}
+
+	/**
+	 * Find all directives of {@code tokens} and evaluate them.
+	 */
+	public void reset(@NonNull TokenBuffer tokens, @NonNull CharSequence text) {
+		hashCount = 0;
+		for (int i = 0, size = tokens.size(); i < size; ++i) {
+			if (tokens.type(i) == TokenType.PREPROC_HASH) {
+				addHash(hashCount, i);
+			}
+		}
+		evaluate(tokens, text);
+	}
+
+	/**
+	 * Update the directives after the tokens changed as described by {@code diff}.
+	 *
+	 * @param tokens The tokens after the change.
+	 * @param text   The text of {@code tokens}.
+	 */
+	public void update(@NonNull TokenBuffer tokens, @NonNull CharSequence text,
+			@NonNull Lexer.Diff diff) {
+		int size = tokens.size();
+		int delta = diff.insertEnd - diff.deleteEnd;
+		int first = lowerBound(hashes, hashCount, diff.start);
+		int last = lowerBound(hashes, hashCount, diff.deleteEnd + 1);
+		boolean changed = first < last;
+
+		// Replace the directives in the changed range.
+		for (int i = last; i < hashCount; ++i) {
+			hashes[i] += delta;
+		}
+		System.arraycopy(hashes, last, hashes, first, hashCount - last);
+		hashCount -= last - first;
+		for (int i = diff.start, at = first; i <= diff.insertEnd; ++i) {
+			if (tokens.type(i) == TokenType.PREPROC_HASH) {
+				addHash(at++, i);
+			}
+		}
+
+		// A change next to a directive may be part of it.
+		for (int i = Math.max(0, diff.start - 1),
+				end = Math.min(size - 1, diff.insertEnd + 1);
+				i <= end && !changed; ++i) {
+			changed = tokens.category(i) == Token.Category.PREPROC;
+		}
+
+		// The end of a region that runs to the end of the text is the
+		// EOF token, which may have been replaced, too.
+		for (int i = 0, count = regionCount * 2; i < count && !changed; ++i) {
+			changed = regions[i] >= diff.start && regions[i] <= diff.deleteEnd;
+		}
+
+		for (int i = 0, count = regionCount * 2; i < count; ++i) {
+			if (regions[i] > diff.deleteEnd) {
+				regions[i] += delta;
+			}
+		}
+		if (changed) {
+			// Compares the result with the moved regions, so the
+			// generation only changes if the regions really did.
+			evaluate(tokens, text);
+		} else {
+			publish(tokens, false);
+		}
+	}
+
+	private void evaluate(@NonNull TokenBuffer tokens, @NonNull CharSequence text) {
+		int[] previous = Arrays.copyOf(regions, regionCount * 2);
+		regionCount = 0;
+		macros.clear();
+		macros.put("GL_ES", DEFINED);
+		macros.put("SHADER_EDITOR", DEFINED);
+		macros.put("__VERSION__", new Macro("100", false, false));
+		// Defined, but their values can't be used here.
+		macros.put("__LINE__", new Macro(null, false, false));
+		macros.put("__FILE__", new Macro(null, false, false));
+
+		int size = tokens.size();
+		int depth = 0;
+		boolean active = true;
+		boolean certain = true;
+		for (int h = 0; h < hashCount; ++h) {
+			int hash = hashes[h];
+			int keyword = hash + 1;
+			int end = directiveEnd(tokens, keyword);
+			if (keyword >= end) {
+				continue;
+			}
+			TokenType type = tokens.type(keyword);
+			switch (type) {
+				case PREPROC_IF:
+				case PREPROC_IFDEF:
+				case PREPROC_IFNDEF: {
+					if (depth == levelTaken.length) {
+						growLevels();
+					}
+					levelParentActive[depth] = active;
+					levelParentCertain[depth] = certain;
+					levelRegionStart[depth] = -1;
+					int condition = active
+							? condition(tokens, text, type, keyword + 1, end)
+							: TRUE;
+					levelTaken[depth] = condition;
+					++depth;
+					active = active && condition != FALSE;
+					certain = certain && condition == TRUE;
+					if (!active && levelParentActive[depth - 1]) {
+						levelRegionStart[depth - 1] = end;
+					}
+					break;
+				}
+				case PREPROC_ELIF:
+				case PREPROC_ELSE: {
+					if (depth == 0) {
+						break;
+					}
+					int level = depth - 1;
+					if (!levelParentActive[level]) {
+						break;
+					}
+					closeRegion(level, hash);
+					int taken = levelTaken[level];
+					int condition;
+					if (taken == TRUE) {
+						condition = FALSE;
+					} else if (type == TokenType.PREPROC_ELSE) {
+						condition = taken == MAYBE ? MAYBE : TRUE;
+					} else {
+						condition = condition(tokens, text, type, keyword + 1, end);
+						if (taken == MAYBE && condition == TRUE) {
+							// One of the branches is taken, but
+							// maybe not this one.
+							condition = MAYBE;
+							levelTaken[level] = TRUE;
+						}
+					}
+					if (condition == TRUE || (condition == MAYBE && taken == FALSE)) {
+						levelTaken[level] = condition;
+					}
+					active = condition != FALSE;
+					certain = levelParentCertain[level] && condition == TRUE;
+					if (!active) {
+						levelRegionStart[level] = end;
+					}
+					break;
+				}
+				case PREPROC_ENDIF:
+					if (depth == 0) {
+						break;
+					}
+					--depth;
+					closeRegion(depth, hash);
+					active = levelParentActive[depth];
+					certain = levelParentCertain[depth];
+					break;
+				case PREPROC_DEFINE:
+				case PREPROC_UNDEF:
+					if (active) {
+						define(tokens, text, type == TokenType.PREPROC_DEFINE,
+								keyword + 1, end, certain);
+					}
+					break;
+				case PREPROC_VERSION:
+					if (active && keyword + 1 < end &&
+							tokens.type(keyword + 1) == TokenType.INTCONSTANT) {
+						macros.put("__VERSION__", new Macro(
+								Lexer.tokenSource(tokens, keyword + 1, text).toString(),
+								false, !certain));
+					}
+					break;
+				default:
+					break;
+			}
+		}
+		// Conditionals that aren't closed run to the end of the text.
+		while (depth > 0) {
+			closeRegion(--depth, size - 1);
+		}
+		macros.clear();
+
+		boolean regionsChanged = previous.length != regionCount * 2;
+		for (int i = 0; i < previous.length && !regionsChanged; ++i) {
+			regionsChanged = previous[i] != regions[i];
+		}
+		publish(tokens, regionsChanged);
+	}
+
+	private void publish(@NonNull TokenBuffer tokens, boolean regionsChanged) {
+		if (regionsChanged) {
+			++generation;
+		}
+		if (regionCount == 0) {
+			inactiveRegions = generation == 0
+					? InactiveRegions.NONE
+					: new InactiveRegions(new int[0], generation);
+			return;
+		}
+		int[] ranges = new int[regionCount * 2];
+		for (int i = 0; i < regionCount; ++i) {
+			ranges[i * 2] = tokens.startOffset(regions[i * 2]);
+			ranges[i * 2 + 1] = tokens.startOffset(regions[i * 2 + 1]);
+		}
+		inactiveRegions = new InactiveRegions(ranges, generation);
+	}
+
+	private void closeRegion(int level, int end) {
+		int start = levelRegionStart[level];
+		levelRegionStart[level] = -1;
+		if (start < 0 || start >= end) {
+			return;
+		}
+		if (regionCount * 2 == regions.length) {
+			regions = Arrays.copyOf(regions, regions.length * 2);
+		}
+		regions[regionCount * 2] = start;
+		regions[regionCount * 2 + 1] = end;
+		++regionCount;
+	}
+
+	private int condition(@NonNull TokenBuffer tokens, @NonNull CharSequence text,
+			@NonNull TokenType type, int start, int end) {
+		if (type == TokenType.PREPROC_IF || type == TokenType.PREPROC_ELIF) {
+			atomCount = 0;
+			if (!expand(tokens, text, start, end, 0)) {
+				return MAYBE;
+			}
+			addAtom(END, 0);
+			atom = 0;
+			long value = conditional();
+			if (value == UNKNOWN || atomKinds[atom] != END) {
+				return MAYBE;
+			}
+			return value != 0 ? TRUE : FALSE;
+		}
+		if (start >= end || !isWord(tokens, start, text)) {
+			return MAYBE;
+		}
+		int defined = isDefined(Lexer.tokenSource(tokens, start, text).toString());
+		if (type == TokenType.PREPROC_IFNDEF && defined != MAYBE) {
+			return defined == TRUE ? FALSE : TRUE;
+		}
+		return defined;
+	}
+
+	private int isDefined(@NonNull String name) {
+		Macro macro = macros.get(name);
+		if (macro != null) {
+			return macro.isUncertain ? MAYBE : TRUE;
+		}
+		// Extension macros depend on the device.
+		return name.startsWith("GL_") ? MAYBE : FALSE;
+	}
+
+	private void define(@NonNull TokenBuffer tokens, @NonNull CharSequence text,
+			boolean define, int start, int end, boolean certain) {
+		if (start >= end || !isWord(tokens, start, text)) {
+			return;
+		}
+		String name = Lexer.tokenSource(tokens, start, text).toString();
+		if (!define) {
+			if (certain) {
+				macros.remove(name);
+			} else if (macros.containsKey(name)) {
+				macros.put(name, UNCERTAIN);
+			}
+			return;
+		}
+		boolean isFunction = start + 1 < end &&
+				tokens.type(start + 1) == TokenType.LEFT_PAREN &&
+				tokens.startOffset(start + 1) == tokens.endOffset(start);
+		int bodyStart = start + 1;
+		int bodyEnd = end;
+		while (bodyEnd > bodyStart && isComment(tokens.type(bodyEnd - 1))) {
+			--bodyEnd;
+		}
+		String body = bodyStart < bodyEnd
+				? text.subSequence(tokens.startOffset(bodyStart),
+				tokens.endOffset(bodyEnd - 1)).toString()
+				: "";
+		macros.put(name, new Macro(body, isFunction, !certain));
+	}
+
+	/**
+	 * Turn the tokens {@code [start, end)} into expression atoms, replacing macros and
+	 * {@code defined} with their values.
+	 *
+	 * @return False if the tokens can't be evaluated.
+	 */
+	private boolean expand(@NonNull TokenBuffer tokens, @NonNull CharSequence text,
+			int start, int end, int depth) {
+		for (int i = start; i < end; ++i) {
+			TokenType type = tokens.type(i);
+			if (isComment(type)) {
+				continue;
+			}
+			if (type == TokenType.INTCONSTANT) {
+				long value = parseInt(Lexer.tokenSource(tokens, i, text).toString());
+				if (value == UNKNOWN) {
+					return false;
+				}
+				addAtom(NUMBER, value);
+				continue;
+			}
+			if (!isWord(tokens, i, text)) {
+				addAtom(type.ordinal(), 0);
+				continue;
+			}
+			String name = Lexer.tokenSource(tokens, i, text).toString();
+			if (name.equals("defined")) {
+				boolean parenthesized = i + 1 < end &&
+						tokens.type(i + 1) == TokenType.LEFT_PAREN;
+				int nameIndex = parenthesized ? i + 2 : i + 1;
+				if (nameIndex >= end || !isWord(tokens, nameIndex, text)) {
+					return false;
+				}
+				int defined = isDefined(
+						Lexer.tokenSource(tokens, nameIndex, text).toString());
+				addAtom(NUMBER, defined == MAYBE ? UNKNOWN : defined);
+				i = nameIndex;
+				if (parenthesized) {
+					if (i + 1 >= end || tokens.type(i + 1) != TokenType.RIGHT_PAREN) {
+						return false;
+					}
+					++i;
+				}
+				continue;
+			}
+			Macro macro = macros.get(name);
+			if (macro == null || macro.isUncertain || macro.isFunction ||
+					macro.body == null || depth >= MAX_EXPANSION_DEPTH ||
+					!expanding.add(name)) {
+				// Undefined names are an error in GLSL ES, and the
+				// arguments of function-like macros aren't substituted.
+				return false;
+			}
+			TokenBuffer body = new TokenBuffer(8);
+			bodyLexer.lex(macro.body, body);
+			// Leave out the EOF token.
+			boolean expanded = expand(body, macro.body, 0, body.size() - 1, depth + 1);
+			expanding.remove(name);
+			if (!expanded) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void addAtom(int kind, long value) {
+		if (atomCount == atomKinds.length) {
+			atomKinds = Arrays.copyOf(atomKinds, atomCount * 2);
+			atomValues = Arrays.copyOf(atomValues, atomCount * 2);
+		}
+		atomKinds[atomCount] = kind;
+		atomValues[atomCount] = value;
+		++atomCount;
+	}
+
+	private boolean accept(@NonNull TokenType type) {
+		if (atomKinds[atom] == type.ordinal()) {
+			++atom;
+			return true;
+		}
+		return false;
+	}
+
+	private long conditional() {
+		long value = logicalOr();
+		if (atomKinds[atom] == TokenType.QUESTION.ordinal()) {
+			// Not worth supporting, nobody writes that in a condition.
+			atom = atomCount - 1;
+			return UNKNOWN;
+		}
+		return value;
+	}
+
+	private long logicalOr() {
+		long value = logicalAnd();
+		while (accept(TokenType.OR_OP)) {
+			long right = logicalAnd();
+			if (value != UNKNOWN && value != 0 || right != UNKNOWN && right != 0) {
+				value = 1;
+			} else if (value == UNKNOWN || right == UNKNOWN) {
+				value = UNKNOWN;
+			} else {
+				value = 0;
+			}
+		}
+		return value;
+	}
+
+	private long logicalAnd() {
+		long value = bitwiseOr();
+		while (accept(TokenType.AND_OP)) {
+			long right = bitwiseOr();
+			if (value == 0 || right == 0) {
+				value = 0;
+			} else if (value == UNKNOWN || right == UNKNOWN) {
+				value = UNKNOWN;
+			} else {
+				value = 1;
+			}
+		}
+		return value;
+	}
+
+	private long bitwiseOr() {
+		long value = bitwiseXor();
+		while (accept(TokenType.VERTICAL_BAR)) {
+			long right = bitwiseXor();
+			value = value == UNKNOWN || right == UNKNOWN ? UNKNOWN : value | right;
+		}
+		return value;
+	}
+
+	private long bitwiseXor() {
+		long value = bitwiseAnd();
+		while (accept(TokenType.CARET)) {
+			long right = bitwiseAnd();
+			value = value == UNKNOWN || right == UNKNOWN ? UNKNOWN : value ^ right;
+		}
+		return value;
+	}
+
+	private long bitwiseAnd() {
+		long value = equality();
+		while (accept(TokenType.AMPERSAND)) {
+			long right = equality();
+			value = value == UNKNOWN || right == UNKNOWN ? UNKNOWN : value & right;
+		}
+		return value;
+	}
+
+	private long equality() {
+		long value = relational();
+		while (true) {
+			boolean equal;
+			if (accept(TokenType.EQ_OP)) {
+				equal = true;
+			} else if (accept(TokenType.NE_OP)) {
+				equal = false;
+			} else {
+				return value;
+			}
+			long right = relational();
+			value = value == UNKNOWN || right == UNKNOWN
+					? UNKNOWN
+					: (value == right) == equal ? 1 : 0;
+		}
+	}
+
+	private long relational() {
+		long value = shift();
+		while (true) {
+			int kind = atomKinds[atom];
+			if (kind != TokenType.LEFT_ANGLE.ordinal() &&
+					kind != TokenType.RIGHT_ANGLE.ordinal() &&
+					kind != TokenType.LE_OP.ordinal() &&
+					kind != TokenType.GE_OP.ordinal()) {
+				return value;
+			}
+			++atom;
+			long right = shift();
+			if (value == UNKNOWN || right == UNKNOWN) {
+				value = UNKNOWN;
+			} else if (kind == TokenType.LEFT_ANGLE.ordinal()) {
+				value = value < right ? 1 : 0;
+			} else if (kind == TokenType.RIGHT_ANGLE.ordinal()) {
+				value = value > right ? 1 : 0;
+			} else if (kind == TokenType.LE_OP.ordinal()) {
+				value = value <= right ? 1 : 0;
+			} else {
+				value = value >= right ? 1 : 0;
+			}
+		}
+	}
+
+	private long shift() {
+		long value = additive();
+		while (true) {
+			boolean left;
+			if (accept(TokenType.LEFT_OP)) {
+				left = true;
+			} else if (accept(TokenType.RIGHT_OP)) {
+				left = false;
+			} else {
+				return value;
+			}
+			long right = additive();
+			if (value == UNKNOWN || right == UNKNOWN || right < 0 || right > 63) {
+				value = UNKNOWN;
+			} else {
+				value = left ? value << right : value >> right;
+			}
+		}
+	}
+
+	private long additive() {
+		long value = multiplicative();
+		while (true) {
+			boolean add;
+			if (accept(TokenType.PLUS)) {
+				add = true;
+			} else if (accept(TokenType.DASH)) {
+				add = false;
+			} else {
+				return value;
+			}
+			long right = multiplicative();
+			value = value == UNKNOWN || right == UNKNOWN
+					? UNKNOWN
+					: add ? value + right : value - right;
+		}
+	}
+
+	private long multiplicative() {
+		long value = unary();
+		while (true) {
+			int kind = atomKinds[atom];
+			if (kind != TokenType.STAR.ordinal() &&
+					kind != TokenType.SLASH.ordinal() &&
+					kind != TokenType.PERCENT.ordinal()) {
+				return value;
+			}
+			++atom;
+			long right = unary();
+			if (value == UNKNOWN || right == UNKNOWN ||
+					(kind != TokenType.STAR.ordinal() && right == 0)) {
+				value = UNKNOWN;
+			} else if (kind == TokenType.STAR.ordinal()) {
+				value *= right;
+			} else if (kind == TokenType.SLASH.ordinal()) {
+				value /= right;
+			} else {
+				value %= right;
+			}
+		}
+	}
+
+	private long unary() {
+		if (accept(TokenType.PLUS)) {
+			return unary();
+		}
+		if (accept(TokenType.DASH)) {
+			long value = unary();
+			return value == UNKNOWN ? UNKNOWN : -value;
+		}
+		if (accept(TokenType.TILDE)) {
+			long value = unary();
+			return value == UNKNOWN ? UNKNOWN : ~value;
+		}
+		if (accept(TokenType.BANG)) {
+			long value = unary();
+			return value == UNKNOWN ? UNKNOWN : value == 0 ? 1 : 0;
+		}
+		return primary();
+	}
+
+	private long primary() {
+		if (atomKinds[atom] == NUMBER) {
+			return atomValues[atom++];
+		}
+		if (accept(TokenType.LEFT_PAREN)) {
+			long value = conditional();
+			return accept(TokenType.RIGHT_PAREN) ? value : UNKNOWN;
+		}
+		return UNKNOWN;
+	}
+
+	private void addHash(int at, int tokenIndex) {
+		if (hashCount == hashes.length) {
+			hashes = Arrays.copyOf(hashes, hashCount * 2);
+		}
+		System.arraycopy(hashes, at, hashes, at + 1, hashCount - at);
+		hashes[at] = tokenIndex;
+		++hashCount;
+	}
+
+	private void growLevels() {
+		int capacity = levelTaken.length * 2;
+		levelParentActive = Arrays.copyOf(levelParentActive, capacity);
+		levelParentCertain = Arrays.copyOf(levelParentCertain, capacity);
+		levelTaken = Arrays.copyOf(levelTaken, capacity);
+		levelRegionStart = Arrays.copyOf(levelRegionStart, capacity);
+	}
+
+	/**
+	 * @return The index after the last token of the directive that continues at
+	 * {@code index}.
+	 */
+	private static int directiveEnd(@NonNull TokenBuffer tokens, int index) {
+		int size = tokens.size();
+		while (index < size &&
+				tokens.category(index) == Token.Category.PREPROC &&
+				tokens.type(index) != TokenType.PREPROC_HASH &&
+				tokens.type(index) != TokenType.EOF) {
+			++index;
+		}
+		return index;
+	}
+
+	private static boolean isWord(@NonNull TokenBuffer tokens, int index,
+			@NonNull CharSequence text) {
+		TokenType type = tokens.type(index);
+		if (type == TokenType.INTCONSTANT || type == TokenType.UINTCONSTANT ||
+				type == TokenType.FLOATCONSTANT || type == TokenType.DOUBLECONSTANT ||
+				tokens.endOffset(index) <= tokens.startOffset(index)) {
+			return false;
+		}
+		char c = text.charAt(tokens.startOffset(index));
+		return c == '_' || Character.isLetter(c);
+	}
+
+	private static boolean isComment(@NonNull TokenType type) {
+		return type == TokenType.BLOCK_COMMENT || type == TokenType.LINE_COMMENT;
+	}
+
+	private static long parseInt(@NonNull String literal) {
+		int end = literal.length();
+		if (end > 0 && (literal.charAt(end - 1) == 'u' || literal.charAt(end - 1) == 'U')) {
+			--end;
+		}
+		try {
+			return Long.decode(literal.substring(0, end));
+		} catch (NumberFormatException e) {
+			return UNKNOWN;
+		}
+	}
+
+	/**
+	 * @return The index of the first element of {@code array[0, size)} that is not less
+	 * than {@code value}.
+	 */
+	private static int lowerBound(@NonNull int[] array, int size, int value) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (array[mid] < value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,69 @@
+package de.markusfisch.android.shadereditor.highlighter;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Buffers a window of a {@link CharSequence} so sequential reads don't go through the
+ * possibly expensive {@link CharSequence#charAt(int)} of the underlying text. The window
+ * is refilled with bulk copies.
+ * <p>
+ * The sequence can also be limited to a range of the underlying text, indices are relative
+ * to the start of that range then.
+ */
+final class SourceWindow implements CharSequence {
+	private static final int SIZE = 4096;
+	// Characters kept before a requested index when the window moves,
+	// so short look-backs don't cause a refill.
+	private static final int LOOK_BEHIND = 64;
+
+	private final char[] buffer = new char[SIZE];
+	private @NonNull CharSequence text = "";
+	private int offset;
+	private int length;
+	private int start;
+	private int end;
+
+	void reset(@NonNull CharSequence text) {
+		reset(text, 0, text.length());
+	}
+
+	void reset(@NonNull CharSequence text, int start, int end) {
+		this.text = text;
+		offset = start;
+		length = end - start;
+		this.start = 0;
+		this.end = 0;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < start || index >= end) {
+			fill(index);
+		}
+		return buffer[index - start];
+	}
+
+	@Override
+	public @NonNull CharSequence subSequence(int start, int end) {
+		return text.subSequence(offset + start, offset + end);
+	}
+
+	@Override
+	public @NonNull String toString() {
+		return text.subSequence(offset, offset + length).toString();
+	}
+
+	private void fill(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+		}
+		start = Math.max(0, index - LOOK_BEHIND);
+		end = Math.min(length, start + SIZE);
+		ChunkedText.getChars(text, offset + start, offset + end, buffer, 0);
+	}
+}
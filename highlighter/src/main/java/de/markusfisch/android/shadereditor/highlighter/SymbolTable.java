@@ -0,0 +1,246 @@
+package de.markusfisch.android.shadereditor.highlighter;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Names that a shader declares itself: functions, variables, uniforms, structs and macros.
+ * <p>
+ * A name is declared if it follows a type, {@code struct} or {@code #define}. That misses
+ * the second and later names of a declaration like {@code float a, b;} but needs nothing
+ * but the tokens, so the table can be updated from the {@link Lexer.Diff} of every edit by
+ * looking at the changed tokens only.
+ */
+public final class SymbolTable {
+	/**
+	 * An immutable, sorted set of declared names.
+	 */
+	public static final class Symbols {
+		public static final Symbols NONE = new Symbols(new String[0]);
+
+		private final String[] names;
+
+		private Symbols(@NonNull String[] names) {
+			this.names = names;
+		}
+
+		public int size() {
+			return names.length;
+		}
+
+		public @NonNull String name(int index) {
+			return names[index];
+		}
+
+		/**
+		 * Add all names that start with {@code prefix} to {@code result}, in
+		 * lexicographic order.
+		 */
+		public void findAll(@NonNull String prefix, @NonNull List<String> result) {
+			int low = 0;
+			int high = names.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (names[mid].compareTo(prefix) < 0) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			for (int i = low; i < names.length && names[i].startsWith(prefix); ++i) {
+				result.add(names[i]);
+			}
+		}
+
+		@Override
+		public @NonNull String toString() {
+			return "Symbols" + Arrays.toString(names);
+		}
+	}
+
+	// Token indices of the declared names, sorted, and their names.
+	private int[] declarations = new int[64];
+	private String[] declarationNames = new String[64];
+	private int size;
+	// How often every name is declared.
+	private final TreeMap<String, Integer> counts = new TreeMap<>();
+	private boolean namesChanged;
+	@NonNull
+	private Symbols symbols = Symbols.NONE;
+
+	/**
+	 * @return The names that were declared after the last update.
+	 */
+	public @NonNull Symbols symbols() {
+		return symbols;
+	}
+
+	/**
+	 * Find all declarations of {@code tokens}.
+	 */
+	public void reset(@NonNull TokenBuffer tokens, @NonNull CharSequence text) {
+		size = 0;
+		counts.clear();
+		namesChanged = true;
+		scan(tokens, text, 0, tokens.size() - 1, 0);
+		publish();
+	}
+
+	/**
+	 * Update the declarations after the tokens changed as described by {@code diff}.
+	 *
+	 * @param tokens The tokens after the change.
+	 * @param text   The text of {@code tokens}.
+	 */
+	public void update(@NonNull TokenBuffer tokens, @NonNull CharSequence text,
+			@NonNull Lexer.Diff diff) {
+		int delta = diff.insertEnd - diff.deleteEnd;
+		// A declaration depends on the token before the name, so the
+		// name after the change is looked at again, too.
+		int from = diff.start;
+		int to = nextSignificant(tokens, diff.insertEnd + 1);
+		int first = lowerBound(from);
+		int last = lowerBound(to - delta + 1);
+		for (int i = first; i < last; ++i) {
+			remove(declarationNames[i]);
+		}
+		for (int i = last; i < size; ++i) {
+			declarations[i] += delta;
+		}
+		System.arraycopy(declarations, last, declarations, first, size - last);
+		System.arraycopy(declarationNames, last, declarationNames, first, size - last);
+		Arrays.fill(declarationNames, size - (last - first), size, null);
+		size -= last - first;
+		scan(tokens, text, from, to, first);
+		publish();
+	}
+
+	/**
+	 * Add the declarations of the tokens {@code [from, to]} at {@code at}.
+	 */
+	private void scan(@NonNull TokenBuffer tokens, @NonNull CharSequence text, int from,
+			int to, int at) {
+		int previous = -1;
+		if (from > 0) {
+			previous = previousSignificant(tokens, from - 1);
+			if (!isSignificant(tokens, previous)) {
+				previous = -1;
+			}
+		}
+		for (int i = from; i <= to; ++i) {
+			if (!isSignificant(tokens, i)) {
+				continue;
+			}
+			if (previous > -1 && isName(tokens.type(i)) &&
+					declaresName(tokens.type(previous))) {
+				String name = Lexer.tokenSource(tokens, i, text).toString();
+				insert(at++, i, name);
+			}
+			previous = i;
+		}
+	}
+
+	private void insert(int at, int tokenIndex, @NonNull String name) {
+		if (size == declarations.length) {
+			declarations = Arrays.copyOf(declarations, size * 2);
+			declarationNames = Arrays.copyOf(declarationNames, size * 2);
+		}
+		System.arraycopy(declarations, at, declarations, at + 1, size - at);
+		System.arraycopy(declarationNames, at, declarationNames, at + 1, size - at);
+		declarations[at] = tokenIndex;
+		declarationNames[at] = name;
+		++size;
+		Integer count = counts.get(name);
+		if (count == null) {
+			counts.put(name, 1);
+			namesChanged = true;
+		} else {
+			counts.put(name, count + 1);
+		}
+	}
+
+	private void remove(@NonNull String name) {
+		Integer count = counts.get(name);
+		if (count == null) {
+			return;
+		}
+		if (count > 1) {
+			counts.put(name, count - 1);
+		} else {
+			counts.remove(name);
+			namesChanged = true;
+		}
+	}
+
+	private void publish() {
+		if (namesChanged) {
+			namesChanged = false;
+			symbols = counts.isEmpty()
+					? Symbols.NONE
+					: new Symbols(counts.keySet().toArray(new String[0]));
+		}
+	}
+
+	/**
+	 * @return The index of the first declaration whose name is at or after token
+	 * {@code tokenIndex}.
+	 */
+	private int lowerBound(int tokenIndex) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (declarations[mid] < tokenIndex) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return The last token at or before {@code index} that isn't trivia, or 0.
+	 */
+	private static int previousSignificant(@NonNull TokenBuffer tokens, int index) {
+		index = Math.min(index, tokens.size() - 1);
+		while (index > 0 && !isSignificant(tokens, index)) {
+			--index;
+		}
+		return Math.max(index, 0);
+	}
+
+	/**
+	 * @return The first token at or after {@code index} that isn't trivia, or the last
+	 * token.
+	 */
+	private static int nextSignificant(@NonNull TokenBuffer tokens, int index) {
+		int last = tokens.size() - 1;
+		index = Math.max(index, 0);
+		while (index < last && !isSignificant(tokens, index)) {
+			++index;
+		}
+		return Math.min(index, last);
+	}
+
+	private static boolean isSignificant(@NonNull TokenBuffer tokens, int index) {
+		return tokens.category(index) != Token.Category.TRIVIA;
+	}
+
+	private static boolean isName(@NonNull TokenType type) {
+		return type == TokenType.IDENTIFIER || type == TokenType.TYPE_NAME;
+	}
+
+	private static boolean declaresName(@NonNull TokenType type) {
+		int ordinal = type.ordinal();
+		return (ordinal >= TokenType.BOOL.ordinal() &&
+				ordinal <= TokenType.DMAT4X4.ordinal()) ||
+				(ordinal >= TokenType.ATOMIC_UINT.ordinal() &&
+						ordinal <= TokenType.VOID.ordinal()) ||
+				type == TokenType.TYPE_NAME ||
+				type == TokenType.PREPROC_DEFINE;
+	}
+}
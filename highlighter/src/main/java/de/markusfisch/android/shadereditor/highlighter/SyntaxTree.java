@@ -0,0 +1,225 @@
+package de.markusfisch.android.shadereditor.highlighter;
+
+import androidx.annotation.NonNull;
+
+/**
+ * An immutable syntax tree of a shader, built by the {@link Parser}.
+ * <p>
+ * Nodes don't know where they are. A node only stores how many tokens it spans and where
+ * its children start relative to its own start, so the same node can be shared by the
+ * trees before and after an edit that only moved it. Use {@link #walk(Visitor)} to get the
+ * token index at which every node starts.
+ */
+public final class SyntaxTree {
+	public enum Kind {
+		TRANSLATION_UNIT,
+		// Tokens that couldn't be parsed.
+		ERROR,
+		// A precision statement like `precision mediump float;`.
+		PRECISION,
+		// A type and the variables that are declared with it.
+		DECLARATION,
+		VARIABLE,
+		// A function prototype or definition. A definition ends with
+		// a BLOCK.
+		FUNCTION,
+		PARAMETER,
+		TYPE,
+		STRUCT,
+		// A uniform or in/out block like `uniform Block { ... } block;`.
+		INTERFACE_BLOCK,
+		// An array specifier like `[4]`.
+		ARRAY,
+		BLOCK,
+		IF,
+		FOR,
+		WHILE,
+		DO,
+		SWITCH,
+		CASE,
+		RETURN,
+		// break, continue or discard.
+		JUMP,
+		EMPTY,
+		EXPRESSION_STATEMENT,
+		NAME,
+		LITERAL,
+		CALL,
+		MEMBER,
+		INDEX,
+		UNARY,
+		POSTFIX,
+		BINARY,
+		ASSIGNMENT,
+		CONDITIONAL,
+		SEQUENCE,
+		PARENTHESES
+	}
+
+	public interface Visitor {
+		/**
+		 * @param start Index of the first token of {@code node}.
+		 * @return True to visit the children of {@code node}.
+		 */
+		boolean visit(@NonNull Node node, int start);
+	}
+
+	public static final class Node {
+		private static final Node[] NO_CHILDREN = new Node[0];
+		private static final int[] NO_STARTS = new int[0];
+
+		@NonNull
+		private final Kind kind;
+		private final int length;
+		private final int mainToken;
+		@NonNull
+		private final Node[] children;
+		@NonNull
+		private final int[] childStarts;
+		private final boolean hasError;
+
+		Node(@NonNull Kind kind, int length, int mainToken, @NonNull Node[] children,
+				@NonNull int[] childStarts, boolean hasError) {
+			this.kind = kind;
+			this.length = length;
+			this.mainToken = mainToken;
+			this.children = children.length == 0 ? NO_CHILDREN : children;
+			this.childStarts = childStarts.length == 0 ? NO_STARTS : childStarts;
+			this.hasError = hasError;
+		}
+
+		public @NonNull Kind kind() {
+			return kind;
+		}
+
+		/**
+		 * @return Number of tokens from the first to the last token of this node,
+		 * including comments and directives in between.
+		 */
+		public int length() {
+			return length;
+		}
+
+		/**
+		 * @return The token that names a declaration, the operator of an
+		 * expression, the field of a member access or the token of a name or
+		 * literal, relative to the start of this node, or -1.
+		 */
+		public int mainToken() {
+			return mainToken;
+		}
+
+		public int childCount() {
+			return children.length;
+		}
+
+		public @NonNull Node child(int index) {
+			return children[index];
+		}
+
+		/**
+		 * @return The first token of child {@code index} relative to the start of
+		 * this node.
+		 */
+		public int childStart(int index) {
+			return childStarts[index];
+		}
+
+		/**
+		 * @return True if this node or one of its children is incomplete or
+		 * contains tokens that couldn't be parsed.
+		 */
+		public boolean hasError() {
+			return hasError;
+		}
+
+		@Override
+		public @NonNull String toString() {
+			StringBuilder sb = new StringBuilder();
+			append(sb);
+			return sb.toString();
+		}
+
+		private void append(@NonNull StringBuilder sb) {
+			sb.append(kind).append('[').append(length);
+			if (mainToken > -1) {
+				sb.append(" @").append(mainToken);
+			}
+			if (hasError) {
+				sb.append(" !");
+			}
+			sb.append(']');
+			if (children.length > 0) {
+				sb.append('{');
+				for (int i = 0; i < children.length; ++i) {
+					if (i > 0) {
+						sb.append(' ');
+					}
+					sb.append(childStarts[i]).append(':');
+					children[i].append(sb);
+				}
+				sb.append('}');
+			}
+		}
+	}
+
+	public static final SyntaxTree EMPTY = new SyntaxTree(
+			new Node(Kind.TRANSLATION_UNIT, 0, -1, Node.NO_CHILDREN, Node.NO_STARTS,
+					false),
+			Node.NO_STARTS,
+			0);
+
+	@NonNull
+	private final Node root;
+	// How far the parser looked ahead for every top level node,
+	// relative to its start.
+	@NonNull
+	private final int[] examined;
+	private final int tokenCount;
+
+	SyntaxTree(@NonNull Node root, @NonNull int[] examined, int tokenCount) {
+		this.root = root;
+		this.examined = examined;
+		this.tokenCount = tokenCount;
+	}
+
+	/**
+	 * @return The root node, which starts at the first token and has a top level
+	 * declaration as every child.
+	 */
+	public @NonNull Node root() {
+		return root;
+	}
+
+	/**
+	 * @return The number of tokens this tree was parsed from.
+	 */
+	public int tokenCount() {
+		return tokenCount;
+	}
+
+	/**
+	 * Visit the nodes of this tree in depth first order.
+	 */
+	public void walk(@NonNull Visitor visitor) {
+		walk(root, 0, visitor);
+	}
+
+	int examined(int child) {
+		return examined[child];
+	}
+
+	private static void walk(@NonNull Node node, int start, @NonNull Visitor visitor) {
+		if (!visitor.visit(node, start)) {
+			return;
+		}
+		for (int i = 0, count = node.childCount(); i < count; ++i) {
+			walk(node.child(i), start + node.childStart(i), visitor);
+		}
+	}
+
+	@Override
+	public @NonNull String toString() {
+		return root.toString();
+	}
+}
@@ -0,0 +1,399 @@
+package de.markusfisch.android.shadereditor.highlighter;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of tokens that keeps every field in a primitive array, so a tokenization
+ * allocates a handful of arrays instead of one object per token. A buffer can be cleared
+ * and refilled for the next revision without allocating at all.
+ */
+public final class TokenBuffer {
+	private static final TokenType[] TYPES = TokenType.values();
+	private static final Token.Category[] CATEGORIES = Token.Category.values();
+	private static final int LEFT_PAREN = TokenType.LEFT_PAREN.ordinal();
+	private static final int RIGHT_PAREN = TokenType.RIGHT_PAREN.ordinal();
+	private static final int LEFT_BRACKET = TokenType.LEFT_BRACKET.ordinal();
+	private static final int RIGHT_BRACKET = TokenType.RIGHT_BRACKET.ordinal();
+	private static final int LEFT_BRACE = TokenType.LEFT_BRACE.ordinal();
+	private static final int RIGHT_BRACE = TokenType.RIGHT_BRACE.ordinal();
+
+	private int size;
+	private int[] start;
+	private int[] end;
+	private int[] startOffset;
+	private int[] endOffset;
+	private short[] line;
+	private short[] column;
+	private byte[] type;
+	private byte[] category;
+	// Filled by indexBrackets().
+	private boolean bracketsIndexed;
+	private int[] matchingBracket = new int[0];
+	private int[] depth = new int[0];
+	private int[] openBrackets = new int[16];
+
+	public TokenBuffer() {
+		this(64);
+	}
+
+	public TokenBuffer(int capacity) {
+		capacity = Math.max(1, capacity);
+		start = new int[capacity];
+		end = new int[capacity];
+		startOffset = new int[capacity];
+		endOffset = new int[capacity];
+		line = new short[capacity];
+		column = new short[capacity];
+		type = new byte[capacity];
+		category = new byte[capacity];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		size = 0;
+		bracketsIndexed = false;
+	}
+
+	/**
+	 * Replace the contents of this buffer with the contents of {@code other}.
+	 */
+	public void set(@NonNull TokenBuffer other) {
+		ensureCapacity(other.size);
+		size = other.size;
+		bracketsIndexed = false;
+		System.arraycopy(other.start, 0, start, 0, size);
+		System.arraycopy(other.end, 0, end, 0, size);
+		System.arraycopy(other.startOffset, 0, startOffset, 0, size);
+		System.arraycopy(other.endOffset, 0, endOffset, 0, size);
+		System.arraycopy(other.line, 0, line, 0, size);
+		System.arraycopy(other.column, 0, column, 0, size);
+		System.arraycopy(other.type, 0, type, 0, size);
+		System.arraycopy(other.category, 0, category, 0, size);
+	}
+
+	public @NonNull TokenType type(int index) {
+		return TYPES[type[index] & 0xff];
+	}
+
+	public @NonNull Token.Category category(int index) {
+		return CATEGORIES[category[index]];
+	}
+
+	/**
+	 * @return Codepoint index of the first character of the token.
+	 */
+	public int start(int index) {
+		return start[index];
+	}
+
+	/**
+	 * @return Codepoint index after the last character of the token.
+	 */
+	public int end(int index) {
+		return end[index];
+	}
+
+	public int startOffset(int index) {
+		return startOffset[index];
+	}
+
+	public int endOffset(int index) {
+		return endOffset[index];
+	}
+
+	public short line(int index) {
+		return line[index];
+	}
+
+	public short column(int index) {
+		return column[index];
+	}
+
+	/**
+	 * Copy the token at {@code index} into {@code token}.
+	 *
+	 * @return {@code token}
+	 */
+	public @NonNull Token get(int index, @NonNull Token token) {
+		return token.setType(type(index))
+				.setCategory(category(index))
+				.setStart(start[index])
+				.setEnd(end[index])
+				.setStartOffset(startOffset[index])
+				.setEndOffset(endOffset[index])
+				.setLine(line[index])
+				.setColumn(column[index]);
+	}
+
+	/**
+	 * Whether the token at {@code index} has the same type, category and length as the
+	 * token at {@code otherIndex} of {@code other}. The position is not compared.
+	 */
+	public boolean isSame(int index, @NonNull TokenBuffer other, int otherIndex) {
+		return type[index] == other.type[otherIndex] &&
+				category[index] == other.category[otherIndex] &&
+				end[index] - start[index] ==
+						other.end[otherIndex] - other.start[otherIndex] &&
+				endOffset[index] - startOffset[index] ==
+						other.endOffset[otherIndex] - other.startOffset[otherIndex];
+	}
+
+	/**
+	 * Performs a binary search to find the token that includes the given offset.
+	 * Assumes tokens are non-overlapping and sorted by their start offsets.
+	 *
+	 * @param offset The offset to search for.
+	 * @return The index of the token that contains the offset or -1 if there is none.
+	 */
+	public int find(int offset) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (offset < startOffset[mid]) {
+				high = mid - 1;
+			} else if (offset >= endOffset[mid]) {
+				low = mid + 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Like {@link #find(int)} but also finds the next token if {@code offset} is between
+	 * tokens.
+	 *
+	 * @param offset The offset to search for.
+	 * @return The index of the first token that ends after the offset or {@link #size()} if
+	 * there is none.
+	 */
+	public int findFrom(int offset) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (endOffset[mid] <= offset) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Find the matching bracket of every {@code ()}, {@code []} and {@code {}} and the
+	 * nesting depth of every token, so {@link #matchingBracket(int)} and
+	 * {@link #depth(int)} can answer without scanning. The result is valid until the
+	 * buffer is modified.
+	 */
+	public void indexBrackets() {
+		if (matchingBracket.length < size) {
+			matchingBracket = new int[type.length];
+			depth = new int[type.length];
+		}
+		int open = 0;
+		for (int i = 0; i < size; ++i) {
+			depth[i] = open;
+			matchingBracket[i] = -1;
+			int t = type[i] & 0xff;
+			if (isOpening(t)) {
+				if (open == openBrackets.length) {
+					openBrackets = Arrays.copyOf(openBrackets, open * 2);
+				}
+				openBrackets[open++] = i;
+			} else if (t == RIGHT_PAREN || t == RIGHT_BRACKET || t == RIGHT_BRACE) {
+				// Close the innermost bracket of the same kind and leave
+				// the ones inside it unmatched, so a typo doesn't unbalance
+				// the rest of the text. A closing bracket without an open
+				// one of its kind stays unmatched.
+				int o = open - 1;
+				int kind = opening(t);
+				while (o >= 0 && (type[openBrackets[o]] & 0xff) != kind) {
+					--o;
+				}
+				if (o >= 0) {
+					open = o;
+					o = openBrackets[o];
+					matchingBracket[o] = i;
+					matchingBracket[i] = o;
+					depth[i] = open;
+				}
+			}
+		}
+		bracketsIndexed = true;
+	}
+
+	public boolean isOpeningBracket(int index) {
+		return isOpening(type[index] & 0xff);
+	}
+
+	/**
+	 * @return Whether {@link #indexBrackets()} was called since the last modification.
+	 */
+	public boolean isBracketsIndexed() {
+		return bracketsIndexed;
+	}
+
+	/**
+	 * @return The index of the bracket that matches the bracket at {@code index} or -1 if
+	 * the token is no bracket or has no match.
+	 */
+	public int matchingBracket(int index) {
+		return matchingBracket[index];
+	}
+
+	/**
+	 * @return The number of brackets that are open at the token at {@code index}. A
+	 * closing bracket has the depth of its opening bracket.
+	 */
+	public int depth(int index) {
+		return depth[index];
+	}
+
+	@Override
+	public @NonNull String toString() {
+		StringBuilder sb = new StringBuilder("TokenBuffer[");
+		Token token = new Token();
+		for (int i = 0; i < size; ++i) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(get(i, token));
+		}
+		return sb.append(']').toString();
+	}
+
+	int add(@NonNull TokenType type, @NonNull Token.Category category, int start, int end,
+			int startOffset, int endOffset, short line, short column) {
+		if (size == this.type.length) {
+			ensureCapacity(size + 1);
+		}
+		int index = size++;
+		bracketsIndexed = false;
+		this.type[index] = (byte) type.ordinal();
+		this.category[index] = (byte) category.ordinal();
+		this.start[index] = start;
+		this.end[index] = end;
+		this.startOffset[index] = startOffset;
+		this.endOffset[index] = endOffset;
+		this.line[index] = line;
+		this.column[index] = column;
+		return index;
+	}
+
+	void setType(int index, @NonNull TokenType type) {
+		this.type[index] = (byte) type.ordinal();
+	}
+
+	void removeLast() {
+		--size;
+		bracketsIndexed = false;
+	}
+
+	/**
+	 * Append all tokens of {@code source}, moved by the given deltas.
+	 */
+	void append(@NonNull TokenBuffer source, int offsetDelta, int unicodeDelta,
+			int lineDelta) {
+		int from = size;
+		int count = source.size;
+		ensureCapacity(from + count);
+		System.arraycopy(source.start, 0, start, from, count);
+		System.arraycopy(source.end, 0, end, from, count);
+		System.arraycopy(source.startOffset, 0, startOffset, from, count);
+		System.arraycopy(source.endOffset, 0, endOffset, from, count);
+		System.arraycopy(source.line, 0, line, from, count);
+		System.arraycopy(source.column, 0, column, from, count);
+		System.arraycopy(source.type, 0, type, from, count);
+		System.arraycopy(source.category, 0, category, from, count);
+		size = from + count;
+		bracketsIndexed = false;
+		for (int i = from; i < size; ++i) {
+			start[i] += unicodeDelta;
+			end[i] += unicodeDelta;
+			startOffset[i] += offsetDelta;
+			endOffset[i] += offsetDelta;
+			line[i] += lineDelta;
+		}
+	}
+
+	/**
+	 * Replace the tokens {@code [from, to)} with all tokens of {@code source} and move the
+	 * tokens after {@code to} by the given deltas.
+	 */
+	void replace(int from, int to, @NonNull TokenBuffer source, int offsetDelta,
+			int unicodeDelta, int lineDelta) {
+		int count = source.size;
+		int tail = size - to;
+		int newSize = from + count + tail;
+		ensureCapacity(newSize);
+		int dest = from + count;
+		if (dest != to) {
+			System.arraycopy(start, to, start, dest, tail);
+			System.arraycopy(end, to, end, dest, tail);
+			System.arraycopy(startOffset, to, startOffset, dest, tail);
+			System.arraycopy(endOffset, to, endOffset, dest, tail);
+			System.arraycopy(line, to, line, dest, tail);
+			System.arraycopy(column, to, column, dest, tail);
+			System.arraycopy(type, to, type, dest, tail);
+			System.arraycopy(category, to, category, dest, tail);
+		}
+		for (int i = dest; i < newSize; ++i) {
+			start[i] += unicodeDelta;
+			end[i] += unicodeDelta;
+			startOffset[i] += offsetDelta;
+			endOffset[i] += offsetDelta;
+			line[i] += lineDelta;
+		}
+		System.arraycopy(source.start, 0, start, from, count);
+		System.arraycopy(source.end, 0, end, from, count);
+		System.arraycopy(source.startOffset, 0, startOffset, from, count);
+		System.arraycopy(source.endOffset, 0, endOffset, from, count);
+		System.arraycopy(source.line, 0, line, from, count);
+		System.arraycopy(source.column, 0, column, from, count);
+		System.arraycopy(source.type, 0, type, from, count);
+		System.arraycopy(source.category, 0, category, from, count);
+		size = newSize;
+		bracketsIndexed = false;
+	}
+
+	private static boolean isOpening(int type) {
+		return type == LEFT_PAREN || type == LEFT_BRACKET || type == LEFT_BRACE;
+	}
+
+	private static int opening(int closing) {
+		if (closing == RIGHT_PAREN) {
+			return LEFT_PAREN;
+		} else if (closing == RIGHT_BRACKET) {
+			return LEFT_BRACKET;
+		}
+		return LEFT_BRACE;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= type.length) {
+			return;
+		}
+		capacity = Math.max(capacity, type.length + (type.length >> 1));
+		start = Arrays.copyOf(start, capacity);
+		end = Arrays.copyOf(end, capacity);
+		startOffset = Arrays.copyOf(startOffset, capacity);
+		endOffset = Arrays.copyOf(endOffset, capacity);
+		line = Arrays.copyOf(line, capacity);
+		column = Arrays.copyOf(column, capacity);
+		type = Arrays.copyOf(type, capacity);
+		category = Arrays.copyOf(category, capacity);
+	}
+}
@@ -52,6 +52,8 @@ public enum TokenType {
 	OUT,
 	INOUT,
 	UNIFORM,
+	VARYING,
+	ATTRIBUTE,
 	PATCH,
 	SAMPLE,
 	BUFFER,
@@ -0,0 +1,224 @@
+package de.markusfisch.android.shadereditor.highlighter;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * An immutable count of how often every name occurs in one or more shaders.
+ * <p>
+ * Names are keyed by their {@link String#hashCode()} only, so counting the names of a token
+ * buffer doesn't need to create a string for every token. Two names with the same hash
+ * share their count, which is good enough to rank completions.
+ */
+public final class Usage {
+	public static final Usage NONE = new Usage(new int[1], new int[1]);
+
+	// Open addressing table of name hashes, 0 marks an empty slot.
+	private final int[] hashes;
+	private final int[] counts;
+	private final int mask;
+
+	private Usage(@NonNull int[] hashes, @NonNull int[] counts) {
+		this.hashes = hashes;
+		this.counts = counts;
+		mask = hashes.length - 1;
+	}
+
+	/**
+	 * @return How often {@code name} occurs.
+	 */
+	public int count(@NonNull String name) {
+		int hash = nonZero(name.hashCode());
+		for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+			int h = hashes[slot];
+			if (h == hash) {
+				return counts[slot];
+			} else if (h == 0) {
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * Counts the names of token buffers. The counts of one buffer can be kept up to date
+	 * from the {@link Lexer.Diff} of every edit with {@link #reset(TokenBuffer, CharSequence)}
+	 * and {@link #update(TokenBuffer, CharSequence, Lexer.Diff)}, or the names of many
+	 * buffers can be summed up with {@link #add(TokenBuffer, CharSequence)}.
+	 */
+	public static final class Counter {
+		private int[] hashes = new int[64];
+		private int[] counts = new int[64];
+		private int size;
+		// Hash of the name of every token of the buffer that is kept up
+		// to date, or 0 if the token isn't a name.
+		private int[] tokenHashes = new int[0];
+		private int tokenCount;
+		private boolean changed;
+		@NonNull
+		private Usage usage = NONE;
+
+		/**
+		 * @return The counts after the last change.
+		 */
+		public @NonNull Usage usage() {
+			if (changed) {
+				changed = false;
+				usage = size == 0
+						? NONE
+						: new Usage(hashes.clone(), counts.clone());
+			}
+			return usage;
+		}
+
+		/**
+		 * Count the names of {@code tokens} only.
+		 */
+		public void reset(@NonNull TokenBuffer tokens, @NonNull CharSequence text) {
+			clear();
+			tokenCount = tokens.size();
+			if (tokenHashes.length < tokenCount) {
+				tokenHashes = new int[tokenCount + (tokenCount >> 1)];
+			}
+			for (int i = 0; i < tokenCount; ++i) {
+				int hash = nameHash(tokens, i, text);
+				tokenHashes[i] = hash;
+				add(hash, 1);
+			}
+		}
+
+		/**
+		 * Update the counts after {@code tokens} changed as described by {@code diff}.
+		 *
+		 * @param tokens The tokens after the change.
+		 * @param text   The text of {@code tokens}.
+		 */
+		public void update(@NonNull TokenBuffer tokens, @NonNull CharSequence text,
+				@NonNull Lexer.Diff diff) {
+			int delta = diff.insertEnd - diff.deleteEnd;
+			if (tokens.size() - delta != tokenCount) {
+				// Not the buffer that was counted before.
+				reset(tokens, text);
+				return;
+			}
+			int oldCount = tokenCount;
+			tokenCount = tokens.size();
+			for (int i = diff.start; i <= diff.deleteEnd; ++i) {
+				add(tokenHashes[i], -1);
+			}
+			int tail = oldCount - diff.deleteEnd - 1;
+			if (tokenHashes.length < tokenCount) {
+				tokenHashes = Arrays.copyOf(tokenHashes, tokenCount + (tokenCount >> 1));
+			}
+			System.arraycopy(tokenHashes, diff.deleteEnd + 1,
+					tokenHashes, diff.insertEnd + 1, tail);
+			for (int i = diff.start; i <= diff.insertEnd; ++i) {
+				int hash = nameHash(tokens, i, text);
+				tokenHashes[i] = hash;
+				add(hash, 1);
+			}
+		}
+
+		/**
+		 * Add the names of {@code tokens} to the counts.
+		 */
+		public void add(@NonNull TokenBuffer tokens, @NonNull CharSequence text) {
+			for (int i = 0, tokenCount = tokens.size(); i < tokenCount; ++i) {
+				add(nameHash(tokens, i, text), 1);
+			}
+		}
+
+		public void clear() {
+			Arrays.fill(hashes, 0);
+			Arrays.fill(counts, 0);
+			size = 0;
+			changed = true;
+		}
+
+		private void add(int hash, int delta) {
+			if (hash == 0) {
+				return;
+			}
+			changed = true;
+			int mask = hashes.length - 1;
+			int slot = mix(hash) & mask;
+			for (int h; (h = hashes[slot]) != 0; slot = (slot + 1) & mask) {
+				if (h == hash) {
+					counts[slot] += delta;
+					return;
+				}
+			}
+			if (delta < 0) {
+				return;
+			}
+			hashes[slot] = hash;
+			counts[slot] = delta;
+			if (++size * 2 > hashes.length) {
+				rehash();
+			}
+		}
+
+		/**
+		 * Grow the table and drop the names that no longer occur, which
+		 * typing leaves behind for every prefix of a new name.
+		 */
+		private void rehash() {
+			int[] oldHashes = hashes;
+			int[] oldCounts = counts;
+			int live = 0;
+			for (int i = 0; i < oldHashes.length; ++i) {
+				if (oldHashes[i] != 0 && oldCounts[i] > 0) {
+					++live;
+				}
+			}
+			int capacity = Math.max(64, Integer.highestOneBit(live * 4 - 1) << 1);
+			hashes = new int[capacity];
+			counts = new int[capacity];
+			size = live;
+			int mask = capacity - 1;
+			for (int i = 0; i < oldHashes.length; ++i) {
+				int hash = oldHashes[i];
+				if (hash == 0 || oldCounts[i] < 1) {
+					continue;
+				}
+				int slot = mix(hash) & mask;
+				while (hashes[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				hashes[slot] = hash;
+				counts[slot] = oldCounts[i];
+			}
+		}
+	}
+
+	/**
+	 * @return The {@link String#hashCode()} of the token at {@code index} if it's a name,
+	 * 0 otherwise.
+	 */
+	private static int nameHash(@NonNull TokenBuffer tokens, int index,
+			@NonNull CharSequence text) {
+		int start = tokens.startOffset(index);
+		int end = tokens.endOffset(index);
+		if (start >= end || tokens.category(index) == Token.Category.TRIVIA) {
+			return 0;
+		}
+		char first = text.charAt(start);
+		if (first != '_' && !Character.isLetter(first)) {
+			return 0;
+		}
+		int hash = 0;
+		for (int i = start; i < end; ++i) {
+			hash = 31 * hash + text.charAt(i);
+		}
+		return nonZero(hash);
+	}
+
+	private static int nonZero(int hash) {
+		return hash == 0 ? 1 : hash;
+	}
+
+	private static int mix(int hash) {
+		hash *= 0x9e3779b9;
+		return hash ^ (hash >>> 16);
+	}
+}
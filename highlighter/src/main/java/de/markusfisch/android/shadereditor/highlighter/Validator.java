@@ -0,0 +1,1501 @@
+package de.markusfisch.android.shadereditor.highlighter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Finds type errors in a fragment shader without compiling it: undeclared names, operands
+ * and arguments of the wrong type, conversions that GLSL ES doesn't do implicitly, invalid
+ * swizzles, constructors with the wrong number of components and calls that match no
+ * overload of a built-in or declared function.
+ * <p>
+ * The validator is conservative. Whatever it doesn't understand, like a macro, an
+ * extension or a part of the {@link SyntaxTree} that didn't parse, gets an unknown type,
+ * and nothing of an unknown type is reported. So an error it reports is an error, but a
+ * shader without reported errors may still not compile.
+ */
+public final class Validator {
+	/**
+	 * An error in a line of the shader.
+	 */
+	public static final class Problem {
+		private final int line;
+		@NonNull
+		private final String message;
+
+		private Problem(int line, @NonNull String message) {
+			this.line = line;
+			this.message = message;
+		}
+
+		/**
+		 * @return The line of the error, starting at 1.
+		 */
+		public int line() {
+			return line;
+		}
+
+		public @NonNull String message() {
+			return message;
+		}
+
+		@Override
+		public @NonNull String toString() {
+			return line + ": " + message;
+		}
+	}
+
+	// Compilers give up after a few errors, too.
+	private static final int MAX_PROBLEMS = 16;
+	private static final HashMap<String, GlslType> BUILTIN_VARIABLES = new HashMap<>();
+	// Overloads of the built-in functions, see match().
+	private static final HashMap<String, String[]> BUILTIN_FUNCTIONS = new HashMap<>();
+	// Texture lookups, which return a vector of the type of the sampler.
+	private static final HashSet<String> TEXTURE_FUNCTIONS = new HashSet<>(Arrays.asList(
+			"texture2D", "texture2DProj", "texture2DLod", "texture2DProjLod",
+			"texture2DLodEXT", "texture2DProjLodEXT", "texture2DGradEXT",
+			"texture2DProjGradEXT", "textureCube", "textureCubeLod", "textureCubeLodEXT",
+			"textureCubeGradEXT", "texture", "textureProj", "textureLod", "textureOffset",
+			"textureProjOffset", "textureLodOffset", "textureProjLod",
+			"textureProjLodOffset", "textureGrad", "textureGradOffset", "textureProjGrad",
+			"textureProjGradOffset", "texelFetch", "texelFetchOffset"));
+
+	static {
+		GlslType vec4 = GlslType.vector(GlslType.FLOAT, 4);
+		BUILTIN_VARIABLES.put("gl_FragCoord", vec4);
+		BUILTIN_VARIABLES.put("gl_FrontFacing", GlslType.BOOL_TYPE);
+		BUILTIN_VARIABLES.put("gl_PointCoord", GlslType.vector(GlslType.FLOAT, 2));
+		BUILTIN_VARIABLES.put("gl_FragColor", vec4);
+		BUILTIN_VARIABLES.put("gl_FragData", GlslType.array(vec4, 0));
+		BUILTIN_VARIABLES.put("gl_FragDepth", GlslType.FLOAT_TYPE);
+		BUILTIN_VARIABLES.put("gl_Position", vec4);
+		BUILTIN_VARIABLES.put("gl_PointSize", GlslType.FLOAT_TYPE);
+		BUILTIN_VARIABLES.put("gl_VertexID", GlslType.INT_TYPE);
+		BUILTIN_VARIABLES.put("gl_InstanceID", GlslType.INT_TYPE);
+
+		// An overload is the return type followed by the parameters:
+		// G, I, U and B are float, int, uint and bool scalars or
+		// vectors of the same size within the overload, f, i, u and b
+		// are scalars, 2, 3 and 4 are float vectors, M is a matrix and
+		// Q a square matrix of the same type within the overload, T is
+		// the transpose of M and ? is anything.
+		builtin("G:G", "radians", "degrees", "sin", "cos", "tan", "asin", "acos",
+				"sinh", "cosh", "tanh", "asinh", "acosh", "atanh", "exp", "log", "exp2",
+				"log2", "sqrt", "inversesqrt", "floor", "trunc", "round", "roundEven",
+				"ceil", "fract", "normalize", "dFdx", "dFdy", "fwidth");
+		builtin("G:G G:GG", "atan");
+		builtin("G:GG", "pow", "reflect");
+		builtin("G:G I:I", "abs", "sign");
+		builtin("G:GG G:Gf", "mod");
+		builtin("G:GG G:Gf I:II I:Ii U:UU U:Uu", "min", "max");
+		builtin("G:GGG G:Gff I:III I:Iii U:UUU U:Uuu", "clamp");
+		builtin("G:GGG G:GGf G:GGB", "mix");
+		builtin("G:GG G:fG", "step");
+		builtin("G:GGG G:ffG", "smoothstep");
+		builtin("B:G", "isnan", "isinf");
+		builtin("I:G", "floatBitsToInt");
+		builtin("U:G", "floatBitsToUint");
+		builtin("G:I", "intBitsToFloat");
+		builtin("G:U", "uintBitsToFloat");
+		builtin("u:2", "packSnorm2x16", "packUnorm2x16", "packHalf2x16");
+		builtin("2:u", "unpackSnorm2x16", "unpackUnorm2x16", "unpackHalf2x16");
+		builtin("f:G", "length");
+		builtin("f:GG", "distance", "dot");
+		builtin("3:33", "cross");
+		builtin("G:GGG", "faceforward");
+		builtin("G:GGf", "refract");
+		builtin("M:MM", "matrixCompMult");
+		builtin("T:M", "transpose");
+		builtin("f:Q", "determinant");
+		builtin("Q:Q", "inverse");
+		builtin("B:GG B:II B:UU", "lessThan", "lessThanEqual", "greaterThan",
+				"greaterThanEqual");
+		builtin("B:GG B:II B:UU B:BB", "equal", "notEqual");
+		builtin("b:B", "any", "all");
+		builtin("B:B", "not");
+	}
+
+	private TokenBuffer tokens;
+	private CharSequence text;
+	private Preprocessor.InactiveRegions inactiveRegions;
+	// Scopes from the outermost to the innermost.
+	private final ArrayList<HashMap<String, Symbol>> scopes = new ArrayList<>();
+	// Names of macros, which can be anything.
+	private final HashSet<String> macros = new HashSet<>();
+	// Offsets of the problems and their messages.
+	private final ArrayList<Integer> problemOffsets = new ArrayList<>();
+	private final ArrayList<String> problemMessages = new ArrayList<>();
+	private boolean reportsUndeclared;
+	// Whether the current declaration parsed without errors.
+	private boolean reports;
+	// Return type of the current function, null if it's not known.
+	@Nullable
+	private GlslType returnType;
+
+	/**
+	 * Find the errors in a shader.
+	 *
+	 * @param tokens          The tokens of {@code text}.
+	 * @param tree            The syntax tree of {@code tokens}.
+	 * @param inactiveRegions The parts of {@code text} the preprocessor skips.
+	 * @return The errors in the order of the lines they are in.
+	 */
+	@NonNull
+	public List<Problem> validate(
+			@NonNull TokenBuffer tokens,
+			@NonNull CharSequence text,
+			@NonNull SyntaxTree tree,
+			@NonNull Preprocessor.InactiveRegions inactiveRegions) {
+		this.tokens = tokens;
+		this.text = text;
+		this.inactiveRegions = inactiveRegions;
+		scopes.clear();
+		macros.clear();
+		problemOffsets.clear();
+		problemMessages.clear();
+		returnType = null;
+		findMacros();
+
+		SyntaxTree.Node root = tree.root();
+		// Code that didn't parse may declare anything.
+		reportsUndeclared = !root.hasError();
+		pushScope();
+		for (int i = 0, count = root.childCount(); i < count; ++i) {
+			int start = root.childStart(i);
+			SyntaxTree.Node node = root.child(i);
+			if (isInactive(start)) {
+				continue;
+			}
+			reports = !node.hasError();
+			externalDeclaration(node, start);
+		}
+		scopes.clear();
+		List<Problem> problems = problems();
+		this.tokens = null;
+		this.text = null;
+		this.inactiveRegions = null;
+		return problems;
+	}
+
+	private void findMacros() {
+		for (int i = 0, last = tokens.size() - 1; i < last; ++i) {
+			if (tokens.type(i) == TokenType.PREPROC_DEFINE) {
+				macros.add(source(i + 1));
+			}
+		}
+	}
+
+	private void externalDeclaration(@NonNull SyntaxTree.Node node, int start) {
+		switch (node.kind()) {
+			case DECLARATION:
+				declaration(node, start);
+				break;
+			case FUNCTION:
+				function(node, start);
+				break;
+			case INTERFACE_BLOCK:
+				interfaceBlock(node, start);
+				break;
+			default:
+				// Precision statements, empty declarations and errors.
+				break;
+		}
+	}
+
+	private void declaration(@NonNull SyntaxTree.Node node, int start) {
+		int firstChild = node.childCount() > 0 ? start + node.childStart(0) : start;
+		boolean isConst = false;
+		boolean readOnly = false;
+		for (int i = start; i < firstChild; ++i) {
+			switch (tokens.type(i)) {
+				case CONST:
+					isConst = true;
+					readOnly = true;
+					break;
+				case UNIFORM:
+					readOnly = true;
+					break;
+				case ATTRIBUTE:
+					readOnly = true;
+					break;
+				case IN:
+				case VARYING:
+					// Inputs of a fragment shader.
+					readOnly = scopes.size() == 1;
+					break;
+				default:
+					break;
+			}
+		}
+		GlslType type = null;
+		boolean hasType = false;
+		for (int i = 0, count = node.childCount(); i < count; ++i) {
+			SyntaxTree.Node child = node.child(i);
+			int childStart = start + node.childStart(i);
+			if (child.kind() == SyntaxTree.Kind.TYPE) {
+				type = type(child, childStart);
+				hasType = true;
+			} else if (child.kind() == SyntaxTree.Kind.VARIABLE && hasType) {
+				variable(child, childStart, type, isConst, readOnly);
+			}
+		}
+	}
+
+	private void variable(@NonNull SyntaxTree.Node node, int start, @Nullable GlslType type,
+			boolean isConst, boolean readOnly) {
+		String name = source(start);
+		boolean initialized = false;
+		for (int i = 0, count = node.childCount(); i < count; ++i) {
+			SyntaxTree.Node child = node.child(i);
+			int childStart = start + node.childStart(i);
+			if (child.kind() == SyntaxTree.Kind.ARRAY) {
+				if (type != null) {
+					type = GlslType.array(type, arrayLength(child, childStart));
+				}
+				continue;
+			}
+			initialized = true;
+			GlslType value = expression(child, childStart);
+			if (type != null && value != null && !GlslType.same(type, value)) {
+				report(childStart, String.format(Locale.US,
+						"'=' : cannot convert from '%s' to '%s'", value, type));
+			}
+		}
+		if (isConst && !initialized) {
+			report(start, "'" + name + "' : missing initializer for const variable");
+		}
+		declare(start, name, new Symbol(Symbol.VARIABLE, type, readOnly));
+	}
+
+	private void function(@NonNull SyntaxTree.Node node, int start) {
+		int nameToken = start + node.mainToken();
+		String name = source(nameToken);
+		GlslType type = null;
+		ArrayList<GlslType> parameterTypes = new ArrayList<>();
+		SyntaxTree.Node body = null;
+		int bodyStart = 0;
+		for (int i = 0, count = node.childCount(); i < count; ++i) {
+			SyntaxTree.Node child = node.child(i);
+			int childStart = start + node.childStart(i);
+			switch (child.kind()) {
+				case TYPE:
+					type = type(child, childStart);
+					break;
+				case PARAMETER:
+					parameterTypes.add(parameterType(child, childStart));
+					break;
+				case BLOCK:
+					body = child;
+					bodyStart = childStart;
+					break;
+				default:
+					break;
+			}
+		}
+		Function function = new Function(type,
+				parameterTypes.toArray(new GlslType[0]), body != null);
+		declareFunction(nameToken, name, function);
+		if (body == null) {
+			return;
+		}
+		// Parameters share the scope of the body.
+		pushScope();
+		for (int i = 0, count = node.childCount(); i < count; ++i) {
+			SyntaxTree.Node child = node.child(i);
+			if (child.kind() == SyntaxTree.Kind.PARAMETER && child.mainToken() > -1) {
+				int childStart = start + node.childStart(i);
+				int parameterName = childStart + child.mainToken();
+				declare(parameterName, source(parameterName), new Symbol(Symbol.VARIABLE,
+						parameterType(child, childStart),
+						hasToken(childStart, parameterName, TokenType.CONST)));
+			}
+		}
+		returnType = type;
+		statements(body, bodyStart);
+		returnType = null;
+		popScope();
+	}
+
+	@Nullable
+	private GlslType parameterType(@NonNull SyntaxTree.Node node, int start) {
+		GlslType type = null;
+		for (int i = 0, count = node.childCount(); i < count; ++i) {
+			SyntaxTree.Node child = node.child(i);
+			int childStart = start + node.childStart(i);
+			if (child.kind() == SyntaxTree.Kind.TYPE) {
+				type = type(child, childStart);
+			} else if (child.kind() == SyntaxTree.Kind.ARRAY && type != null) {
+				type = GlslType.array(type, arrayLength(child, childStart));
+			}
+		}
+		return type;
+	}
+
+	private void interfaceBlock(@NonNull SyntaxTree.Node node, int start) {
+		ArrayList<String> names = new ArrayList<>();
+		ArrayList<GlslType> types = new ArrayList<>();
+		for (int i = 0, count = node.childCount(); i < count; ++i) {
+			SyntaxTree.Node child = node.child(i);
+			int childStart = start + node.childStart(i);
+			if (child.kind() == SyntaxTree.Kind.DECLARATION) {
+				members(child, childStart, names, types);
+			} else if (child.kind() == SyntaxTree.Kind.VARIABLE) {
+				GlslType type = GlslType.struct(source(start + node.mainToken()),
+						names.toArray(new String[0]), types.toArray(new GlslType[0]));
+				variable(child, childStart, type, false, true);
+				return;
+			}
+		}
+		// Without an instance name, the members are global.
+		for (int i = 0, size = names.size(); i < size; ++i) {
+			scopes.get(0).put(names.get(i), new Symbol(Symbol.VARIABLE, types.get(i), true));
+		}
+	}
+
+	/**
+	 * Add the names and types that a member declaration of a struct or block
+	 * declares.
+	 */
+	private void members(@NonNull SyntaxTree.Node node, int start,
+			@NonNull List<String> names, @NonNull List<GlslType> types) {
+		GlslType type = null;
+		for (int i = 0, count = node.childCount(); i < count; ++i) {
+			SyntaxTree.Node child = node.child(i);
+			int childStart = start + node.childStart(i);
+			if (child.kind() == SyntaxTree.Kind.TYPE) {
+				type = type(child, childStart);
+			} else if (child.kind() == SyntaxTree.Kind.VARIABLE) {
+				GlslType memberType = type;
+				for (int a = 0, arrays = child.childCount(); a < arrays; ++a) {
+					if (memberType != null &&
+							child.child(a).kind() == SyntaxTree.Kind.ARRAY) {
+						memberType = GlslType.array(memberType, arrayLength(
+								child.child(a), childStart + child.childStart(a)));
+					}
+				}
+				names.add(source(childStart));
+				types.add(memberType);
+			}
+		}
+	}
+
+	/**
+	 * @return The type of a TYPE node or null if it isn't known.
+	 */
+	@Nullable
+	private GlslType type(@NonNull SyntaxTree.Node node, int start) {
+		GlslType type;
+		TokenType tokenType = tokens.type(start);
+		if (node.childCount() > 0 && node.child(0).kind() == SyntaxTree.Kind.STRUCT) {
+			type = struct(node.child(0), start + node.childStart(0));
+		} else if (tokenType == TokenType.IDENTIFIER || tokenType == TokenType.TYPE_NAME) {
+			Symbol symbol = lookUp(source(start));
+			type = symbol != null && symbol.kind == Symbol.TYPE ? symbol.type : null;
+		} else if (Parser.isTypeKeyword(tokenType)) {
+			type = GlslType.ofKeyword(tokenType);
+			if (type == null && tokenType.ordinal() >= TokenType.ATOMIC_UINT.ordinal()) {
+				type = GlslType.opaque(source(start));
+			}
+		} else {
+			type = null;
+		}
+		for (int i = 0, count = node.childCount(); i < count; ++i) {
+			SyntaxTree.Node child = node.child(i);
+			if (child.kind() == SyntaxTree.Kind.ARRAY && type != null) {
+				type = GlslType.array(type, arrayLength(child, start + node.childStart(i)));
+			}
+		}
+		return type;
+	}
+
+	@NonNull
+	private GlslType struct(@NonNull SyntaxTree.Node node, int start) {
+		ArrayList<String> names = new ArrayList<>();
+		ArrayList<GlslType> types = new ArrayList<>();
+		for (int i = 0, count = node.childCount(); i < count; ++i) {
+			SyntaxTree.Node child = node.child(i);
+			if (child.kind() == SyntaxTree.Kind.DECLARATION) {
+				members(child, start + node.childStart(i), names, types);
+			}
+		}
+		String name = node.mainToken() > -1 ? source(start + node.mainToken()) : "struct";
+		GlslType type = GlslType.struct(name, names.toArray(new String[0]),
+				types.toArray(new GlslType[0]));
+		if (node.mainToken() > -1) {
+			declare(start + node.mainToken(), name, new Symbol(Symbol.TYPE, type, true));
+		}
+		return type;
+	}
+
+	/**
+	 * @return The length of an array specifier if it's a literal, 0 otherwise.
+	 */
+	private int arrayLength(@NonNull SyntaxTree.Node node, int start) {
+		if (node.childCount() == 1 && node.child(0).kind() == SyntaxTree.Kind.LITERAL) {
+			return Math.max(0, intLiteral(start + node.childStart(0)));
+		}
+		return 0;
+	}
+
+	/**
+	 * @return The value of a decimal int literal or -1.
+	 */
+	private int intLiteral(int token) {
+		if (tokens.type(token) == TokenType.INTCONSTANT) {
+			try {
+				return Integer.parseInt(source(token));
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Check the statements of a block without opening a new scope.
+	 */
+	private void statements(@NonNull SyntaxTree.Node node, int start) {
+		for (int i = 0, count = node.childCount(); i < count; ++i) {
+			statement(node.child(i), start + node.childStart(i));
+		}
+	}
+
+	private void statement(@NonNull SyntaxTree.Node node, int start) {
+		if (isInactive(start)) {
+			return;
+		}
+		int count = node.childCount();
+		switch (node.kind()) {
+			case BLOCK:
+				pushScope();
+				statements(node, start);
+				popScope();
+				break;
+			case DECLARATION:
+				declaration(node, start);
+				break;
+			case EXPRESSION_STATEMENT:
+				expression(node.child(0), start + node.childStart(0));
+				break;
+			case IF:
+			case WHILE:
+				if (count > 0) {
+					condition(node.child(0), start + node.childStart(0));
+				}
+				for (int i = 1; i < count; ++i) {
+					statement(node.child(i), start + node.childStart(i));
+				}
+				break;
+			case DO:
+				if (count > 0) {
+					statement(node.child(0), start + node.childStart(0));
+				}
+				if (count > 1) {
+					condition(node.child(1), start + node.childStart(1));
+				}
+				break;
+			case FOR:
+				forStatement(node, start);
+				break;
+			case SWITCH:
+				if (count > 0) {
+					int childStart = start + node.childStart(0);
+					GlslType type = expression(node.child(0), childStart);
+					if (type != null && !(type.isScalar() && type.isInteger())) {
+						report(childStart, "'switch' : init-expression in a switch " +
+								"statement must be a scalar integer");
+					}
+				}
+				for (int i = 1; i < count; ++i) {
+					statement(node.child(i), start + node.childStart(i));
+				}
+				break;
+			case CASE:
+				if (count > 0) {
+					expression(node.child(0), start + node.childStart(0));
+				}
+				break;
+			case RETURN:
+				returnStatement(node, start);
+				break;
+			default:
+				// Jumps, empty statements and errors.
+				break;
+		}
+	}
+
+	private void forStatement(@NonNull SyntaxTree.Node node, int start) {
+		// The children before the closing parenthesis are the
+		// initialization, the condition and the expression, all of
+		// which are optional.
+		int close = closingParenthesis(nextSignificant(start + 1));
+		pushScope();
+		for (int i = 0, count = node.childCount(); i < count; ++i) {
+			SyntaxTree.Node child = node.child(i);
+			int childStart = start + node.childStart(i);
+			if (childStart > close) {
+				statement(child, childStart);
+			} else if (child.kind() == SyntaxTree.Kind.DECLARATION ||
+					child.kind() == SyntaxTree.Kind.EXPRESSION_STATEMENT) {
+				statement(child, childStart);
+			} else if (tokens.type(nextSignificant(childStart + child.length()))
+					== TokenType.SEMICOLON) {
+				condition(child, childStart);
+			} else {
+				expression(child, childStart);
+			}
+		}
+		popScope();
+	}
+
+	private void returnStatement(@NonNull SyntaxTree.Node node, int start) {
+		GlslType expected = returnType;
+		if (node.childCount() == 0) {
+			if (expected != null && expected != GlslType.VOID_TYPE) {
+				report(start, "'return' : non-void function must return a value");
+			}
+			return;
+		}
+		int childStart = start + node.childStart(0);
+		GlslType type = expression(node.child(0), childStart);
+		if (expected == GlslType.VOID_TYPE) {
+			report(start, "'return' : void function cannot return a value");
+		} else if (expected != null && type != null && !GlslType.same(expected, type)) {
+			report(childStart, String.format(Locale.US,
+					"'return' : function return is not matching type: " +
+							"'%s' instead of '%s'", type, expected));
+		}
+	}
+
+	private void condition(@NonNull SyntaxTree.Node node, int start) {
+		GlslType type = expression(node, start);
+		if (type != null && type != GlslType.BOOL_TYPE) {
+			report(start, "boolean expression expected");
+		}
+	}
+
+	/**
+	 * @return The type of an expression or null if it isn't known.
+	 */
+	@Nullable
+	private GlslType expression(@NonNull SyntaxTree.Node node, int start) {
+		switch (node.kind()) {
+			case NAME:
+				return name(start);
+			case LITERAL:
+				return literal(tokens.type(start));
+			case PARENTHESES:
+				return node.childCount() > 0
+						? expression(node.child(0), start + node.childStart(0))
+						: null;
+			case SEQUENCE:
+				GlslType last = null;
+				for (int i = 0, count = node.childCount(); i < count; ++i) {
+					last = expression(node.child(i), start + node.childStart(i));
+				}
+				return last;
+			case CALL:
+				return call(node, start);
+			case MEMBER:
+				return member(node, start);
+			case INDEX:
+				return index(node, start);
+			case UNARY:
+			case POSTFIX:
+				return unary(node, start);
+			case BINARY:
+				return binary(node, start);
+			case ASSIGNMENT:
+				return assignment(node, start);
+			case CONDITIONAL:
+				return conditional(node, start);
+			default:
+				return null;
+		}
+	}
+
+	@Nullable
+	private GlslType name(int token) {
+		String name = source(token);
+		Symbol symbol = lookUp(name);
+		if (symbol != null) {
+			return symbol.kind == Symbol.VARIABLE ? symbol.type : null;
+		}
+		GlslType builtin = BUILTIN_VARIABLES.get(name);
+		if (builtin != null) {
+			return builtin;
+		} else if (name.equals("true") || name.equals("false")) {
+			return GlslType.BOOL_TYPE;
+		}
+		TokenType type = tokens.type(token);
+		if ((type == TokenType.IDENTIFIER || type == TokenType.TYPE_NAME) &&
+				!isUnknownName(name)) {
+			reportUndeclared(token, "'" + name + "' : undeclared identifier");
+		}
+		return null;
+	}
+
+	@Nullable
+	private static GlslType literal(@NonNull TokenType type) {
+		switch (type) {
+			case FLOATCONSTANT:
+				return GlslType.FLOAT_TYPE;
+			case INTCONSTANT:
+				return GlslType.INT_TYPE;
+			case UINTCONSTANT:
+				return GlslType.UINT_TYPE;
+			default:
+				return null;
+		}
+	}
+
+	@Nullable
+	private GlslType call(@NonNull SyntaxTree.Node node, int start) {
+		int count = node.childCount();
+		GlslType[] arguments = new GlslType[count - 1];
+		boolean known = true;
+		for (int i = 1; i < count; ++i) {
+			arguments[i - 1] = expression(node.child(i), start + node.childStart(i));
+			known &= arguments[i - 1] != null;
+		}
+		SyntaxTree.Node callee = node.child(0);
+		int calleeStart = start + node.childStart(0);
+		if (callee.kind() != SyntaxTree.Kind.NAME) {
+			// Array constructors and `length()`.
+			if (callee.kind() == SyntaxTree.Kind.MEMBER) {
+				expression(callee.child(0), calleeStart + callee.childStart(0));
+			}
+			return null;
+		}
+		TokenType type = tokens.type(calleeStart);
+		String name = source(calleeStart);
+		if (Parser.isTypeKeyword(type)) {
+			GlslType constructed = GlslType.ofKeyword(type);
+			if (constructed != null && known) {
+				checkConstructor(calleeStart, constructed, arguments);
+			}
+			return constructed;
+		}
+		Symbol symbol = lookUp(name);
+		if (symbol != null && symbol.kind == Symbol.TYPE) {
+			if (symbol.type != null && known) {
+				checkStructConstructor(calleeStart, symbol.type, arguments);
+			}
+			return symbol.type;
+		} else if (symbol != null && symbol.kind == Symbol.FUNCTION) {
+			return callFunction(calleeStart, name, symbol, arguments, known);
+		} else if (symbol != null) {
+			return null;
+		}
+		if (TEXTURE_FUNCTIONS.contains(name)) {
+			return textureResult(name, count > 1 ? arguments[0] : null);
+		}
+		String[] overloads = BUILTIN_FUNCTIONS.get(name);
+		if (overloads != null) {
+			if (!known) {
+				return null;
+			}
+			String match = match(overloads, arguments);
+			if (match == null) {
+				reportNoMatch(calleeStart, name, arguments);
+				return null;
+			}
+			return resultOf(match, arguments);
+		}
+		if (type == TokenType.IDENTIFIER || type == TokenType.TYPE_NAME) {
+			if (!isUnknownName(name)) {
+				reportUndeclared(calleeStart, "'" + name +
+						"' : no matching overloaded function found");
+			}
+		}
+		return null;
+	}
+
+	@Nullable
+	private GlslType callFunction(int token, @NonNull String name, @NonNull Symbol symbol,
+			@NonNull GlslType[] arguments, boolean known) {
+		boolean overloadsKnown = true;
+		for (Function function : symbol.functions) {
+			if (function.matches(arguments)) {
+				return function.returnType;
+			}
+			overloadsKnown &= function.isKnown();
+		}
+		// Functions may overload built-in functions.
+		String[] builtins = BUILTIN_FUNCTIONS.get(name);
+		if (builtins != null && known) {
+			String match = match(builtins, arguments);
+			if (match != null) {
+				return resultOf(match, arguments);
+			}
+		}
+		if (known && overloadsKnown && !TEXTURE_FUNCTIONS.contains(name)) {
+			reportNoMatch(token, name, arguments);
+		}
+		return null;
+	}
+
+	private void checkConstructor(int token, @NonNull GlslType type,
+			@NonNull GlslType[] arguments) {
+		int count = arguments.length;
+		if (type.kind > GlslType.BOOL) {
+			return;
+		}
+		if (count == 0) {
+			report(token, "'" + type + "' : constructor does not have any arguments");
+			return;
+		}
+		for (GlslType argument : arguments) {
+			if (argument.kind > GlslType.BOOL) {
+				report(token, String.format(Locale.US,
+						"'%s' : cannot construct from '%s'", type, argument));
+				return;
+			}
+		}
+		if (type.isScalar()) {
+			if (count > 1) {
+				report(token, "'" + type + "' : too many arguments");
+			}
+			return;
+		}
+		if (count == 1 && (arguments[0].isScalar() ||
+				(type.isMatrix() && arguments[0].isMatrix()))) {
+			return;
+		}
+		int needed = type.components();
+		int provided = 0;
+		for (GlslType argument : arguments) {
+			if (type.isMatrix() && argument.isMatrix()) {
+				// Not allowed, but compilers disagree.
+				return;
+			}
+			if (provided >= needed) {
+				report(token, "'" + type + "' : too many arguments");
+				return;
+			}
+			provided += argument.components();
+		}
+		if (provided < needed) {
+			report(token, "'" + type + "' : not enough data provided for construction");
+		}
+	}
+
+	private void checkStructConstructor(int token, @NonNull GlslType type,
+			@NonNull GlslType[] arguments) {
+		if (arguments.length != type.fieldTypes.length) {
+			report(token, "'" + type + "' : number of constructor parameters does not " +
+					"match the number of structure fields");
+			return;
+		}
+		for (int i = 0; i < arguments.length; ++i) {
+			GlslType field = type.fieldTypes[i];
+			if (field != null && !GlslType.same(field, arguments[i])) {
+				report(token, String.format(Locale.US,
+						"'%s' : cannot convert from '%s' to '%s'",
+						type, arguments[i], field));
+				return;
+			}
+		}
+	}
+
+	@Nullable
+	private static GlslType textureResult(@NonNull String name,
+			@Nullable GlslType sampler) {
+		if (sampler == null || sampler.kind != GlslType.OPAQUE) {
+			return null;
+		}
+		String samplerName = sampler.name;
+		if (samplerName.startsWith("isampler")) {
+			return GlslType.vector(GlslType.INT, 4);
+		} else if (samplerName.startsWith("usampler")) {
+			return GlslType.vector(GlslType.UINT, 4);
+		} else if (samplerName.endsWith("Shadow")) {
+			return name.startsWith("texelFetch") ? null : GlslType.FLOAT_TYPE;
+		}
+		return GlslType.vector(GlslType.FLOAT, 4);
+	}
+
+	@Nullable
+	private GlslType member(@NonNull SyntaxTree.Node node, int start) {
+		GlslType type = expression(node.child(0), start + node.childStart(0));
+		if (type == null || node.mainToken() < 0) {
+			return null;
+		}
+		int fieldToken = start + node.mainToken();
+		String field = source(fieldToken);
+		if (type.kind == GlslType.STRUCT) {
+			for (int i = 0; i < type.fieldNames.length; ++i) {
+				if (type.fieldNames[i].equals(field)) {
+					return type.fieldTypes[i];
+				}
+			}
+			report(fieldToken, "'" + field + "' : no such field in structure");
+			return null;
+		} else if (!type.isVector()) {
+			return null;
+		}
+		int length = field.length();
+		String set = swizzleSet(field.charAt(0));
+		if (length > 4 || set == null) {
+			report(fieldToken, "'" + field + "' : illegal vector field selection");
+			return null;
+		}
+		for (int i = 0; i < length; ++i) {
+			int component = set.indexOf(field.charAt(i));
+			if (component < 0) {
+				report(fieldToken, "'" + field + "' : illegal vector field selection");
+				return null;
+			} else if (component >= type.rows) {
+				report(fieldToken, "'" + field + "' : vector field selection out of range");
+				return null;
+			}
+		}
+		return GlslType.vector(type.kind, length);
+	}
+
+	@Nullable
+	private static String swizzleSet(char ch) {
+		for (String set : new String[]{"xyzw", "rgba", "stpq"}) {
+			if (set.indexOf(ch) > -1) {
+				return set;
+			}
+		}
+		return null;
+	}
+
+	@Nullable
+	private GlslType index(@NonNull SyntaxTree.Node node, int start) {
+		GlslType type = expression(node.child(0), start + node.childStart(0));
+		int index = -1;
+		if (node.childCount() > 1) {
+			SyntaxTree.Node child = node.child(1);
+			int childStart = start + node.childStart(1);
+			GlslType indexType = expression(child, childStart);
+			if (indexType != null && !(indexType.isScalar() && indexType.isInteger())) {
+				report(childStart, "'[]' : integer expression required");
+				return null;
+			}
+			if (child.kind() == SyntaxTree.Kind.LITERAL) {
+				index = intLiteral(childStart);
+			}
+		}
+		if (type == null) {
+			return null;
+		}
+		int size;
+		GlslType element;
+		if (type.kind == GlslType.ARRAY) {
+			size = type.length;
+			element = type.element;
+		} else if (type.isMatrix()) {
+			size = type.columns;
+			element = GlslType.vector(GlslType.FLOAT, type.rows);
+		} else if (type.isVector()) {
+			size = type.rows;
+			element = GlslType.vector(type.kind, 1);
+		} else {
+			report(start, "'[]' : left of '[' is not of type array, matrix, or vector");
+			return null;
+		}
+		if (size > 0 && index >= size) {
+			report(start + node.childStart(1), String.format(Locale.US,
+					"'[]' : index out of range: %d", index));
+		}
+		return element;
+	}
+
+	@Nullable
+	private GlslType unary(@NonNull SyntaxTree.Node node, int start) {
+		int operatorToken = start + node.mainToken();
+		TokenType operator = tokens.type(operatorToken);
+		if (node.childCount() == 0) {
+			return null;
+		}
+		SyntaxTree.Node operand = node.child(0);
+		int operandStart = start + node.childStart(0);
+		GlslType type = expression(operand, operandStart);
+		if (type == null) {
+			return operator == TokenType.BANG ? GlslType.BOOL_TYPE : null;
+		}
+		boolean valid;
+		switch (operator) {
+			case BANG:
+				valid = type == GlslType.BOOL_TYPE;
+				break;
+			case TILDE:
+				valid = type.isInteger();
+				break;
+			case INC_OP:
+			case DEC_OP:
+				checkWritable(operand, operandStart);
+				valid = type.isNumeric();
+				break;
+			default:
+				valid = type.isNumeric();
+				break;
+		}
+		if (!valid) {
+			report(operatorToken, String.format(Locale.US,
+					"'%s' : wrong operand type: no operation '%<s' exists that takes " +
+							"an operand of type '%s'", source(operatorToken), type));
+			return null;
+		}
+		return type;
+	}
+
+	@Nullable
+	private GlslType binary(@NonNull SyntaxTree.Node node, int start) {
+		int operatorToken = start + node.mainToken();
+		TokenType operator = tokens.type(operatorToken);
+		GlslType left = expression(node.child(0), start + node.childStart(0));
+		GlslType right = node.childCount() > 1
+				? expression(node.child(1), start + node.childStart(1))
+				: null;
+		boolean logical = false;
+		switch (operator) {
+			case LEFT_ANGLE:
+			case RIGHT_ANGLE:
+			case LE_OP:
+			case GE_OP:
+			case EQ_OP:
+			case NE_OP:
+			case AND_OP:
+			case OR_OP:
+			case XOR_OP:
+				logical = true;
+				break;
+			default:
+				break;
+		}
+		if (left == null || right == null) {
+			return logical ? GlslType.BOOL_TYPE : null;
+		}
+		GlslType result;
+		switch (operator) {
+			case PLUS:
+			case DASH:
+			case STAR:
+			case SLASH:
+				result = arithmetic(operator, left, right);
+				break;
+			case PERCENT:
+				result = left.isInteger() ? arithmetic(operator, left, right) : null;
+				break;
+			case LEFT_ANGLE:
+			case RIGHT_ANGLE:
+			case LE_OP:
+			case GE_OP:
+				result = left.isScalar() && left.isNumeric() && left == right
+						? GlslType.BOOL_TYPE
+						: null;
+				break;
+			case EQ_OP:
+			case NE_OP:
+				result = GlslType.same(left, right) && left.kind != GlslType.OPAQUE
+						? GlslType.BOOL_TYPE
+						: null;
+				break;
+			case AND_OP:
+			case OR_OP:
+			case XOR_OP:
+				result = left == GlslType.BOOL_TYPE && right == GlslType.BOOL_TYPE
+						? GlslType.BOOL_TYPE
+						: null;
+				break;
+			default:
+				// Bit operations, which ES 1.00 doesn't have.
+				return left == right ? left : null;
+		}
+		if (result == null) {
+			reportOperands(operatorToken, left, right);
+			return logical ? GlslType.BOOL_TYPE : null;
+		}
+		return result;
+	}
+
+	/**
+	 * @return The type of {@code left operator right} for an arithmetic operator or
+	 * null if there is no such operation.
+	 */
+	@Nullable
+	private static GlslType arithmetic(@NonNull TokenType operator,
+			@NonNull GlslType left, @NonNull GlslType right) {
+		if (!left.isNumeric() || !right.isNumeric() || left.kind != right.kind) {
+			return null;
+		}
+		boolean multiply = operator == TokenType.STAR;
+		if (multiply && (left.isMatrix() || right.isMatrix()) &&
+				!left.isScalar() && !right.isScalar()) {
+			// Linear algebra, where a vector on the left is a row.
+			if (left.isVector()) {
+				return left.rows == right.rows
+						? GlslType.vector(GlslType.FLOAT, right.columns)
+						: null;
+			} else if (left.columns != right.rows) {
+				return null;
+			}
+			return right.isVector()
+					? GlslType.vector(GlslType.FLOAT, left.rows)
+					: GlslType.matrix(right.columns, left.rows);
+		} else if (left == right || right.isScalar()) {
+			return left;
+		} else if (left.isScalar()) {
+			return right;
+		}
+		return null;
+	}
+
+	@Nullable
+	private GlslType assignment(@NonNull SyntaxTree.Node node, int start) {
+		int operatorToken = start + node.mainToken();
+		TokenType operator = tokens.type(operatorToken);
+		SyntaxTree.Node target = node.child(0);
+		int targetStart = start + node.childStart(0);
+		GlslType left = expression(target, targetStart);
+		GlslType right = node.childCount() > 1
+				? expression(node.child(1), start + node.childStart(1))
+				: null;
+		checkWritable(target, targetStart);
+		if (left == null || right == null) {
+			return left;
+		}
+		TokenType arithmetic;
+		switch (operator) {
+			case EQUAL:
+				if (!GlslType.same(left, right)) {
+					report(operatorToken, String.format(Locale.US,
+							"'=' : cannot convert from '%s' to '%s'", right, left));
+				}
+				return left;
+			case ADD_ASSIGN:
+				arithmetic = TokenType.PLUS;
+				break;
+			case SUB_ASSIGN:
+				arithmetic = TokenType.DASH;
+				break;
+			case MUL_ASSIGN:
+				arithmetic = TokenType.STAR;
+				break;
+			case DIV_ASSIGN:
+				arithmetic = TokenType.SLASH;
+				break;
+			default:
+				return left;
+		}
+		GlslType result = arithmetic(arithmetic, left, right);
+		if (result == null || !GlslType.same(result, left)) {
+			reportOperands(operatorToken, left, right);
+		}
+		return left;
+	}
+
+	@Nullable
+	private GlslType conditional(@NonNull SyntaxTree.Node node, int start) {
+		int count = node.childCount();
+		if (count < 3) {
+			for (int i = 0; i < count; ++i) {
+				expression(node.child(i), start + node.childStart(i));
+			}
+			return null;
+		}
+		condition(node.child(0), start + node.childStart(0));
+		GlslType a = expression(node.child(1), start + node.childStart(1));
+		GlslType b = expression(node.child(2), start + node.childStart(2));
+		if (a == null || b == null) {
+			return null;
+		} else if (!GlslType.same(a, b)) {
+			reportOperands(start + node.mainToken(), a, b);
+			return null;
+		}
+		return a;
+	}
+
+	/**
+	 * Report an assignment to a constant, uniform or input.
+	 */
+	private void checkWritable(@NonNull SyntaxTree.Node node, int start) {
+		while (node.kind() == SyntaxTree.Kind.MEMBER ||
+				node.kind() == SyntaxTree.Kind.INDEX ||
+				node.kind() == SyntaxTree.Kind.PARENTHESES) {
+			if (node.childCount() == 0) {
+				return;
+			}
+			start += node.childStart(0);
+			node = node.child(0);
+		}
+		if (node.kind() != SyntaxTree.Kind.NAME) {
+			return;
+		}
+		String name = source(start);
+		Symbol symbol = lookUp(name);
+		if ((symbol != null && symbol.readOnly) ||
+				(symbol == null && (name.equals("gl_FragCoord") ||
+						name.equals("gl_FrontFacing") ||
+						name.equals("gl_PointCoord")))) {
+			report(start, "'" + name + "' : l-value required (can't modify a " +
+					"const, uniform or input)");
+		}
+	}
+
+	private void declare(int token, @NonNull String name, @NonNull Symbol symbol) {
+		if (macros.contains(name)) {
+			return;
+		}
+		HashMap<String, Symbol> scope = scopes.get(scopes.size() - 1);
+		if (scope.containsKey(name)) {
+			report(token, "'" + name + "' : redefinition");
+		}
+		scope.put(name, symbol);
+	}
+
+	private void declareFunction(int token, @NonNull String name,
+			@NonNull Function function) {
+		if (macros.contains(name)) {
+			return;
+		}
+		HashMap<String, Symbol> global = scopes.get(0);
+		Symbol symbol = global.get(name);
+		if (symbol == null) {
+			symbol = new Symbol(Symbol.FUNCTION, null, true);
+			global.put(name, symbol);
+		} else if (symbol.kind != Symbol.FUNCTION) {
+			report(token, "'" + name + "' : redefinition");
+			return;
+		}
+		for (Function other : symbol.functions) {
+			if (!other.isKnown() || !function.isKnown() ||
+					!other.matches(function.parameterTypes)) {
+				continue;
+			}
+			if (other.returnType != null && function.returnType != null &&
+					!GlslType.same(other.returnType, function.returnType)) {
+				report(token, "'" + name + "' : overloaded functions must have the " +
+						"same return type");
+			} else if (other.defined && function.defined) {
+				report(token, "'" + name + "' : function already has a body");
+			}
+			other.defined |= function.defined;
+			return;
+		}
+		symbol.functions.add(function);
+	}
+
+	@Nullable
+	private Symbol lookUp(@NonNull String name) {
+		for (int i = scopes.size() - 1; i >= 0; --i) {
+			Symbol symbol = scopes.get(i).get(name);
+			if (symbol != null) {
+				return symbol;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return True if {@code name} may be declared by something the validator
+	 * doesn't understand.
+	 */
+	private boolean isUnknownName(@NonNull String name) {
+		return macros.contains(name) || name.startsWith("gl_") || name.startsWith("GL_");
+	}
+
+	private void pushScope() {
+		scopes.add(new HashMap<>());
+	}
+
+	private void popScope() {
+		scopes.remove(scopes.size() - 1);
+	}
+
+	/**
+	 * @return The first overload that takes {@code arguments} or null.
+	 */
+	@Nullable
+	private static String match(@NonNull String[] overloads,
+			@NonNull GlslType[] arguments) {
+		for (String overload : overloads) {
+			// Parameters start after the return type and the colon.
+			if (overload.length() - 2 != arguments.length) {
+				continue;
+			}
+			int size = 0;
+			GlslType matrix = null;
+			boolean matches = true;
+			for (int i = 0; i < arguments.length && matches; ++i) {
+				GlslType argument = arguments[i];
+				char parameter = overload.charAt(i + 2);
+				switch (parameter) {
+					case 'G':
+					case 'I':
+					case 'U':
+					case 'B':
+						matches = argument.kind == baseOf(parameter) &&
+								!argument.isMatrix() &&
+								(size == 0 || size == argument.rows);
+						size = argument.rows;
+						break;
+					case 'M':
+					case 'Q':
+						matches = argument.isMatrix() &&
+								(parameter == 'M' || argument.columns == argument.rows) &&
+								(matrix == null || matrix == argument);
+						matrix = argument;
+						break;
+					case '?':
+						break;
+					default:
+						matches = argument == typeOf(parameter);
+						break;
+				}
+			}
+			if (matches) {
+				return overload;
+			}
+		}
+		return null;
+	}
+
+	@Nullable
+	private static GlslType resultOf(@NonNull String overload,
+			@NonNull GlslType[] arguments) {
+		char result = overload.charAt(0);
+		int size = 1;
+		GlslType matrix = null;
+		for (int i = 0; i < arguments.length; ++i) {
+			char parameter = overload.charAt(i + 2);
+			if (parameter == 'G' || parameter == 'I' || parameter == 'U' ||
+					parameter == 'B') {
+				size = arguments[i].rows;
+			} else if (parameter == 'M' || parameter == 'Q') {
+				matrix = arguments[i];
+			}
+		}
+		switch (result) {
+			case 'G':
+			case 'I':
+			case 'U':
+			case 'B':
+				return GlslType.vector(baseOf(result), size);
+			case 'M':
+			case 'Q':
+				return matrix;
+			case 'T':
+				return matrix != null ? GlslType.matrix(matrix.rows, matrix.columns) : null;
+			case '?':
+				return null;
+			default:
+				return typeOf(result);
+		}
+	}
+
+	private static int baseOf(char parameter) {
+		switch (parameter) {
+			case 'I':
+			case 'i':
+				return GlslType.INT;
+			case 'U':
+			case 'u':
+				return GlslType.UINT;
+			case 'B':
+			case 'b':
+				return GlslType.BOOL;
+			default:
+				return GlslType.FLOAT;
+		}
+	}
+
+	@NonNull
+	private static GlslType typeOf(char parameter) {
+		if (parameter >= '2' && parameter <= '4') {
+			return GlslType.vector(GlslType.FLOAT, parameter - '0');
+		}
+		return GlslType.vector(baseOf(parameter), 1);
+	}
+
+	private static void builtin(@NonNull String overloads, @NonNull String... names) {
+		String[] split = overloads.split(" ");
+		for (String name : names) {
+			BUILTIN_FUNCTIONS.put(name, split);
+		}
+	}
+
+	private void reportOperands(int token, @NonNull GlslType left, @NonNull GlslType right) {
+		report(token, String.format(Locale.US,
+				"'%s' : wrong operand types: no operation '%<s' exists that takes a " +
+						"left-hand operand of type '%s' and a right operand of type '%s'",
+				source(token), left, right));
+	}
+
+	private void reportNoMatch(int token, @NonNull String name,
+			@NonNull GlslType[] arguments) {
+		StringBuilder sb = new StringBuilder();
+		for (GlslType argument : arguments) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(argument);
+		}
+		report(token, String.format(Locale.US,
+				"'%s' : no matching overloaded function found for (%s)", name, sb));
+	}
+
+	private void reportUndeclared(int token, @NonNull String message) {
+		if (reportsUndeclared) {
+			report(token, message);
+		}
+	}
+
+	private void report(int token, @NonNull String message) {
+		int offset = tokens.startOffset(token);
+		if (!reports || problemOffsets.size() >= MAX_PROBLEMS || isInactiveOffset(offset)) {
+			return;
+		}
+		problemOffsets.add(offset);
+		problemMessages.add(message);
+	}
+
+	@NonNull
+	private List<Problem> problems() {
+		int size = problemOffsets.size();
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; ++i) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Integer.compare(
+				problemOffsets.get(a), problemOffsets.get(b)));
+		ArrayList<Problem> problems = new ArrayList<>(size);
+		int line = 1;
+		int position = 0;
+		for (Integer i : order) {
+			int offset = problemOffsets.get(i);
+			for (; position < offset; ++position) {
+				if (text.charAt(position) == '\n') {
+					++line;
+				}
+			}
+			problems.add(new Problem(line, problemMessages.get(i)));
+		}
+		return problems;
+	}
+
+	private boolean isInactive(int token) {
+		return isInactiveOffset(tokens.startOffset(token));
+	}
+
+	private boolean isInactiveOffset(int offset) {
+		return inactiveRegions.contains(offset);
+	}
+
+	/**
+	 * @return True if one of the tokens {@code [from, to)} is of {@code type}.
+	 */
+	private boolean hasToken(int from, int to, @NonNull TokenType type) {
+		for (int i = from; i < to; ++i) {
+			if (tokens.type(i) == type) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return The parenthesis that closes the one at {@code open}.
+	 */
+	private int closingParenthesis(int open) {
+		int last = tokens.size() - 1;
+		int depth = 0;
+		for (int i = open; i < last; ++i) {
+			if (tokens.category(i) != Token.Category.NORMAL) {
+				continue;
+			}
+			TokenType type = tokens.type(i);
+			if (type == TokenType.LEFT_PAREN) {
+				++depth;
+			} else if (type == TokenType.RIGHT_PAREN && --depth == 0) {
+				return i;
+			}
+		}
+		return last;
+	}
+
+	private int nextSignificant(int index) {
+		int last = tokens.size() - 1;
+		while (index < last && tokens.category(index) != Token.Category.NORMAL) {
+			++index;
+		}
+		return Math.min(index, last);
+	}
+
+	@NonNull
+	private String source(int token) {
+		return Lexer.tokenSource(tokens, token, text).toString();
+	}
+
+	private static final class Symbol {
+		private static final int VARIABLE = 0;
+		private static final int TYPE = 1;
+		private static final int FUNCTION = 2;
+
+		private final int kind;
+		// Type of a variable or the type a name stands for, null if it
+		// isn't known.
+		@Nullable
+		private final GlslType type;
+		private final boolean readOnly;
+		private final ArrayList<Function> functions = new ArrayList<>();
+
+		private Symbol(int kind, @Nullable GlslType type, boolean readOnly) {
+			this.kind = kind;
+			this.type = type;
+			this.readOnly = readOnly;
+		}
+	}
+
+	private static final class Function {
+		@Nullable
+		private final GlslType returnType;
+		// Types that aren't known are null.
+		@NonNull
+		private final GlslType[] parameterTypes;
+		private boolean defined;
+
+		private Function(@Nullable GlslType returnType, @NonNull GlslType[] parameterTypes,
+				boolean defined) {
+			this.returnType = returnType;
+			this.parameterTypes = parameterTypes;
+			this.defined = defined;
+		}
+
+		private boolean isKnown() {
+			for (GlslType type : parameterTypes) {
+				if (type == null) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * @return True if the function may take {@code arguments}.
+		 */
+		private boolean matches(@NonNull GlslType[] arguments) {
+			if (arguments.length != parameterTypes.length) {
+				return false;
+			}
+			for (int i = 0; i < arguments.length; ++i) {
+				if (parameterTypes[i] != null && arguments[i] != null &&
+						!GlslType.same(parameterTypes[i], arguments[i])) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
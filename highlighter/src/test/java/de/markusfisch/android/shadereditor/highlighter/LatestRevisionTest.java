@@ -0,0 +1,139 @@
+package de.markusfisch.android.shadereditor.highlighter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LatestRevisionTest {
+	// What a frame may take at 60 Hz.
+	private static final long FRAME_BUDGET_NS = 16_000_000L;
+	private static final int WARM_UP = 50;
+	private static final int KEYSTROKES = 300;
+
+	@Test
+	public void repeatedRequestIsIgnored() {
+		var revisions = new LatestRevision<String>();
+		assertTrue(revisions.request(1));
+		assertFalse(revisions.request(1));
+		assertTrue(revisions.request(2));
+	}
+
+	@Test
+	public void staleRevisionIsDropped() {
+		var revisions = new LatestRevision<String>();
+		revisions.request(1);
+		revisions.request(2);
+		assertFalse(revisions.isCurrent(1));
+		assertFalse(revisions.complete(1, "one"));
+		assertNull(revisions.get(1));
+		assertNull(revisions.latest());
+		assertFalse(revisions.isCompleted(2));
+	}
+
+	@Test
+	public void newestCompletedRevisionWins() {
+		var revisions = new LatestRevision<String>();
+		revisions.request(1);
+		assertTrue(revisions.complete(1, "one"));
+		revisions.request(2);
+		// The result of 1 stays available until 2 is done.
+		assertEquals("one", revisions.get(1));
+		assertEquals("one", revisions.latest());
+		assertTrue(revisions.complete(2, "two"));
+		assertTrue(revisions.isCompleted(2));
+		assertNull(revisions.get(1));
+		assertEquals("two", revisions.get(2));
+		// A late result of an older revision doesn't replace it.
+		assertFalse(revisions.complete(1, "one"));
+		assertEquals("two", revisions.latest());
+	}
+
+	/**
+	 * Types into a 100 KB text while it is lexed in the background. The cost
+	 * of a keystroke is the CPU time it takes plus the time it is blocked on
+	 * a lock or waits for another thread. Unlike wall time, this doesn't
+	 * count the time the thread is preempted by the lexer on a machine with
+	 * a single core.
+	 */
+	@Test
+	public void typingNeverWaitsForLexer() throws InterruptedException {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		assumeTrue(threads.isCurrentThreadCpuTimeSupported() &&
+				threads.isThreadContentionMonitoringSupported());
+		threads.setThreadCpuTimeEnabled(true);
+		threads.setThreadContentionMonitoringEnabled(true);
+		long threadId = Thread.currentThread().getId();
+
+		StringBuilder builder = new StringBuilder();
+		while (builder.length() < 100 * 1024) {
+			builder.append("uniform vec2 resolution; // A comment.\n")
+					.append("float f(float x) { return x * 2.0 + 1.0; }\n");
+		}
+		ChunkedText text = ChunkedText.of(builder);
+		// The result is the number of tokens, so the lexer can reuse its
+		// buffer like the editor does.
+		var revisions = new LatestRevision<Integer>();
+		Lexer lexer = new Lexer();
+		TokenBuffer sink = new TokenBuffer();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		AtomicInteger lexed = new AtomicInteger();
+		long slowest = 0;
+		try {
+			for (int revision = 0; revision < KEYSTROKES; ++revision) {
+				// Type a character and hand a snapshot of the text to the
+				// lexer, the way the editor does it on the UI thread.
+				long cpuTime = threads.getCurrentThreadCpuTime();
+				long waitTime = waitTime(threads, threadId);
+				int offset = text.length() / 2;
+				text = text.replace(offset, offset, "x", 0, 1);
+				ChunkedText snapshot = text;
+				int typed = revision;
+				if (revisions.request(typed)) {
+					executor.execute(() -> {
+						if (!revisions.isCurrent(typed)) {
+							return;
+						}
+						lexer.lex(snapshot, sink);
+						lexed.incrementAndGet();
+						revisions.complete(typed, sink.size());
+					});
+				}
+				revisions.get(typed - 1);
+				revisions.latest();
+				if (revision >= WARM_UP) {
+					long cost = threads.getCurrentThreadCpuTime() - cpuTime +
+							(waitTime(threads, threadId) - waitTime) * 1_000_000L;
+					slowest = Math.max(slowest, cost);
+				}
+				Thread.sleep(1);
+			}
+		} finally {
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		}
+		assertTrue("slowest keystroke took " + slowest + " ns",
+				slowest < FRAME_BUDGET_NS);
+		// Stale revisions were skipped, and the last one was completed.
+		assertTrue(lexed.get() < KEYSTROKES);
+		assertTrue(revisions.isCompleted(KEYSTROKES - 1));
+	}
+
+	/**
+	 * @return How many milliseconds the thread was blocked or waiting.
+	 */
+	private static long waitTime(ThreadMXBean threads, long threadId) {
+		var info = threads.getThreadInfo(threadId);
+		return info.getBlockedTime() + info.getWaitedTime();
+	}
+}
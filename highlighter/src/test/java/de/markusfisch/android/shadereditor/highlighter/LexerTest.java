@@ -0,0 +1,151 @@
+package de.markusfisch.android.shadereditor.highlighter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+public class LexerTest {
+	private static final String SHADER = """
+			#ifdef GL_FRAGMENT_PRECISION_HIGH
+			precision highp float;
+			#else
+			precision mediump float;
+			#endif
+
+			uniform vec2 resolution;
+			uniform float time;
+
+			struct Ray {
+				vec3 origin; // Where it starts.
+				vec3 direction;
+			};
+
+			/* Distance to a sphere
+			   at the origin. */
+			float sphere(vec3 p, float r) {
+				return length(p) - r;
+			}
+
+			void main() {
+				vec2 uv = gl_FragCoord.xy / resolution.xy;
+				Ray ray = Ray(vec3(0.0), normalize(vec3(uv - .5, 1.0)));
+				float d = sphere(ray.origin + ray.direction * 2.5e0, 1.0);
+				gl_FragColor = vec4(vec3(step(d, 0.0)), 1.0);
+			}
+			""";
+
+	@Test
+	public void lexDoesNotAllocatePerToken() {
+		var threads = ManagementFactory.getThreadMXBean();
+		assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+		var allocations = (com.sun.management.ThreadMXBean) threads;
+		assumeTrue(allocations.isThreadAllocatedMemorySupported());
+		allocations.setThreadAllocatedMemoryEnabled(true);
+
+		String source = repeat(SHADER, 100 * 1024);
+		Lexer lexer = new Lexer();
+		TokenBuffer sink = new TokenBuffer();
+		// The first run grows the sink to its final size.
+		lexer.lex(source, sink);
+		int tokenCount = sink.size();
+
+		long threadId = Thread.currentThread().getId();
+		long before = allocations.getThreadAllocatedBytes(threadId);
+		lexer.lex(source, sink);
+		long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+		assertEquals(tokenCount, sink.size());
+		assertTrue("allocated " + allocated + " bytes for " + tokenCount + " tokens",
+				allocated < tokenCount / 16);
+	}
+
+	@Test
+	public void lexMatchesTokenize() {
+		String source = repeat(SHADER, 10 * 1024);
+		TokenBuffer expected = Lexer.tokenize(source).tokens();
+		TokenBuffer sink = new TokenBuffer();
+		new Lexer().lex(source, sink);
+		assertSameTokens(expected, sink);
+	}
+
+	@Test
+	public void diffCoversTypeNameAfterComment() {
+		// `Foo` is a type name after `struct`, even with a comment in between.
+		assertDiffCoversChanges("struct /* c */ Foo;", 0, 6, "");
+		assertDiffCoversChanges("a /* c */ Foo;", 0, 1, "struct");
+		assertDiffCoversChanges("struct\n// c\nFoo;", 0, 6, "x");
+		assertDiffCoversChanges("a\n#define A\nFoo;", 0, 1, "struct");
+	}
+
+	@Test
+	public void diffCoversChangesOfRandomEdits() {
+		String[] pieces = {
+				"struct ", "/* c */", "*/", "//", " ", "\n", "Foo", "x", ".",
+				"#define A\n", "float ", ";", "1.0", "\\\n"
+		};
+		Random random = new Random(1);
+		String text = SHADER;
+		for (int i = 0; i < 20000; ++i) {
+			int start = random.nextInt(text.length() + 1);
+			int end = Math.min(text.length(), start + random.nextInt(8));
+			String replacement = random.nextInt(3) == 0
+					? ""
+					: pieces[random.nextInt(pieces.length)];
+			assertDiffCoversChanges(text, start, end, replacement);
+			text = text.substring(0, start) + replacement + text.substring(end);
+			if (text.length() > 4 * SHADER.length()) {
+				text = SHADER;
+			}
+		}
+	}
+
+	/**
+	 * Replace {@code [start, end)} of {@code text} with {@code replacement}
+	 * and check that all tokens outside of the diff of the edit are the same
+	 * as those of a full lex.
+	 */
+	private static void assertDiffCoversChanges(String text, int start, int end,
+			String replacement) {
+		String edited = text.substring(0, start) + replacement + text.substring(end);
+		TokenBuffer original = Lexer.tokenize(text).tokens();
+		TokenBuffer expected = Lexer.tokenize(edited).tokens();
+		int newEnd = start + replacement.length();
+		Lexer.Diff diff = Lexer.diff(original, expected, start, end, newEnd);
+		String message = "replacing [" + start + ", " + end + ") of \"" + text +
+				"\" with \"" + replacement + "\" gives " + diff;
+		for (int i = 0; i < diff.start; ++i) {
+			assertEquals(message, original.startOffset(i), expected.startOffset(i));
+			assertTrue(message, original.isSame(i, expected, i));
+		}
+		int suffix = original.size() - 1 - diff.deleteEnd;
+		assertEquals(message, suffix, expected.size() - 1 - diff.insertEnd);
+		int delta = newEnd - end;
+		for (int i = 1; i <= suffix; ++i) {
+			int o = diff.deleteEnd + i;
+			int e = diff.insertEnd + i;
+			assertEquals(message, original.startOffset(o) + delta,
+					expected.startOffset(e));
+			assertTrue(message, original.isSame(o, expected, e));
+		}
+	}
+
+	private static void assertSameTokens(TokenBuffer expected, TokenBuffer actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); ++i) {
+			assertEquals(expected.startOffset(i), actual.startOffset(i));
+			assertTrue("token " + i, expected.isSame(i, actual, i));
+		}
+	}
+
+	/**
+	 * @return {@code text} repeated until it is at least {@code length} long.
+	 */
+	private static String repeat(String text, int length) {
+		return text.repeat((length + text.length() - 1) / text.length());
+	}
+}
@@ -0,0 +1,106 @@
+package de.markusfisch.android.shadereditor.highlighter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ParserTest {
+	private static final String ES_100 = """
+			precision mediump float;
+
+			attribute vec4 position;
+			varying vec2 uv;
+			uniform sampler2D frame;
+
+			void main() {
+				gl_FragColor = texture2D(frame, uv);
+			}
+			""";
+	private static final String ES_300 = """
+			#version 300 es
+			precision highp float;
+
+			layout(location = 0) out vec4 fragColor;
+			in vec2 uv;
+			uniform float time;
+
+			struct Light {
+				vec3 position;
+				float weights[2];
+			};
+
+			float sum(float values[3]) {
+				return values[0] + values[1] + values[2];
+			}
+
+			void main() {
+				float a[] = float[](1.0, 2.0, 3.0);
+				float b[3] = float[3](1.0, 2.0, 3.0);
+				Light lights[] = Light[](Light(vec3(0.0), float[](0.5, 0.5)));
+				fragColor = vec4(uv, sum(a) + sum(b), lights[0].weights[1]);
+			}
+			""";
+
+	@Test
+	public void parsesStorageQualifiersOfEs100() {
+		assertParses(ES_100);
+		assertParses("varying vec2 uv;");
+		assertParses("attribute highp vec3 normal;");
+		assertParses("invariant varying vec4 color;");
+	}
+
+	@Test
+	public void parsesArrayConstructors() {
+		assertParses(ES_300);
+		assertParses("float a[] = float[](1.0, 2.0);");
+		assertParses("float a[2] = float[2](1.0, 2.0);");
+	}
+
+	@Test
+	public void updateGivesSameTreeAsReset() {
+		String[] pieces = {
+				"varying ", "attribute ", "float[](", "[]", "(", ")", "{", "}", ";",
+				"vec2 uv", "1.0", ", ", "struct ", "\n", "//", "/* */", "#define A\n"
+		};
+		Random random = new Random(1);
+		Parser parser = new Parser();
+		String text = ES_300;
+		TokenBuffer tokens = Lexer.tokenize(text).tokens();
+		parser.reset(tokens);
+		for (int i = 0; i < 5000; ++i) {
+			int start = random.nextInt(text.length() + 1);
+			int end = Math.min(text.length(), start + random.nextInt(8));
+			String replacement = random.nextInt(3) == 0
+					? ""
+					: pieces[random.nextInt(pieces.length)];
+			String edited = text.substring(0, start) + replacement +
+					text.substring(end);
+			TokenBuffer editedTokens = Lexer.tokenize(edited).tokens();
+			Lexer.Diff diff = Lexer.diff(tokens, editedTokens, start, end,
+					start + replacement.length());
+			parser.update(editedTokens, diff);
+
+			Parser expected = new Parser();
+			expected.reset(editedTokens);
+			assertEquals("replacing [" + start + ", " + end + ") of \"" + text +
+							"\" with \"" + replacement + "\"",
+					expected.tree().toString(), parser.tree().toString());
+
+			text = edited.length() > 4 * ES_300.length() ? ES_300 : edited;
+			tokens = text == edited ? editedTokens : Lexer.tokenize(text).tokens();
+			if (text != edited) {
+				parser.reset(tokens);
+			}
+		}
+	}
+
+	private static void assertParses(String source) {
+		Parser parser = new Parser();
+		parser.reset(Lexer.tokenize(source).tokens());
+		SyntaxTree tree = parser.tree();
+		assertFalse(source + " gives " + tree, tree.root().hasError());
+	}
+}
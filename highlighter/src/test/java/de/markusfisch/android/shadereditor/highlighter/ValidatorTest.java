@@ -0,0 +1,119 @@
+package de.markusfisch.android.shadereditor.highlighter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ValidatorTest {
+	private static final String HEADER = """
+			precision mediump float;
+			uniform vec2 resolution;
+			uniform float time;
+			varying vec2 uv;
+			""";
+
+	@Test
+	public void reportsIntAssignedToFloat() {
+		assertProblems("void main() {\n\tfloat f = 1;\n}\n",
+				"7: '=' : cannot convert from 'int' to 'float'");
+	}
+
+	@Test
+	public void reportsInvalidSwizzle() {
+		assertProblems("void main() {\n\tfloat f = uv.z;\n}\n",
+				"7: 'z' : vector field selection out of range");
+	}
+
+	@Test
+	public void reportsUndeclaredName() {
+		assertProblems("""
+						void main() {
+							gl_FragColor = vec4(uv, undeclaredThing, 1.0);
+						}
+						""",
+				"7: 'undeclaredThing' : undeclared identifier");
+	}
+
+	@Test
+	public void reportsVec3AssignedToVec4() {
+		assertProblems("void main() {\n\tvec4 c = vec3(1.0);\n}\n",
+				"7: '=' : cannot convert from 'vec3' to 'vec4'");
+	}
+
+	@Test
+	public void reportsAssignmentToUniform() {
+		assertProblems("void main() {\n\ttime = 1.0;\n}\n",
+				"7: 'time' : l-value required " +
+						"(can't modify a const, uniform or input)");
+	}
+
+	@Test
+	public void reportsConditionThatIsNotBool() {
+		assertProblems("void main() {\n\tif (time) {\n\t}\n}\n",
+				"7: boolean expression expected");
+	}
+
+	@Test
+	public void acceptsEs100ShaderWithVaryings() {
+		assertProblems("""
+				attribute vec4 position;
+				varying vec4 color;
+				invariant varying vec2 texCoord;
+				uniform sampler2D frame;
+
+				void main() {
+					vec4 c = texture2D(frame, texCoord) * color;
+					gl_FragColor = vec4(uv, time, 1.0) + c;
+				}
+				""");
+	}
+
+	@Test
+	public void acceptsSamples() throws IOException {
+		String samples = System.getProperty("samples");
+		assertNotNull("system property `samples` is not set", samples);
+		File[] files = new File(samples).listFiles((dir, name) ->
+				name.endsWith(".glsl"));
+		assertNotNull(files);
+		assertTrue("no samples in " + samples, files.length > 0);
+		for (File file : files) {
+			String source = new String(Files.readAllBytes(file.toPath()),
+					StandardCharsets.UTF_8);
+			assertEquals(file.getName(), List.of(), validate(source));
+		}
+	}
+
+	/**
+	 * Validate {@code body} after {@link #HEADER} and compare the problems
+	 * with {@code expected}.
+	 */
+	private static void assertProblems(String body, String... expected) {
+		assertEquals(List.of(expected), validate(HEADER + "\n" + body));
+	}
+
+	/**
+	 * @return The problems in {@code source} as strings.
+	 */
+	private static List<String> validate(String source) {
+		TokenBuffer tokens = Lexer.tokenize(source).tokens();
+		Parser parser = new Parser();
+		parser.reset(tokens);
+		Preprocessor preprocessor = new Preprocessor();
+		preprocessor.reset(tokens, source);
+		List<String> problems = new ArrayList<>();
+		for (Validator.Problem problem : new Validator().validate(tokens, source,
+				parser.tree(), preprocessor.inactiveRegions())) {
+			problems.add(problem.toString());
+		}
+		return problems;
+	}
+}